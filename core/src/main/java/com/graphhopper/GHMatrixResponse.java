@@ -0,0 +1,146 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wrapper for the result of a matrix request. The entry [i][j] contains the result from the i-th
+ * 'from' point to the j-th 'to' point.
+ * <p/>
+ * @author Peter Karich
+ */
+public class GHMatrixResponse
+{
+    private String debugInfo = "";
+    private final List<Throwable> errors = new ArrayList<Throwable>(4);
+    private double[][] distances = new double[0][0];
+    private double[][] weights = new double[0][0];
+    private long[][] millis = new long[0][0];
+
+    public GHMatrixResponse()
+    {
+    }
+
+    public String getDebugInfo()
+    {
+        check("getDebugInfo");
+        return debugInfo;
+    }
+
+    public GHMatrixResponse setDebugInfo( String debugInfo )
+    {
+        if (debugInfo != null)
+            this.debugInfo = debugInfo;
+        return this;
+    }
+
+    private void check( String method )
+    {
+        if (hasErrors())
+        {
+            throw new RuntimeException("You cannot call " + method + " if response contains errors. Check this with ghResponse.hasErrors(). "
+                    + "Errors are: " + getErrors());
+        }
+    }
+
+    /**
+     * @return true if one or more error found
+     */
+    public boolean hasErrors()
+    {
+        return !errors.isEmpty();
+    }
+
+    public List<Throwable> getErrors()
+    {
+        return errors;
+    }
+
+    public GHMatrixResponse addError( Throwable error )
+    {
+        errors.add(error);
+        return this;
+    }
+
+    public GHMatrixResponse setDistances( double[][] distances )
+    {
+        this.distances = distances;
+        return this;
+    }
+
+    /**
+     * @return distances in meter. Negative if the 'to' point is not reachable from the 'from' point.
+     */
+    public double[][] getDistances()
+    {
+        check("getDistances");
+        return distances;
+    }
+
+    public GHMatrixResponse setMillis( long[][] millis )
+    {
+        this.millis = millis;
+        return this;
+    }
+
+    /**
+     * @return times in millis. Negative if the 'to' point is not reachable from the 'from' point.
+     */
+    public long[][] getMillis()
+    {
+        check("getMillis");
+        return millis;
+    }
+
+    public GHMatrixResponse setWeights( double[][] weights )
+    {
+        this.weights = weights;
+        return this;
+    }
+
+    /**
+     * Only useful to compare entries calculated with the same query parameters. Double.MAX_VALUE
+     * if the 'to' point is not reachable from the 'from' point.
+     */
+    public double[][] getWeights()
+    {
+        check("getWeights");
+        return weights;
+    }
+
+    /**
+     * @return true if the path from the specified 'from' to the 'to' point was found
+     */
+    public boolean isFound( int fromIndex, int toIndex )
+    {
+        check("isFound");
+        return distances[fromIndex][toIndex] >= 0;
+    }
+
+    @Override
+    public String toString()
+    {
+        String str = "matrix:" + distances.length + "x" + (distances.length == 0 ? 0 : distances[0].length);
+        if (hasErrors())
+            str += ", " + errors.toString();
+
+        return str;
+    }
+}
@@ -19,6 +19,7 @@ package com.graphhopper;
 
 import com.graphhopper.util.InstructionList;
 import com.graphhopper.util.PointList;
+import com.graphhopper.util.RouteMetrics;
 import com.graphhopper.util.shapes.BBox;
 import java.util.ArrayList;
 import java.util.List;
@@ -38,6 +39,7 @@ public class GHResponse
     private long time;
     private InstructionList instructions = InstructionList.EMPTY;
     private boolean found;
+    private final RouteMetrics metrics = new RouteMetrics();
 
     public GHResponse()
     {
@@ -46,7 +48,13 @@ public class GHResponse
     public String getDebugInfo()
     {
         check("getDebugInfo");
-        return debugInfo;
+        if (metrics.getAlgorithm().isEmpty())
+            return debugInfo;
+
+        if (debugInfo.isEmpty())
+            return metrics.toString();
+
+        return metrics.toString() + ", " + debugInfo;
     }
 
     public GHResponse setDebugInfo( String debugInfo )
@@ -56,6 +64,27 @@ public class GHResponse
         return this;
     }
 
+    /**
+     * Appends the specified information to the existing debug information.
+     */
+    public GHResponse addDebugInfo( String debugInfo )
+    {
+        if (this.debugInfo.isEmpty())
+            return setDebugInfo(debugInfo);
+
+        if (debugInfo != null)
+            this.debugInfo += ", " + debugInfo;
+        return this;
+    }
+
+    /**
+     * @return the timings and the visited nodes of this request
+     */
+    public RouteMetrics getMetrics()
+    {
+        return metrics;
+    }
+
     private void check( String method )
     {
         if (hasErrors())
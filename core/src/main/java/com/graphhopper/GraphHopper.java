@@ -17,13 +17,18 @@
  */
 package com.graphhopper;
 
+import com.graphhopper.geohash.SpatialKeyAlgo;
 import com.graphhopper.reader.DataReader;
+import com.graphhopper.reader.OSMChangeReader;
 import com.graphhopper.reader.OSMReader;
+import com.graphhopper.reader.OSMWayIndex;
 import com.graphhopper.reader.dem.CGIARProvider;
 import com.graphhopper.reader.dem.ElevationProvider;
 import com.graphhopper.reader.dem.SRTMProvider;
 import com.graphhopper.routing.*;
+import com.graphhopper.routing.ch.ManyToManyCH;
 import com.graphhopper.routing.ch.PrepareContractionHierarchies;
+import com.graphhopper.routing.ch.RepairContractionHierarchies;
 import com.graphhopper.routing.util.*;
 import com.graphhopper.storage.*;
 import com.graphhopper.storage.index.*;
@@ -31,9 +36,17 @@ import com.graphhopper.util.*;
 import com.graphhopper.util.shapes.GHPoint;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
@@ -54,7 +67,10 @@ public class GraphHopper implements GraphHopperAPI
     private int defaultSegmentSize = -1;
     private String ghLocation = "";
     private DAType dataAccessType = DAType.RAM_STORE;
+    private int loadThreads = Runtime.getRuntime().availableProcessors();
+    private List<String> warmUpFiles = Collections.emptyList();
     private boolean sortGraph = false;
+    private boolean compressedGeometry = false;
     boolean removeZipped = true;
     private boolean elevation = false;
     private LockFactory lockFactory = new NativeFSLockFactory();
@@ -81,15 +97,31 @@ public class GraphHopper implements GraphHopperAPI
     private int lazyUpdates = -1;
     private int neighborUpdates = -1;
     private double logMessages = -1;
+    private int prepareThreads = -1;
+    // if CH is enabled for more than one vehicle every vehicle gets its own overlay and preparation
+    private final Map<String, LevelGraphOverlay> chGraphs = new LinkedHashMap<String, LevelGraphOverlay>();
+    private final Map<String, PrepareContractionHierarchies> chPreparations
+            = new LinkedHashMap<String, PrepareContractionHierarchies>();
     // for OSM import
     private String osmFile;
     private double osmReaderWayPointMaxDistance = 1;
     private int workerThreads = -1;
+    // null means the OSM node ids are mapped in the heap
+    private DAType nodeMapDAType;
+    private boolean enableWayIndex = false;
+    private OSMWayIndex wayIndex;
+    private ImportReport importReport;
     private boolean calcPoints = true;
     // utils    
     private final TranslationMap trMap = new TranslationMap().doImport();
     private ElevationProvider eleProvider = ElevationProvider.NOOP;
     private final AtomicLong visitedSum = new AtomicLong(0);
+    private boolean enableRoutingPool = false;
+    private final QueryGraphPool queryGraphPool = new QueryGraphPool();
+    private final RouteStatistics routeStatistics = new RouteStatistics();
+    private int batchThreads = Runtime.getRuntime().availableProcessors();
+    // created on the first routeBatch call and shut down in close
+    private ExecutorService batchExecutor;
 
     public GraphHopper()
     {
@@ -132,6 +164,29 @@ public class GraphHopper implements GraphHopperAPI
         return this;
     }
 
+    /**
+     * Stores the map of the OSM node ids while importing in DataAccess objects of the specified
+     * type instead of the heap, e.g. DAType.MMAP for a planet import with a small heap.
+     */
+    public GraphHopper setNodeMapDAType( DAType type )
+    {
+        nodeMapDAType = type;
+        return this;
+    }
+
+    /**
+     * Stores the OSM way of every edge while importing which makes it possible to apply OSM change
+     * files via applyChanges later. Requires 24 bytes per edge and 24 bytes per OSM node of the
+     * edges. With contraction hierarchies the shortcuts are stored in an overlay even for a single
+     * vehicle so that they can be repaired.
+     */
+    public GraphHopper setEnableWayIndex( boolean enable )
+    {
+        ensureNotLoaded();
+        enableWayIndex = enable;
+        return this;
+    }
+
     /**
      * Threads for data reading.
      */
@@ -252,9 +307,64 @@ public class GraphHopper implements GraphHopperAPI
     }
 
     /**
-     * Not yet stable enough to offer it for everyone
+     * Keeps the graph in direct memory outside of the JVM heap to avoid long garbage collection
+     * pauses for big graphs. The data is loaded from and flushed to disc like for setInMemory.
+     * Increase -XX:MaxDirectMemorySize accordingly.
+     */
+    public GraphHopper setDirectMemory()
+    {
+        ensureNotLoaded();
+        dataAccessType = DAType.DIRECT_STORE;
+        return this;
+    }
+
+    /**
+     * Specifies the number of threads which load the files of an existing graph into memory. With
+     * more than one thread all files are read concurrently. Default is the number of available
+     * processors.
+     */
+    public GraphHopper setLoadThreads( int loadThreads )
+    {
+        if (loadThreads < 1)
+            throw new IllegalArgumentException("load threads has to be positive but was " + loadThreads);
+
+        this.loadThreads = loadThreads;
+        return this;
+    }
+
+    /**
+     * Reads the specified memory mapped files into the page cache after loading, in the specified
+     * order and with the load threads. E.g. "locationIndex", "edges", "nodes" makes the hot files
+     * resident first. The load method returns after the warm-up, so a server is ready afterwards.
      */
-    private GraphHopper setUnsafeMemory()
+    public GraphHopper setWarmUpFiles( String... files )
+    {
+        ensureNotLoaded();
+        warmUpFiles = new ArrayList<String>(files.length);
+        for (String file : files)
+        {
+            warmUpFiles.add(file.trim());
+        }
+        return this;
+    }
+
+    /**
+     * @return the fraction of the segments which are probably in physical memory for every memory
+     * mapped file of the graph
+     */
+    public Map<String, Float> getResidency()
+    {
+        if (graph == null || !(graph.getDirectory() instanceof GHDirectory))
+            return Collections.emptyMap();
+
+        return ((GHDirectory) graph.getDirectory()).getResidency();
+    }
+
+    /**
+     * Keeps the graph in native memory outside of the JVM heap which is accessed via
+     * sun.misc.Unsafe. The data is loaded from and flushed to disc like for setInMemory.
+     */
+    public GraphHopper setUnsafeMemory()
     {
         ensureNotLoaded();
         dataAccessType = DAType.UNSAFE_STORE;
@@ -332,6 +442,49 @@ public class GraphHopper implements GraphHopperAPI
         return this;
     }
 
+    /**
+     * Enables the reuse of the QueryGraph and the search state of the bidirectional algorithms per
+     * thread to avoid their creation for every request. The search state grows with the largest
+     * search of a thread, so without CH this can require a lot of memory for many threads.
+     */
+    public GraphHopper setEnableRoutingPool( boolean b )
+    {
+        enableRoutingPool = b;
+        return this;
+    }
+
+    /**
+     * Specifies the number of threads used to calculate the routes of routeBatch. Default is the
+     * number of available processors. The threads are shared by all routeBatch calls of this
+     * instance, so this has to be set before the first call.
+     */
+    public GraphHopper setBatchThreads( int batchThreads )
+    {
+        if (batchThreads < 1)
+            throw new IllegalArgumentException("batch threads has to be positive but was " + batchThreads);
+        if (batchExecutor != null)
+            throw new IllegalStateException("Cannot change the batch threads after routeBatch was called");
+
+        this.batchThreads = batchThreads;
+        return this;
+    }
+
+    /**
+     * @return the histograms of the timings of all route requests
+     */
+    public RouteStatistics getRouteStatistics()
+    {
+        return routeStatistics;
+    }
+
+    /**
+     * @return the pool of QueryGraphs used if the routing pool is enabled, e.g. to get its hit rate
+     */
+    public QueryGraphPool getQueryGraphPool()
+    {
+        return queryGraphPool;
+    }
+
     /**
      * This methods enables gps point calculation. If disabled only distance will be calculated.
      */
@@ -425,7 +578,9 @@ public class GraphHopper implements GraphHopperAPI
     }
 
     /**
-     * Sorts the graph which requires more RAM while import. See #12
+     * Sorts the graph to improve the memory locality. A LevelGraphStorage is sorted in place after
+     * the preparation including its shortcuts, other graphs are copied which requires more RAM
+     * while import. See #12
      */
     public GraphHopper setSortGraph( boolean sortGraph )
     {
@@ -434,6 +589,17 @@ public class GraphHopper implements GraphHopperAPI
         return this;
     }
 
+    /**
+     * Stores the way geometry as deltas which needs about half of the space but slightly more
+     * time to fetch it. Only used for a new import, an existing graph is loaded in its format.
+     */
+    public GraphHopper setCompressedGeometry( boolean compressedGeometry )
+    {
+        ensureNotLoaded();
+        this.compressedGeometry = compressedGeometry;
+        return this;
+    }
+
     /**
      * Specifies if it is allowed for GraphHopper to write. E.g. for read only filesystems it is not
      * possible to create a lock file and so we can avoid write locks.
@@ -481,8 +647,13 @@ public class GraphHopper implements GraphHopperAPI
 
         String graphDATypeStr = args.get("graph.dataaccess", "RAM_STORE");
         dataAccessType = DAType.fromString(graphDATypeStr);
+        loadThreads = args.getInt("graph.dataaccess.loadThreads", loadThreads);
+        String warmUpStr = args.get("graph.dataaccess.warmup", "");
+        if (!warmUpStr.isEmpty())
+            setWarmUpFiles(warmUpStr.split(","));
 
         sortGraph = args.getBool("graph.doSort", sortGraph);
+        compressedGeometry = args.getBool("graph.geometry.compressed", compressedGeometry);
         removeZipped = args.getBool("graph.removeZipped", removeZipped);
         int bytesForFlags = args.getInt("graph.bytesForFlags", 4);
         if (args.get("graph.locktype", "native").equals("simple"))
@@ -512,6 +683,9 @@ public class GraphHopper implements GraphHopperAPI
         if (!baseURL.isEmpty())
             tmpProvider.setBaseURL(baseURL);
         tmpProvider.setDAType(elevationDAType);
+        int maxCachedTiles = args.getInt("graph.elevation.maxtiles", -1);
+        if (maxCachedTiles > 0)
+            tmpProvider.setMaxCachedTiles(maxCachedTiles);
         setElevationProvider(tmpProvider);
 
         // optimizable prepare
@@ -529,6 +703,7 @@ public class GraphHopper implements GraphHopperAPI
         lazyUpdates = args.getInt("prepare.updates.lazy", lazyUpdates);
         neighborUpdates = args.getInt("prepare.updates.neighbor", neighborUpdates);
         logMessages = args.getDouble("prepare.logmessages", logMessages);
+        prepareThreads = args.getInt("prepare.threads", prepareThreads);
 
         // osm import
         osmReaderWayPointMaxDistance = args.getDouble("osmreader.wayPointMaxDistance", osmReaderWayPointMaxDistance);
@@ -537,11 +712,19 @@ public class GraphHopper implements GraphHopperAPI
             traversalMode = TraversalMode.EDGE_BASED_2DIR;
         encodingManager = new EncodingManager(flagEncoders, bytesForFlags);
         workerThreads = args.getInt("osmreader.workerThreads", workerThreads);
+        String nodeMapDATypeStr = args.get("osmreader.nodeMap.dataaccess", "");
+        if (!nodeMapDATypeStr.isEmpty())
+            nodeMapDAType = DAType.fromString(nodeMapDATypeStr);
+        enableWayIndex = args.getBool("osmreader.wayIndex", enableWayIndex);
         enableInstructions = args.getBool("osmreader.instructions", enableInstructions);
 
         // index
         preciseIndexResolution = args.getInt("index.highResolution", preciseIndexResolution);
         maxRegionSearch = args.getInt("index.maxRegionSearch", maxRegionSearch);
+
+        // routing
+        enableRoutingPool = args.getBool("routing.pool", enableRoutingPool);
+        batchThreads = args.getInt("routing.batch_threads", batchThreads);
         return this;
     }
 
@@ -550,6 +733,8 @@ public class GraphHopper implements GraphHopperAPI
         logger.info("version " + Constants.VERSION + "|" + Constants.BUILD_DATE + " (" + Constants.getVersions() + ")");
         if (graph != null)
             logger.info("graph " + graph.toString() + ", details:" + graph.toDetailsString());
+        if (dataAccessType.isDirect())
+            logger.info("direct memory MB:" + DirectDataAccess.getAllocatedBytes() / Helper.MB);
     }
 
     /**
@@ -587,6 +772,7 @@ public class GraphHopper implements GraphHopperAPI
                     throw new RuntimeException("To avoid multiple writers we need to obtain a write lock but it failed. In " + graphHopperLocation, lock.getObtainFailedReason());
             }
 
+            importReport = new ImportReport();
             try
             {
                 importData();
@@ -598,7 +784,9 @@ public class GraphHopper implements GraphHopperAPI
             cleanUp();
             optimize();
             postProcessing();
+            importReport.store(graph.getProperties());
             flush();
+            writeImportReport();
         } finally
         {
             if (lock != null)
@@ -607,6 +795,52 @@ public class GraphHopper implements GraphHopperAPI
         return this;
     }
 
+    /**
+     * @return the timings, memory usage and element counts of every stage of the last import or
+     * null if the graph was loaded
+     */
+    public ImportReport getImportReport()
+    {
+        return importReport;
+    }
+
+    /**
+     * @return a new stage of the current import or null if no import is running
+     */
+    private ImportReport.Stage startStage( String name )
+    {
+        if (!isImporting())
+            return null;
+
+        return importReport.start(name);
+    }
+
+    private boolean isImporting()
+    {
+        return importReport != null && !fullyLoaded;
+    }
+
+    private void writeImportReport()
+    {
+        String json = importReport.toJSON();
+        logger.info("import report " + json);
+        if (!graph.getDirectory().getDefaultType().isStoring())
+            return;
+
+        Writer writer = null;
+        try
+        {
+            writer = new OutputStreamWriter(new FileOutputStream(new File(ghLocation, "import_report.json")), Helper.UTF_CS);
+            writer.write(json);
+        } catch (IOException ex)
+        {
+            logger.warn("Cannot write import report to " + ghLocation, ex);
+        } finally
+        {
+            Helper.close(writer);
+        }
+    }
+
     protected DataReader importData() throws IOException
     {
         ensureWriteAccess();
@@ -636,6 +870,18 @@ public class GraphHopper implements GraphHopperAPI
 
         logger.info("start creating graph from " + osmFile);
         File osmTmpFile = new File(osmFile);
+        if (nodeMapDAType != null)
+            reader.setDenseNodeMap(nodeMapDAType);
+
+        if (importReport != null)
+            reader.setImportReport(importReport);
+
+        if (enableWayIndex)
+        {
+            wayIndex = new OSMWayIndex(reader.getGraphStorage().getDirectory()).create(1000);
+            reader.setWayIndex(wayIndex);
+        }
+
         return reader.setOSMFile(osmTmpFile).
                 setElevationProvider(eleProvider).
                 setWorkerThreads(workerThreads).
@@ -693,13 +939,15 @@ public class GraphHopper implements GraphHopperAPI
             dataAccessType = DAType.MMAP_RO;
 
         GHDirectory dir = new GHDirectory(ghLocation, dataAccessType);
-        if (chEnabled)
-            graph = new LevelGraphStorage(dir, encodingManager, hasElevation());
+        GraphHopperStorage storage;
+        if (chEnabled && !useCHOverlays())
+            storage = new LevelGraphStorage(dir, encodingManager, hasElevation());
         else if (encodingManager.needsTurnCostsSupport())
-            graph = new GraphHopperStorage(dir, encodingManager, hasElevation(), new TurnCostExtension());
+            storage = new GraphHopperStorage(dir, encodingManager, hasElevation(), new TurnCostExtension());
         else
-            graph = new GraphHopperStorage(dir, encodingManager, hasElevation());
+            storage = new GraphHopperStorage(dir, encodingManager, hasElevation());
 
+        graph = storage.setCompressedGeometry(compressedGeometry);
         graph.setSegmentSize(defaultSegmentSize);
 
         Lock lock = null;
@@ -715,10 +963,24 @@ public class GraphHopper implements GraphHopperAPI
                     throw new RuntimeException("To avoid reading partial data we need to obtain the read lock but it failed. In " + ghLocation, lock.getObtainFailedReason());
             }
 
+            List<String> preloaded = Collections.emptyList();
+            if (loadThreads > 1)
+                preloaded = dir.loadExisting(loadThreads);
+
             if (!graph.loadExisting())
+            {
+                // the loaded files would have to be created again for an import
+                if (!preloaded.isEmpty())
+                    throw new IllegalStateException("Cannot load the graph but found " + preloaded + " in " + ghLocation
+                            + ". Remove the folder to import again");
+
                 return false;
+            }
 
             postProcessing();
+            if (!warmUpFiles.isEmpty())
+                dir.warmUp(warmUpFiles, loadThreads);
+
             fullyLoaded = true;
             return true;
         } finally
@@ -741,36 +1003,148 @@ public class GraphHopper implements GraphHopperAPI
         this.algoFactory = algoFactory;
     }
 
+    /**
+     * @return the algorithm factory for the specified vehicle which is its own CH preparation if
+     * contraction hierarchies are enabled for more than one vehicle
+     */
+    public RoutingAlgorithmFactory getAlgorithmFactory( String vehicle )
+    {
+        RoutingAlgorithmFactory tmpFactory = chPreparations.get(encodingManager.getEncoder(vehicle).toString());
+        if (tmpFactory == null)
+            return getAlgorithmFactory();
+
+        return tmpFactory;
+    }
+
+    /**
+     * @return the graph to route on for the specified vehicle. This is the CH overlay of the vehicle
+     * if contraction hierarchies are enabled for more than one vehicle or with the OSM way index.
+     */
+    public Graph getRoutingGraph( String vehicle )
+    {
+        LevelGraphOverlay chGraph = chGraphs.get(encodingManager.getEncoder(vehicle).toString());
+        if (chGraph == null)
+            return graph;
+
+        return chGraph;
+    }
+
     /**
      * Sets EncodingManager, does the preparation and creates the locationIndex
      */
     protected void postProcessing()
     {
         encodingManager = graph.getEncodingManager();
-        if (chEnabled)
+        if (chEnabled && graph instanceof LevelGraphStorage)
             algoFactory = createPrepare();
-        else
+        else if (chEnabled)
+        {
+            algoFactory = new RoutingAlgorithmFactorySimple();
+            initCHGraphs();
+        } else
             algoFactory = new RoutingAlgorithmFactorySimple();
 
         if (!isPrepared())
             prepare();
+
+        // only while importing as the relabeled graph has to be flushed together with the new index
+        if (sortGraph && isImporting() && graph instanceof LevelGraphStorage && isPrepared()
+                && !"true".equals(graph.getProperties().get("graph.sorted")))
+            sortPrepared();
+
         initLocationIndex();
     }
 
+    /**
+     * Relabels the nodes, edges and shortcuts of a prepared LevelGraphStorage in depth-first search
+     * order to reduce cache and page misses while querying. This is done only once while importing
+     * and has to happen before the location index is created as it depends on the node ids. An
+     * existing location index is removed.
+     */
+    protected void sortPrepared()
+    {
+        if (hasWayIndex())
+            throw new IllegalArgumentException("Sorting the graph changes the edge ids and is not possible with the OSM way index");
+
+        ensureWriteAccess();
+        ImportReport.Stage stage = startStage("sort");
+        ((LevelGraphStorage) graph).relabel(GHUtility.createDFSOrder(graph));
+        graph.getProperties().put("graph.sorted", true);
+        Directory dir = graph.getDirectory();
+        dir.remove(dir.find("locationIndex"));
+        dir.remove(dir.find("locationIndex_updates"));
+        logger.info("graph sorted (" + Helper.getMemInfo() + ")");
+        if (stage != null)
+            stage.put("nodes", graph.getNodes()).put("edges", graph.getAllEdges().getCount()).
+                    stop(graph.getDirectory());
+    }
+
+    /**
+     * @return true if the graph has an OSM way index, which depends on the edge ids
+     */
+    private boolean hasWayIndex()
+    {
+        // the way index is opened lazily in applyChanges, so its files are checked too
+        return wayIndex != null || new File(ghLocation, "osm_way_index").exists();
+    }
+
+    /**
+     * @return true if the contraction hierarchies are stored in one overlay per vehicle instead of
+     * a LevelGraphStorage. This is necessary for more than one vehicle and for a graph with an OSM
+     * way index, as the overlays can be repaired after applying changes.
+     */
+    private boolean useCHOverlays()
+    {
+        if (encodingManager.getVehicleCount() > 1)
+            return true;
+
+        // an existing graph is loaded with the storage it was imported with
+        if (new File(ghLocation, "nodes").exists())
+            return hasWayIndex();
+
+        return enableWayIndex;
+    }
+
     private boolean isPrepared()
     {
         return "true".equals(graph.getProperties().get("prepare.done"));
     }
 
+    /**
+     * Creates or loads one CH overlay per vehicle on top of the graph. The overlays need to be
+     * created after the graph was cleaned up and optimized as they depend on the edge ids.
+     */
+    private void initCHGraphs()
+    {
+        for (FlagEncoder encoder : encodingManager.fetchEdgeEncoders())
+        {
+            LevelGraphOverlay chGraph = new LevelGraphOverlay(graph, encoder, encoder.toString());
+            if (!chGraph.loadExisting())
+            {
+                ensureWriteAccess();
+                chGraph.setSegmentSize(defaultSegmentSize);
+                chGraph.create(1000);
+            }
+
+            chGraphs.put(encoder.toString(), chGraph);
+            chPreparations.put(encoder.toString(), createPrepare(chGraph, encoder).setRemoveHigher2LowerEdges(false));
+        }
+    }
+
     protected RoutingAlgorithmFactory createPrepare()
     {
-        FlagEncoder encoder = encodingManager.getSingle();
-        PrepareContractionHierarchies tmpPrepareCH = new PrepareContractionHierarchies((LevelGraph) graph, encoder,
+        return createPrepare((LevelGraph) graph, encodingManager.getSingle());
+    }
+
+    protected PrepareContractionHierarchies createPrepare( LevelGraph g, FlagEncoder encoder )
+    {
+        PrepareContractionHierarchies tmpPrepareCH = new PrepareContractionHierarchies(g, encoder,
                 createWeighting(new WeightingMap(chWeighting), encoder), traversalMode);
         tmpPrepareCH.setPeriodicUpdates(periodicUpdates).
                 setLazyUpdates(lazyUpdates).
                 setNeighborUpdates(neighborUpdates).
-                setLogMessages(logMessages);
+                setLogMessages(logMessages).
+                setThreads(prepareThreads);
 
         return tmpPrepareCH;
     }
@@ -826,31 +1200,221 @@ public class GraphHopper implements GraphHopperAPI
         if (graph.isClosed())
             throw new IllegalStateException("You need to create a new GraphHopper instance as it is already closed");
 
+        return route(request, null);
+    }
+
+    /**
+     * @param snapped the already snapped points of all requests with the vehicle of the specified
+     * request or null if they need to be looked up
+     */
+    private GHResponse route( GHRequest request, Map<GHPoint, QueryResult> snapped )
+    {
         GHResponse response = new GHResponse();
-        List<Path> paths = getPaths(request, response);
-        if (response.hasErrors())
+        // a pooled QueryGraph is in use until the paths are merged into the response
+        boolean pooled = enableRoutingPool;
+        if (pooled)
+            queryGraphPool.begin();
+        try
+        {
+            List<Path> paths = getPaths(request, response, snapped);
+            if (response.hasErrors())
+            {
+                routeStatistics.recordError();
+                return response;
+            }
+
+            boolean tmpEnableInstructions = request.getHints().getBool("instructions", enableInstructions);
+            boolean tmpCalcPoints = request.getHints().getBool("calcPoints", calcPoints);
+            double wayPointMaxDistance = request.getHints().getDouble("wayPointMaxDistance", 1d);
+            Locale locale = request.getLocale();
+            DouglasPeucker peucker = new DouglasPeucker().setMaxDistance(wayPointMaxDistance);
+
+            new PathMerger().
+                    setCalcPoints(tmpCalcPoints).
+                    setDouglasPeucker(peucker).
+                    setEnableInstructions(tmpEnableInstructions).
+                    setSimplifyResponse(simplifyResponse && wayPointMaxDistance > 0).
+                    doWork(response, paths, trMap.getWithFallBack(locale));
+            routeStatistics.record(response.getMetrics());
             return response;
+        } finally
+        {
+            if (pooled)
+                queryGraphPool.end();
+        }
+    }
+
+    public List<GHResponse> routeBatch( List<GHRequest> requests )
+    {
+        return routeBatch(requests, null);
+    }
+
+    /**
+     * Calculates the routes of many independent requests. All points are snapped in one pass
+     * before routing, where identical points are looked up only once. Then the routes are
+     * calculated concurrently by the threads of this instance, see setBatchThreads.
+     * <p/>
+     * @param listener gets every response as soon as it is calculated, can be null. It is called
+     * from the worker threads.
+     * @return the responses in the order of the requests
+     */
+    public List<GHResponse> routeBatch( List<GHRequest> requests, final RouteBatchListener listener )
+    {
+        if (graph == null || !fullyLoaded)
+            throw new IllegalStateException("Call load or importOrLoad before routing");
+
+        if (graph.isClosed())
+            throw new IllegalStateException("You need to create a new GraphHopper instance as it is already closed");
 
-        boolean tmpEnableInstructions = request.getHints().getBool("instructions", enableInstructions);
-        boolean tmpCalcPoints = request.getHints().getBool("calcPoints", calcPoints);
-        double wayPointMaxDistance = request.getHints().getDouble("wayPointMaxDistance", 1d);
-        Locale locale = request.getLocale();
-        DouglasPeucker peucker = new DouglasPeucker().setMaxDistance(wayPointMaxDistance);
+        final GHResponse[] responses = new GHResponse[requests.size()];
+        if (requests.isEmpty())
+            return Arrays.asList(responses);
+
+        final Map<String, Map<GHPoint, QueryResult>> snapped = snapPoints(requests);
+        ExecutorService executorService = getBatchExecutor();
+        List<Future<?>> futures = new ArrayList<Future<?>>(requests.size());
+        try
+        {
+            for (int i = 0; i < requests.size(); i++)
+            {
+                final int index = i;
+                final GHRequest request = requests.get(i);
+                futures.add(executorService.submit(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        GHResponse rsp;
+                        try
+                        {
+                            rsp = route(request, snapped.get(getVehicle(request)));
+                        } catch (Exception ex)
+                        {
+                            rsp = new GHResponse().addError(ex);
+                        }
+                        responses[index] = rsp;
+                        if (listener != null)
+                            listener.onResponse(index, rsp);
+                    }
+                }));
+            }
 
-        new PathMerger().
-                setCalcPoints(tmpCalcPoints).
-                setDouglasPeucker(peucker).
-                setEnableInstructions(tmpEnableInstructions).
-                setSimplifyResponse(simplifyResponse && wayPointMaxDistance > 0).
-                doWork(response, paths, trMap.getWithFallBack(locale));
-        return response;
+            for (Future<?> future : futures)
+            {
+                future.get();
+            }
+        } catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        } catch (ExecutionException ex)
+        {
+            throw new RuntimeException(ex.getCause());
+        } finally
+        {
+            // on failure do not leave the remaining requests of this batch in the shared pool
+            for (Future<?> future : futures)
+            {
+                future.cancel(true);
+            }
+        }
+        return Arrays.asList(responses);
     }
 
-    protected List<Path> getPaths( GHRequest request, GHResponse rsp )
+    private synchronized ExecutorService getBatchExecutor()
+    {
+        if (batchExecutor == null)
+            batchExecutor = Executors.newFixedThreadPool(batchThreads, new ThreadFactory()
+            {
+                private final ThreadFactory factory = Executors.defaultThreadFactory();
+
+                @Override
+                public Thread newThread( Runnable r )
+                {
+                    // do not keep the JVM alive if close was not called
+                    Thread thread = factory.newThread(r);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        return batchExecutor;
+    }
+
+    /**
+     * Looks up the unique points of all requests per vehicle, sorted by their spatial key so that
+     * subsequent lookups hit nearby parts of the location index.
+     */
+    private Map<String, Map<GHPoint, QueryResult>> snapPoints( List<GHRequest> requests )
+    {
+        Map<String, Set<GHPoint>> vehicle2Points = new HashMap<String, Set<GHPoint>>();
+        for (GHRequest request : requests)
+        {
+            // requests without a valid vehicle fail later with the same error as in route
+            if (request.getVehicle().isEmpty() && encodingManager.getVehicleCount() != 1)
+                continue;
+
+            String vehicle = getVehicle(request);
+            if (!encodingManager.supports(vehicle))
+                continue;
+
+            Set<GHPoint> points = vehicle2Points.get(vehicle);
+            if (points == null)
+            {
+                points = new HashSet<GHPoint>();
+                vehicle2Points.put(vehicle, points);
+            }
+            points.addAll(request.getPoints());
+        }
+
+        final SpatialKeyAlgo keyAlgo = new SpatialKeyAlgo(62).bounds(graph.getBounds());
+        Map<String, Map<GHPoint, QueryResult>> snapped = new HashMap<String, Map<GHPoint, QueryResult>>();
+        for (Map.Entry<String, Set<GHPoint>> entry : vehicle2Points.entrySet())
+        {
+            List<GHPoint> points = new ArrayList<GHPoint>(entry.getValue());
+            final long[] keys = new long[points.size()];
+            Integer[] order = new Integer[points.size()];
+            for (int i = 0; i < keys.length; i++)
+            {
+                keys[i] = keyAlgo.encode(points.get(i));
+                order[i] = i;
+            }
+            Arrays.sort(order, new Comparator<Integer>()
+            {
+                @Override
+                public int compare( Integer o1, Integer o2 )
+                {
+                    return keys[o1] < keys[o2] ? -1 : keys[o1] > keys[o2] ? 1 : 0;
+                }
+            });
+
+            EdgeFilter edgeFilter = new DefaultEdgeFilter(encodingManager.getEncoder(entry.getKey()));
+            Map<GHPoint, QueryResult> results = new HashMap<GHPoint, QueryResult>(points.size());
+            for (Integer index : order)
+            {
+                GHPoint point = points.get(index);
+                results.put(point, locationIndex.findClosest(point.lat, point.lon, edgeFilter));
+            }
+            snapped.put(entry.getKey(), results);
+        }
+        return snapped;
+    }
+
+    private String getVehicle( GHRequest request )
     {
         String vehicle = request.getVehicle();
         if (vehicle.isEmpty())
             vehicle = encodingManager.getSingle().toString();
+        return vehicle;
+    }
+
+    protected List<Path> getPaths( GHRequest request, GHResponse rsp )
+    {
+        return getPaths(request, rsp, null);
+    }
+
+    List<Path> getPaths( GHRequest request, GHResponse rsp, Map<GHPoint, QueryResult> snapped )
+    {
+        String vehicle = getVehicle(request);
 
         if (!encodingManager.supports(vehicle))
         {
@@ -877,17 +1441,22 @@ public class GraphHopper implements GraphHopperAPI
             return Collections.emptyList();
         }
 
-        visitedSum.set(0);
-
+        RouteMetrics metrics = rsp.getMetrics();
         FlagEncoder encoder = encodingManager.getEncoder(vehicle);
         EdgeFilter edgeFilter = new DefaultEdgeFilter(encoder);
 
-        StopWatch sw = new StopWatch().start();
+        long start = System.nanoTime();
         List<QueryResult> qResults = new ArrayList<QueryResult>(points.size());
         for (int placeIndex = 0; placeIndex < points.size(); placeIndex++)
         {
             GHPoint point = points.get(placeIndex);
-            QueryResult res = locationIndex.findClosest(point.lat, point.lon, edgeFilter);
+            QueryResult res;
+            if (snapped == null)
+                res = locationIndex.findClosest(point.lat, point.lon, edgeFilter);
+            else
+                // QueryGraph.lookup changes the result, so every request needs its own copy
+                res = snapped.get(point).copy();
+
             if (!res.isValid())
                 rsp.addError(new IllegalArgumentException("Cannot find point " + placeIndex + ": " + point));
 
@@ -897,9 +1466,9 @@ public class GraphHopper implements GraphHopperAPI
         if (rsp.hasErrors())
             return Collections.emptyList();
 
-        String debug = "idLookup:" + sw.stop().getSeconds() + "s";
-        QueryGraph queryGraph = new QueryGraph(graph);
+        QueryGraph queryGraph = queryGraphPool.create(getRoutingGraph(vehicle));
         queryGraph.lookup(qResults);
+        metrics.addLookupNanos(System.nanoTime() - start);
 
         List<Path> paths = new ArrayList<Path>(points.size() - 1);
         QueryResult fromQResult = qResults.get(0);
@@ -908,21 +1477,27 @@ public class GraphHopper implements GraphHopperAPI
 
         String algoStr = request.getAlgorithm().isEmpty() ? AlgorithmOptions.DIJKSTRA_BI : request.getAlgorithm();
         AlgorithmOptions algoOpts = AlgorithmOptions.start().algorithm(algoStr).traversalMode(tMode).flagEncoder(encoder).weighting(weighting).build();
+        algoOpts.getHints().put(AlgorithmOptions.REUSE_SEARCH_STATE, request.getHints().getBool(AlgorithmOptions.REUSE_SEARCH_STATE, enableRoutingPool));
+        RoutingAlgorithmFactory tmpAlgoFactory = getAlgorithmFactory(vehicle);
 
         for (int placeIndex = 1; placeIndex < points.size(); placeIndex++)
         {
             QueryResult toQResult = qResults.get(placeIndex);
-            sw = new StopWatch().start();
-            RoutingAlgorithm algo = getAlgorithmFactory().createAlgo(queryGraph, algoOpts);
-            debug += ", algoInit:" + sw.stop().getSeconds() + "s";
+            start = System.nanoTime();
+            RoutingAlgorithm algo = tmpAlgoFactory.createAlgo(queryGraph, algoOpts);
+            metrics.addAlgoInitNanos(System.nanoTime() - start);
 
-            sw = new StopWatch().start();
+            start = System.nanoTime();
             Path path = algo.calcPath(fromQResult.getClosestNode(), toQResult.getClosestNode());
             if (path.getMillis() < 0)
                 throw new RuntimeException("Time was negative. Please report as bug and include:" + request);
 
             paths.add(path);
-            debug += ", " + algo.getName() + "-routing:" + sw.stop().getSeconds() + "s, " + path.getDebugInfo();
+            // the path extraction is part of calcPath
+            metrics.addSearchNanos(System.nanoTime() - start - path.getExtractTime()).
+                    addExtractNanos(path.getExtractTime()).
+                    addVisitedNodes(algo.getVisitedNodes()).
+                    setAlgorithm(algo.getName());
 
             visitedSum.addAndGet(algo.getVisitedNodes());
             fromQResult = toQResult;
@@ -934,10 +1509,134 @@ public class GraphHopper implements GraphHopperAPI
         if (points.size() - 1 != paths.size())
             throw new RuntimeException("There should be exactly one more places than paths. places:" + points.size() + ", paths:" + paths.size());
 
-        rsp.setDebugInfo(debug);
         return paths;
     }
 
+    /**
+     * Calculates distances and times from all 'from' points to all 'to' points. All points are
+     * looked up only once. If CH is enabled a bucket based many-to-many search is used which is a
+     * lot faster than calling route for every pair. Turn costs are not considered.
+     */
+    public GHMatrixResponse matrix( GHMatrixRequest request )
+    {
+        if (graph == null || !fullyLoaded)
+            throw new IllegalStateException("Call load or importOrLoad before routing");
+
+        if (graph.isClosed())
+            throw new IllegalStateException("You need to create a new GraphHopper instance as it is already closed");
+
+        GHMatrixResponse rsp = new GHMatrixResponse();
+        String vehicle = request.getVehicle();
+        if (vehicle.isEmpty())
+            vehicle = encodingManager.getSingle().toString();
+
+        if (!encodingManager.supports(vehicle))
+        {
+            rsp.addError(new IllegalArgumentException("Vehicle " + vehicle + " unsupported. "
+                    + "Supported are: " + getEncodingManager()));
+            return rsp;
+        }
+
+        List<GHPoint> fromPoints = request.getFromPoints();
+        List<GHPoint> toPoints = request.getToPoints();
+        if (fromPoints.isEmpty() || toPoints.isEmpty())
+        {
+            rsp.addError(new IllegalStateException("At least 1 'from' and 1 'to' point has to be specified, but was:"
+                    + fromPoints.size() + ", " + toPoints.size()));
+            return rsp;
+        }
+
+        FlagEncoder encoder = encodingManager.getEncoder(vehicle);
+        EdgeFilter edgeFilter = new DefaultEdgeFilter(encoder);
+
+        StopWatch sw = new StopWatch().start();
+        // points used as 'from' and as 'to' point are looked up only once
+        Map<GHPoint, QueryResult> point2Result = new HashMap<GHPoint, QueryResult>();
+        List<QueryResult> qResults = new ArrayList<QueryResult>(fromPoints.size() + toPoints.size());
+        int[] fromNodes = new int[fromPoints.size()];
+        int[] toNodes = new int[toPoints.size()];
+        QueryResult[] fromResults = lookup(fromPoints, "from", point2Result, qResults, edgeFilter, rsp);
+        QueryResult[] toResults = lookup(toPoints, "to", point2Result, qResults, edgeFilter, rsp);
+        if (rsp.hasErrors())
+            return rsp;
+
+        QueryGraph queryGraph = new QueryGraph(getRoutingGraph(vehicle));
+        queryGraph.lookup(qResults);
+        for (int i = 0; i < fromResults.length; i++)
+        {
+            fromNodes[i] = fromResults[i].getClosestNode();
+        }
+        for (int i = 0; i < toResults.length; i++)
+        {
+            toNodes[i] = toResults[i].getClosestNode();
+        }
+        String debug = "idLookup:" + sw.stop().getSeconds() + "s";
+
+        sw = new StopWatch().start();
+        RoutingAlgorithmFactory tmpAlgoFactory = getAlgorithmFactory(vehicle);
+        if (tmpAlgoFactory instanceof PrepareContractionHierarchies)
+        {
+            ManyToManyCH algo = ((PrepareContractionHierarchies) tmpAlgoFactory).createManyToMany(queryGraph);
+            algo.calcMatrix(fromNodes, toNodes);
+            rsp.setWeights(algo.getWeights()).setDistances(algo.getDistances()).setMillis(algo.getMillis());
+            visitedSum.addAndGet(algo.getVisitedNodes());
+            debug += ", " + algo.getName() + ":" + sw.stop().getSeconds() + "s";
+        } else
+        {
+            Weighting weighting = createWeighting(request.getHints(), encoder);
+            DijkstraOneToMany algo = new DijkstraOneToMany(queryGraph, encoder, weighting, TraversalMode.NODE_BASED);
+            double[][] weights = new double[fromNodes.length][toNodes.length];
+            double[][] distances = new double[fromNodes.length][toNodes.length];
+            long[][] millis = new long[fromNodes.length][toNodes.length];
+            for (int row = 0; row < fromNodes.length; row++)
+            {
+                // the shortest path tree of one 'from' node is reused for all 'to' nodes
+                algo.clear();
+                for (int col = 0; col < toNodes.length; col++)
+                {
+                    if (fromNodes[row] == toNodes[col])
+                        continue;
+
+                    Path path = algo.calcPath(fromNodes[row], toNodes[col]);
+                    weights[row][col] = path.isFound() ? path.getWeight() : Double.MAX_VALUE;
+                    distances[row][col] = path.isFound() ? path.getDistance() : -1;
+                    millis[row][col] = path.isFound() ? path.getMillis() : -1;
+                    visitedSum.addAndGet(algo.getVisitedNodes());
+                }
+            }
+            rsp.setWeights(weights).setDistances(distances).setMillis(millis);
+            debug += ", " + algo.getName() + ":" + sw.stop().getSeconds() + "s";
+        }
+
+        rsp.setDebugInfo(debug);
+        return rsp;
+    }
+
+    private QueryResult[] lookup( List<GHPoint> points, String name, Map<GHPoint, QueryResult> point2Result,
+            List<QueryResult> qResults, EdgeFilter edgeFilter, GHMatrixResponse rsp )
+    {
+        QueryResult[] results = new QueryResult[points.size()];
+        for (int placeIndex = 0; placeIndex < points.size(); placeIndex++)
+        {
+            GHPoint point = points.get(placeIndex);
+            QueryResult res = point2Result.get(point);
+            if (res == null)
+            {
+                res = locationIndex.findClosest(point.lat, point.lon, edgeFilter);
+                if (!res.isValid())
+                {
+                    rsp.addError(new IllegalArgumentException("Cannot find " + name + " point " + placeIndex + ": " + point));
+                    continue;
+                }
+
+                point2Result.put(point, res);
+                qResults.add(res);
+            }
+            results[placeIndex] = res;
+        }
+        return results;
+    }
+
     protected LocationIndex createLocationIndex( Directory dir )
     {
         LocationIndex tmpIndex;
@@ -971,41 +1670,65 @@ public class GraphHopper implements GraphHopperAPI
         if (locationIndex != null)
             throw new IllegalStateException("Cannot initialize locationIndex twice!");
 
+        ImportReport.Stage stage = startStage("index");
         locationIndex = createLocationIndex(graph.getDirectory());
+        if (stage != null)
+            stage.put("nodes", graph.getNodes()).stop(graph.getDirectory());
     }
 
     protected void optimize()
     {
+        ImportReport.Stage stage = startStage("optimize");
         logger.info("optimizing ... (" + Helper.getMemInfo() + ")");
         graph.optimize();
         logger.info("finished optimize (" + Helper.getMemInfo() + ")");
 
         // Later: move this into the GraphStorage.optimize method
-        // Or: Doing it after preparation to optimize shortcuts too. But not possible yet #12
-        if (sortGraph)
+        // a LevelGraphStorage is sorted after the preparation to include the shortcuts, see sortPrepared
+        if (sortGraph && !(graph instanceof LevelGraphStorage))
         {
-            if (graph instanceof LevelGraph && isPrepared())
-                throw new IllegalArgumentException("Sorting prepared LevelGraph is not possible yet. See #12");
+            if (hasWayIndex())
+                throw new IllegalArgumentException("Sorting the graph changes the edge ids and is not possible with the OSM way index");
 
             GraphStorage newGraph = GHUtility.newStorage(graph);
             GHUtility.sortDFS(graph, newGraph);
             logger.info("graph sorted (" + Helper.getMemInfo() + ")");
             graph = newGraph;
         }
+
+        if (stage != null)
+            stage.put("nodes", graph.getNodes()).put("edges", graph.getAllEdges().getCount()).
+                    stop(graph.getDirectory());
     }
 
     protected void prepare()
     {
-        boolean tmpPrepare = doPrepare && algoFactory instanceof PrepareContractionHierarchies;
+        boolean tmpPrepare = doPrepare
+                && (algoFactory instanceof PrepareContractionHierarchies || !chPreparations.isEmpty());
         if (tmpPrepare)
         {
             ensureWriteAccess();
-            if (encodingManager.getVehicleCount() > 1)
-                throw new IllegalArgumentException("Contraction hierarchies preparation "
-                        + "requires (at the moment) only one vehicle. But was:" + encodingManager);
+            ImportReport.Stage stage = startStage("prepare");
+            if (chPreparations.isEmpty())
+            {
+                logger.info("calling prepare.doWork for " + encodingManager.toString() + " ... (" + Helper.getMemInfo() + ")");
+                PrepareContractionHierarchies prepare = (PrepareContractionHierarchies) algoFactory;
+                prepare.doWork();
+                if (stage != null)
+                    stage.put("shortcuts", prepare.getShortcuts());
+            } else
+            {
+                for (Map.Entry<String, PrepareContractionHierarchies> entry : chPreparations.entrySet())
+                {
+                    logger.info("calling prepare.doWork for " + entry.getKey() + " ... (" + Helper.getMemInfo() + ")");
+                    entry.getValue().doWork();
+                    if (stage != null)
+                        stage.put("shortcuts." + entry.getKey(), entry.getValue().getShortcuts());
+                }
+            }
+            if (stage != null)
+                stage.stop(graph.getDirectory());
 
-            logger.info("calling prepare.doWork for " + encodingManager.toString() + " ... (" + Helper.getMemInfo() + ")");
-            ((PrepareContractionHierarchies) algoFactory).doWork();
             graph.getProperties().put("prepare.date", formatDateTime(new Date()));
         }
         graph.getProperties().put("prepare.done", tmpPrepare);
@@ -1017,6 +1740,7 @@ public class GraphHopper implements GraphHopperAPI
         PrepareRoutingSubnetworks preparation = new PrepareRoutingSubnetworks(graph, encodingManager);
         preparation.setMinNetworkSize(minNetworkSize);
         preparation.setMinOnewayNetworkSize(this.minOnewayNetworkSize);
+        ImportReport.Stage stage = startStage("subnetworks");
         logger.info("start finding subnetworks, " + Helper.getMemInfo());
         preparation.doWork();
         int n = graph.getNodes();
@@ -1024,27 +1748,125 @@ public class GraphHopper implements GraphHopperAPI
         int remainingSubnetworks = preparation.findSubnetworks().size();
         logger.info("edges: " + graph.getAllEdges().getCount() + ", nodes " + n + ", there were " + preparation.getSubNetworks()
                 + " subnetworks. removed them => " + (prev - n) + " less nodes. Remaining subnetworks:" + remainingSubnetworks);
+        if (stage != null)
+            stage.put("subnetworks", preparation.getSubNetworks()).put("removed_nodes", prev - n).
+                    put("remaining_subnetworks", remainingSubnetworks).stop(graph.getDirectory());
     }
 
     protected void flush()
     {
         logger.info("flushing graph " + graph.toString() + ", details:" + graph.toDetailsString() + ", " + Helper.getMemInfo() + ")");
         graph.flush();
+        for (LevelGraphOverlay chGraph : chGraphs.values())
+        {
+            chGraph.flush();
+        }
+
+        if (wayIndex != null)
+            wayIndex.flush();
+
         fullyLoaded = true;
     }
 
+    /**
+     * Applies an OSM change file like a daily diff to the loaded graph, see OSMChangeReader for the
+     * supported changes. The graph has to be imported with an OSM way index, see
+     * setEnableWayIndex. The contraction hierarchies of the overlays are repaired incrementally,
+     * see RepairContractionHierarchies. The new edges are added to the location index.
+     */
+    public GraphHopper applyChanges( String changeFile )
+    {
+        if (graph == null || !fullyLoaded)
+            throw new IllegalStateException("Call load or importOrLoad before applying changes");
+
+        ensureWriteAccess();
+        if (wayIndex == null)
+        {
+            wayIndex = new OSMWayIndex(graph.getDirectory());
+            if (!wayIndex.loadExisting())
+                throw new IllegalStateException("Cannot apply changes without OSM way index in " + ghLocation
+                        + ". Import the graph with osmreader.wayIndex=true");
+        }
+        // new edges cannot be added after the shortcuts of a LevelGraphStorage
+        if (graph instanceof LevelGraphStorage && isPrepared())
+            throw new IllegalStateException("Cannot apply changes to the contraction hierarchies of " + graph
+                    + ". Import the graph again with osmreader.wayIndex=true to store them in an overlay");
+
+        Lock lock = null;
+        try
+        {
+            if (graph.getDirectory().getDefaultType().isStoring())
+            {
+                lockFactory.setLockDir(new File(ghLocation));
+                lock = lockFactory.create(fileLockName, true);
+                if (!lock.tryLock())
+                    throw new RuntimeException("To avoid multiple writers we need to obtain a write lock but it failed. In " + ghLocation, lock.getObtainFailedReason());
+            }
+
+            // the names are stored like on import
+            encodingManager.setEnableInstructions(enableInstructions);
+            OSMChangeReader reader = new OSMChangeReader(graph, wayIndex).
+                    setElevationProvider(eleProvider).
+                    setWayPointMaxDistance(osmReaderWayPointMaxDistance);
+            try
+            {
+                reader.setOSMFile(new File(changeFile)).readGraph();
+                graph.getProperties().put("osmreader.changes.date", formatDateTime(new Date()));
+            } catch (IOException ex)
+            {
+                throw new RuntimeException("Cannot apply OSM change file " + changeFile, ex);
+            }
+
+            if (isPrepared())
+            {
+                for (LevelGraphOverlay chGraph : chGraphs.values())
+                {
+                    Weighting weighting = createWeighting(new WeightingMap(chWeighting), chGraph.getEncoder());
+                    new RepairContractionHierarchies(chGraph, weighting).repair(reader.getChangedEdges());
+                }
+                graph.getProperties().put("prepare.date", formatDateTime(new Date()));
+            }
+
+            if (locationIndex instanceof LocationIndexTree)
+            {
+                ((LocationIndexTree) locationIndex).addEdges(reader.getChangedGeometries());
+                locationIndex.flush();
+            }
+            flush();
+        } finally
+        {
+            if (lock != null)
+                lock.release();
+        }
+        return this;
+    }
+
     /**
      * Releases all associated resources like memory or files. But it does not remove them. To
      * remove the files created in graphhopperLocation you have to call clean().
      */
     public void close()
     {
+        synchronized (this)
+        {
+            if (batchExecutor != null)
+                batchExecutor.shutdownNow();
+        }
+        queryGraphPool.clear();
         if (graph != null)
             graph.close();
 
+        for (LevelGraphOverlay chGraph : chGraphs.values())
+        {
+            chGraph.close();
+        }
+
         if (locationIndex != null)
             locationIndex.close();
 
+        if (wayIndex != null)
+            wayIndex.close();
+
         try
         {
             lockFactory.forceRemove(fileLockName, true);
@@ -1087,8 +1909,8 @@ public class GraphHopper implements GraphHopperAPI
     }
 
     /**
-     * Returns the current sum of the visited nodes while routing. Mainly for statistic and
-     * debugging purposes.
+     * Returns the sum of the visited nodes of all requests. Mainly for statistic and debugging
+     * purposes, the visited nodes of one request are available via GHResponse.getMetrics.
      */
     public long getVisitedSum()
     {
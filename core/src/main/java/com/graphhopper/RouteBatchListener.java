@@ -0,0 +1,33 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper;
+
+/**
+ * Receives the responses of GraphHopper.routeBatch as soon as they are calculated.
+ * <p/>
+ * @author Peter Karich
+ */
+public interface RouteBatchListener
+{
+    /**
+     * Called from the worker threads, so implementations have to be thread safe.
+     * <p/>
+     * @param index the index of the request
+     */
+    void onResponse( int index, GHResponse response );
+}
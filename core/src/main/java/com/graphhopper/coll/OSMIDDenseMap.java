@@ -0,0 +1,249 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.coll;
+
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.util.Helper;
+import java.util.Arrays;
+
+/**
+ * A long->int map for the dense and positive OSM node ids which stores its data in DataAccess
+ * objects, e.g. memory mapped to import the planet with a small heap. It works in two phases:
+ * <p/>
+ * 1. Before optimize() only up to three different values (e.g. pillar and tower) can be stored and
+ * every id takes 2 bits in a bitmap, independent of the order of the ids.
+ * <p/>
+ * 2. optimize() freezes the set of ids and creates one int value per existing id. The index of the
+ * value is the number of existing ids before it, which is calculated from a prefix sum per page of
+ * 64 ids and the bit count within the page. Afterwards every value can be stored for the existing
+ * ids.
+ * <p/>
+ * Negative ids and new ids after optimize() are stored in a GHLongIntBTree which should stay
+ * small.
+ * <p/>
+ * @author Peter Karich
+ */
+public class OSMIDDenseMap implements LongIntMap
+{
+    private static final int EMPTY = -1;
+    // 16 ids are stored in one int of the bitmap, 4 ints form a page
+    private static final int PAGE_SHIFT = 6;
+    private static final int PAGE_INTS = 4;
+    private final Directory dir;
+    private final DataAccess states;
+    private final DataAccess pageOffsets;
+    private final DataAccess values;
+    private final int[] stateValues;
+    private final GHLongIntBTree overflow = new GHLongIntBTree(200);
+    private long maxKey = -1;
+    private long size;
+    private boolean optimized;
+
+    /**
+     * @param stateValues the up to three values which can be stored before optimize is called.
+     */
+    public OSMIDDenseMap( Directory dir, DAType type, int... stateValues )
+    {
+        if (stateValues.length == 0 || stateValues.length > 3)
+            throw new IllegalArgumentException("Specify one to three state values but was " + stateValues.length);
+
+        for (int val : stateValues)
+        {
+            if (val == EMPTY)
+                throw new IllegalArgumentException("The state value " + EMPTY + " is reserved for missing ids");
+        }
+
+        this.dir = dir;
+        this.stateValues = stateValues;
+        states = dir.find("osmid_dense_states", type);
+        states.create(1000);
+        pageOffsets = dir.find("osmid_dense_offsets", type);
+        values = dir.find("osmid_dense_values", type);
+    }
+
+    @Override
+    public int put( long key, int value )
+    {
+        if (key < 0)
+            return overflow.put(key, value);
+
+        int state = getState(key);
+        if (optimized)
+        {
+            if (state == 0)
+                return overflow.put(key, value);
+
+            long pointer = getValueIndex(key) * 4;
+            int oldValue = values.getInt(pointer);
+            values.setInt(pointer, value);
+            return oldValue;
+        }
+
+        int newState = toState(value);
+        long intPointer = (key >>> 4) << 2;
+        int shift = ((int) key & 15) << 1;
+        if (key > maxKey)
+        {
+            states.ensureCapacity(intPointer + 4);
+            maxKey = key;
+        }
+
+        int bits = states.getInt(intPointer);
+        bits = (bits & ~(3 << shift)) | (newState << shift);
+        states.setInt(intPointer, bits);
+        if (state == 0)
+        {
+            size++;
+            return EMPTY;
+        }
+        return stateValues[state - 1];
+    }
+
+    private int toState( int value )
+    {
+        for (int i = 0; i < stateValues.length; i++)
+        {
+            if (stateValues[i] == value)
+                return i + 1;
+        }
+        throw new IllegalStateException("Before optimize only the values " + Arrays.toString(stateValues)
+                + " can be stored but was " + value);
+    }
+
+    @Override
+    public int get( long key )
+    {
+        if (key < 0)
+            return overflow.get(key);
+
+        int state = getState(key);
+        if (state == 0)
+            return optimized ? overflow.get(key) : EMPTY;
+
+        if (!optimized)
+            return stateValues[state - 1];
+
+        return values.getInt(getValueIndex(key) * 4);
+    }
+
+    private int getState( long key )
+    {
+        if (key > maxKey)
+            return 0;
+
+        int bits = states.getInt((key >>> 4) << 2);
+        return (bits >>> (((int) key & 15) << 1)) & 3;
+    }
+
+    /**
+     * @return a bitmask with the lowest bit of every 2 bit state set if the state is not empty
+     */
+    private static int existing( int bits )
+    {
+        return (bits | (bits >>> 1)) & 0x55555555;
+    }
+
+    private long getValueIndex( long key )
+    {
+        long page = key >>> PAGE_SHIFT;
+        long index = pageOffsets.getInt(page * 4) & 0xFFFFFFFFL;
+        long firstInt = page * PAGE_INTS;
+        long keyInt = key >>> 4;
+        for (long i = firstInt; i < keyInt; i++)
+        {
+            index += Integer.bitCount(existing(states.getInt(i << 2)));
+        }
+
+        int shift = ((int) key & 15) << 1;
+        if (shift > 0)
+        {
+            int mask = (1 << shift) - 1;
+            index += Integer.bitCount(existing(states.getInt(keyInt << 2)) & mask);
+        }
+        return index;
+    }
+
+    @Override
+    public long getSize()
+    {
+        return size + overflow.getSize();
+    }
+
+    /**
+     * Freezes the existing ids and creates the values for them. Further calls are ignored.
+     */
+    @Override
+    public void optimize()
+    {
+        if (optimized)
+            return;
+
+        long pages = maxKey < 0 ? 0 : (maxKey >>> PAGE_SHIFT) + 1;
+        pageOffsets.create(Math.max(pages * 4, 4));
+        values.create(Math.max(size * 4, 4));
+        long index = 0;
+        for (long page = 0; page < pages; page++)
+        {
+            pageOffsets.setInt(page * 4, (int) index);
+            for (int i = 0; i < PAGE_INTS; i++)
+            {
+                long intPointer = (page * PAGE_INTS + i) << 2;
+                if (intPointer >= states.getCapacity())
+                    break;
+
+                int bits = states.getInt(intPointer);
+                if (bits == 0)
+                    continue;
+
+                // copy the state values
+                for (int shift = 0; shift < 32; shift += 2)
+                {
+                    int state = (bits >>> shift) & 3;
+                    if (state != 0)
+                    {
+                        values.setInt(index * 4, stateValues[state - 1]);
+                        index++;
+                    }
+                }
+            }
+        }
+        if (index != size)
+            throw new IllegalStateException("Number of ids " + index + " does not match the size " + size);
+
+        optimized = true;
+    }
+
+    @Override
+    public int getMemoryUsage()
+    {
+        long bytes = states.getCapacity() + pageOffsets.getCapacity() + values.getCapacity();
+        return Math.round(bytes / Helper.MB) + overflow.getMemoryUsage();
+    }
+
+    /**
+     * Releases the DataAccess objects.
+     */
+    public void remove()
+    {
+        dir.remove(states);
+        dir.remove(pageOffsets);
+        dir.remove(values);
+    }
+}
@@ -0,0 +1,1027 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader;
+
+import com.graphhopper.coll.GHBitSet;
+import com.graphhopper.coll.GHBitSetImpl;
+import com.graphhopper.reader.dem.ElevationProvider;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.GraphStorage;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.util.DistanceCalc;
+import com.graphhopper.util.DistanceCalcEarth;
+import com.graphhopper.util.DouglasPeucker;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.shapes.GHPoint;
+import gnu.trove.TIntCollection;
+import gnu.trove.list.TDoubleList;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.TLongList;
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.TLongIntMap;
+import gnu.trove.map.TLongLongMap;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TLongIntHashMap;
+import gnu.trove.map.hash.TLongLongHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TIntHashSet;
+import gnu.trove.set.hash.TLongHashSet;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Applies an OSM change file (.osc or .osc.gz) to an existing graph which was imported with an
+ * OSMWayIndex:
+ * <ul>
+ * <li>The edges of modified ways get the flags calculated from the new tags.</li>
+ * <li>The edges of deleted ways are made inaccessible for all vehicles.</li>
+ * <li>New ways and ways with a changed node list get new edges, the old edges are made
+ * inaccessible and marked as dead in the way index. Existing edges are split where a new way
+ * connects to one of their pillar nodes.</li>
+ * <li>Moved nodes get their new coordinates and the geometry and distance of their edges are
+ * updated.</li>
+ * </ul>
+ * Not applied are the relations, the tags of nodes like barriers and ways of which less than two
+ * nodes are known or which are outside of the imported area and not connected to it via other new
+ * ways. Dead edges stay in the graph until the next import.
+ * <p/>
+ * Afterwards getChangedEdges and getChangedGeometries can be used to update the contraction
+ * hierarchies and the location index.
+ * <p/>
+ * @author Peter Karich
+ */
+public class OSMChangeReader implements DataReader
+{
+    private static final Logger logger = LoggerFactory.getLogger(OSMChangeReader.class);
+    // two points closer than this in degree are considered identical, the graph stores 1e-7
+    private static final double COORD_EPSILON = 1e-6;
+    private final GraphStorage graphStorage;
+    private final NodeAccess nodeAccess;
+    private final OSMWayIndex wayIndex;
+    private EncodingManager encodingManager;
+    private ElevationProvider eleProvider = ElevationProvider.NOOP;
+    private final DistanceCalc distCalc = new DistanceCalcEarth();
+    private final DouglasPeucker simplifyAlgo = new DouglasPeucker();
+    private boolean doSimplify = true;
+    private double maxPillarDistance = 1;
+    private File changeFile;
+    // the latest version of every created or modified way and node
+    private final TLongObjectMap<OSMWay> changedWays = new TLongObjectHashMap<OSMWay>();
+    private final TLongSet deletedWays = new TLongHashSet();
+    private final TLongObjectMap<OSMNode> changedNodes = new TLongObjectHashMap<OSMNode>();
+    // the live edges of the ways which are required while applying the changes
+    private final TLongObjectMap<TIntList> wayEdges = new TLongObjectHashMap<TIntList>();
+    private final TIntSet changedEdges = new TIntHashSet();
+    private final TIntSet changedGeometries = new TIntHashSet();
+    private GHBitSet validEdges;
+    private int initialEdges;
+    private EdgeExplorer explorer;
+    private int ignoredNodes;
+    private int ignoredRelations;
+    private int ignoredWays;
+    private int updatedEdges;
+    private int removedEdges;
+    private int createdEdges;
+    private int movedNodes;
+
+    public OSMChangeReader( GraphStorage storage, OSMWayIndex wayIndex )
+    {
+        this.graphStorage = storage;
+        this.nodeAccess = storage.getNodeAccess();
+        this.wayIndex = wayIndex;
+        this.encodingManager = storage.getEncodingManager();
+    }
+
+    public OSMChangeReader setEncodingManager( EncodingManager em )
+    {
+        this.encodingManager = em;
+        return this;
+    }
+
+    public OSMChangeReader setOSMFile( File changeFile )
+    {
+        this.changeFile = changeFile;
+        return this;
+    }
+
+    /**
+     * The elevation of new and moved nodes is fetched from the specified provider if the graph is
+     * 3D.
+     */
+    public OSMChangeReader setElevationProvider( ElevationProvider eleProvider )
+    {
+        this.eleProvider = eleProvider;
+        return this;
+    }
+
+    /**
+     * Simplifies the geometry of new edges like OSMReader.setWayPointMaxDistance
+     */
+    public OSMChangeReader setWayPointMaxDistance( double maxDist )
+    {
+        doSimplify = maxDist > 0;
+        simplifyAlgo.setMaxDistance(maxDist);
+        maxPillarDistance = Math.max(1, 2 * maxDist);
+        return this;
+    }
+
+    @Override
+    public void readGraph() throws IOException
+    {
+        if (changeFile == null)
+            throw new IllegalStateException("No OSM change file specified");
+
+        if (!changeFile.exists())
+            throw new IllegalStateException("Your specified OSM change file does not exist:" + changeFile.getAbsolutePath());
+
+        InputStream is = new BufferedInputStream(new FileInputStream(changeFile), 50000);
+        try
+        {
+            if (changeFile.getName().endsWith(".gz"))
+                is = new GZIPInputStream(is, 50000);
+
+            readChanges(is);
+        } catch (XMLStreamException ex)
+        {
+            throw new IOException("Cannot parse OSM change file " + changeFile, ex);
+        } finally
+        {
+            is.close();
+        }
+
+        applyChanges();
+        logger.info("applied " + changeFile + ", updated edges:" + Helper.nf(updatedEdges)
+                + ", removed edges:" + Helper.nf(removedEdges) + ", created edges:" + Helper.nf(createdEdges)
+                + ", moved nodes:" + Helper.nf(movedNodes) + ", ignored ways:" + Helper.nf(ignoredWays)
+                + ", ignored nodes:" + Helper.nf(ignoredNodes) + ", ignored relations:" + Helper.nf(ignoredRelations));
+    }
+
+    /**
+     * Collects the nodes and ways of the create, modify and delete sections. Later changes of the
+     * same element replace the earlier ones.
+     */
+    void readChanges( InputStream is ) throws XMLStreamException
+    {
+        XMLStreamReader parser = XMLInputFactory.newInstance().createXMLStreamReader(is, "UTF-8");
+        try
+        {
+            int event = parser.nextTag();
+            if (event != XMLStreamConstants.START_ELEMENT || !parser.getLocalName().equalsIgnoreCase("osmChange"))
+                throw new IllegalArgumentException("File is not a valid OSM change stream");
+
+            boolean delete = false;
+            while (parser.hasNext())
+            {
+                event = parser.next();
+                if (event != XMLStreamConstants.START_ELEMENT)
+                    continue;
+
+                String name = parser.getLocalName();
+                if ("create".equals(name) || "modify".equals(name))
+                {
+                    delete = false;
+                } else if ("delete".equals(name))
+                {
+                    delete = true;
+                } else if ("way".equals(name))
+                {
+                    long id = Long.parseLong(parser.getAttributeValue(null, "id"));
+                    if (delete)
+                    {
+                        changedWays.remove(id);
+                        deletedWays.add(id);
+                    } else
+                    {
+                        deletedWays.remove(id);
+                        changedWays.put(id, OSMWay.create(id, parser));
+                    }
+                } else if ("node".equals(name))
+                {
+                    long id = Long.parseLong(parser.getAttributeValue(null, "id"));
+                    // deleted nodes are removed from their ways which are modified in the same file
+                    if (delete)
+                        changedNodes.remove(id);
+                    else
+                        changedNodes.put(id, OSMNode.create(id, parser));
+                } else if ("relation".equals(name))
+                {
+                    ignoredRelations++;
+                }
+            }
+        } finally
+        {
+            parser.close();
+        }
+    }
+
+    /**
+     * Applies the changes in the following order: the edges of deleted and no longer accepted
+     * ways are removed, the flags of modified ways with an unchanged node list are updated, the old
+     * edges of the other ways are removed, moved nodes get their new coordinates and at last the
+     * new edges are created.
+     */
+    void applyChanges()
+    {
+        initialEdges = graphStorage.getAllEdges().getCount();
+        validEdges = new GHBitSetImpl(initialEdges);
+        explorer = graphStorage.createEdgeExplorer();
+        collectWayEdges();
+
+        for (long wayId : deletedWays.toArray())
+        {
+            removeWayEdges(wayId);
+        }
+
+        long[] wayIds = changedWays.keys();
+        Arrays.sort(wayIds);
+        List<OSMWay> rebuildWays = new ArrayList<OSMWay>();
+        TLongLongMap includeWays = new TLongLongHashMap(100, 0.5f, -1, 0);
+        for (long wayId : wayIds)
+        {
+            OSMWay way = changedWays.get(wayId);
+            long includeWay = way.getNodes().size() < 2 || !way.hasTags() ? 0 : encodingManager.acceptWay(way);
+            TIntList edges = wayEdges.get(wayId);
+            if (includeWay == 0)
+            {
+                removeWayEdges(wayId);
+            } else if (edges != null && !edges.isEmpty()
+                    && wayIndex.getNodesHash(edges.get(0)) == OSMWayIndex.hashNodes(way.getNodes()))
+            {
+                updateWayFlags(way, includeWay, edges);
+            } else
+            {
+                includeWays.put(wayId, includeWay);
+                rebuildWays.add(way);
+            }
+        }
+
+        // resolve the nodes before the old edges are removed
+        List<WayPoints> newWays = new ArrayList<WayPoints>(rebuildWays.size());
+        List<WayPoints> outsideWays = new ArrayList<WayPoints>();
+        TLongSet connectedNodes = new TLongHashSet();
+        for (OSMWay way : rebuildWays)
+        {
+            WayPoints points = resolve(way);
+            removeWayEdges(way.getId());
+            if (points == null)
+            {
+                ignoredWays++;
+                continue;
+            }
+
+            points.includeWay = includeWays.get(way.getId());
+            if (points.inGraph)
+            {
+                connectedNodes.addAll(points.osmIds);
+                newWays.add(points);
+            } else
+            {
+                outsideWays.add(points);
+            }
+        }
+
+        // new ways which are only connected via other new ways to the graph
+        boolean found = true;
+        while (found)
+        {
+            found = false;
+            for (int i = 0; i < outsideWays.size(); i++)
+            {
+                WayPoints points = outsideWays.get(i);
+                if (containsAny(connectedNodes, points.osmIds))
+                {
+                    connectedNodes.addAll(points.osmIds);
+                    newWays.add(points);
+                    outsideWays.remove(i);
+                    i--;
+                    found = true;
+                }
+            }
+        }
+        ignoredWays += outsideWays.size();
+
+        TLongIntMap nodeUsage = new TLongIntHashMap(100, 0.5f, -1, 0);
+        for (WayPoints points : newWays)
+        {
+            for (int i = 0; i < points.osmIds.size(); i++)
+            {
+                nodeUsage.adjustOrPutValue(points.osmIds.get(i), 1, 1);
+            }
+        }
+
+        long[] nodeIds = changedNodes.keys();
+        Arrays.sort(nodeIds);
+        for (long nodeId : nodeIds)
+        {
+            OSMNode node = changedNodes.get(nodeId);
+            long entry = wayIndex.findNode(nodeId);
+            if (entry < 0)
+            {
+                // a new node which is not used from a new way
+                if (!nodeUsage.containsKey(nodeId))
+                    ignoredNodes++;
+            } else if (isSamePoint(node.getLat(), node.getLon(), wayIndex.getNodeLatitude(entry), wayIndex.getNodeLongitude(entry)))
+            {
+                // e.g. changed tags
+                ignoredNodes++;
+            } else
+            {
+                moveNode(nodeId, entry, node.getLat(), node.getLon());
+                movedNodes++;
+            }
+        }
+
+        TLongIntMap towerNodes = new TLongIntHashMap(100, 0.5f, -1, -1);
+        for (WayPoints points : newWays)
+        {
+            addWay(points, nodeUsage, towerNodes);
+        }
+    }
+
+    /**
+     * Collects the live edges of the changed and deleted ways and of the ways which contained the
+     * changed or referenced nodes.
+     */
+    private void collectWayEdges()
+    {
+        TLongSet requiredWays = new TLongHashSet(deletedWays);
+        requiredWays.addAll(changedWays.keySet());
+        for (OSMWay way : changedWays.valueCollection())
+        {
+            TLongList nodes = way.getNodes();
+            for (int i = 0; i < nodes.size(); i++)
+            {
+                addRequiredWay(requiredWays, nodes.get(i));
+            }
+        }
+        for (long nodeId : changedNodes.keys())
+        {
+            addRequiredWay(requiredWays, nodeId);
+        }
+
+        AllEdgesIterator iter = graphStorage.getAllEdges();
+        while (iter.next())
+        {
+            int edge = iter.getEdge();
+            validEdges.add(edge);
+            long wayId = wayIndex.getWayId(edge);
+            if (wayId != 0 && !wayIndex.isDead(edge) && requiredWays.contains(wayId))
+                getWayEdges(wayId).add(edge);
+        }
+    }
+
+    private void addRequiredWay( TLongSet requiredWays, long osmNodeId )
+    {
+        long entry = wayIndex.findNode(osmNodeId);
+        if (entry < 0)
+            return;
+
+        int edge = wayIndex.getNodeEdge(entry);
+        if (edge >= 0 && edge < initialEdges)
+        {
+            long wayId = wayIndex.getWayId(edge);
+            if (wayId != 0)
+                requiredWays.add(wayId);
+        }
+    }
+
+    private TIntList getWayEdges( long wayId )
+    {
+        TIntList edges = wayEdges.get(wayId);
+        if (edges == null)
+        {
+            edges = new TIntArrayList(4);
+            wayEdges.put(wayId, edges);
+        }
+        return edges;
+    }
+
+    /**
+     * @return true if the edge was not removed from the graph, e.g. in GraphStorage.optimize. Dead
+     * edges are valid.
+     */
+    private boolean isValid( int edge )
+    {
+        // all edges created while applying the changes are valid
+        return edge >= initialEdges || edge >= 0 && validEdges.contains(edge);
+    }
+
+    private void removeWayEdges( long wayId )
+    {
+        TIntList edges = wayEdges.remove(wayId);
+        if (edges == null)
+            return;
+
+        for (int i = 0; i < edges.size(); i++)
+        {
+            removeEdge(edges.get(i));
+        }
+    }
+
+    private void removeEdge( int edge )
+    {
+        graphStorage.getEdgeProps(edge, Integer.MIN_VALUE).setFlags(0);
+        wayIndex.setDead(edge);
+        changedEdges.add(edge);
+        removedEdges++;
+    }
+
+    private void updateWayFlags( OSMWay way, long includeWay, TIntList edges )
+    {
+        // on import the beeline distance is used but the single edges are sufficient e.g. for ferries
+        double distance = 0;
+        for (int i = 0; i < edges.size(); i++)
+        {
+            distance += graphStorage.getEdgeProps(edges.get(i), Integer.MIN_VALUE).getDistance();
+        }
+        way.setTag("estimated_distance", distance);
+        long flags = encodingManager.handleWayTags(way, includeWay, wayIndex.getRelationFlags(edges.get(0)));
+        for (int i = 0; i < edges.size(); i++)
+        {
+            int edgeId = edges.get(i);
+            // store the flags in the direction of the way like it was done on import
+            EdgeIteratorState edge = graphStorage.getEdgeProps(edgeId, Integer.MIN_VALUE);
+            if (OSMWayIndex.isAscending(edge) != wayIndex.isAscending(edgeId))
+                edge = edge.detach(true);
+
+            edge.setFlags(flags);
+            encodingManager.applyWayTags(way, edge);
+            changedEdges.add(edgeId);
+            updatedEdges++;
+        }
+    }
+
+    /**
+     * @return the known nodes of the way with their coordinates or null if less than two are known
+     */
+    private WayPoints resolve( OSMWay way )
+    {
+        TLongList nodes = way.getNodes();
+        WayPoints points = new WayPoints(way, nodes.size());
+        boolean inGraph = false;
+        for (int i = 0; i < nodes.size(); i++)
+        {
+            long osmId = nodes.get(i);
+            OSMNode node = changedNodes.get(osmId);
+            long entry = wayIndex.findNode(osmId);
+            if (node != null)
+            {
+                points.add(osmId, node.getLat(), node.getLon());
+                inGraph |= entry >= 0 || graphStorage.getBounds().contains(node.getLat(), node.getLon());
+            } else if (entry >= 0)
+            {
+                points.add(osmId, wayIndex.getNodeLatitude(entry), wayIndex.getNodeLongitude(entry));
+                inGraph = true;
+            }
+            // else skip nodes outside of the imported area like OSMReader does
+        }
+
+        if (points.osmIds.size() < 2)
+            return null;
+
+        points.inGraph = inGraph;
+        TIntList edges = wayEdges.get(way.getId());
+        points.relationFlags = edges == null || edges.isEmpty() ? 0 : wayIndex.getRelationFlags(edges.get(0));
+        return points;
+    }
+
+    private static boolean containsAny( TLongSet set, TLongList values )
+    {
+        for (int i = 0; i < values.size(); i++)
+        {
+            if (set.contains(values.get(i)))
+                return true;
+        }
+        return false;
+    }
+
+    private void moveNode( long osmId, long entry, double lat, double lon )
+    {
+        double oldLat = wayIndex.getNodeLatitude(entry), oldLon = wayIndex.getNodeLongitude(entry);
+        double ele = Double.NaN;
+        if (nodeAccess.is3D())
+        {
+            ele = eleProvider.getEle(lat, lon);
+            if (Double.isNaN(ele))
+                ele = wayIndex.getNodeElevation(entry);
+        }
+        int edge = wayIndex.getNodeEdge(entry);
+        int tower = findTowerNode(edge, oldLat, oldLon);
+        if (tower >= 0)
+        {
+            moveTowerNode(tower, lat, lon, ele);
+        } else
+        {
+            EdgeIteratorState pillarEdge = findPillarEdge(edge, oldLat, oldLon);
+            if (pillarEdge != null)
+            {
+                movePillarNode(pillarEdge, oldLat, oldLon, lat, lon, ele);
+                edge = pillarEdge.getEdge();
+            }
+        }
+        wayIndex.setNode(osmId, lat, lon, ele, edge);
+    }
+
+    private void moveTowerNode( int node, double lat, double lon, double ele )
+    {
+        // the geometry is stored relative to the tower nodes, so fetch it before the move
+        TIntObjectMap<PointList> pillars = new TIntObjectHashMap<PointList>();
+        TIntSet wayForward = new TIntHashSet();
+        EdgeIterator iter = explorer.setBaseNode(node);
+        while (iter.next())
+        {
+            int edgeId = iter.getEdge();
+            if (pillars.containsKey(edgeId) || wayIndex.isDead(edgeId))
+                continue;
+
+            EdgeIteratorState edge = graphStorage.getEdgeProps(edgeId, Integer.MIN_VALUE);
+            pillars.put(edgeId, edge.fetchWayGeometry(0));
+            if (OSMWayIndex.isAscending(edge) == wayIndex.isAscending(edgeId))
+                wayForward.add(edgeId);
+        }
+
+        if (nodeAccess.is3D())
+            nodeAccess.setNode(node, lat, lon, ele);
+        else
+            nodeAccess.setNode(node, lat, lon);
+
+        for (int edgeId : pillars.keys())
+        {
+            EdgeIteratorState edge = graphStorage.getEdgeProps(edgeId, Integer.MIN_VALUE);
+            edge.setWayGeometry(pillars.get(edgeId));
+            updateGeometry(edge, wayForward.contains(edgeId));
+        }
+    }
+
+    private void movePillarNode( EdgeIteratorState edge, double oldLat, double oldLon, double lat, double lon, double ele )
+    {
+        boolean wayForward = OSMWayIndex.isAscending(edge) == wayIndex.isAscending(edge.getEdge());
+        PointList pillars = edge.fetchWayGeometry(0);
+        int index = findPoint(pillars, oldLat, oldLon);
+        if (index >= 0)
+        {
+            pillars.set(index, lat, lon, ele);
+        } else
+        {
+            // the node was removed while simplifying the geometry
+            int segment = findSegment(edge.fetchWayGeometry(3), oldLat, oldLon);
+            PointList tmp = pillars.copy(0, segment);
+            tmp.add(lat, lon, ele);
+            tmp.add(pillars.copy(segment, pillars.getSize()));
+            pillars = tmp;
+        }
+        edge.setWayGeometry(pillars);
+        updateGeometry(edge, wayForward);
+    }
+
+    /**
+     * Updates the distance and the direction of the way after the geometry of the edge changed.
+     */
+    private void updateGeometry( EdgeIteratorState edge, boolean wayForward )
+    {
+        edge.setDistance(calcDistance(edge.fetchWayGeometry(3)));
+        if (wayIndex.getWayId(edge.getEdge()) != 0)
+            wayIndex.setAscending(edge.getEdge(), wayForward == OSMWayIndex.isAscending(edge));
+
+        changedEdges.add(edge.getEdge());
+        changedGeometries.add(edge.getEdge());
+    }
+
+    private double calcDistance( PointList points )
+    {
+        double distance = points.calcDistance(distCalc);
+        // see OSMReader, zero distances are not allowed
+        return distance == 0 ? 0.0001 : distance;
+    }
+
+    /**
+     * @return the base or adjacent node of the edge if it has the specified coordinates, otherwise
+     * -1
+     */
+    private int findTowerNode( int edge, double lat, double lon )
+    {
+        if (!isValid(edge))
+            return -1;
+
+        EdgeIteratorState state = graphStorage.getEdgeProps(edge, Integer.MIN_VALUE);
+        if (isSamePoint(lat, lon, nodeAccess.getLatitude(state.getBaseNode()), nodeAccess.getLongitude(state.getBaseNode())))
+            return state.getBaseNode();
+        if (isSamePoint(lat, lon, nodeAccess.getLatitude(state.getAdjNode()), nodeAccess.getLongitude(state.getAdjNode())))
+            return state.getAdjNode();
+        return -1;
+    }
+
+    /**
+     * @return the live edge which contains the specified pillar node or null if the node is no
+     * longer part of the graph. The edge is either the specified one or, if that was split or
+     * removed, an edge of the same way.
+     */
+    private EdgeIteratorState findPillarEdge( int edge, double lat, double lon )
+    {
+        if (!isValid(edge))
+            return null;
+
+        // the edge contains the node even if the node was removed while simplifying the geometry
+        if (!wayIndex.isDead(edge))
+            return graphStorage.getEdgeProps(edge, Integer.MIN_VALUE);
+
+        long wayId = wayIndex.getWayId(edge);
+        TIntList edges = wayId == 0 ? null : wayEdges.get(wayId);
+        if (edges == null)
+            return null;
+
+        EdgeIteratorState best = null;
+        double bestDist = maxPillarDistance;
+        for (int i = 0; i < edges.size(); i++)
+        {
+            EdgeIteratorState state = graphStorage.getEdgeProps(edges.get(i), Integer.MIN_VALUE);
+            PointList points = state.fetchWayGeometry(3);
+            if (findPoint(points, lat, lon) >= 0)
+                return state;
+
+            int segment = findSegment(points, lat, lon);
+            double dist = calcSegmentDistance(points, segment, lat, lon);
+            if (dist < bestDist)
+            {
+                bestDist = dist;
+                best = state;
+            }
+        }
+        return best;
+    }
+
+    private static boolean isSamePoint( double lat1, double lon1, double lat2, double lon2 )
+    {
+        return Math.abs(lat1 - lat2) < COORD_EPSILON && Math.abs(lon1 - lon2) < COORD_EPSILON;
+    }
+
+    private static int findPoint( PointList points, double lat, double lon )
+    {
+        for (int i = 0; i < points.getSize(); i++)
+        {
+            if (isSamePoint(lat, lon, points.getLatitude(i), points.getLongitude(i)))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index of the first point of the segment which is closest to the specified point
+     */
+    private int findSegment( PointList points, double lat, double lon )
+    {
+        int best = 0;
+        double bestDist = Double.MAX_VALUE;
+        for (int i = 0; i + 1 < points.getSize(); i++)
+        {
+            double dist = calcSegmentDistance(points, i, lat, lon);
+            if (dist < bestDist)
+            {
+                bestDist = dist;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private double calcSegmentDistance( PointList points, int segment, double lat, double lon )
+    {
+        double aLat = points.getLatitude(segment), aLon = points.getLongitude(segment);
+        if (segment + 1 >= points.getSize())
+            return distCalc.calcDist(lat, lon, aLat, aLon);
+
+        double bLat = points.getLatitude(segment + 1), bLon = points.getLongitude(segment + 1);
+        if (distCalc.validEdgeDistance(lat, lon, aLat, aLon, bLat, bLon))
+            return distCalc.calcDenormalizedDist(distCalc.calcNormalizedEdgeDistance(lat, lon, aLat, aLon, bLat, bLon));
+
+        return Math.min(distCalc.calcDist(lat, lon, aLat, aLon), distCalc.calcDist(lat, lon, bLat, bLon));
+    }
+
+    /**
+     * Creates the edges of the way like OSMReader. A node becomes a tower node if it is the first
+     * or last node, if it is used more than once in the new ways, if it already is a tower node or
+     * if it is a pillar node of another way, in which case the edge of the other way is split.
+     */
+    private void addWay( WayPoints points, TLongIntMap nodeUsage, TLongIntMap towerNodes )
+    {
+        OSMWay way = points.way;
+        int size = points.osmIds.size();
+        double firstLat = points.lats.get(0), firstLon = points.lons.get(0);
+        double lastLat = points.lats.get(size - 1), lastLon = points.lons.get(size - 1);
+        way.setTag("estimated_distance", distCalc.calcDist(firstLat, firstLon, lastLat, lastLon));
+        way.setTag("estimated_center", new GHPoint((firstLat + lastLat) / 2, (firstLon + lastLon) / 2));
+        long flags = encodingManager.handleWayTags(way, points.includeWay, points.relationFlags);
+        long nodesHash = OSMWayIndex.hashNodes(way.getNodes());
+
+        PointList pointList = new PointList(size, nodeAccess.is3D());
+        TLongList pointOsmIds = new TLongArrayList(size);
+        int fromNode = -1;
+        for (int i = 0; i < size; i++)
+        {
+            long osmId = points.osmIds.get(i);
+            double lat = points.lats.get(i), lon = points.lons.get(i);
+            int node = towerNodes.get(osmId);
+            if (node < 0)
+            {
+                node = findTowerNode(osmId, way.getId());
+                if (node < 0 && (i == 0 || i == size - 1 || nodeUsage.get(osmId) > 1))
+                    node = addTowerNode(lat, lon);
+
+                if (node >= 0)
+                    towerNodes.put(osmId, node);
+            }
+
+            if (node >= 0)
+                pointList.add(nodeAccess, node);
+            else if (nodeAccess.is3D())
+                pointList.add(lat, lon, eleProvider.getEle(lat, lon));
+            else
+                pointList.add(lat, lon);
+            pointOsmIds.add(osmId);
+
+            if (node < 0)
+                continue;
+
+            if (fromNode >= 0)
+            {
+                EdgeIteratorState edge = addEdge(fromNode, node, pointList, flags);
+                wayIndex.setWay(edge.getEdge(), way.getId(), points.relationFlags);
+                wayIndex.setNodesHash(edge.getEdge(), nodesHash);
+                wayIndex.setAscending(edge.getEdge(), OSMWayIndex.isAscending(edge));
+                for (int j = 0; j < pointOsmIds.size(); j++)
+                {
+                    wayIndex.setNode(pointOsmIds.get(j), pointList.getLatitude(j), pointList.getLongitude(j),
+                            pointList.getElevation(j), edge.getEdge());
+                }
+                encodingManager.applyWayTags(way, edge);
+                getWayEdges(way.getId()).add(edge.getEdge());
+
+                pointList.clear();
+                pointList.add(nodeAccess, node);
+                pointOsmIds.clear();
+                pointOsmIds.add(osmId);
+            }
+            fromNode = node;
+        }
+    }
+
+    private EdgeIteratorState addEdge( int fromNode, int toNode, PointList pointList, long flags )
+    {
+        EdgeIteratorState edge = graphStorage.edge(fromNode, toNode).setFlags(flags);
+        edge.setDistance(calcDistance(pointList));
+        if (pointList.getSize() > 2)
+        {
+            PointList pillars = pointList.copy(1, pointList.getSize() - 1);
+            if (doSimplify)
+                simplifyAlgo.simplify(pillars);
+
+            edge.setWayGeometry(pillars);
+        }
+        changedEdges.add(edge.getEdge());
+        changedGeometries.add(edge.getEdge());
+        createdEdges++;
+        return edge;
+    }
+
+    private int addTowerNode( double lat, double lon )
+    {
+        int node = graphStorage.getNodes();
+        if (nodeAccess.is3D())
+            nodeAccess.setNode(node, lat, lon, eleProvider.getEle(lat, lon));
+        else
+            nodeAccess.setNode(node, lat, lon);
+        return node;
+    }
+
+    /**
+     * @return the tower node of the specified OSM node in the graph or -1 if it is unknown or a
+     * pillar node of a removed edge or of the specified way. If it is a pillar node of a live edge
+     * of another way the edge is split.
+     */
+    private int findTowerNode( long osmId, long wayId )
+    {
+        long entry = wayIndex.findNode(osmId);
+        if (entry < 0)
+            return -1;
+
+        double lat = wayIndex.getNodeLatitude(entry), lon = wayIndex.getNodeLongitude(entry);
+        int edge = wayIndex.getNodeEdge(entry);
+        int node = findTowerNode(edge, lat, lon);
+        if (node >= 0)
+            return node;
+
+        EdgeIteratorState pillarEdge = findPillarEdge(edge, lat, lon);
+        if (pillarEdge == null || wayIndex.getWayId(pillarEdge.getEdge()) == wayId)
+            return -1;
+
+        return splitEdge(pillarEdge, osmId, lat, lon);
+    }
+
+    /**
+     * Replaces the specified edge by two edges which are connected at a new tower node for the
+     * specified pillar node.
+     */
+    private int splitEdge( EdgeIteratorState edge, long osmId, double lat, double lon )
+    {
+        int edgeId = edge.getEdge();
+        PointList points = edge.fetchWayGeometry(3);
+        int index = findPoint(points, lat, lon);
+        int node;
+        PointList first, second;
+        if (index > 0 && index < points.getSize() - 1)
+        {
+            node = graphStorage.getNodes();
+            if (nodeAccess.is3D())
+                nodeAccess.setNode(node, lat, lon, points.getElevation(index));
+            else
+                nodeAccess.setNode(node, lat, lon);
+            first = points.copy(0, index + 1);
+            second = points.copy(index, points.getSize());
+        } else
+        {
+            // the node was removed while simplifying the geometry
+            int segment = findSegment(points, lat, lon);
+            node = addTowerNode(lat, lon);
+            first = points.copy(0, segment + 1);
+            first.add(nodeAccess, node);
+            second = new PointList(points.getSize() - segment + 1, nodeAccess.is3D());
+            second.add(nodeAccess, node);
+            second.add(points.copy(segment + 1, points.getSize()));
+        }
+
+        long wayId = wayIndex.getWayId(edgeId);
+        boolean wayForward = OSMWayIndex.isAscending(edge) == wayIndex.isAscending(edgeId);
+        EdgeIteratorState firstEdge = addPart(edge, edge.getBaseNode(), node, first, wayForward);
+        EdgeIteratorState secondEdge = addPart(edge, node, edge.getAdjNode(), second, wayForward);
+        removeEdge(edgeId);
+        if (wayId != 0)
+        {
+            TIntList edges = getWayEdges(wayId);
+            edges.remove(edgeId);
+            edges.add(firstEdge.getEdge());
+            edges.add(secondEdge.getEdge());
+        }
+        double ele = nodeAccess.is3D() ? nodeAccess.getElevation(node) : Double.NaN;
+        wayIndex.setNode(osmId, lat, lon, ele, firstEdge.getEdge());
+        return node;
+    }
+
+    private EdgeIteratorState addPart( EdgeIteratorState edge, int fromNode, int toNode, PointList pointList,
+            boolean wayForward )
+    {
+        EdgeIteratorState part = edge.copyPropertiesTo(graphStorage.edge(fromNode, toNode));
+        part.setWayGeometry(pointList.copy(1, pointList.getSize() - 1));
+        part.setDistance(calcDistance(pointList));
+        int edgeId = edge.getEdge(), partId = part.getEdge();
+        wayIndex.setWay(partId, wayIndex.getWayId(edgeId), wayIndex.getRelationFlags(edgeId));
+        wayIndex.setNodesHash(partId, wayIndex.getNodesHash(edgeId));
+        wayIndex.setAscending(partId, wayForward == OSMWayIndex.isAscending(part));
+        changedEdges.add(partId);
+        changedGeometries.add(partId);
+        createdEdges++;
+        return part;
+    }
+
+    /**
+     * @return all edges which got new flags, new geometry or which were created or removed
+     */
+    public TIntCollection getChangedEdges()
+    {
+        return changedEdges;
+    }
+
+    /**
+     * @return the edges which were created or got a new geometry and which have to be added to the
+     * location index
+     */
+    public TIntCollection getChangedGeometries()
+    {
+        return changedGeometries;
+    }
+
+    /**
+     * @return the number of edges which got new flags from a modified way
+     */
+    public int getUpdatedEdges()
+    {
+        return updatedEdges;
+    }
+
+    /**
+     * @return the number of edges which are no longer accessible e.g. from a deleted way or as they
+     * were replaced by new edges
+     */
+    public int getRemovedEdges()
+    {
+        return removedEdges;
+    }
+
+    /**
+     * @return the number of edges created for new or changed ways or while splitting edges
+     */
+    public int getCreatedEdges()
+    {
+        return createdEdges;
+    }
+
+    /**
+     * @return the number of nodes of the graph which got new coordinates
+     */
+    public int getMovedNodes()
+    {
+        return movedNodes;
+    }
+
+    /**
+     * @return the number of created or modified ways of which less than two nodes are known, e.g.
+     * as they are outside of the imported area
+     */
+    public int getIgnoredWays()
+    {
+        return ignoredWays;
+    }
+
+    /**
+     * @return the number of created or modified nodes which were not applied, e.g. changed tags of
+     * barriers or new nodes which are not used from a way
+     */
+    public int getIgnoredNodes()
+    {
+        return ignoredNodes;
+    }
+
+    @Override
+    public String toString()
+    {
+        return getClass().getSimpleName();
+    }
+
+    /**
+     * The known nodes of a way with their coordinates.
+     */
+    private static class WayPoints
+    {
+        final OSMWay way;
+        final TLongList osmIds;
+        final TDoubleList lats;
+        final TDoubleList lons;
+        long includeWay;
+        long relationFlags;
+        // at least one node is known or inside of the bounds of the graph
+        boolean inGraph;
+
+        WayPoints( OSMWay way, int size )
+        {
+            this.way = way;
+            osmIds = new TLongArrayList(size);
+            lats = new TDoubleArrayList(size);
+            lons = new TDoubleArrayList(size);
+        }
+
+        void add( long osmId, double lat, double lon )
+        {
+            osmIds.add(osmId);
+            lats.add(lat);
+            lons.add(lon);
+        }
+    }
+}
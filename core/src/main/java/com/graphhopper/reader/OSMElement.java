@@ -20,7 +20,8 @@ package com.graphhopper.reader;
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -37,9 +38,26 @@ public abstract class OSMElement
     public static final int NODE = 0;
     public static final int WAY = 1;
     public static final int RELATION = 2;
+    private static final String[] EMPTY_KEYS = new String[0];
+    private static final Object[] EMPTY_VALUES = new Object[0];
+    private static final int[] EMPTY_IDS = new int[0];
     private final int type;
     private final long id;
-    private final Map<String, Object> properties = new HashMap<String, Object>(5);
+    // An element has only a few tags so two parallel arrays with a linear search are faster and
+    // create less garbage than a HashMap with an entry object per tag. The strings of a pbf file
+    // are shared via the string table of the block. The OSMTagIds of keys and values are stored in
+    // two further arrays, -1 if not registered.
+    private String[] tagKeys = EMPTY_KEYS;
+    private Object[] tagValues = EMPTY_VALUES;
+    private int[] tagKeyIds = EMPTY_IDS;
+    private int[] tagValueIds = EMPTY_IDS;
+    // the OSMTagIds the ids were resolved with, null if not yet known. The element is bound to the
+    // OSMTagIds of the first id query, a query with a different instance resolves all ids again.
+    private OSMTagIds tagIds;
+    // the count of tagIds when the ids were resolved, if more strings are registered later the
+    // missing ids are resolved again
+    private int tagIdCount = Integer.MAX_VALUE;
+    private int tagCount;
 
     protected OSMElement( long id, int type )
     {
@@ -73,28 +91,23 @@ public abstract class OSMElement
 
     protected String tagsToString()
     {
-        if (properties.isEmpty())
+        if (tagCount == 0)
             return "<empty>";
 
         StringBuilder tagTxt = new StringBuilder();
-        for (Map.Entry<String, Object> entry : properties.entrySet())
+        for (int i = 0; i < tagCount; i++)
         {
-            tagTxt.append(entry.getKey());
+            tagTxt.append(tagKeys[i]);
             tagTxt.append("=");
-            tagTxt.append(entry.getValue());
+            tagTxt.append(tagValues[i]);
             tagTxt.append("\n");
         }
         return tagTxt.toString();
     }
 
-    protected Map<String, Object> getTags()
-    {
-        return properties;
-    }
-
     public void setTags( Map<String, String> newTags )
     {
-        properties.clear();
+        clearTags();
         if (newTags != null)
             for (Entry<String, String> e : newTags.entrySet())
             {
@@ -104,18 +117,87 @@ public abstract class OSMElement
 
     public boolean hasTags()
     {
-        return !properties.isEmpty();
+        return tagCount > 0;
+    }
+
+    /**
+     * Binds the ids of the tags to the specified OSMTagIds. The ids of all tags set afterwards via
+     * setTag(String, int, Object, int) have to be resolved by this OSMTagIds when it had at least
+     * the specified count, e.g. by the pbf decoder.
+     */
+    public void setTagIds( OSMTagIds tagIds, int count )
+    {
+        if (this.tagIds != tagIds)
+        {
+            this.tagIds = tagIds;
+            // the ids of the existing tags belong to another instance
+            Arrays.fill(tagKeyIds, 0, tagCount, -1);
+            Arrays.fill(tagValueIds, 0, tagCount, -1);
+            tagIdCount = tagCount > 0 ? -1 : count;
+        } else
+        {
+            tagIdCount = Math.min(tagIdCount, count);
+        }
+    }
+
+    private int indexOfTagId( OSMTagIds ids, int keyId )
+    {
+        if (keyId < 0)
+            return -1;
+
+        if (ids != tagIds)
+            setTagIds(ids, -1);
+        if (tagIdCount != ids.getCount())
+            resolveTagIds();
+
+        for (int i = 0; i < tagCount; i++)
+        {
+            if (tagKeyIds[i] == keyId)
+                return i;
+        }
+        return -1;
+    }
+
+    private void resolveTagIds()
+    {
+        // e.g. an encoder was created after the tags were set
+        int count = tagIds.getCount();
+        for (int i = 0; i < tagCount; i++)
+        {
+            if (tagKeyIds[i] < 0)
+                tagKeyIds[i] = tagIds.getId(tagKeys[i]);
+            if (tagValueIds[i] < 0 && tagValues[i] instanceof String)
+                tagValueIds[i] = tagIds.getId((String) tagValues[i]);
+        }
+        tagIdCount = count;
+    }
+
+    private int indexOfTag( String key )
+    {
+        for (int i = 0; i < tagCount; i++)
+        {
+            String tmpKey = tagKeys[i];
+            if (tmpKey == key || tmpKey.equals(key))
+                return i;
+        }
+        return -1;
+    }
+
+    private Object getTagValue( String key )
+    {
+        int index = indexOfTag(key);
+        return index < 0 ? null : tagValues[index];
     }
 
     public String getTag( String name )
     {
-        return (String) properties.get(name);
+        return (String) getTagValue(name);
     }
 
     @SuppressWarnings("unchecked")
     public <T> T getTag( String key, T defaultValue )
     {
-        T val = (T) properties.get(key);
+        T val = (T) getTagValue(key);
         if (val == null)
             return defaultValue;
         return val;
@@ -123,7 +205,116 @@ public abstract class OSMElement
 
     public void setTag( String name, Object value )
     {
-        properties.put(name, value);
+        if (tagIds == null)
+        {
+            // resolved on the first id query
+            setTag(name, -1, value, -1);
+            return;
+        }
+
+        tagIdCount = Math.min(tagIdCount, tagIds.getCount());
+        int valueId = value instanceof String ? tagIds.getId((String) value) : -1;
+        setTag(name, tagIds.getId(name), value, valueId);
+    }
+
+    /**
+     * Sets a tag whose ids are already known, e.g. from the string table of a pbf block. The ids
+     * have to be resolved by the OSMTagIds specified in setTagIds.
+     */
+    public void setTag( String name, int nameId, Object value, int valueId )
+    {
+        if (tagIds == null)
+        {
+            nameId = -1;
+            valueId = -1;
+        }
+        int index = indexOfTag(name);
+        if (index >= 0)
+        {
+            if (value == null)
+            {
+                removeTag(name);
+            } else
+            {
+                tagValues[index] = value;
+                tagValueIds[index] = valueId;
+            }
+            return;
+        }
+
+        // like a HashMap a missing value and a null value are the same
+        if (value == null)
+            return;
+
+        if (tagCount == tagKeys.length)
+        {
+            int newCapacity = Math.max(4, tagCount * 2);
+            tagKeys = Arrays.copyOf(tagKeys, newCapacity);
+            tagValues = Arrays.copyOf(tagValues, newCapacity);
+            tagKeyIds = Arrays.copyOf(tagKeyIds, newCapacity);
+            tagValueIds = Arrays.copyOf(tagValueIds, newCapacity);
+        }
+        tagKeys[tagCount] = name;
+        tagValues[tagCount] = value;
+        tagKeyIds[tagCount] = nameId;
+        tagValueIds[tagCount] = valueId;
+        tagCount++;
+    }
+
+    /**
+     * @return the value of the tag with the specified key id of the OSMTagIds or null
+     */
+    public String getTagById( OSMTagIds ids, int keyId )
+    {
+        int index = indexOfTagId(ids, keyId);
+        return index < 0 ? null : (String) tagValues[index];
+    }
+
+    /**
+     * @return the id of the value or -1 if the tag does not exist or its value is not registered
+     */
+    public int getTagValueId( OSMTagIds ids, int keyId )
+    {
+        int index = indexOfTagId(ids, keyId);
+        return index < 0 ? -1 : tagValueIds[index];
+    }
+
+    /**
+     * Checks for the presence of the tag with the specified key id.
+     */
+    public boolean hasTagId( OSMTagIds ids, int keyId )
+    {
+        return indexOfTagId(ids, keyId) >= 0;
+    }
+
+    /**
+     * Checks that the tag with the specified key id has the specified value id.
+     */
+    public boolean hasTagId( OSMTagIds ids, int keyId, int valueId )
+    {
+        return valueId >= 0 && getTagValueId(ids, keyId) == valueId;
+    }
+
+    /**
+     * Checks that the tag with the specified key id has one of the value ids.
+     */
+    public boolean hasTagId( OSMTagIds ids, int keyId, BitSet valueIds )
+    {
+        int valueId = getTagValueId(ids, keyId);
+        return valueId >= 0 && valueIds.get(valueId);
+    }
+
+    /**
+     * Checks the tags with the specified key ids for one of the value ids.
+     */
+    public boolean hasTagId( OSMTagIds ids, int[] keyIds, BitSet valueIds )
+    {
+        for (int keyId : keyIds)
+        {
+            if (hasTagId(ids, keyId, valueIds))
+                return true;
+        }
+        return false;
     }
 
     /**
@@ -131,7 +322,7 @@ public abstract class OSMElement
      */
     public boolean hasTag( String key, Object value )
     {
-        return value.equals(properties.get(key));
+        return value.equals(getTagValue(key));
     }
 
     /**
@@ -140,7 +331,7 @@ public abstract class OSMElement
      */
     public boolean hasTag( String key, String... values )
     {
-        Object osmValue = properties.get(key);
+        Object osmValue = getTagValue(key);
         if (osmValue == null)
             return false;
 
@@ -161,7 +352,7 @@ public abstract class OSMElement
      */
     public final boolean hasTag( String key, Set<String> values )
     {
-        return values.contains(properties.get(key));
+        return values.contains(getTagValue(key));
     }
 
     /**
@@ -172,7 +363,7 @@ public abstract class OSMElement
     {
         for (String key : keyList)
         {
-            if (values.contains(properties.get(key)))
+            if (values.contains(getTagValue(key)))
                 return true;
         }
         return false;
@@ -180,12 +371,25 @@ public abstract class OSMElement
 
     public void removeTag( String name )
     {
-        properties.remove(name);
+        int index = indexOfTag(name);
+        if (index < 0)
+            return;
+
+        tagCount--;
+        System.arraycopy(tagKeys, index + 1, tagKeys, index, tagCount - index);
+        System.arraycopy(tagValues, index + 1, tagValues, index, tagCount - index);
+        System.arraycopy(tagKeyIds, index + 1, tagKeyIds, index, tagCount - index);
+        System.arraycopy(tagValueIds, index + 1, tagValueIds, index, tagCount - index);
+        tagKeys[tagCount] = null;
+        tagValues[tagCount] = null;
     }
 
     public void clearTags()
     {
-        properties.clear();
+        Arrays.fill(tagKeys, 0, tagCount, null);
+        Arrays.fill(tagValues, 0, tagCount, null);
+        tagCount = 0;
+        tagIdCount = Integer.MAX_VALUE;
     }
 
     public int getType()
@@ -18,6 +18,7 @@
 package com.graphhopper.reader;
 
 import com.graphhopper.reader.pbf.Sink;
+import com.graphhopper.reader.pbf.PbfMappedFile;
 import com.graphhopper.reader.pbf.PbfReader;
 
 import javax.xml.stream.XMLInputFactory;
@@ -26,11 +27,16 @@ import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 import java.io.*;
 import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.ZipInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * A readable OSM file.
@@ -39,27 +45,50 @@ import java.util.zip.ZipInputStream;
  */
 public class OSMInputFile implements Sink, Closeable
 {
+    private static final Logger logger = LoggerFactory.getLogger(OSMInputFile.class);
     private boolean eof;
     private InputStream bis;
     // for xml parsing
     private XMLStreamReader parser;
     // for pbf parsing
     private boolean binary = false;
-    private final BlockingQueue<OSMElement> itemQueue;
-    private boolean hasIncomingData;
+    private boolean bzip2 = false;
+    // the decoded pbf blocks, each holds up to 8000 elements
+    private final BlockingQueue<List<OSMElement>> blockQueue;
+    // marks the end of the pbf stream in the blockQueue
+    private static final List<OSMElement> END_OF_STREAM = new ArrayList<OSMElement>(0);
+    // set in close, then the pbf reader thread must not wait for free space in the blockQueue
+    private volatile boolean closed;
+    private List<OSMElement> currentBlock;
+    private int currentIndex;
     private int workerThreads = -1;
+    private final File file;
+    private boolean memoryMapped = true;
+    private OSMTagIds tagIds;
+    // indexed via OSMElement.NODE, WAY and RELATION
+    private final boolean[] elementTypes =
+    {
+        true, true, true
+    };
 
     public OSMInputFile( File file ) throws IOException
     {
+        this.file = file;
         bis = decode(file);
-        itemQueue = new LinkedBlockingQueue<OSMElement>(50000);
+        blockQueue = new LinkedBlockingQueue<List<OSMElement>>(10);
     }
 
     public OSMInputFile open() throws XMLStreamException
     {
+        if (workerThreads <= 0)
+            workerThreads = 2;
+
+        if (bzip2)
+            bis = decodeBZip2(bis);
+
         if (binary)
         {
-            openPBFReader(bis);
+            openPBFReader();
         } else
         {
             openXMLStream(bis);
@@ -68,7 +97,7 @@ public class OSMInputFile implements Sink, Closeable
     }
 
     /**
-     * Currently on for pbf format. Default is number of cores.
+     * The threads to decode pbf and bzip2 files. Default is 2.
      */
     public OSMInputFile setWorkerThreads( int num )
     {
@@ -76,7 +105,42 @@ public class OSMInputFile implements Sink, Closeable
         return this;
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * Specifies if an uncompressed pbf file should be memory mapped and its blobs decoded without
+     * copying. Default is true, if mapping fails the file is read as a stream.
+     */
+    public OSMInputFile setMemoryMapped( boolean memoryMapped )
+    {
+        this.memoryMapped = memoryMapped;
+        return this;
+    }
+
+    /**
+     * Specifies the OSMTagIds of the encoders so that the ids of pbf tags are resolved once per
+     * string of a block. Without them the ids are resolved on the first query of every element.
+     */
+    public OSMInputFile setTagIds( OSMTagIds tagIds )
+    {
+        this.tagIds = tagIds;
+        return this;
+    }
+
+    /**
+     * Specifies the element types which should be returned from getNext. Other elements are skipped
+     * as early as possible, e.g. for pbf files they are not even decoded. Default is all types.
+     * <p/>
+     * @param types e.g. OSMElement.WAY and OSMElement.RELATION
+     */
+    public OSMInputFile setElementTypes( int... types )
+    {
+        Arrays.fill(elementTypes, false);
+        for (int type : types)
+        {
+            elementTypes[type] = true;
+        }
+        return this;
+    }
+
     private InputStream decode( File file ) throws IOException
     {
         final String name = file.getName();
@@ -125,23 +189,37 @@ public class OSMInputFile implements Sink, Closeable
             return ips;
         } else if (name.endsWith(".bz2") || name.endsWith(".bzip2"))
         {
-            String clName = "org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream";
-            try
-            {
-                Class clazz = Class.forName(clName);
-                ips.reset();
-                Constructor<InputStream> ctor = clazz.getConstructor(InputStream.class, boolean.class);
-                return ctor.newInstance(ips, true);
-            } catch (Exception e)
-            {
-                throw new IllegalArgumentException("Cannot instantiate " + clName, e);
-            }
+            // decoded in open as it depends on the worker threads
+            ips.reset();
+            bzip2 = true;
+            return ips;
         } else
         {
             throw new IllegalArgumentException("Input file is not of valid type " + file.getPath());
         }
     }
 
+    /**
+     * Uses ParallelBZip2InputStream for more than one worker thread, both need commons-compress
+     */
+    @SuppressWarnings("unchecked")
+    private InputStream decodeBZip2( InputStream ips )
+    {
+        if (workerThreads > 1)
+            return new ParallelBZip2InputStream(ips, workerThreads);
+
+        String clName = "org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream";
+        try
+        {
+            Class clazz = Class.forName(clName);
+            Constructor<InputStream> ctor = clazz.getConstructor(InputStream.class, boolean.class);
+            return ctor.newInstance(ips, true);
+        } catch (Exception e)
+        {
+            throw new IllegalArgumentException("Cannot instantiate " + clName, e);
+        }
+    }
+
     private void openXMLStream( InputStream in )
             throws XMLStreamException
     {
@@ -192,7 +270,7 @@ public class OSMInputFile implements Sink, Closeable
                     {
                         case 'n':
                             // note vs. node
-                            if ("node".equals(name))
+                            if ("node".equals(name) && elementTypes[OSMElement.NODE])
                             {
                                 id = Long.parseLong(idStr);
                                 return OSMNode.create(id, parser);
@@ -200,13 +278,19 @@ public class OSMInputFile implements Sink, Closeable
                             break;
 
                         case 'w':
-                        {
-                            id = Long.parseLong(idStr);
-                            return OSMWay.create(id, parser);
-                        }
+                            if (elementTypes[OSMElement.WAY])
+                            {
+                                id = Long.parseLong(idStr);
+                                return OSMWay.create(id, parser);
+                            }
+                            break;
                         case 'r':
-                            id = Long.parseLong(idStr);
-                            return OSMRelation.create(id, parser);
+                            if (elementTypes[OSMElement.RELATION])
+                            {
+                                id = Long.parseLong(idStr);
+                                return OSMRelation.create(id, parser);
+                            }
+                            break;
                     }
                 }
             }
@@ -234,6 +318,9 @@ public class OSMInputFile implements Sink, Closeable
         } finally
         {
             eof = true;
+            closed = true;
+            // release the blocks and make space for the pbf reader thread
+            blockQueue.clear();
             bis.close();
             // if exception happend on OSMInputFile-thread we need to shutdown the pbf handling
             if (pbfReaderThread != null && pbfReaderThread.isAlive())
@@ -242,61 +329,90 @@ public class OSMInputFile implements Sink, Closeable
     }
     Thread pbfReaderThread;
 
-    private void openPBFReader( InputStream stream )
+    private void openPBFReader()
     {
-        hasIncomingData = true;
-        if (workerThreads <= 0)
-            workerThreads = 2;
+        PbfReader reader = null;
+        if (memoryMapped)
+        {
+            try
+            {
+                reader = new PbfReader(new PbfMappedFile(file), this, workerThreads, elementTypes, tagIds);
+            } catch (IOException ex)
+            {
+                logger.warn("Cannot memory map " + file + ", reading it as stream. " + ex.getMessage());
+            }
+        }
+
+        if (reader == null)
+            reader = new PbfReader(bis, this, workerThreads, elementTypes, tagIds);
 
-        PbfReader reader = new PbfReader(stream, this, workerThreads);
         pbfReaderThread = new Thread(reader, "PBF Reader");
         pbfReaderThread.start();
     }
 
     @Override
-    public void process( OSMElement item )
+    public void process( List<OSMElement> items )
     {
+        if (items.isEmpty())
+            return;
+
         try
         {
-            // blocks if full
-            itemQueue.put(item);
+            // blocks if full but not forever as nobody takes blocks anymore after close
+            while (!blockQueue.offer(items, 100, TimeUnit.MILLISECONDS))
+            {
+                if (closed)
+                    throw new IllegalStateException("Reading was stopped via close");
+            }
         } catch (InterruptedException ex)
         {
+            // keep the flag so that complete does not block either
+            Thread.currentThread().interrupt();
             throw new RuntimeException(ex);
         }
-
-        // throw exception if full
-        // itemQueue.add(item);
     }
 
     @Override
     public void complete()
     {
-        hasIncomingData = false;
+        try
+        {
+            // the queue can be full and nobody takes blocks anymore after close
+            while (!closed && !blockQueue.offer(END_OF_STREAM, 100, TimeUnit.MILLISECONDS))
+            {
+            }
+        } catch (InterruptedException ex)
+        {
+            // reading was stopped via close, nobody is waiting for the end
+            Thread.currentThread().interrupt();
+        }
     }
 
     private OSMElement getNextPBF()
     {
-        OSMElement next = null;
-        while (next == null)
+        while (currentBlock == null || currentIndex >= currentBlock.size())
         {
-            if (!hasIncomingData && itemQueue.isEmpty())
-            {
-                // we are done, stop polling
-                eof = true;
-                break;
-            }
-
             try
             {
-                // we cannot use "itemQueue.take()" as it blocks and hasIncomingData can change
-                next = itemQueue.poll(10, TimeUnit.MILLISECONDS);
+                currentBlock = blockQueue.take();
             } catch (InterruptedException ex)
             {
+                Thread.currentThread().interrupt();
+                currentBlock = END_OF_STREAM;
+            }
+            currentIndex = 0;
+            if (currentBlock == END_OF_STREAM)
+            {
+                // we are done, keep the marker to avoid waiting again
                 eof = true;
-                break;
+                return null;
             }
         }
+
+        OSMElement next = currentBlock.get(currentIndex);
+        // release the element early as a block can be big
+        currentBlock.set(currentIndex, null);
+        currentIndex++;
         return next;
     }
 }
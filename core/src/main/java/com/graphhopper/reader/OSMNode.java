@@ -72,7 +72,7 @@ public class OSMNode extends OSMElement
 
     public double getEle()
     {
-        Object ele = getTags().get("ele");
+        Object ele = getTag("ele", null);
         if (ele == null)
             return Double.NaN;
         return (Double) ele;
@@ -116,7 +116,7 @@ public class OSMNode extends OSMElement
         txt.append(getLat());
         txt.append(" lon=");
         txt.append(getLon());
-        if (!getTags().isEmpty())
+        if (hasTags())
         {
             txt.append("\n");
             txt.append(tagsToString());
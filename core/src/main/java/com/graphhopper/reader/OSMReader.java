@@ -32,6 +32,11 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.xml.stream.XMLStreamException;
 
@@ -40,6 +45,7 @@ import org.slf4j.LoggerFactory;
 
 import com.graphhopper.coll.GHLongIntBTree;
 import com.graphhopper.coll.LongIntMap;
+import com.graphhopper.coll.OSMIDDenseMap;
 import com.graphhopper.reader.OSMTurnRelation.TurnCostTableEntry;
 import com.graphhopper.reader.dem.ElevationProvider;
 import com.graphhopper.routing.util.EncodingManager;
@@ -50,6 +56,7 @@ import com.graphhopper.util.DistanceCalcEarth;
 import com.graphhopper.util.DouglasPeucker;
 import com.graphhopper.util.EdgeIteratorState;
 import com.graphhopper.util.Helper;
+import com.graphhopper.util.ImportReport;
 import com.graphhopper.util.PointList;
 import com.graphhopper.util.StopWatch;
 import com.graphhopper.util.shapes.GHPoint;
@@ -92,6 +99,7 @@ public class OSMReader implements DataReader
     private EncodingManager encodingManager = null;
     private int workerThreads = -1;
     protected long zeroCounter = 0;
+    private ImportReport importReport = new ImportReport();
     // Using the correct Map<Long, Integer> is hard. We need a memory efficient and fast solution for big data sets!
     //
     // very slow: new SparseLongLongArray
@@ -120,6 +128,13 @@ public class OSMReader implements DataReader
     private ElevationProvider eleProvider = ElevationProvider.NOOP;
     private boolean exitOnlyPillarNodeException = true;
     private File osmFile;
+    // the ways are processed in batches if more than one worker thread is used
+    private static final int WAY_BATCH_SIZE = 10000;
+    // the elevations of this many nodes are fetched at once
+    private static final int NODE_BATCH_SIZE = 10000;
+    private ExecutorService wayExecutor;
+    private List<PendingEdge> pendingEdges;
+    private OSMWayIndex wayIndex;
 
     public OSMReader( GraphStorage storage )
     {
@@ -145,11 +160,18 @@ public class OSMReader implements DataReader
             throw new IllegalStateException("Your specified OSM file does not exist:" + osmFile.getAbsolutePath());
 
         StopWatch sw1 = new StopWatch().start();
+        ImportReport.Stage stage = importReport.start("preprocess");
         preProcess(osmFile);
+        stage.put("nodes", getNodeMap().getSize()).put("way_relation_flags", getRelFlagsMap().size()).
+                put("restriction_ways", getOsmWayIdSet().size()).stop(graphStorage.getDirectory());
         sw1.stop();
 
         StopWatch sw2 = new StopWatch().start();
+        stage = importReport.start("write_graph");
         writeOsm2Graph(osmFile);
+        stage.put("nodes", graphStorage.getNodes()).put("edges", graphStorage.getAllEdges().getCount()).
+                put("locations", locations).put("skipped_locations", skippedLocations).
+                put("zero_distance_edges", zeroCounter).stop(graphStorage.getDirectory());
         sw2.stop();
 
         logger.info("time(pass1): " + (int) sw1.getSeconds() + " pass2: " + (int) sw2.getSeconds() + " total:"
@@ -165,7 +187,10 @@ public class OSMReader implements DataReader
         OSMInputFile in = null;
         try
         {
-            in = new OSMInputFile(osmFile).setWorkerThreads(workerThreads).open();
+            // nodes are not necessary to find the tower and pillar nodes
+            in = new OSMInputFile(osmFile).setWorkerThreads(workerThreads).
+                    setTagIds(encodingManager.getTagIds()).
+                    setElementTypes(OSMElement.WAY, OSMElement.RELATION).open();
 
             long tmpWayCounter = 1;
             long tmpRelationCounter = 1;
@@ -268,6 +293,8 @@ public class OSMReader implements DataReader
      */
     private void writeOsm2Graph( File osmFile )
     {
+        // e.g. OSMIDDenseMap accepts arbitrary values only after this call
+        getNodeMap().optimize();
         int tmp = (int) Math.max(getNodeMap().getSize() / 50, 100);
         logger.info("creating graph. Found nodes (pillar+tower):" + nf(getNodeMap().getSize()) + ", " + Helper.getMemInfo());
         graphStorage.create(tmp);
@@ -275,20 +302,46 @@ public class OSMReader implements DataReader
         long relationStart = -1;
         long counter = 1;
         OSMInputFile in = null;
+        List<OSMWay> wayBatch = new ArrayList<OSMWay>(WAY_BATCH_SIZE);
+        List<OSMNode> nodeBatch = new ArrayList<OSMNode>(NODE_BATCH_SIZE);
+        boolean batchNodes = eleProvider != ElevationProvider.NOOP;
+        if (workerThreads > 1)
+            wayExecutor = Executors.newFixedThreadPool(workerThreads);
         try
         {
-            in = new OSMInputFile(osmFile).setWorkerThreads(workerThreads).open();
+            in = new OSMInputFile(osmFile).setWorkerThreads(workerThreads).
+                    setTagIds(encodingManager.getTagIds());
+            // relations were already analyzed in preProcess except for turn restrictions
+            if (graphStorage.getExtension() instanceof TurnCostExtension)
+                in.setElementTypes(OSMElement.NODE, OSMElement.WAY, OSMElement.RELATION);
+            else
+                in.setElementTypes(OSMElement.NODE, OSMElement.WAY);
+
+            in.open();
             LongIntMap nodeFilter = getNodeMap();
 
             OSMElement item;
             while ((item = in.getNext()) != null)
             {
+                if (!item.isType(OSMElement.WAY))
+                    processWays(wayBatch);
+                if (!item.isType(OSMElement.NODE))
+                    processNodes(nodeBatch);
+
                 switch (item.getType())
                 {
                     case OSMElement.NODE:
                         if (nodeFilter.get(item.getId()) != -1)
                         {
-                            processNode((OSMNode) item);
+                            if (batchNodes)
+                            {
+                                nodeBatch.add((OSMNode) item);
+                                if (nodeBatch.size() >= NODE_BATCH_SIZE)
+                                    processNodes(nodeBatch);
+                            } else
+                            {
+                                processNode((OSMNode) item);
+                            }
                         }
                         break;
 
@@ -298,7 +351,15 @@ public class OSMReader implements DataReader
                             logger.info(nf(counter) + ", now parsing ways");
                             wayStart = counter;
                         }
-                        processWay((OSMWay) item);
+                        if (wayExecutor == null)
+                        {
+                            processWay((OSMWay) item);
+                        } else
+                        {
+                            wayBatch.add((OSMWay) item);
+                            if (wayBatch.size() >= WAY_BATCH_SIZE)
+                                processWays(wayBatch);
+                        }
                         break;
                     case OSMElement.RELATION:
                         if (relationStart < 0)
@@ -314,6 +375,8 @@ public class OSMReader implements DataReader
                     logger.info(nf(counter) + ", locs:" + nf(locations) + " (" + skippedLocations + ") " + Helper.getMemInfo());
                 }
             }
+            processNodes(nodeBatch);
+            processWays(wayBatch);
 
             // logger.info("storage nodes:" + storage.nodes() + " vs. graph nodes:" + storage.getGraph().nodes());
         } catch (Exception ex)
@@ -322,6 +385,11 @@ public class OSMReader implements DataReader
         } finally
         {
             Helper.close(in);
+            if (wayExecutor != null)
+            {
+                wayExecutor.shutdown();
+                wayExecutor = null;
+            }
         }
 
         finishedReading();
@@ -334,18 +402,35 @@ public class OSMReader implements DataReader
      */
     void processWay( OSMWay way )
     {
-        if (way.getNodes().size() < 2)
+        long wayFlags = calcWayFlags(way);
+        if (wayFlags == 0)
             return;
 
+        for (EdgeIteratorState edge : addWay(way, wayFlags))
+        {
+            encodingManager.applyWayTags(way, edge);
+        }
+    }
+
+    /**
+     * Evaluates the tags of the specified way. Modifies only the way itself and reads the node map
+     * and the relation flags, so it can be called from several worker threads as long as no other
+     * thread writes to the graph.
+     * <p/>
+     * @return the flags of the way or 0 if it should be skipped
+     */
+    long calcWayFlags( OSMWay way )
+    {
+        if (way.getNodes().size() < 2)
+            return 0;
+
         // ignore multipolygon geometry
         if (!way.hasTags())
-            return;
-
-        long wayOsmId = way.getId();
+            return 0;
 
         long includeWay = encodingManager.acceptWay(way);
         if (includeWay == 0)
-            return;
+            return 0;
 
         long relationFlags = getRelFlagsMap().get(way.getId());
 
@@ -366,10 +451,18 @@ public class OSMReader implements DataReader
             }
         }
 
-        long wayFlags = encodingManager.handleWayTags(way, includeWay, relationFlags);
-        if (wayFlags == 0)
-            return;
+        return encodingManager.handleWayTags(way, includeWay, relationFlags);
+    }
 
+    /**
+     * Creates the edges of the way and splits it at barriers.
+     */
+    List<EdgeIteratorState> addWay( OSMWay way, long wayFlags )
+    {
+        long wayOsmId = way.getId();
+        TLongList osmNodeIds = way.getNodes();
+        // the node ids are modified for barriers
+        long nodesHash = wayIndex == null ? 0 : OSMWayIndex.hashNodes(osmNodeIds);
         List<EdgeIteratorState> createdEdges = new ArrayList<EdgeIteratorState>();
         // look for barriers along the way
         final int size = osmNodeIds.size();
@@ -431,12 +524,132 @@ public class OSMReader implements DataReader
             createdEdges.addAll(addOSMWay(way.getNodes(), wayFlags, wayOsmId));
         }
 
-        for (EdgeIteratorState edge : createdEdges)
+        if (wayIndex != null)
         {
-            encodingManager.applyWayTags(way, edge);
+            for (EdgeIteratorState edge : createdEdges)
+            {
+                if (wayIndex.getWayId(edge.getEdge()) != 0)
+                    wayIndex.setNodesHash(edge.getEdge(), nodesHash);
+            }
+        }
+        return createdEdges;
+    }
+
+    /**
+     * Processes the collected ways in three steps. First the flags of the ways are calculated in
+     * parallel, then this thread creates the edges in the order of the file and at last the
+     * distances and the simplified geometries are calculated in parallel and stored again from this
+     * thread. So the resulting graph is identical to the one of processWay.
+     */
+    void processWays( final List<OSMWay> ways )
+    {
+        if (ways.isEmpty())
+            return;
+
+        final long[] wayFlags = new long[ways.size()];
+        runParallel(ways.size(), new IndexTask()
+        {
+            @Override
+            void run( int index )
+            {
+                wayFlags[index] = calcWayFlags(ways.get(index));
+            }
+        });
+
+        pendingEdges = new ArrayList<PendingEdge>(ways.size() * 2);
+        List<List<EdgeIteratorState>> createdEdges = new ArrayList<List<EdgeIteratorState>>(ways.size());
+        try
+        {
+            for (int i = 0; i < ways.size(); i++)
+            {
+                if (wayFlags[i] == 0)
+                    createdEdges.add(null);
+                else
+                    createdEdges.add(addWay(ways.get(i), wayFlags[i]));
+            }
+
+            final List<PendingEdge> edges = pendingEdges;
+            runParallel(edges.size(), new IndexTask()
+            {
+                @Override
+                void run( int index )
+                {
+                    edges.get(index).calc();
+                }
+            });
+            for (PendingEdge edge : edges)
+            {
+                edge.store();
+            }
+        } finally
+        {
+            pendingEdges = null;
+        }
+
+        for (int i = 0; i < ways.size(); i++)
+        {
+            List<EdgeIteratorState> list = createdEdges.get(i);
+            if (list == null)
+                continue;
+
+            for (EdgeIteratorState edge : list)
+            {
+                encodingManager.applyWayTags(ways.get(i), edge);
+            }
+        }
+        ways.clear();
+    }
+
+    /**
+     * Splits the indices from 0 to size-1 into one chunk per worker thread and waits until all
+     * chunks are processed.
+     */
+    private void runParallel( int size, final IndexTask task )
+    {
+        int chunk = (size + workerThreads - 1) / workerThreads;
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(workerThreads);
+        for (int start = 0; start < size; start += chunk)
+        {
+            final int from = start;
+            final int to = Math.min(size, start + chunk);
+            tasks.add(new Callable<Object>()
+            {
+                @Override
+                public Object call()
+                {
+                    for (int i = from; i < to; i++)
+                    {
+                        task.run(i);
+                    }
+                    return null;
+                }
+            });
+        }
+
+        try
+        {
+            for (Future<Object> future : wayExecutor.invokeAll(tasks))
+            {
+                future.get();
+            }
+        } catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        } catch (ExecutionException ex)
+        {
+            if (ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException) ex.getCause();
+
+            throw new RuntimeException(ex.getCause());
         }
     }
 
+    private static abstract class IndexTask
+    {
+        abstract void run( int index );
+    }
+
     public void processRelation( OSMRelation relation ) throws XMLStreamException
     {
         if (relation.hasTag("type", "restriction"))
@@ -515,28 +728,78 @@ public class OSMReader implements DataReader
             return Double.NaN;
     }
 
-    private void processNode( OSMNode node )
+    /**
+     * Fetches the elevations of all nodes at once from the ElevationProvider, grouped by tile, and
+     * then processes the nodes in the order of the file. So getElevation is not called for them.
+     * Nodes outside of the bounds are skipped, so they do not load tiles into the cache.
+     */
+    void processNodes( List<OSMNode> nodes )
     {
-        if (isInBounds(node))
+        int size = nodes.size();
+        if (size == 0)
+            return;
+
+        double[] lats = new double[size];
+        double[] lons = new double[size];
+        double[] eles = new double[size];
+        int count = 0;
+        for (int i = 0; i < size; i++)
         {
-            addNode(node);
+            OSMNode node = nodes.get(i);
+            if (!isInBounds(node))
+                continue;
 
-            // analyze node tags for barriers
-            if (node.hasTags())
+            lats[count] = node.getLat();
+            lons[count] = node.getLon();
+            count++;
+        }
+        eleProvider.getEle(lats, lons, eles, count);
+        count = 0;
+        for (int i = 0; i < size; i++)
+        {
+            OSMNode node = nodes.get(i);
+            if (isInBounds(node))
             {
-                long nodeFlags = encodingManager.handleNodeTags(node);
-                if (nodeFlags != 0)
-                    getNodeFlagsMap().put(node.getId(), nodeFlags);
-            }
+                processNode(node, eles[count]);
+                count++;
+            } else
+                skippedLocations++;
+        }
+        nodes.clear();
+    }
 
-            locations++;
-        } else
-        {
+    private void processNode( OSMNode node )
+    {
+        if (isInBounds(node))
+            processNode(node, getElevation(node));
+        else
             skippedLocations++;
+    }
+
+    private void processNode( OSMNode node, double ele )
+    {
+        addNode(node, ele);
+
+        // analyze node tags for barriers
+        if (node.hasTags())
+        {
+            long nodeFlags = encodingManager.handleNodeTags(node);
+            if (nodeFlags != 0)
+                getNodeFlagsMap().put(node.getId(), nodeFlags);
         }
+
+        locations++;
     }
 
     boolean addNode( OSMNode node )
+    {
+        if (getNodeMap().get(node.getId()) == EMPTY)
+            return false;
+
+        return addNode(node, getElevation(node));
+    }
+
+    private boolean addNode( OSMNode node, double ele )
     {
         int nodeType = getNodeMap().get(node.getId());
         if (nodeType == EMPTY)
@@ -544,7 +807,6 @@ public class OSMReader implements DataReader
 
         double lat = node.getLat();
         double lon = node.getLon();
-        double ele = getElevation(node);
         if (nodeType == TOWER_NODE)
         {
             addTowerNode(node.getId(), lat, lon, ele);
@@ -621,10 +883,13 @@ public class OSMReader implements DataReader
     Collection<EdgeIteratorState> addOSMWay( TLongList osmNodeIds, long flags, long wayOsmId )
     {
         PointList pointList = new PointList(osmNodeIds.size(), nodeAccess.is3D());
+        // the OSM ids of the points in pointList for the OSM way index
+        TLongList pointOsmIds = new TLongArrayList(osmNodeIds.size());
         List<EdgeIteratorState> newEdges = new ArrayList<EdgeIteratorState>(5);
         int firstNode = -1;
         int lastIndex = osmNodeIds.size() - 1;
         int lastInBoundsPillarNode = -1;
+        long lastInBoundsPillarOsmId = 0;
         try
         {
             for (int i = 0; i < osmNodeIds.size(); i++)
@@ -652,9 +917,11 @@ public class OSMReader implements DataReader
                         if (pointList.getSize() > 1 && firstNode >= 0)
                         {
                             // TOWER node
-                            newEdges.add(addEdge(firstNode, tmpNode, pointList, flags, wayOsmId));
+                            newEdges.add(addEdge(firstNode, tmpNode, pointList, pointOsmIds, flags, wayOsmId));
                             pointList.clear();
                             pointList.add(nodeAccess, tmpNode);
+                            pointOsmIds.clear();
+                            pointOsmIds.add(lastInBoundsPillarOsmId);
                         }
                         firstNode = tmpNode;
                         lastInBoundsPillarNode = -1;
@@ -671,10 +938,13 @@ public class OSMReader implements DataReader
                     if (!convertToTowerNode)
                     {
                         lastInBoundsPillarNode = tmpNode;
+                        lastInBoundsPillarOsmId = osmId;
                     }
 
                     // PILLAR node, but convert to towerNode if end-standing
                     tmpNode = handlePillarNode(tmpNode, osmId, pointList, convertToTowerNode);
+                    if (!convertToTowerNode)
+                        pointOsmIds.add(osmId);
                 }
 
                 if (tmpNode < TOWER_NODE)
@@ -682,11 +952,14 @@ public class OSMReader implements DataReader
                     // TOWER node
                     tmpNode = -tmpNode - 3;
                     pointList.add(nodeAccess, tmpNode);
+                    pointOsmIds.add(osmId);
                     if (firstNode >= 0)
                     {
-                        newEdges.add(addEdge(firstNode, tmpNode, pointList, flags, wayOsmId));
+                        newEdges.add(addEdge(firstNode, tmpNode, pointList, pointOsmIds, flags, wayOsmId));
                         pointList.clear();
                         pointList.add(nodeAccess, tmpNode);
+                        pointOsmIds.clear();
+                        pointOsmIds.add(osmId);
                     }
                     firstNode = tmpNode;
                 }
@@ -700,7 +973,11 @@ public class OSMReader implements DataReader
         return newEdges;
     }
 
-    EdgeIteratorState addEdge( int fromIndex, int toIndex, PointList pointList, long flags, long wayOsmId )
+    /**
+     * @param pointOsmIds the OSM node ids of the points or 0 if unknown
+     */
+    EdgeIteratorState addEdge( int fromIndex, int toIndex, PointList pointList, TLongList pointOsmIds, long flags,
+            long wayOsmId )
     {
         // sanity checks
         if (fromIndex < 0 || toIndex < 0)
@@ -708,53 +985,111 @@ public class OSMReader implements DataReader
         if (pointList.getDimension() != nodeAccess.getDimension())
             throw new AssertionError("Dimension does not match for pointList vs. nodeAccess " + pointList.getDimension() + " <-> " + nodeAccess.getDimension());
 
-        double towerNodeDistance = 0;
-        double prevLat = pointList.getLatitude(0);
-        double prevLon = pointList.getLongitude(0);
-        double prevEle = pointList.is3D() ? pointList.getElevation(0) : Double.NaN;
-        double lat, lon, ele = Double.NaN;
-        PointList pillarNodes = new PointList(pointList.getSize() - 2, nodeAccess.is3D());
-        int nodes = pointList.getSize();
-        for (int i = 1; i < nodes; i++)
-        {
-            // we could save some lines if we would use pointList.calcDistance(distCalc);
-            lat = pointList.getLatitude(i);
-            lon = pointList.getLongitude(i);
-            if (pointList.is3D())
-            {
-                ele = pointList.getElevation(i);
-                towerNodeDistance += distCalc3D.calcDist(prevLat, prevLon, prevEle, lat, lon, ele);
-                prevEle = ele;
-            } else
-                towerNodeDistance += distCalc.calcDist(prevLat, prevLon, lat, lon);
-            prevLat = lat;
-            prevLon = lon;
-            if (nodes > 2 && i < nodes - 1)
+        EdgeIteratorState iter = graphStorage.edge(fromIndex, toIndex).setFlags(flags);
+        storeOsmWayID(iter.getEdge(), wayOsmId);
+        if (wayIndex != null)
+        {
+            wayIndex.setWay(iter.getEdge(), wayOsmId, getRelFlagsMap().get(wayOsmId));
+            for (int i = 0; i < pointOsmIds.size(); i++)
             {
-                if (pillarNodes.is3D())
-                    pillarNodes.add(lat, lon, ele);
-                else
-                    pillarNodes.add(lat, lon);
+                // the negative ids of barrier copies are unknown to change files
+                long osmId = pointOsmIds.get(i);
+                if (osmId > 0)
+                    wayIndex.addNode(osmId, pointList.getLatitude(i), pointList.getLongitude(i),
+                            pointList.getElevation(i), iter.getEdge());
             }
         }
-        if (towerNodeDistance == 0)
+
+        if (pendingEdges != null)
+        {
+            // the point list is reused by addOSMWay
+            pendingEdges.add(new PendingEdge(iter, pointList.copy(0, pointList.getSize())));
+        } else
         {
-            // As investigation shows often two paths should have crossed via one identical point 
-            // but end up in two very release points.
-            zeroCounter++;
-            towerNodeDistance = 0.0001;
+            PendingEdge edge = new PendingEdge(iter, pointList);
+            edge.calc();
+            edge.store();
         }
+        return iter;
+    }
 
-        EdgeIteratorState iter = graphStorage.edge(fromIndex, toIndex).setDistance(towerNodeDistance).setFlags(flags);
-        if (nodes > 2)
+    /**
+     * An edge which is already created in the graph but still misses its distance and geometry.
+     * Those are calculated via calc() which can be called from a worker thread.
+     */
+    private class PendingEdge
+    {
+        private final EdgeIteratorState edge;
+        private final PointList pointList;
+        private PointList pillarNodes;
+        private double distance;
+
+        public PendingEdge( EdgeIteratorState edge, PointList pointList )
         {
-            if (doSimplify)
-                simplifyAlgo.simplify(pillarNodes);
+            this.edge = edge;
+            this.pointList = pointList;
+        }
 
-            iter.setWayGeometry(pillarNodes);
+        void calc()
+        {
+            double towerNodeDistance = 0;
+            double prevLat = pointList.getLatitude(0);
+            double prevLon = pointList.getLongitude(0);
+            double prevEle = pointList.is3D() ? pointList.getElevation(0) : Double.NaN;
+            double lat, lon, ele = Double.NaN;
+            PointList pillars = new PointList(pointList.getSize() - 2, nodeAccess.is3D());
+            int nodes = pointList.getSize();
+            for (int i = 1; i < nodes; i++)
+            {
+                // we could save some lines if we would use pointList.calcDistance(distCalc);
+                lat = pointList.getLatitude(i);
+                lon = pointList.getLongitude(i);
+                if (pointList.is3D())
+                {
+                    ele = pointList.getElevation(i);
+                    towerNodeDistance += distCalc3D.calcDist(prevLat, prevLon, prevEle, lat, lon, ele);
+                    prevEle = ele;
+                } else
+                    towerNodeDistance += distCalc.calcDist(prevLat, prevLon, lat, lon);
+                prevLat = lat;
+                prevLon = lon;
+                if (nodes > 2 && i < nodes - 1)
+                {
+                    if (pillars.is3D())
+                        pillars.add(lat, lon, ele);
+                    else
+                        pillars.add(lat, lon);
+                }
+            }
+
+            if (nodes > 2)
+            {
+                if (doSimplify)
+                    simplifyAlgo.simplify(pillars);
+
+                pillarNodes = pillars;
+            }
+            distance = towerNodeDistance;
+        }
+
+        void store()
+        {
+            if (distance == 0)
+            {
+                // As investigation shows often two paths should have crossed via one identical point 
+                // but end up in two very release points.
+                zeroCounter++;
+                distance = 0.0001;
+            }
+
+            edge.setDistance(distance);
+            if (pillarNodes != null)
+                edge.setWayGeometry(pillarNodes);
+
+            // the direction has to be determined from the stored and so possibly simplified geometry
+            if (wayIndex != null)
+                wayIndex.setAscending(edge.getEdge(), OSMWayIndex.isAscending(edge));
         }
-        storeOsmWayID(iter.getEdge(), wayOsmId);
-        return iter;
     }
 
     /**
@@ -800,8 +1135,14 @@ public class OSMReader implements DataReader
     protected void finishedReading()
     {
         printInfo("way");
+        if (wayIndex != null)
+            wayIndex.sortNodes();
+
         pillarInfo.clear();
         eleProvider.release();
+        if (osmNodeIdToInternalNodeMap instanceof OSMIDDenseMap)
+            ((OSMIDDenseMap) osmNodeIdToInternalNodeMap).remove();
+
         osmNodeIdToInternalNodeMap = null;
         osmNodeIdToNodeFlagsMap = null;
         osmWayIdToRouteWeightMap = null;
@@ -848,7 +1189,16 @@ public class OSMReader implements DataReader
         barrierNodeIds.clear();
         barrierNodeIds.add(fromId);
         barrierNodeIds.add(toId);
-        return addOSMWay(barrierNodeIds, flags, wayOsmId);
+        Collection<EdgeIteratorState> edges = addOSMWay(barrierNodeIds, flags, wayOsmId);
+        if (wayIndex != null)
+        {
+            // the barrier flags are unknown later, so barrier edges are never updated
+            for (EdgeIteratorState edge : edges)
+            {
+                wayIndex.setWay(edge.getEdge(), 0, 0);
+            }
+        }
+        return edges;
     }
 
     /**
@@ -931,12 +1281,52 @@ public class OSMReader implements DataReader
         return this;
     }
 
+    /**
+     * Sets the number of threads used to decode PBF files. If more than one thread is used the
+     * tags and the geometry of the ways are processed in parallel too.
+     */
     public OSMReader setWorkerThreads( int numOfWorkers )
     {
         this.workerThreads = numOfWorkers;
         return this;
     }
 
+    /**
+     * Replaces the default map of the OSM node ids, which is on the heap, with an OSMIDDenseMap
+     * stored in DataAccess objects of the specified type. With MMAP a planet import needs roughly
+     * 2.5 bits per OSM node id plus 4 bytes per used node outside of the heap. Call this before
+     * readGraph.
+     */
+    public OSMReader setDenseNodeMap( DAType type )
+    {
+        osmNodeIdToInternalNodeMap = new OSMIDDenseMap(graphStorage.getDirectory(), type, PILLAR_NODE, TOWER_NODE);
+        return this;
+    }
+
+    /**
+     * Stores the OSM way of every edge into the specified index which is necessary to apply OSM
+     * change files later, see OSMChangeReader.
+     */
+    public OSMReader setWayIndex( OSMWayIndex wayIndex )
+    {
+        this.wayIndex = wayIndex;
+        return this;
+    }
+
+    /**
+     * Records the preprocess and write_graph stages into the specified report.
+     */
+    public OSMReader setImportReport( ImportReport importReport )
+    {
+        this.importReport = importReport;
+        return this;
+    }
+
+    public ImportReport getImportReport()
+    {
+        return importReport;
+    }
+
     public OSMReader setElevationProvider( ElevationProvider eleProvider )
     {
         if (eleProvider == null)
@@ -0,0 +1,97 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns int ids to the tag keys and values the flag encoders are interested in. The tags of an
+ * OSMElement carry these ids so that the encoders can compare ints instead of strings. The pbf
+ * decoder looks up the ids once per string of a block's string table and not per tag. Strings
+ * which are not registered have no id, i.e. -1, so the vocabulary stays small even though names
+ * and other free text values are never registered. Every EncodingManager owns one instance which
+ * is passed to the readers, ids of different instances must not be mixed. Thread safe.
+ * <p/>
+ * @author Peter Karich
+ */
+public final class OSMTagIds
+{
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+    private volatile int count;
+
+    /**
+     * @return the id of the specified string, a new one if it was not yet registered
+     */
+    public synchronized int register( String str )
+    {
+        Integer id = ids.get(str);
+        if (id == null)
+        {
+            id = count;
+            ids.put(str, id);
+            count++;
+        }
+        return id;
+    }
+
+    /**
+     * @return the ids of the specified strings in the same order
+     */
+    public int[] register( List<String> strs )
+    {
+        int[] res = new int[strs.size()];
+        for (int i = 0; i < res.length; i++)
+        {
+            res[i] = register(strs.get(i));
+        }
+        return res;
+    }
+
+    /**
+     * @return a set of the ids of the specified strings for OSMElement.hasTagId
+     */
+    public BitSet registerSet( Collection<String> strs )
+    {
+        BitSet set = new BitSet();
+        for (String str : strs)
+        {
+            set.set(register(str));
+        }
+        return set;
+    }
+
+    /**
+     * @return the number of registered strings, changes whenever a new string is registered
+     */
+    public int getCount()
+    {
+        return count;
+    }
+
+    /**
+     * @return the id of the specified string or -1 if it is not registered
+     */
+    public int getId( String str )
+    {
+        Integer id = ids.get(str);
+        return id == null ? -1 : id;
+    }
+}
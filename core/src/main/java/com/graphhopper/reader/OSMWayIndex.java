@@ -0,0 +1,463 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader;
+
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.storage.Storable;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PointList;
+import gnu.trove.list.TLongList;
+import gnu.trove.map.TLongLongMap;
+import gnu.trove.map.hash.TLongLongHashMap;
+
+/**
+ * Stores for every edge the id of the OSM way it was created from, the direction of the way, the
+ * relation flags and a hash of the node ids of the way. Additionally it stores for every OSM node
+ * of the imported ways its coordinates and one edge which contained the node when it was added.
+ * This makes it possible to update the graph later from an OSM change file without a new import,
+ * see OSMChangeReader.
+ * <p/>
+ * The direction can not be stored relative to the base node as the node ids and so the orientation
+ * of an edge can change e.g. in GraphStorage.optimize. Instead it is stored relative to the
+ * coordinates, see isAscending.
+ * <p/>
+ * @author Peter Karich
+ */
+public class OSMWayIndex implements Storable<OSMWayIndex>
+{
+    private static final int VERSION = 2;
+    // edge entry layout: way id * 4 + dead bit * 2 + ascending bit, relation flags, hash of the
+    // node ids of the way, all as long
+    private static final int E_WAY = 0, E_RELATION_FLAGS = 8, E_NODES_HASH = 16, ENTRY_BYTES = 24;
+    // node entry layout: OSM node id as long, latitude, longitude, elevation and edge as int
+    private static final int N_OSM_ID = 0, N_LAT = 8, N_LON = 12, N_ELE = 16, N_EDGE = 20, NODE_ENTRY_BYTES = 24;
+    private final DataAccess da;
+    private final DataAccess nodes;
+    private long nodeCount;
+    // the entries after sortedNodes are not yet sorted and are found via this map
+    private long sortedNodes;
+    private final TLongLongMap unsortedNodes = new TLongLongHashMap(100, 0.5f, Long.MIN_VALUE, -1);
+
+    public OSMWayIndex( Directory dir )
+    {
+        da = dir.find("osm_way_index");
+        nodes = dir.find("osm_node_index");
+    }
+
+    /**
+     * Stores the way of a new edge. The direction and the hash of the node ids have to be set
+     * separately.
+     */
+    public void setWay( int edgeId, long wayId, long relationFlags )
+    {
+        long pointer = (long) edgeId * ENTRY_BYTES;
+        da.ensureCapacity(pointer + ENTRY_BYTES);
+        setLong(da, pointer + E_WAY, wayId * 4);
+        setLong(da, pointer + E_RELATION_FLAGS, relationFlags);
+        setLong(da, pointer + E_NODES_HASH, 0);
+    }
+
+    /**
+     * @return the OSM way id of the specified edge or 0 if not known e.g. for barrier edges
+     */
+    public long getWayId( int edgeId )
+    {
+        long pointer = (long) edgeId * ENTRY_BYTES;
+        if (pointer + ENTRY_BYTES > da.getCapacity())
+            return 0;
+
+        return getLong(da, pointer + E_WAY) >> 2;
+    }
+
+    /**
+     * @param ascending true if the way goes from the smaller to the bigger coordinate of the edge,
+     * see isAscending
+     */
+    public void setAscending( int edgeId, boolean ascending )
+    {
+        long pointer = (long) edgeId * ENTRY_BYTES + E_WAY;
+        setLong(da, pointer, (getLong(da, pointer) & ~1L) | (ascending ? 1 : 0));
+    }
+
+    public boolean isAscending( int edgeId )
+    {
+        return (getLong(da, (long) edgeId * ENTRY_BYTES + E_WAY) & 1) != 0;
+    }
+
+    /**
+     * Marks the edge as replaced, e.g. because the node list of its way changed. A dead edge keeps
+     * its way id but is no longer accessible and never updated again.
+     */
+    public void setDead( int edgeId )
+    {
+        long pointer = (long) edgeId * ENTRY_BYTES + E_WAY;
+        setLong(da, pointer, getLong(da, pointer) | 2);
+    }
+
+    public boolean isDead( int edgeId )
+    {
+        return (getLong(da, (long) edgeId * ENTRY_BYTES + E_WAY) & 2) != 0;
+    }
+
+    public long getRelationFlags( int edgeId )
+    {
+        return getLong(da, (long) edgeId * ENTRY_BYTES + E_RELATION_FLAGS);
+    }
+
+    public void setNodesHash( int edgeId, long hash )
+    {
+        setLong(da, (long) edgeId * ENTRY_BYTES + E_NODES_HASH, hash);
+    }
+
+    /**
+     * @return the hash of the node ids of the way the edge was created from, see hashNodes
+     */
+    public long getNodesHash( int edgeId )
+    {
+        return getLong(da, (long) edgeId * ENTRY_BYTES + E_NODES_HASH);
+    }
+
+    /**
+     * @return a hash of the node ids in the specified order to detect changed node lists of a way
+     */
+    public static long hashNodes( TLongList osmNodeIds )
+    {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < osmNodeIds.size(); i++)
+        {
+            hash = (hash ^ osmNodeIds.get(i)) * 0x100000001b3L;
+            hash ^= hash >>> 29;
+        }
+        return hash;
+    }
+
+    /**
+     * Stores the coordinates of the specified OSM node and an edge which contains it as tower or
+     * pillar node. A later call for the same node replaces the entry.
+     */
+    public void setNode( long osmNodeId, double lat, double lon, double ele, int edgeId )
+    {
+        long entry = findNode(osmNodeId);
+        if (entry < 0)
+        {
+            entry = nodeCount;
+            nodeCount++;
+            nodes.ensureCapacity(nodeCount * NODE_ENTRY_BYTES);
+            setLong(nodes, entry * NODE_ENTRY_BYTES + N_OSM_ID, osmNodeId);
+            unsortedNodes.put(osmNodeId, entry);
+        }
+
+        long pointer = entry * NODE_ENTRY_BYTES;
+        nodes.setInt(pointer + N_LAT, Helper.degreeToInt(lat));
+        nodes.setInt(pointer + N_LON, Helper.degreeToInt(lon));
+        nodes.setInt(pointer + N_ELE, Double.isNaN(ele) ? 0 : Helper.eleToInt(ele));
+        nodes.setInt(pointer + N_EDGE, edgeId);
+    }
+
+    /**
+     * Appends the node without looking for an existing entry which is faster while importing. The
+     * duplicates are removed in sortNodes, where an arbitrary one is kept. So this method must only
+     * be used if the entries of the same node differ at most in the edge.
+     */
+    public void addNode( long osmNodeId, double lat, double lon, double ele, int edgeId )
+    {
+        long pointer = nodeCount * NODE_ENTRY_BYTES;
+        nodeCount++;
+        nodes.ensureCapacity(pointer + NODE_ENTRY_BYTES);
+        setLong(nodes, pointer + N_OSM_ID, osmNodeId);
+        nodes.setInt(pointer + N_LAT, Helper.degreeToInt(lat));
+        nodes.setInt(pointer + N_LON, Helper.degreeToInt(lon));
+        nodes.setInt(pointer + N_ELE, Double.isNaN(ele) ? 0 : Helper.eleToInt(ele));
+        nodes.setInt(pointer + N_EDGE, edgeId);
+    }
+
+    /**
+     * @return the entry of the specified OSM node for the getNode* methods or -1 if not found
+     */
+    public long findNode( long osmNodeId )
+    {
+        long unsorted = unsortedNodes.get(osmNodeId);
+        if (unsorted >= 0)
+            return unsorted;
+
+        long low = 0, high = sortedNodes - 1;
+        while (low <= high)
+        {
+            long mid = (low + high) >>> 1;
+            long midId = getLong(nodes, mid * NODE_ENTRY_BYTES + N_OSM_ID);
+            if (midId < osmNodeId)
+                low = mid + 1;
+            else if (midId > osmNodeId)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    public double getNodeLatitude( long entry )
+    {
+        return Helper.intToDegree(nodes.getInt(entry * NODE_ENTRY_BYTES + N_LAT));
+    }
+
+    public double getNodeLongitude( long entry )
+    {
+        return Helper.intToDegree(nodes.getInt(entry * NODE_ENTRY_BYTES + N_LON));
+    }
+
+    public double getNodeElevation( long entry )
+    {
+        return Helper.intToEle(nodes.getInt(entry * NODE_ENTRY_BYTES + N_ELE));
+    }
+
+    /**
+     * @return an edge which contained the node when the entry was stored. The edge can be dead or
+     * removed since then.
+     */
+    public int getNodeEdge( long entry )
+    {
+        return nodes.getInt(entry * NODE_ENTRY_BYTES + N_EDGE);
+    }
+
+    /**
+     * @return the number of stored OSM nodes including duplicates which are not yet removed via
+     * sortNodes
+     */
+    public long getNodeCount()
+    {
+        return nodeCount;
+    }
+
+    /**
+     * Sorts the node entries by their OSM id in place to make them searchable via findNode and
+     * removes duplicates.
+     */
+    public void sortNodes()
+    {
+        if (sortedNodes == nodeCount && unsortedNodes.isEmpty())
+            return;
+
+        // an iterative quicksort as the entries can be more than the heap could hold
+        long[] stack = new long[128];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = nodeCount - 1;
+        while (top > 0)
+        {
+            long high = stack[--top];
+            long low = stack[--top];
+            while (high - low > 16)
+            {
+                long mid = (low + high) >>> 1;
+                // median of three as pivot, moved to high
+                if (compareNodes(mid, low) < 0)
+                    swapNodes(mid, low);
+                if (compareNodes(high, low) < 0)
+                    swapNodes(high, low);
+                if (compareNodes(mid, high) < 0)
+                    swapNodes(mid, high);
+
+                long store = low;
+                for (long i = low; i < high; i++)
+                {
+                    if (compareNodes(i, high) < 0)
+                    {
+                        swapNodes(i, store);
+                        store++;
+                    }
+                }
+                swapNodes(store, high);
+                // continue with the smaller part to keep the stack small
+                if (store - low < high - store)
+                {
+                    stack[top++] = store + 1;
+                    stack[top++] = high;
+                    high = store - 1;
+                } else
+                {
+                    stack[top++] = low;
+                    stack[top++] = store - 1;
+                    low = store + 1;
+                }
+            }
+
+            for (long i = low + 1; i <= high; i++)
+            {
+                for (long j = i; j > low && compareNodes(j, j - 1) < 0; j--)
+                {
+                    swapNodes(j, j - 1);
+                }
+            }
+        }
+
+        // remove duplicates
+        long count = 0;
+        for (long i = 0; i < nodeCount; i++)
+        {
+            if (i + 1 < nodeCount && getNodeId(i) == getNodeId(i + 1))
+                continue;
+
+            if (count != i)
+                copyNode(i, count);
+            count++;
+        }
+        nodeCount = count;
+        sortedNodes = count;
+        unsortedNodes.clear();
+    }
+
+    private long getNodeId( long entry )
+    {
+        return getLong(nodes, entry * NODE_ENTRY_BYTES + N_OSM_ID);
+    }
+
+    private int compareNodes( long entryA, long entryB )
+    {
+        long idA = getNodeId(entryA), idB = getNodeId(entryB);
+        if (idA != idB)
+            return idA < idB ? -1 : 1;
+
+        return 0;
+    }
+
+    private void swapNodes( long entryA, long entryB )
+    {
+        if (entryA == entryB)
+            return;
+
+        long pointerA = entryA * NODE_ENTRY_BYTES, pointerB = entryB * NODE_ENTRY_BYTES;
+        for (int i = 0; i < NODE_ENTRY_BYTES; i += 4)
+        {
+            int tmp = nodes.getInt(pointerA + i);
+            nodes.setInt(pointerA + i, nodes.getInt(pointerB + i));
+            nodes.setInt(pointerB + i, tmp);
+        }
+    }
+
+    private void copyNode( long from, long to )
+    {
+        long pointerFrom = from * NODE_ENTRY_BYTES, pointerTo = to * NODE_ENTRY_BYTES;
+        for (int i = 0; i < NODE_ENTRY_BYTES; i += 4)
+        {
+            nodes.setInt(pointerTo + i, nodes.getInt(pointerFrom + i));
+        }
+    }
+
+    /**
+     * Compares the first and the last point of the edge in the direction of the specified state.
+     * If both are identical the second and the second last point are compared and so on. A loop
+     * is always ascending as its geometry is never reversed, so this method must be called with a
+     * state which is not reversed for loops, e.g. from getAllEdges or the state returned from
+     * Graph.edge.
+     * <p/>
+     * @return true if the first point is smaller than the last point, comparing the latitude first
+     */
+    public static boolean isAscending( EdgeIteratorState edge )
+    {
+        if (edge.getBaseNode() == edge.getAdjNode())
+            return true;
+
+        PointList points = edge.fetchWayGeometry(3);
+        int first = 0, last = points.getSize() - 1;
+        int res = 0;
+        while (res == 0 && first < last)
+        {
+            res = Double.compare(points.getLatitude(first), points.getLatitude(last));
+            if (res == 0)
+                res = Double.compare(points.getLongitude(first), points.getLongitude(last));
+
+            first++;
+            last--;
+        }
+        return res < 0;
+    }
+
+    private static void setLong( DataAccess da, long pointer, long value )
+    {
+        da.setInt(pointer, (int) value);
+        da.setInt(pointer + 4, (int) (value >>> 32));
+    }
+
+    private static long getLong( DataAccess da, long pointer )
+    {
+        return (da.getInt(pointer) & 0xFFFFFFFFL) | ((long) da.getInt(pointer + 4) << 32);
+    }
+
+    @Override
+    public boolean loadExisting()
+    {
+        if (!da.loadExisting())
+            return false;
+
+        if (da.getHeader(0) != VERSION)
+            throw new IllegalStateException("The OSM way index has version " + da.getHeader(0) + " but "
+                    + VERSION + " is required. Import the graph again");
+
+        if (!nodes.loadExisting())
+            throw new IllegalStateException("Cannot load OSM node index. corrupt file or directory?");
+
+        nodeCount = ((long) nodes.getHeader(0) << 32) | (nodes.getHeader(4) & 0xFFFFFFFFL);
+        sortedNodes = nodeCount;
+        return true;
+    }
+
+    @Override
+    public OSMWayIndex create( long byteCount )
+    {
+        da.create(Math.max(ENTRY_BYTES, byteCount));
+        nodes.create(Math.max(NODE_ENTRY_BYTES, byteCount));
+        nodeCount = 0;
+        sortedNodes = 0;
+        return this;
+    }
+
+    /**
+     * Sorts the node entries if necessary and flushes both indices.
+     */
+    @Override
+    public void flush()
+    {
+        sortNodes();
+        da.setHeader(0, VERSION);
+        nodes.setHeader(0, (int) (nodeCount >>> 32));
+        nodes.setHeader(4, (int) nodeCount);
+        da.flush();
+        nodes.flush();
+    }
+
+    @Override
+    public void close()
+    {
+        da.close();
+        nodes.close();
+    }
+
+    @Override
+    public boolean isClosed()
+    {
+        return da.isClosed();
+    }
+
+    @Override
+    public long getCapacity()
+    {
+        return da.getCapacity() + nodes.getCapacity();
+    }
+}
@@ -0,0 +1,455 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decompresses a bzip2 file on several threads. A bzip2 stream consists of independent blocks of
+ * up to 900KB which start with a 48 bit magic number at an arbitrary bit position. A splitter thread
+ * searches these numbers and copies every block into a separate bzip2 stream which is decompressed
+ * by the worker threads. The decompressed blocks are returned in the original order. Concatenated
+ * streams like the ones from pbzip2 are supported too.
+ * <p/>
+ * The magic number can appear by chance within the compressed data of a block. Then the wrongly
+ * split block fails the CRC check and is decompressed again together with the following part.
+ * <p/>
+ * The decompression itself is done via BZip2CompressorInputStream of commons-compress which needs
+ * to be in the classpath.
+ * <p/>
+ * @author Peter Karich
+ */
+public class ParallelBZip2InputStream extends InputStream
+{
+    private static final String DECODER_CLASS = "org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream";
+    private static final long BLOCK_MAGIC = 0x314159265359L;
+    private static final long END_OF_STREAM_MAGIC = 0x177245385090L;
+    private static final long MAGIC_MASK = (1L << 48) - 1;
+    // a block is merged with at most this number of following parts if it was split wrongly
+    private static final int MAX_PARTS = 4;
+    private final Block endOfStream = new Block(null, 0, 0);
+    private final InputStream compressed;
+    private final Constructor<InputStream> decoderConstructor;
+    private final ExecutorService executor;
+    private final BlockingQueue<Block> blockQueue;
+    private final Thread splitterThread;
+    private volatile Exception splitterException;
+    private volatile boolean closed;
+    private byte[] current;
+    private int currentPos;
+    private boolean eof;
+
+    @SuppressWarnings("unchecked")
+    public ParallelBZip2InputStream( InputStream compressed, int workerThreads )
+    {
+        try
+        {
+            decoderConstructor = (Constructor<InputStream>) Class.forName(DECODER_CLASS).getConstructor(InputStream.class);
+        } catch (Exception ex)
+        {
+            throw new IllegalArgumentException("Cannot instantiate " + DECODER_CLASS, ex);
+        }
+
+        this.compressed = compressed;
+        executor = Executors.newFixedThreadPool(workerThreads);
+        // limits the decompressed blocks in memory
+        blockQueue = new LinkedBlockingQueue<Block>(workerThreads * 2);
+        splitterThread = new Thread("BZip2 Splitter")
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    split();
+                } catch (InterruptedException ex)
+                {
+                    // stopped via close
+                } catch (Exception ex)
+                {
+                    splitterException = ex;
+                } finally
+                {
+                    executor.shutdown();
+                    putEndOfStream();
+                }
+            }
+        };
+        splitterThread.start();
+    }
+
+    private void putEndOfStream()
+    {
+        try
+        {
+            // the queue can be full and nobody takes blocks anymore after close
+            while (!closed && !blockQueue.offer(endOfStream, 100, TimeUnit.MILLISECONDS))
+            {
+            }
+        } catch (InterruptedException ex)
+        {
+            // stopped via close
+        }
+    }
+
+    /**
+     * Searches the block and end of stream markers bit by bit and submits every block.
+     */
+    void split() throws IOException, InterruptedException
+    {
+        byte[] readBuffer = new byte[64 * 1024];
+        // holds the bytes of the current block, starting at the absolute bit position bufferStart
+        byte[] buffer = new byte[1 << 20];
+        int bufferLength = 0;
+        long bufferStart = 0;
+        long blockStart = -1;
+        long bitsRead = 0;
+        long register = 0;
+        int len;
+        while ((len = compressed.read(readBuffer)) > 0)
+        {
+            if (bitsRead == 0 && (len < 3 || readBuffer[0] != 'B' || readBuffer[1] != 'Z' || readBuffer[2] != 'h'))
+                throw new IOException("Not a bzip2 stream");
+
+            for (int i = 0; i < len; i++)
+            {
+                if (bufferLength == buffer.length)
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+
+                buffer[bufferLength++] = readBuffer[i];
+                register = (register << 8) | (readBuffer[i] & 0xFF);
+                bitsRead += 8;
+                if (bitsRead < 48)
+                    continue;
+
+                // a marker can end at every bit of the current byte, the earliest end first
+                for (int shift = 7; shift >= 0; shift--)
+                {
+                    long value = (register >>> shift) & MAGIC_MASK;
+                    if (value != BLOCK_MAGIC && value != END_OF_STREAM_MAGIC)
+                        continue;
+
+                    long markerStart = bitsRead - shift - 48;
+                    if (markerStart < bufferStart || blockStart >= 0 && markerStart < blockStart + 48)
+                        continue;
+
+                    if (blockStart >= 0)
+                    {
+                        int from = (int) ((blockStart - bufferStart) >>> 3);
+                        int to = (int) ((markerStart - bufferStart + 7) >>> 3);
+                        Block block = new Block(Arrays.copyOfRange(buffer, from, to),
+                                (int) ((blockStart - bufferStart) & 7), markerStart - blockStart);
+                        block.future = executor.submit(block);
+                        blockQueue.put(block);
+                    }
+
+                    blockStart = value == BLOCK_MAGIC ? markerStart : -1;
+                    // keep only the bytes from the marker on
+                    int drop = (int) ((markerStart - bufferStart) >>> 3);
+                    System.arraycopy(buffer, drop, buffer, 0, bufferLength - drop);
+                    bufferLength -= drop;
+                    bufferStart += (long) drop * 8;
+                }
+
+                if (blockStart < 0 && bufferLength > 1024)
+                {
+                    // outside of a block only the bytes of a potential marker are necessary
+                    int drop = bufferLength - 8;
+                    System.arraycopy(buffer, drop, buffer, 0, 8);
+                    bufferLength = 8;
+                    bufferStart += (long) drop * 8;
+                }
+            }
+        }
+
+        if (blockStart >= 0)
+            throw new IOException("Unexpected end of bzip2 stream");
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        if (!ensureData())
+            return -1;
+
+        return current[currentPos++] & 0xFF;
+    }
+
+    @Override
+    public int read( byte[] bytes, int off, int len ) throws IOException
+    {
+        if (len == 0)
+            return 0;
+
+        if (!ensureData())
+            return -1;
+
+        int count = Math.min(len, current.length - currentPos);
+        System.arraycopy(current, currentPos, bytes, off, count);
+        currentPos += count;
+        return count;
+    }
+
+    private boolean ensureData() throws IOException
+    {
+        while (current == null || currentPos >= current.length)
+        {
+            if (eof)
+                return false;
+
+            Block block = takeBlock();
+            if (block == endOfStream)
+            {
+                eof = true;
+                if (splitterException != null)
+                    throw new IOException("Cannot read bzip2 stream", splitterException);
+
+                return false;
+            }
+
+            try
+            {
+                current = block.future.get();
+            } catch (ExecutionException ex)
+            {
+                current = decodeSplitBlock(block, ex);
+            } catch (InterruptedException ex)
+            {
+                throw new IOException(ex);
+            }
+            currentPos = 0;
+        }
+        return true;
+    }
+
+    private Block takeBlock() throws IOException
+    {
+        try
+        {
+            return blockQueue.take();
+        } catch (InterruptedException ex)
+        {
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * Merges the specified block, which could not be decompressed, with the following parts until
+     * the decompression succeeds.
+     */
+    private byte[] decodeSplitBlock( Block block, ExecutionException error ) throws IOException
+    {
+        List<Block> parts = new ArrayList<Block>();
+        parts.add(block);
+        while (parts.size() < MAX_PARTS)
+        {
+            Block next = takeBlock();
+            if (next == endOfStream)
+            {
+                eof = true;
+                break;
+            }
+
+            next.future.cancel(true);
+            parts.add(next);
+            try
+            {
+                return decode(parts);
+            } catch (IOException ex)
+            {
+                // the block was split more than once or is corrupt
+            }
+        }
+        throw new IOException("Cannot decompress bzip2 block", error.getCause());
+    }
+
+    /**
+     * Creates a bzip2 stream of one block from the specified parts and decompresses it.
+     */
+    byte[] decode( List<Block> parts ) throws IOException
+    {
+        Block first = parts.get(0);
+        BitWriter writer = new BitWriter(first.data.length + 16);
+        // header with the maximum block size of 900KB
+        writer.write('B', 8);
+        writer.write('Z', 8);
+        writer.write('h', 8);
+        writer.write('9', 8);
+        for (Block part : parts)
+        {
+            writer.write(part.data, part.startBit, part.bits);
+        }
+        writer.write((int) (END_OF_STREAM_MAGIC >>> 24), 24);
+        writer.write((int) END_OF_STREAM_MAGIC, 24);
+        // the combined CRC of a stream with one block is the CRC of that block
+        writer.write((int) readBits(first.data, first.startBit + 48, 32), 32);
+
+        InputStream in;
+        try
+        {
+            in = decoderConstructor.newInstance(new ByteArrayInputStream(writer.toByteArray()));
+        } catch (Exception ex)
+        {
+            throw new IOException("Cannot create decoder", ex);
+        }
+
+        try
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(1 << 20);
+            byte[] buffer = new byte[64 * 1024];
+            int len;
+            while ((len = in.read(buffer)) > 0)
+            {
+                out.write(buffer, 0, len);
+            }
+            return out.toByteArray();
+        } finally
+        {
+            in.close();
+        }
+    }
+
+    static long readBits( byte[] data, long bitPos, int count )
+    {
+        long res = 0;
+        for (int i = 0; i < count; i++, bitPos++)
+        {
+            res = (res << 1) | ((data[(int) (bitPos >>> 3)] >>> (7 - (bitPos & 7))) & 1);
+        }
+        return res;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        eof = true;
+        closed = true;
+        current = null;
+        splitterThread.interrupt();
+        executor.shutdownNow();
+        compressed.close();
+    }
+
+    /**
+     * The compressed bits of one block, starting with the block magic number.
+     */
+    private class Block implements Callable<byte[]>
+    {
+        final byte[] data;
+        final int startBit;
+        final long bits;
+        Future<byte[]> future;
+
+        Block( byte[] data, int startBit, long bits )
+        {
+            this.data = data;
+            this.startBit = startBit;
+            this.bits = bits;
+        }
+
+        @Override
+        public byte[] call() throws IOException
+        {
+            List<Block> parts = new ArrayList<Block>(1);
+            parts.add(this);
+            return decode(parts);
+        }
+    }
+
+    /**
+     * Writes single bits in big endian order like bzip2.
+     */
+    static class BitWriter
+    {
+        private byte[] bytes;
+        private int length;
+        private long buffer;
+        private int bufferBits;
+
+        BitWriter( int capacity )
+        {
+            bytes = new byte[capacity];
+        }
+
+        /**
+         * Writes the lowest count bits of the specified value, at maximum 32.
+         */
+        void write( int value, int count )
+        {
+            buffer = (buffer << count) | (value & ((1L << count) - 1));
+            bufferBits += count;
+            while (bufferBits >= 8)
+            {
+                if (length == bytes.length)
+                    bytes = Arrays.copyOf(bytes, bytes.length * 2);
+
+                bufferBits -= 8;
+                bytes[length++] = (byte) (buffer >>> bufferBits);
+            }
+        }
+
+        /**
+         * Writes the specified number of bits from data starting at the bit position start.
+         */
+        void write( byte[] data, long start, long count )
+        {
+            long pos = start;
+            long end = start + count;
+            for (; end - pos >= 8; pos += 8)
+            {
+                int index = (int) (pos >>> 3);
+                int shift = (int) (pos & 7);
+                int value = (data[index] & 0xFF) << 8;
+                if (index + 1 < data.length)
+                    value |= data[index + 1] & 0xFF;
+
+                write(value >>> (8 - shift), 8);
+            }
+            for (; pos < end; pos++)
+            {
+                write((data[(int) (pos >>> 3)] >>> (7 - (pos & 7))) & 1, 1);
+            }
+        }
+
+        /**
+         * @return the written bytes, the last byte is padded with zeros
+         */
+        byte[] toByteArray()
+        {
+            if (bufferBits > 0)
+                write(0, 8 - bufferBits);
+
+            return Arrays.copyOf(bytes, length);
+        }
+    }
+}
@@ -20,15 +20,12 @@ package com.graphhopper.reader.dem;
 
 import com.graphhopper.storage.DAType;
 import com.graphhopper.storage.DataAccess;
-import com.graphhopper.storage.Directory;
 import com.graphhopper.storage.GHDirectory;
 import com.graphhopper.util.Downloader;
 import com.graphhopper.util.Helper;
 import java.awt.image.Raster;
 import java.io.*;
 import java.net.SocketTimeoutException;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import org.apache.xmlgraphics.image.codec.tiff.TIFFDecodeParam;
@@ -57,11 +54,12 @@ public class CGIARProvider implements ElevationProvider
     private static final int WIDTH = 6000;
     private Downloader downloader = new Downloader("GraphHopper CGIARReader").setTimeout(10000);
     private final Logger logger = LoggerFactory.getLogger(getClass());
-    private final Map<String, HeightTile> cacheData = new HashMap<String, HeightTile>();
+    // 16 tiles need ~1.1GB
+    private final HeightTileCache<String> cacheData = new HeightTileCache<String>(16);
     private File cacheDir = new File("/tmp/cgiar");
     // String baseUrl = "http://srtm.csi.cgiar.org/SRT-ZIP/SRTM_V41/SRTM_Data_GeoTiff";
     private String baseUrl = "http://droppr.org/srtm/v4.1/6_5x5_TIFs";
-    private Directory dir;
+    private GHDirectory dir;
     private DAType daType = DAType.MMAP;
     final double precision = 1e7;
     private final double invPrecision = 1 / precision;
@@ -122,6 +120,13 @@ public class CGIARProvider implements ElevationProvider
         return this;
     }
 
+    @Override
+    public ElevationProvider setMaxCachedTiles( int maxTiles )
+    {
+        cacheData.setMaxTiles(maxTiles);
+        return this;
+    }
+
     @Override
     public double getEle( double lat, double lon )
     {
@@ -144,9 +149,12 @@ public class CGIARProvider implements ElevationProvider
             demProvider = new HeightTile(minLat, minLon, WIDTH, degree * precision, degree);
             demProvider.setCalcMean(calcMean);
 
-            cacheData.put(name, demProvider);
             DataAccess heights = getDirectory().find(name + ".gh");
             demProvider.setHeights(heights);
+            HeightTile evicted = cacheData.put(name, demProvider);
+            if (evicted != null)
+                getDirectory().close(evicted.getHeights());
+
             boolean loadExisting = false;
             try
             {
@@ -256,6 +264,17 @@ public class CGIARProvider implements ElevationProvider
         return demProvider.getHeight(lat, lon);
     }
 
+    @Override
+    public void getEle( double[] lats, double[] lons, double[] eles, int count )
+    {
+        int[] tileKeys = new int[count];
+        for (int i = 0; i < count; i++)
+        {
+            tileKeys[i] = (down(lats[i]) + 90) * 1000 + down(lons[i]) + 180;
+        }
+        HeightTileCache.getEle(this, tileKeys, lats, lons, eles, count);
+    }
+
     int down( double val )
     {
         // 'rounding' to closest 5
@@ -303,7 +322,7 @@ public class CGIARProvider implements ElevationProvider
         return "CGIAR";
     }
 
-    private Directory getDirectory()
+    private GHDirectory getDirectory()
     {
         if (dir != null)
             return dir;
@@ -20,6 +20,7 @@ package com.graphhopper.reader.dem;
 
 import com.graphhopper.storage.DAType;
 import java.io.File;
+import java.util.Arrays;
 
 /**
  * @author Peter Karich
@@ -27,10 +28,18 @@ import java.io.File;
 public interface ElevationProvider
 {
     /**
-     * @return returns the hight in meter or Double.NaN if invalid
+     * @return returns the height in meter or Double.NaN if invalid
      */
     double getEle( double lat, double lon );
 
+    /**
+     * Fetches the elevations of the first count points at once. This is faster than calling getEle
+     * for every point in arbitrary order as the points are grouped per tile.
+     * <p/>
+     * @param eles is filled with the height in meter or Double.NaN for every point
+     */
+    void getEle( double[] lats, double[] lons, double[] eles, int count );
+
     /**
      * Specifies the service URL where to download the elevation data. An empty string should set it
      * to the default URL. Default is a provider-dependent URL which should work out of the box.
@@ -48,6 +57,13 @@ public interface ElevationProvider
      */
     ElevationProvider setDAType( DAType daType );
 
+    /**
+     * Limits the number of tiles which are kept open. If more tiles are necessary the least
+     * recently used one is closed, its unpacked data stays in the cache directory. Default is
+     * provider-dependent.
+     */
+    ElevationProvider setMaxCachedTiles( int maxTiles );
+
     /**
      * Configuration option to include surrounding elevation points when fetching the elevation. Has
      * only an effect if called before the first getEle call. Turned off by default.
@@ -67,6 +83,12 @@ public interface ElevationProvider
             return Double.NaN;
         }
 
+        @Override
+        public void getEle( double[] lats, double[] lons, double[] eles, int count )
+        {
+            Arrays.fill(eles, 0, count, Double.NaN);
+        }
+
         @Override
         public ElevationProvider setCacheDir( File cacheDir )
         {
@@ -85,6 +107,12 @@ public interface ElevationProvider
             return this;
         }
 
+        @Override
+        public ElevationProvider setMaxCachedTiles( int maxTiles )
+        {
+            return this;
+        }
+
         @Override
         public void release()
         {
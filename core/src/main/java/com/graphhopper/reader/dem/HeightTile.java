@@ -77,6 +77,11 @@ public class HeightTile
         this.heights = da;
     }
 
+    DataAccess getHeights()
+    {
+        return heights;
+    }
+
     public double getHeight( double lat, double lon )
     {
         double deltaLat = Math.abs(lat - minLat);
@@ -0,0 +1,106 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader.dem;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Holds the most recently used HeightTiles. If there are more tiles than allowed the least recently
+ * used one is returned from put and the provider has to close it. Its data stays in the cache
+ * directory, so it can be loaded again cheaply. Not thread safe.
+ * <p/>
+ * @author Peter Karich
+ */
+class HeightTileCache<K>
+{
+    private final LinkedHashMap<K, HeightTile> tiles = new LinkedHashMap<K, HeightTile>(16, 0.75f, true);
+    private int maxTiles;
+
+    public HeightTileCache( int maxTiles )
+    {
+        setMaxTiles(maxTiles);
+    }
+
+    public void setMaxTiles( int maxTiles )
+    {
+        if (maxTiles < 1)
+            throw new IllegalArgumentException("At least one tile has to be cached but was " + maxTiles);
+
+        this.maxTiles = maxTiles;
+    }
+
+    public int getMaxTiles()
+    {
+        return maxTiles;
+    }
+
+    public HeightTile get( K key )
+    {
+        return tiles.get(key);
+    }
+
+    /**
+     * @return the least recently used tile which was removed from this cache or null
+     */
+    public HeightTile put( K key, HeightTile tile )
+    {
+        tiles.put(key, tile);
+        if (tiles.size() <= maxTiles)
+            return null;
+
+        Iterator<Map.Entry<K, HeightTile>> iter = tiles.entrySet().iterator();
+        HeightTile eldest = iter.next().getValue();
+        iter.remove();
+        return eldest;
+    }
+
+    public int size()
+    {
+        return tiles.size();
+    }
+
+    public void clear()
+    {
+        tiles.clear();
+    }
+
+    /**
+     * Fetches the elevations in the order of the specified tile keys, so that every tile is
+     * accessed only once per batch instead of for every point.
+     * <p/>
+     * @param tileKeys a non-negative key per point which is equal for all points of one tile
+     */
+    static void getEle( ElevationProvider provider, int[] tileKeys, double[] lats, double[] lons,
+            double[] eles, int count )
+    {
+        long[] order = new long[count];
+        for (int i = 0; i < count; i++)
+        {
+            order[i] = (long) tileKeys[i] << 32 | i;
+        }
+        Arrays.sort(order);
+        for (int i = 0; i < count; i++)
+        {
+            int index = (int) order[i];
+            eles[index] = provider.getEle(lats[index], lons[index]);
+        }
+    }
+}
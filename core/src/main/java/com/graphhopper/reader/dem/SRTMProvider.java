@@ -63,12 +63,13 @@ public class SRTMProvider implements ElevationProvider
     private static final BitUtil BIT_UTIL = BitUtil.BIG;
     private final Logger logger = LoggerFactory.getLogger(getClass());
     private final int WIDTH = 1201;
-    private Directory dir;
+    private GHDirectory dir;
     private DAType daType = DAType.MMAP;
     private Downloader downloader = new Downloader("GraphHopper SRTMReader").setTimeout(10000);
     private File cacheDir = new File("/tmp/srtm");
     // use a map as an array is not quite useful if we want to hold only parts of the world
-    private final TIntObjectHashMap<HeightTile> cacheData = new TIntObjectHashMap<HeightTile>();
+    // 256 tiles need ~740MB
+    private final HeightTileCache<Integer> cacheData = new HeightTileCache<Integer>(256);
     private final TIntObjectHashMap<String> areas = new TIntObjectHashMap<String>();
     private final double precision = 1e7;
     private final double invPrecision = 1 / precision;
@@ -173,6 +174,13 @@ public class SRTMProvider implements ElevationProvider
         return this;
     }
 
+    @Override
+    public ElevationProvider setMaxCachedTiles( int maxTiles )
+    {
+        cacheData.setMaxTiles(maxTiles);
+        return this;
+    }
+
     int down( double val )
     {
         int intVal = (int) val;
@@ -233,9 +241,12 @@ public class SRTMProvider implements ElevationProvider
             int minLon = down(lon);
             demProvider = new HeightTile(minLat, minLon, WIDTH, precision, 1);
             demProvider.setCalcMean(calcMean);
-            cacheData.put(intKey, demProvider);
             DataAccess heights = getDirectory().find("dem" + intKey);
             demProvider.setHeights(heights);
+            HeightTile evicted = cacheData.put(intKey, demProvider);
+            if (evicted != null)
+                getDirectory().close(evicted.getHeights());
+
             boolean loadExisting = false;
             try
             {
@@ -307,6 +318,17 @@ public class SRTMProvider implements ElevationProvider
         return demProvider.getHeight(lat, lon);
     }
 
+    @Override
+    public void getEle( double[] lats, double[] lons, double[] eles, int count )
+    {
+        int[] tileKeys = new int[count];
+        for (int i = 0; i < count; i++)
+        {
+            tileKeys[i] = calcIntKey(lats[i], lons[i]);
+        }
+        HeightTileCache.getEle(this, tileKeys, lats, lons, eles, count);
+    }
+
     @Override
     public void release()
     {
@@ -323,7 +345,7 @@ public class SRTMProvider implements ElevationProvider
         return "SRTM";
     }
 
-    private Directory getDirectory()
+    private GHDirectory getDirectory()
     {
         if (dir != null)
             return dir;
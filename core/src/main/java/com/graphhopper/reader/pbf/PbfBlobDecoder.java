@@ -1,16 +1,21 @@
 // This software is released into the Public Domain.  See copying.txt for details.
 package com.graphhopper.reader.pbf;
 
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.WireFormat;
 import com.graphhopper.reader.OSMElement;
 import com.graphhopper.reader.OSMNode;
 import com.graphhopper.reader.OSMRelation;
+import com.graphhopper.reader.OSMTagIds;
 import com.graphhopper.reader.OSMWay;
 import org.openstreetmap.osmosis.osmbinary.Fileformat;
 import org.openstreetmap.osmosis.osmbinary.Osmformat;
 import gnu.trove.list.TLongList;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.logging.Level;
 import java.util.zip.DataFormatException;
@@ -29,8 +34,10 @@ public class PbfBlobDecoder implements Runnable
     private static final Logger log = LoggerFactory.getLogger(PbfBlobDecoder.class);
     private final boolean checkData = false;
     private final String blobType;
-    private final byte[] rawBlob;
+    private final ByteBuffer rawBlob;
     private final PbfBlobDecoderListener listener;
+    private final boolean[] elementTypes;
+    private final OSMTagIds tagIds;
     private List<OSMElement> decodedEntities;
 
     /**
@@ -39,37 +46,113 @@ public class PbfBlobDecoder implements Runnable
      * @param blobType The type of blob.
      * @param rawBlob The raw data of the blob.
      * @param listener The listener for receiving decoding results.
+     * @param elementTypes Which element types to decode, indexed by OSMElement.NODE, WAY and
+     * RELATION.
+     * @param tagIds The ids of the tags, can be null.
      */
-    public PbfBlobDecoder( String blobType, byte[] rawBlob, PbfBlobDecoderListener listener )
+    public PbfBlobDecoder( String blobType, byte[] rawBlob, PbfBlobDecoderListener listener, boolean[] elementTypes,
+            OSMTagIds tagIds )
+    {
+        this(blobType, ByteBuffer.wrap(rawBlob), listener, elementTypes, tagIds);
+    }
+
+    /**
+     * Creates a new instance which reads the blob directly from the buffer, e.g. from a slice of a
+     * memory mapped file.
+     * <p/>
+     * @param rawBlob The raw data of the blob between the position and the limit of the buffer.
+     */
+    public PbfBlobDecoder( String blobType, ByteBuffer rawBlob, PbfBlobDecoderListener listener, boolean[] elementTypes,
+            OSMTagIds tagIds )
     {
         this.blobType = blobType;
         this.rawBlob = rawBlob;
         this.listener = listener;
+        this.elementTypes = elementTypes;
+        this.tagIds = tagIds;
     }
 
+    /**
+     * Parses the Blob message by hand to read the raw or compressed data directly from the buffer
+     * instead of copying it into a ByteString first.
+     */
     private byte[] readBlobContent() throws IOException
     {
-        Fileformat.Blob blob = Fileformat.Blob.parseFrom(rawBlob);
-        byte[] blobData;
+        ByteBuffer buffer = rawBlob.duplicate();
+        ByteBuffer raw = null;
+        ByteBuffer zlibData = null;
+        int rawSize = -1;
+        while (buffer.hasRemaining())
+        {
+            int tag = (int) readRawVarint(buffer);
+            int field = tag >>> 3;
+            int wireType = tag & 7;
+            if (wireType == WireFormat.WIRETYPE_VARINT)
+            {
+                long value = readRawVarint(buffer);
+                if (field == Fileformat.Blob.RAW_SIZE_FIELD_NUMBER)
+                    rawSize = (int) value;
+            } else if (wireType == WireFormat.WIRETYPE_LENGTH_DELIMITED)
+            {
+                int length = (int) readRawVarint(buffer);
+                if (length < 0 || length > buffer.remaining())
+                    throw new IOException("PBF blob is truncated");
+
+                ByteBuffer value = buffer.slice();
+                value.limit(length);
+                buffer.position(buffer.position() + length);
+                if (field == Fileformat.Blob.RAW_FIELD_NUMBER)
+                    raw = value;
+                else if (field == Fileformat.Blob.ZLIB_DATA_FIELD_NUMBER)
+                    zlibData = value;
+            } else
+            {
+                throw new IOException("Unexpected wire type " + wireType + " in PBF blob");
+            }
+        }
 
-        if (blob.hasRaw())
+        byte[] blobData;
+        if (raw != null)
         {
-            blobData = blob.getRaw().toByteArray();
-        } else if (blob.hasZlibData())
+            blobData = new byte[raw.remaining()];
+            raw.get(blobData);
+        } else if (zlibData != null)
         {
+            if (rawSize < 0)
+                throw new RuntimeException("PBF blob misses the raw size of the compressed data.");
+
+            byte[] input;
+            int offset;
+            if (zlibData.hasArray())
+            {
+                input = zlibData.array();
+                offset = zlibData.arrayOffset() + zlibData.position();
+            } else
+            {
+                // e.g. a memory mapped buffer, the Inflater accepts only arrays
+                input = getInputBuffer(zlibData.remaining());
+                offset = 0;
+                zlibData.get(input, 0, zlibData.remaining());
+                zlibData.flip();
+            }
+
             Inflater inflater = new Inflater();
-            inflater.setInput(blob.getZlibData().toByteArray());
-            blobData = new byte[blob.getRawSize()];
             try
             {
+                inflater.setInput(input, offset, zlibData.remaining());
+                blobData = new byte[rawSize];
                 inflater.inflate(blobData);
+                if (!inflater.finished())
+                {
+                    throw new RuntimeException("PBF blob contains incomplete compressed data.");
+                }
             } catch (DataFormatException e)
             {
                 throw new RuntimeException("Unable to decompress PBF blob.", e);
-            }
-            if (!inflater.finished())
+            } finally
             {
-                throw new RuntimeException("PBF blob contains incomplete compressed data.");
+                // releases the native memory immediately instead of on finalization
+                inflater.end();
             }
         } else
         {
@@ -79,6 +162,36 @@ public class PbfBlobDecoder implements Runnable
         return blobData;
     }
 
+    private static long readRawVarint( ByteBuffer buffer ) throws IOException
+    {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            if (!buffer.hasRemaining())
+                throw new IOException("PBF blob is truncated");
+
+            byte b = buffer.get();
+            result |= (long) (b & 0x7F) << shift;
+            if (b >= 0)
+                return result;
+        }
+        throw new IOException("Malformed varint in PBF blob");
+    }
+
+    // reused per worker thread to avoid an allocation per blob
+    private static final ThreadLocal<byte[]> INPUT_BUFFER = new ThreadLocal<byte[]>();
+
+    private static byte[] getInputBuffer( int size )
+    {
+        byte[] buffer = INPUT_BUFFER.get();
+        if (buffer == null || buffer.length < size)
+        {
+            buffer = new byte[Math.max(size, 1 << 16)];
+            INPUT_BUFFER.set(buffer);
+        }
+        return buffer;
+    }
+
     private void processOsmHeader( byte[] data ) throws InvalidProtocolBufferException
     {
         Osmformat.HeaderBlock header = Osmformat.HeaderBlock.parseFrom(data);
@@ -123,9 +236,8 @@ public class PbfBlobDecoder implements Runnable
          */
     }
 
-    private Map<String, String> buildTags( List<Integer> keys, List<Integer> values, PbfFieldDecoder fieldDecoder )
+    private void setTags( OSMElement element, List<Integer> keys, List<Integer> values, PbfFieldDecoder fieldDecoder )
     {
-
         // Ensure parallel lists are of equal size.
         if (checkData)
         {
@@ -136,31 +248,25 @@ public class PbfBlobDecoder implements Runnable
             }
         }
 
-        Iterator<Integer> keyIterator = keys.iterator();
-        Iterator<Integer> valueIterator = values.iterator();
-        if (keyIterator.hasNext())
+        // the strings are shared via the string table of the block, no map is created per element
+        fieldDecoder.bindTagIds(element);
+        int size = keys.size();
+        for (int i = 0; i < size; i++)
         {
-            Map<String, String> tags = new HashMap<String, String>();
-            while (keyIterator.hasNext())
-            {
-                String key = fieldDecoder.decodeString(keyIterator.next());
-                String value = fieldDecoder.decodeString(valueIterator.next());
-                tags.put(key, value);
-            }
-            return tags;
+            int key = keys.get(i);
+            int value = values.get(i);
+            element.setTag(fieldDecoder.decodeString(key), fieldDecoder.decodeStringId(key),
+                    fieldDecoder.decodeString(value), fieldDecoder.decodeStringId(value));
         }
-        return null;
     }
 
     private void processNodes( List<Osmformat.Node> nodes, PbfFieldDecoder fieldDecoder )
     {
         for (Osmformat.Node node : nodes)
         {
-            Map<String, String> tags = buildTags(node.getKeysList(), node.getValsList(), fieldDecoder);
-
             OSMNode osmNode = new OSMNode(node.getId(), fieldDecoder.decodeLatitude(node
                     .getLat()), fieldDecoder.decodeLatitude(node.getLon()));
-            osmNode.setTags(tags);
+            setTags(osmNode, node.getKeysList(), node.getValsList(), fieldDecoder);
 
             // Add the bound object to the results.
             decodedEntities.add(osmNode);
@@ -230,10 +336,12 @@ public class PbfBlobDecoder implements Runnable
              EMPTY_CHANGESET);
              }
              */
+            OSMNode node = new OSMNode(nodeId, ((double) latitude) / 10000000, ((double) longitude) / 10000000);
+            fieldDecoder.bindTagIds(node);
+
             // Build the tags. The key and value string indexes are sequential
             // in the same PBF array. Each set of tags is delimited by an index
             // with a value of 0.
-            Map<String, String> tags = null;
             while (keysValuesIterator.hasNext())
             {
                 int keyIndex = keysValuesIterator.next();
@@ -250,18 +358,10 @@ public class PbfBlobDecoder implements Runnable
                     }
                 }
                 int valueIndex = keysValuesIterator.next();
-
-                if (tags == null)
-                {
-                    tags = new HashMap<String, String>();
-                }
-
-                tags.put(fieldDecoder.decodeString(keyIndex), fieldDecoder.decodeString(valueIndex));
+                node.setTag(fieldDecoder.decodeString(keyIndex), fieldDecoder.decodeStringId(keyIndex),
+                        fieldDecoder.decodeString(valueIndex), fieldDecoder.decodeStringId(valueIndex));
             }
 
-            OSMNode node = new OSMNode(nodeId, ((double) latitude) / 10000000, ((double) longitude) / 10000000);
-            node.setTags(tags);
-
             // Add the bound object to the results.
             decodedEntities.add(node);
         }
@@ -271,9 +371,8 @@ public class PbfBlobDecoder implements Runnable
     {
         for (Osmformat.Way way : ways)
         {
-            Map<String, String> tags = buildTags(way.getKeysList(), way.getValsList(), fieldDecoder);
             OSMWay osmWay = new OSMWay(way.getId());
-            osmWay.setTags(tags);
+            setTags(osmWay, way.getKeysList(), way.getValsList(), fieldDecoder);
 
             // Build up the list of way nodes for the way. The node ids are
             // delta encoded meaning that each id is stored as a delta against
@@ -346,10 +445,8 @@ public class PbfBlobDecoder implements Runnable
     {
         for (Osmformat.Relation relation : relations)
         {
-            Map<String, String> tags = buildTags(relation.getKeysList(), relation.getValsList(), fieldDecoder);
-
             OSMRelation osmRelation = new OSMRelation(relation.getId());
-            osmRelation.setTags(tags);
+            setTags(osmRelation, relation.getKeysList(), relation.getValsList(), fieldDecoder);
 
             buildRelationMembers(osmRelation, relation.getMemidsList(), relation.getRolesSidList(),
                     relation.getTypesList(), fieldDecoder);
@@ -359,18 +456,88 @@ public class PbfBlobDecoder implements Runnable
         }
     }
 
-    private void processOsmPrimitives( byte[] data ) throws InvalidProtocolBufferException
+    private void processOsmPrimitives( byte[] data ) throws IOException
     {
-        Osmformat.PrimitiveBlock block = Osmformat.PrimitiveBlock.parseFrom(data);
-        PbfFieldDecoder fieldDecoder = new PbfFieldDecoder(block);
+        // Parse the block by hand instead of via PrimitiveBlock.parseFrom to avoid parsing the
+        // groups with element types which are not requested. E.g. the dense nodes are the
+        // biggest part of a file and not necessary for the first pass of the OSMReader.
+        Osmformat.PrimitiveBlock.Builder blockBuilder = Osmformat.PrimitiveBlock.newBuilder();
+        List<ByteString> groups = new ArrayList<ByteString>();
+        CodedInputStream input = CodedInputStream.newInstance(data);
+        input.setSizeLimit(Integer.MAX_VALUE);
+        boolean done = false;
+        while (!done)
+        {
+            int tag = input.readTag();
+            switch (WireFormat.getTagFieldNumber(tag))
+            {
+                case 0:
+                    done = true;
+                    break;
+                case Osmformat.PrimitiveBlock.STRINGTABLE_FIELD_NUMBER:
+                    blockBuilder.setStringtable(Osmformat.StringTable.parseFrom(input.readBytes()));
+                    break;
+                case Osmformat.PrimitiveBlock.PRIMITIVEGROUP_FIELD_NUMBER:
+                    ByteString group = input.readBytes();
+                    if (isRequested(group))
+                        groups.add(group);
+                    break;
+                case Osmformat.PrimitiveBlock.GRANULARITY_FIELD_NUMBER:
+                    blockBuilder.setGranularity(input.readInt32());
+                    break;
+                case Osmformat.PrimitiveBlock.DATE_GRANULARITY_FIELD_NUMBER:
+                    blockBuilder.setDateGranularity(input.readInt32());
+                    break;
+                case Osmformat.PrimitiveBlock.LAT_OFFSET_FIELD_NUMBER:
+                    blockBuilder.setLatOffset(input.readInt64());
+                    break;
+                case Osmformat.PrimitiveBlock.LON_OFFSET_FIELD_NUMBER:
+                    blockBuilder.setLonOffset(input.readInt64());
+                    break;
+                default:
+                    input.skipField(tag);
+            }
+        }
+
+        if (groups.isEmpty())
+            return;
 
-        for (Osmformat.PrimitiveGroup primitiveGroup : block.getPrimitivegroupList())
+        PbfFieldDecoder fieldDecoder = new PbfFieldDecoder(blockBuilder.buildPartial(), tagIds);
+        for (ByteString group : groups)
         {
             log.debug("Processing OSM primitive group.");
-            processNodes(primitiveGroup.getDense(), fieldDecoder);
-            processNodes(primitiveGroup.getNodesList(), fieldDecoder);
-            processWays(primitiveGroup.getWaysList(), fieldDecoder);
-            processRelations(primitiveGroup.getRelationsList(), fieldDecoder);
+            Osmformat.PrimitiveGroup primitiveGroup = Osmformat.PrimitiveGroup.parseFrom(group);
+            if (elementTypes[OSMElement.NODE])
+            {
+                processNodes(primitiveGroup.getDense(), fieldDecoder);
+                processNodes(primitiveGroup.getNodesList(), fieldDecoder);
+            }
+            if (elementTypes[OSMElement.WAY])
+                processWays(primitiveGroup.getWaysList(), fieldDecoder);
+            if (elementTypes[OSMElement.RELATION])
+                processRelations(primitiveGroup.getRelationsList(), fieldDecoder);
+        }
+    }
+
+    /**
+     * A group contains only one element type, so its first field is sufficient to decide if it
+     * needs to be parsed.
+     */
+    private boolean isRequested( ByteString group ) throws IOException
+    {
+        int tag = group.newCodedInput().readTag();
+        switch (WireFormat.getTagFieldNumber(tag))
+        {
+            case Osmformat.PrimitiveGroup.NODES_FIELD_NUMBER:
+            case Osmformat.PrimitiveGroup.DENSE_FIELD_NUMBER:
+                return elementTypes[OSMElement.NODE];
+            case Osmformat.PrimitiveGroup.WAYS_FIELD_NUMBER:
+                return elementTypes[OSMElement.WAY];
+            case Osmformat.PrimitiveGroup.RELATIONS_FIELD_NUMBER:
+                return elementTypes[OSMElement.RELATION];
+            default:
+                // empty group or changesets which are not used
+                return false;
         }
     }
 
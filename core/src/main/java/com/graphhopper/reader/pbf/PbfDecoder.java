@@ -2,8 +2,10 @@
 package com.graphhopper.reader.pbf;
 
 import com.graphhopper.reader.OSMElement;
+import com.graphhopper.reader.OSMTagIds;
 import java.util.Date;
 
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
@@ -20,10 +22,12 @@ import java.util.concurrent.locks.ReentrantLock;
  */
 public class PbfDecoder implements Runnable
 {
-    private final PbfStreamSplitter streamSplitter;
+    private final Iterator<PbfRawBlob> streamSplitter;
     private final ExecutorService executorService;
     private final int maxPendingBlobs;
     private final Sink sink;
+    private final boolean[] elementTypes;
+    private final OSMTagIds tagIds;
     private final Lock lock;
     private final Condition dataWaitCondition;
     private final Queue<PbfBlobResult> blobResults;
@@ -31,18 +35,23 @@ public class PbfDecoder implements Runnable
     /**
      * Creates a new instance.
      * <p/>
-     * @param streamSplitter The PBF stream splitter providing the source of blobs to be decoded.
+     * @param streamSplitter The source of blobs to be decoded, e.g. a PbfStreamSplitter or the
+     * iterator of a PbfMappedFile.
      * @param executorService The executor service managing the thread pool.
      * @param maxPendingBlobs The maximum number of blobs to have in progress at any point in time.
      * @param sink The sink to send all decoded entities to.
+     * @param elementTypes The element types to decode, indexed by OSMElement.NODE, WAY and RELATION.
+     * @param tagIds The ids of the tags, can be null.
      */
-    public PbfDecoder( PbfStreamSplitter streamSplitter, ExecutorService executorService, int maxPendingBlobs,
-            Sink sink )
+    public PbfDecoder( Iterator<PbfRawBlob> streamSplitter, ExecutorService executorService, int maxPendingBlobs,
+            Sink sink, boolean[] elementTypes, OSMTagIds tagIds )
     {
+        this.tagIds = tagIds;
         this.streamSplitter = streamSplitter;
         this.executorService = executorService;
         this.maxPendingBlobs = maxPendingBlobs;
         this.sink = sink;
+        this.elementTypes = elementTypes;
 
         // Create the thread synchronisation primitives.
         lock = new ReentrantLock();
@@ -101,10 +110,7 @@ public class PbfDecoder implements Runnable
             lock.unlock();
             try
             {
-                for (OSMElement entity : blobResult.getEntities())
-                {
-                    sink.process(entity);
-                }
+                sink.process(blobResult.getEntities());
             } finally
             {
                 lock.lock();
@@ -162,7 +168,8 @@ public class PbfDecoder implements Runnable
             };
 
             // Create the blob decoder itself and execute it on a worker thread.
-            PbfBlobDecoder blobDecoder = new PbfBlobDecoder(rawBlob.getType(), rawBlob.getData(), decoderListener);
+            PbfBlobDecoder blobDecoder = new PbfBlobDecoder(rawBlob.getType(), rawBlob.getBuffer(), decoderListener,
+                    elementTypes, tagIds);
             executorService.execute(blobDecoder);
 
             // If the number of pending blobs has reached capacity we must begin
@@ -1,6 +1,8 @@
 // This software is released into the Public Domain.  See copying.txt for details.
 package com.graphhopper.reader.pbf;
 
+import com.graphhopper.reader.OSMElement;
+import com.graphhopper.reader.OSMTagIds;
 import java.util.Date;
 
 import org.openstreetmap.osmosis.osmbinary.Osmformat;
@@ -15,6 +17,10 @@ public class PbfFieldDecoder
 {
     private static final double COORDINATE_SCALING_FACTOR = 0.000000001;
     private String[] strings;
+    private int[] stringIds;
+    private final OSMTagIds tagIds;
+    // the count of tagIds before the strings were resolved
+    private final int tagIdCount;
     private int coordGranularity;
     private long coordLatitudeOffset;
     private long coordLongitudeOffset;
@@ -24,9 +30,13 @@ public class PbfFieldDecoder
      * Creates a new instance.
      * <p/>
      * @param primitiveBlock The primitive block containing the fields to be decoded.
+     * @param tagIds The ids of the strings, can be null.
      */
-    public PbfFieldDecoder( Osmformat.PrimitiveBlock primitiveBlock )
+    public PbfFieldDecoder( Osmformat.PrimitiveBlock primitiveBlock, OSMTagIds tagIds )
     {
+        this.tagIds = tagIds;
+        // taken before the lookups so that strings registered meanwhile are resolved again later
+        this.tagIdCount = tagIds == null ? 0 : tagIds.getCount();
         this.coordGranularity = primitiveBlock.getGranularity();
         this.coordLatitudeOffset = primitiveBlock.getLatOffset();
         this.coordLongitudeOffset = primitiveBlock.getLonOffset();
@@ -34,9 +44,12 @@ public class PbfFieldDecoder
 
         Osmformat.StringTable stringTable = primitiveBlock.getStringtable();
         strings = new String[stringTable.getSCount()];
+        stringIds = new int[strings.length];
         for (int i = 0; i < strings.length; i++)
         {
             strings[i] = stringTable.getS(i).toStringUtf8();
+            // one lookup per string of the block instead of one per tag
+            stringIds[i] = tagIds == null ? -1 : tagIds.getId(strings[i]);
         }
     }
 
@@ -83,4 +96,21 @@ public class PbfFieldDecoder
     {
         return strings[rawString];
     }
+
+    /**
+     * @return the OSMTagIds id of the raw string or -1 if it is not registered
+     */
+    public int decodeStringId( int rawString )
+    {
+        return stringIds[rawString];
+    }
+
+    /**
+     * Has to be called before the tags of the element are set with the ids of decodeStringId.
+     */
+    public void bindTagIds( OSMElement element )
+    {
+        if (tagIds != null)
+            element.setTagIds(tagIds, tagIdCount);
+    }
 }
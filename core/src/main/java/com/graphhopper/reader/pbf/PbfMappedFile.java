@@ -0,0 +1,196 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader.pbf;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import org.openstreetmap.osmosis.osmbinary.Fileformat;
+
+/**
+ * Memory maps an uncompressed PBF file and indexes the offsets of all its blobs up front. The blobs
+ * are then handed out as slices of the mapping, so no byte array per blob is necessary and the
+ * operating system can read ahead while the workers decode.
+ * <p/>
+ * The file is mapped in read only windows of at most 2GB which always end at a blob boundary. The
+ * mappings stay valid until they are garbage collected, even if the file channel is already closed.
+ * <p/>
+ * @author Peter Karich
+ */
+public class PbfMappedFile implements Iterable<PbfRawBlob>
+{
+    private final List<String> types = new ArrayList<String>();
+    // the start of the blob data relative to its window
+    private final TIntArrayList offsets = new TIntArrayList();
+    private final TIntArrayList sizes = new TIntArrayList();
+    private final TIntArrayList windowIndices = new TIntArrayList();
+    private final List<MappedByteBuffer> windows = new ArrayList<MappedByteBuffer>();
+
+    public PbfMappedFile( File file ) throws IOException
+    {
+        this(file, Integer.MAX_VALUE);
+    }
+
+    PbfMappedFile( File file, long maxWindowSize ) throws IOException
+    {
+        RandomAccessFile raFile = new RandomAccessFile(file, "r");
+        try
+        {
+            FileChannel channel = raFile.getChannel();
+            TLongArrayList blobStarts = new TLongArrayList();
+            index(channel, blobStarts);
+            map(channel, blobStarts, maxWindowSize);
+        } finally
+        {
+            raFile.close();
+        }
+    }
+
+    private void index( FileChannel channel, TLongArrayList blobStarts ) throws IOException
+    {
+        long fileSize = channel.size();
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        long pos = 0;
+        while (pos < fileSize)
+        {
+            lengthBuffer.clear();
+            readFully(channel, lengthBuffer, pos);
+            int headerLength = lengthBuffer.getInt(0);
+            if (headerLength <= 0 || headerLength > 64 * 1024)
+                throw new IOException("Invalid PBF blob header length " + headerLength + " at " + pos);
+
+            ByteBuffer headerBuffer = ByteBuffer.allocate(headerLength);
+            readFully(channel, headerBuffer, pos + 4);
+            Fileformat.BlobHeader header = Fileformat.BlobHeader.parseFrom(headerBuffer.array());
+            long dataStart = pos + 4 + headerLength;
+            if (header.getDatasize() < 0 || dataStart + header.getDatasize() > fileSize)
+                throw new IOException("PBF blob at " + pos + " is truncated");
+
+            types.add(header.getType());
+            sizes.add(header.getDatasize());
+            offsets.add((int) (dataStart - pos));
+            blobStarts.add(pos);
+            pos = dataStart + header.getDatasize();
+        }
+    }
+
+    /**
+     * Maps consecutive blobs into the same window until it would exceed the maximum size.
+     */
+    private void map( FileChannel channel, TLongArrayList blobStarts, long maxWindowSize ) throws IOException
+    {
+        int blobs = blobStarts.size();
+        int windowStartBlob = 0;
+        while (windowStartBlob < blobs)
+        {
+            long windowStart = blobStarts.get(windowStartBlob);
+            int endBlob = windowStartBlob;
+            while (endBlob < blobs && blobEnd(blobStarts, endBlob) - windowStart <= maxWindowSize)
+            {
+                endBlob++;
+            }
+            if (endBlob == windowStartBlob)
+                throw new IOException("PBF blob " + windowStartBlob + " is too big to be mapped");
+
+            long windowSize = blobEnd(blobStarts, endBlob - 1) - windowStart;
+            windows.add(channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowSize));
+            for (int i = windowStartBlob; i < endBlob; i++)
+            {
+                windowIndices.add(windows.size() - 1);
+                offsets.set(i, (int) (blobStarts.get(i) - windowStart + offsets.get(i)));
+            }
+            windowStartBlob = endBlob;
+        }
+    }
+
+    private long blobEnd( TLongArrayList blobStarts, int blob )
+    {
+        return blobStarts.get(blob) + offsets.get(blob) + sizes.get(blob);
+    }
+
+    private static void readFully( FileChannel channel, ByteBuffer buffer, long pos ) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            int read = channel.read(buffer, pos);
+            if (read < 0)
+                throw new EOFException("Unexpected end of PBF file at " + pos);
+
+            pos += read;
+        }
+    }
+
+    public int getBlobCount()
+    {
+        return types.size();
+    }
+
+    /**
+     * @return the blob at the specified index. Its data is a slice of the mapping and can be read
+     * concurrently with other blobs.
+     */
+    public PbfRawBlob getBlob( int index )
+    {
+        // duplicate as the position of a shared buffer must not be changed concurrently
+        ByteBuffer data = windows.get(windowIndices.get(index)).duplicate();
+        int offset = offsets.get(index);
+        data.limit(offset + sizes.get(index));
+        data.position(offset);
+        return new PbfRawBlob(types.get(index), data.slice());
+    }
+
+    @Override
+    public Iterator<PbfRawBlob> iterator()
+    {
+        return new Iterator<PbfRawBlob>()
+        {
+            private int index;
+
+            @Override
+            public boolean hasNext()
+            {
+                return index < getBlobCount();
+            }
+
+            @Override
+            public PbfRawBlob next()
+            {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+
+                return getBlob(index++);
+            }
+
+            @Override
+            public void remove()
+            {
+                throw new UnsupportedOperationException("Not supported");
+            }
+        };
+    }
+}
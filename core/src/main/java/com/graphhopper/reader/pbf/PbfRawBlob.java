@@ -1,6 +1,8 @@
 // This software is released into the Public Domain.  See copying.txt for details.
 package com.graphhopper.reader.pbf;
 
+import java.nio.ByteBuffer;
+
 /**
  * Represents a single piece of raw blob data extracted from the PBF stream. It has not yet been
  * decoded into a PBF blob object.
@@ -10,7 +12,7 @@ package com.graphhopper.reader.pbf;
 public class PbfRawBlob
 {
     private String type;
-    private byte[] data;
+    private ByteBuffer data;
 
     /**
      * Creates a new instance.
@@ -20,6 +22,17 @@ public class PbfRawBlob
      * @param data The raw contents of the blob in binary undecoded form.
      */
     public PbfRawBlob( String type, byte[] data )
+    {
+        this(type, ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Creates a new instance without copying the data, e.g. for a slice of a memory mapped file.
+     * <p/>
+     * @param type The type of data represented by this blob.
+     * @param data The raw contents of the blob from its position to its limit.
+     */
+    public PbfRawBlob( String type, ByteBuffer data )
     {
         this.type = type;
         this.data = data;
@@ -43,6 +56,22 @@ public class PbfRawBlob
      */
     public byte[] getData()
     {
-        return data;
+        if (data.hasArray() && data.arrayOffset() == 0 && data.position() == 0
+                && data.remaining() == data.array().length)
+            return data.array();
+
+        byte[] bytes = new byte[data.remaining()];
+        data.duplicate().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Gets the raw contents of the blob without copying it.
+     * <p/>
+     * @return A buffer with the raw blob data between its position and limit.
+     */
+    public ByteBuffer getBuffer()
+    {
+        return data.duplicate();
     }
 }
@@ -1,8 +1,10 @@
 // This software is released into the Public Domain.  See copying.txt for details.
 package com.graphhopper.reader.pbf;
 
+import com.graphhopper.reader.OSMTagIds;
 import java.io.DataInputStream;
 import java.io.InputStream;
+import java.util.Iterator;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -14,20 +16,41 @@ import java.util.concurrent.Executors;
 public class PbfReader implements Runnable
 {
     private InputStream inputStream;
+    private PbfMappedFile mappedFile;
     private Sink sink;
     private int workers;
+    private boolean[] elementTypes;
+    private OSMTagIds tagIds;
 
     /**
      * Creates a new instance.
      * <p/>
      * @param in The file to read.
      * @param workers The number of worker threads for decoding PBF blocks.
+     * @param elementTypes The element types to decode, indexed by OSMElement.NODE, WAY and RELATION.
+     * @param tagIds The ids of the tags, can be null.
      */
-    public PbfReader( InputStream in, Sink sink, int workers )
+    public PbfReader( InputStream in, Sink sink, int workers, boolean[] elementTypes, OSMTagIds tagIds )
     {
+        this.tagIds = tagIds;
         this.inputStream = in;
         this.sink = sink;
         this.workers = workers;
+        this.elementTypes = elementTypes;
+    }
+
+    /**
+     * Creates a new instance which decodes the blobs directly from the memory mapped file.
+     * <p/>
+     * @param mappedFile The file to read.
+     */
+    public PbfReader( PbfMappedFile mappedFile, Sink sink, int workers, boolean[] elementTypes, OSMTagIds tagIds )
+    {
+        this.tagIds = tagIds;
+        this.mappedFile = mappedFile;
+        this.sink = sink;
+        this.workers = workers;
+        this.elementTypes = elementTypes;
     }
 
     @Override
@@ -36,8 +59,13 @@ public class PbfReader implements Runnable
         ExecutorService executorService = Executors.newFixedThreadPool(workers);
         try
         {
-            // Create a stream splitter to break the PBF stream into blobs.
-            PbfStreamSplitter streamSplitter = new PbfStreamSplitter(new DataInputStream(inputStream));
+            // Create a stream splitter to break the PBF stream into blobs or
+            // use the blobs of the mapped file without copying them.
+            Iterator<PbfRawBlob> streamSplitter;
+            if (mappedFile != null)
+                streamSplitter = mappedFile.iterator();
+            else
+                streamSplitter = new PbfStreamSplitter(new DataInputStream(inputStream));
 
             // Process all blobs of data in the stream using threads from the
             // executor service. We allow the decoder to issue an extra blob
@@ -45,7 +73,8 @@ public class PbfReader implements Runnable
             // immediately ready for processing when a worker thread completes.
             // The main thread is responsible for splitting blobs from the
             // request stream, and sending decoded entities to the sink.
-            PbfDecoder pbfDecoder = new PbfDecoder(streamSplitter, executorService, workers + 1, sink);
+            PbfDecoder pbfDecoder = new PbfDecoder(streamSplitter, executorService, workers + 1, sink,
+                    elementTypes, tagIds);
             pbfDecoder.run();
 
         } catch (Exception e)
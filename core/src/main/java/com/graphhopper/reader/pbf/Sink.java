@@ -18,13 +18,20 @@
 package com.graphhopper.reader.pbf;
 
 import com.graphhopper.reader.OSMElement;
+import java.util.List;
 
 /**
  * @author Nop
  */
 public interface Sink
 {
-    void process( OSMElement item );
+    /**
+     * Receives all elements of one decoded PBF block in the order of the file.
+     */
+    void process( List<OSMElement> items );
 
+    /**
+     * Called once after the last block, also if reading failed.
+     */
     void complete();
 }
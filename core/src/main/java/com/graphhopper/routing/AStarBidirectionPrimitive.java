@@ -0,0 +1,115 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.util.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.DistanceCalc;
+import com.graphhopper.util.DistanceCalcEarth;
+import com.graphhopper.util.DistancePlaneProjection;
+
+/**
+ * A bidirectional A* like AStarBidirection but with the reusable primitive search state of
+ * DijkstraBidirectionPrimitive. The heap is ordered by the weight plus the estimated weight to the
+ * goal whereas the tree still stores the weight from the start only.
+ * <p/>
+ * @see AStarBidirection for the reference implementation
+ * @author Peter Karich
+ */
+public class AStarBidirectionPrimitive extends DijkstraBidirectionPrimitive
+{
+    private DistanceCalc dist;
+    protected double approximationFactor;
+    private double fromLat, fromLon;
+    private double toLat, toLon;
+
+    public AStarBidirectionPrimitive( Graph graph, FlagEncoder encoder, Weighting weighting, TraversalMode tMode )
+    {
+        super(graph, encoder, weighting, tMode);
+        // different default value for approximation than AStar
+        setApproximation(false);
+    }
+
+    /**
+     * @param approx if true it enables approximative distance calculation from lat,lon values
+     */
+    public AStarBidirectionPrimitive setApproximation( boolean approx )
+    {
+        if (approx)
+        {
+            dist = new DistancePlaneProjection();
+            approximationFactor = 0.5;
+        } else
+        {
+            dist = new DistanceCalcEarth();
+            approximationFactor = 1;
+        }
+        return this;
+    }
+
+    /**
+     * Specify a low value like 0.5 for worse but faster results. With 1 the result is exact.
+     */
+    public AStarBidirectionPrimitive setApproximationFactor( double approxFactor )
+    {
+        this.approximationFactor = approxFactor;
+        return this;
+    }
+
+    @Override
+    public Path calcPath( int from, int to )
+    {
+        // both coordinates are necessary for the heap keys of the start entries
+        fromLat = nodeAccess.getLatitude(from);
+        fromLon = nodeAccess.getLongitude(from);
+        toLat = nodeAccess.getLatitude(to);
+        toLon = nodeAccess.getLongitude(to);
+        return super.calcPath(from, to);
+    }
+
+    @Override
+    protected double calcHeapKey( int adjNode, double weight, boolean reverse )
+    {
+        double tmpLat = nodeAccess.getLatitude(adjNode);
+        double tmpLon = nodeAccess.getLongitude(adjNode);
+        double distToGoal = reverse
+                ? dist.calcDist(fromLat, fromLon, tmpLat, tmpLon)
+                : dist.calcDist(toLat, toLon, tmpLat, tmpLon);
+        return weight + weighting.getMinWeight(distToGoal);
+    }
+
+    @Override
+    protected boolean finished()
+    {
+        if (finishedFrom || finishedTo)
+            return true;
+
+        // the heap keys include the estimation and are lower bounds for every path which is not yet
+        // found, so one direction is enough to prove that no better path exists
+        double tmp = bestPath.getWeight() * approximationFactor;
+        return Math.max(currFromKey, currToKey) >= tmp;
+    }
+
+    @Override
+    public String getName()
+    {
+        return AlgorithmOptions.ASTAR_BI;
+    }
+}
@@ -55,6 +55,11 @@ public class AlgorithmOptions
      * Bidirectional A*
      */
     public static final String ASTAR_BI = "astarbi";
+    /**
+     * Hint to use the bidirectional algorithms which reuse their search state per thread, see
+     * DijkstraBidirectionPrimitive
+     */
+    public static final String REUSE_SEARCH_STATE = "reuse_search_state";
     private String algorithm = DIJKSTRA_BI;
     private Weighting weighting;
     private TraversalMode traversalMode = TraversalMode.NODE_BASED;
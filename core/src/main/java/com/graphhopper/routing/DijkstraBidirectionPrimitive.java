@@ -0,0 +1,306 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.util.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
+
+/**
+ * Calculates best path in bidirectional way like DijkstraBidirectionRef but stores the search
+ * state in a ShortestPathTree per direction instead of EdgeEntry objects. The trees are reused for
+ * all queries of the same thread, so apart from the resulting path no objects are created. The
+ * trees are kept per thread and grow to the largest search done so far.
+ * <p/>
+ * @see DijkstraBidirectionRef for the reference implementation
+ * @author Peter Karich
+ */
+public class DijkstraBidirectionPrimitive extends AbstractBidirAlgo
+{
+    private static final ThreadLocal<SearchState> searchState = new ThreadLocal<SearchState>()
+    {
+        @Override
+        protected SearchState initialValue()
+        {
+            return new SearchState();
+        }
+    };
+    private SearchState usedState;
+    protected ShortestPathTree treeFrom;
+    protected ShortestPathTree treeTo;
+    protected int currFrom = ShortestPathTree.NO_SLOT;
+    protected int currTo = ShortestPathTree.NO_SLOT;
+    // the heap keys of currFrom and currTo
+    protected double currFromKey;
+    protected double currToKey;
+    private int bestFrom = ShortestPathTree.NO_SLOT;
+    private int bestTo = ShortestPathTree.NO_SLOT;
+    protected PathBidirRef bestPath;
+
+    public DijkstraBidirectionPrimitive( Graph graph, FlagEncoder encoder, Weighting weighting, TraversalMode tMode )
+    {
+        super(graph, encoder, weighting, tMode);
+    }
+
+    @Override
+    public Path calcPath( int from, int to )
+    {
+        acquireSearchState();
+        try
+        {
+            return super.calcPath(from, to);
+        } finally
+        {
+            releaseSearchState();
+        }
+    }
+
+    private void acquireSearchState()
+    {
+        SearchState state = searchState.get();
+        if (state.inUse)
+        {
+            // e.g. a nested query in the same thread
+            state = new SearchState();
+        } else
+        {
+            state.inUse = true;
+            usedState = state;
+        }
+
+        treeFrom = state.treeFrom;
+        treeTo = state.treeTo;
+        treeFrom.clear();
+        treeTo.clear();
+    }
+
+    private void releaseSearchState()
+    {
+        if (usedState != null)
+        {
+            usedState.inUse = false;
+            usedState = null;
+        }
+    }
+
+    @Override
+    void initFrom( int from, double dist )
+    {
+        currFrom = treeFrom.create(EdgeIterator.NO_EDGE, from, dist, ShortestPathTree.NO_SLOT);
+        currFromKey = calcHeapKey(from, dist, false);
+        treeFrom.push(currFrom, currFromKey);
+        if (!traversalMode.isEdgeBased())
+        {
+            treeFrom.put(from, currFrom);
+            if (currTo != ShortestPathTree.NO_SLOT)
+                updateBestPath(GHUtility.getEdge(graph, from, treeTo.getAdjNode(currTo)), currFrom, from, false);
+
+        } else
+        {
+            if (currTo != ShortestPathTree.NO_SLOT && treeTo.getAdjNode(currTo) == from)
+            {
+                // special case of identical start and end
+                bestFrom = currFrom;
+                bestTo = currTo;
+                finishedFrom = true;
+                finishedTo = true;
+            }
+        }
+    }
+
+    @Override
+    void initTo( int to, double dist )
+    {
+        currTo = treeTo.create(EdgeIterator.NO_EDGE, to, dist, ShortestPathTree.NO_SLOT);
+        currToKey = calcHeapKey(to, dist, true);
+        treeTo.push(currTo, currToKey);
+        if (!traversalMode.isEdgeBased())
+        {
+            treeTo.put(to, currTo);
+            if (currFrom != ShortestPathTree.NO_SLOT)
+                updateBestPath(GHUtility.getEdge(graph, treeFrom.getAdjNode(currFrom), to), currTo, to, true);
+
+        } else
+        {
+            if (currFrom != ShortestPathTree.NO_SLOT && treeFrom.getAdjNode(currFrom) == to)
+            {
+                // special case of identical start and end
+                bestFrom = currFrom;
+                bestTo = currTo;
+                finishedFrom = true;
+                finishedTo = true;
+            }
+        }
+    }
+
+    @Override
+    protected Path createAndInitPath()
+    {
+        bestPath = new PathBidirRef(graph, flagEncoder);
+        return bestPath;
+    }
+
+    @Override
+    protected Path extractPath()
+    {
+        if (bestFrom != ShortestPathTree.NO_SLOT && bestTo != ShortestPathTree.NO_SLOT)
+        {
+            bestPath.setEdgeEntry(treeFrom.createEdgeEntry(bestFrom));
+            bestPath.setEdgeEntryTo(treeTo.createEdgeEntry(bestTo));
+        }
+        return bestPath.extract();
+    }
+
+    @Override
+    void checkState( int fromBase, int fromAdj, int toBase, int toAdj )
+    {
+        if (treeFrom.isEmpty() || treeTo.isEmpty())
+            throw new IllegalStateException("Either 'from'-edge or 'to'-edge is inaccessible. From:" + treeFrom.getSize() + ", to:" + treeTo.getSize());
+    }
+
+    @Override
+    boolean fillEdgesFrom()
+    {
+        if (treeFrom.isHeapEmpty())
+            return false;
+
+        currFromKey = treeFrom.peekKey();
+        currFrom = treeFrom.poll();
+        fillEdges(currFrom, treeFrom, outEdgeExplorer, false);
+        visitedCountFrom++;
+        return true;
+    }
+
+    @Override
+    boolean fillEdgesTo()
+    {
+        if (treeTo.isHeapEmpty())
+            return false;
+
+        currToKey = treeTo.peekKey();
+        currTo = treeTo.poll();
+        fillEdges(currTo, treeTo, inEdgeExplorer, true);
+        visitedCountTo++;
+        return true;
+    }
+
+    @Override
+    protected boolean finished()
+    {
+        if (finishedFrom || finishedTo)
+            return true;
+
+        return treeFrom.getWeight(currFrom) + treeTo.getWeight(currTo) >= bestPath.getWeight();
+    }
+
+    /**
+     * @return the key of the specified entry in the heap, which is its weight for Dijkstra
+     */
+    protected double calcHeapKey( int adjNode, double weight, boolean reverse )
+    {
+        return weight;
+    }
+
+    private void fillEdges( int currSlot, ShortestPathTree tree, EdgeExplorer explorer, boolean reverse )
+    {
+        int currEdge = tree.getEdge(currSlot);
+        double currWeight = tree.getWeight(currSlot);
+        EdgeIterator iter = explorer.setBaseNode(tree.getAdjNode(currSlot));
+        while (iter.next())
+        {
+            if (!accept(iter, currEdge))
+                continue;
+
+            int traversalId = traversalMode.createTraversalId(iter, reverse);
+            double tmpWeight = weighting.calcWeight(iter, reverse, currEdge) + currWeight;
+            if (Double.isInfinite(tmpWeight))
+                continue;
+
+            int slot = tree.get(traversalId);
+            if (slot == ShortestPathTree.NO_SLOT)
+            {
+                slot = tree.create(iter.getEdge(), iter.getAdjNode(), tmpWeight, currSlot);
+                tree.put(traversalId, slot);
+            } else if (tree.getWeight(slot) > tmpWeight)
+            {
+                tree.update(slot, iter.getEdge(), tmpWeight, currSlot);
+            } else
+                continue;
+
+            tree.push(slot, calcHeapKey(iter.getAdjNode(), tmpWeight, reverse));
+            updateBestPath(iter, slot, traversalId, reverse);
+        }
+    }
+
+    /**
+     * @param reverse true if the specified slot belongs to the backward search
+     */
+    private void updateBestPath( EdgeIteratorState edgeState, int currSlot, int traversalId, boolean reverse )
+    {
+        ShortestPathTree treeCurrent = reverse ? treeTo : treeFrom;
+        ShortestPathTree treeOther = reverse ? treeFrom : treeTo;
+        int otherSlot = treeOther.get(traversalId);
+        if (otherSlot == ShortestPathTree.NO_SLOT)
+            return;
+
+        // update μ
+        double newWeight = treeCurrent.getWeight(currSlot) + treeOther.getWeight(otherSlot);
+        if (traversalMode.isEdgeBased())
+        {
+            if (treeOther.getEdge(otherSlot) != treeCurrent.getEdge(currSlot))
+                throw new IllegalStateException("cannot happen for edge based execution of " + getName());
+
+            // see DijkstraBidirectionRef
+            if (treeOther.getAdjNode(otherSlot) != treeCurrent.getAdjNode(currSlot))
+            {
+                currSlot = treeCurrent.getParent(currSlot);
+                newWeight -= weighting.calcWeight(edgeState, reverse, EdgeIterator.NO_EDGE);
+            } else
+            {
+                // we detected a u-turn at meeting point, skip if not supported
+                if (!traversalMode.hasUTurnSupport())
+                    return;
+            }
+        }
+
+        if (newWeight < bestPath.getWeight())
+        {
+            bestPath.setWeight(newWeight);
+            bestFrom = reverse ? otherSlot : currSlot;
+            bestTo = reverse ? currSlot : otherSlot;
+        }
+    }
+
+    @Override
+    public String getName()
+    {
+        return AlgorithmOptions.DIJKSTRA_BI;
+    }
+
+    private static class SearchState
+    {
+        final ShortestPathTree treeFrom = new ShortestPathTree();
+        final ShortestPathTree treeTo = new ShortestPathTree();
+        boolean inUse;
+    }
+}
@@ -37,7 +37,7 @@ import com.graphhopper.util.GHUtility;
  * <p/>
  * 'Ref' stands for reference implementation and is using the normal Java-'reference'-way.
  * <p/>
- * @see DijkstraBidirection for an array based but more complicated version
+ * @see DijkstraBidirectionPrimitive for an array based version reusing its search state
  * @author Peter Karich
  */
 public class DijkstraBidirectionRef extends AbstractBidirAlgo
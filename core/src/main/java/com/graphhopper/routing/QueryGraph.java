@@ -19,6 +19,7 @@ package com.graphhopper.routing;
 
 import com.graphhopper.routing.util.AllEdgesIterator;
 import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.DefaultEdgeFilter;
 import com.graphhopper.storage.Graph;
 import com.graphhopper.storage.GraphExtension;
 import com.graphhopper.storage.NodeAccess;
@@ -38,12 +39,15 @@ import gnu.trove.set.hash.TIntHashSet;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A class which is used to query the underlying graph with real GPS points. It does so by
  * introducing virtual nodes and edges. It is lightweight in order to be created every time a new
- * query comes in, which makes the behaviour thread safe.
+ * query comes in, which makes the behaviour thread safe. To avoid even this creation under high
+ * load QueryGraphPool reuses one instance per thread.
  * <p/>
  * @author Peter Karich
  */
@@ -51,9 +55,21 @@ public class QueryGraph implements Graph
 {
     private final Graph mainGraph;
     private final NodeAccess mainNodeAccess;
-    private final int mainNodes;
-    private final int mainEdges;
+    private int mainNodes;
+    private int mainEdges;
     private List<QueryResult> queryResults;
+    private boolean initialized;
+    /**
+     * If true this graph is only used from one thread and reset between queries, which makes it
+     * possible to reuse the explorers of the main graph, see QueryGraphPool.
+     */
+    private final boolean reusable;
+    /**
+     * Only explorers with a DefaultEdgeFilter are cached. Its equality depends only on the
+     * encoder and the direction, which keeps these maps bounded for a long living instance.
+     */
+    private Map<DefaultEdgeFilter, List<EdgeExplorer>> freeMainExplorers;
+    private Map<DefaultEdgeFilter, List<EdgeExplorer>> usedMainExplorers;
     /**
      * Virtual edges are created between existing graph and new virtual tower nodes. For every
      * virtual node there are 4 edges: base-snap, snap-base, snap-adj, adj-snap.
@@ -68,11 +84,80 @@ public class QueryGraph implements Graph
     private final DistanceCalc distCalc = new DistancePlaneProjection();
 
     public QueryGraph( Graph graph )
+    {
+        this(graph, false);
+    }
+
+    QueryGraph( Graph graph, boolean reusable )
     {
         mainGraph = graph;
         mainNodeAccess = graph.getNodeAccess();
         mainNodes = graph.getNodes();
         mainEdges = graph.getAllEdges().getCount();
+        this.reusable = reusable;
+        if (reusable)
+        {
+            freeMainExplorers = new HashMap<DefaultEdgeFilter, List<EdgeExplorer>>();
+            usedMainExplorers = new HashMap<DefaultEdgeFilter, List<EdgeExplorer>>();
+        }
+    }
+
+    /**
+     * Removes the virtual nodes and edges of the last lookup so that lookup can be called again.
+     * The allocated lists and the explorers of the main graph are kept for the next query.
+     */
+    void reset()
+    {
+        if (!reusable)
+            throw new IllegalStateException("Only a reusable QueryGraph can be reset");
+
+        initialized = false;
+        mainNodes = mainGraph.getNodes();
+        mainEdges = mainGraph.getAllEdges().getCount();
+        if (queryResults != null)
+        {
+            queryResults.clear();
+            virtualEdges.clear();
+            virtualNodes.clear();
+        }
+
+        for (Map.Entry<DefaultEdgeFilter, List<EdgeExplorer>> entry : usedMainExplorers.entrySet())
+        {
+            List<EdgeExplorer> free = freeMainExplorers.get(entry.getKey());
+            if (free == null)
+                freeMainExplorers.put(entry.getKey(), entry.getValue());
+            else
+                free.addAll(entry.getValue());
+        }
+        usedMainExplorers.clear();
+    }
+
+    /**
+     * Explorers of the main graph can be shared between queries but never within one query, as
+     * every explorer of this graph is used independently. Other filters could be created per
+     * request and are not cached.
+     */
+    private EdgeExplorer createMainExplorer( EdgeFilter filter )
+    {
+        if (!reusable || filter.getClass() != DefaultEdgeFilter.class)
+            return mainGraph.createEdgeExplorer(filter);
+
+        DefaultEdgeFilter edgeFilter = (DefaultEdgeFilter) filter;
+        EdgeExplorer explorer;
+        List<EdgeExplorer> free = freeMainExplorers.get(edgeFilter);
+        if (free == null || free.isEmpty())
+            explorer = mainGraph.createEdgeExplorer(edgeFilter);
+        else
+            explorer = free.remove(free.size() - 1);
+
+        List<EdgeExplorer> used = usedMainExplorers.get(edgeFilter);
+        if (used == null)
+        {
+            used = new ArrayList<EdgeExplorer>(2);
+            usedMainExplorers.put(edgeFilter, used);
+        }
+        used.add(explorer);
+        return explorer;
     }
 
     public Graph getOriginalGraph()
@@ -101,9 +186,13 @@ public class QueryGraph implements Graph
         if (isInitialized())
             throw new IllegalStateException("Call lookup only once. Otherwise you'll have problems for queries sharing the same edge.");
 
-        virtualEdges = new ArrayList<EdgeIteratorState>(resList.size() * 2);
-        virtualNodes = new PointList(resList.size(), mainNodeAccess.is3D());
-        queryResults = new ArrayList<QueryResult>(resList.size());
+        initialized = true;
+        if (queryResults == null)
+        {
+            virtualEdges = new ArrayList<EdgeIteratorState>(resList.size() * 2);
+            virtualNodes = new PointList(resList.size(), mainNodeAccess.is3D());
+            queryResults = new ArrayList<QueryResult>(resList.size());
+        }
 
         TIntObjectMap<List<QueryResult>> edge2res = new TIntObjectHashMap<List<QueryResult>>(resList.size());
 
@@ -421,7 +510,7 @@ public class QueryGraph implements Graph
         final TIntObjectMap<VirtualEdgeIterator> node2EdgeMap
                 = new TIntObjectHashMap<VirtualEdgeIterator>(queryResults.size() * 3);
 
-        final EdgeExplorer mainExplorer = mainGraph.createEdgeExplorer(edgeFilter);
+        final EdgeExplorer mainExplorer = createMainExplorer(edgeFilter);
         final TIntHashSet towerNodesToChange = new TIntHashSet(queryResults.size());
 
         // 1. virtualEdges should also get fresh EdgeIterators on every createEdgeExplorer call!        
@@ -528,7 +617,7 @@ public class QueryGraph implements Graph
 
     private boolean isInitialized()
     {
-        return queryResults != null;
+        return initialized;
     }
 
     @Override
@@ -734,13 +823,14 @@ public class QueryGraph implements Graph
         @Override
         public int getSkippedEdge1()
         {
-            throw new UnsupportedOperationException("Not supported.");
+            // will be called only if isShortcut is true e.g. to unpack shortcuts
+            return ((EdgeSkipIterState) edges.get(current)).getSkippedEdge1();
         }
 
         @Override
         public int getSkippedEdge2()
         {
-            throw new UnsupportedOperationException("Not supported.");
+            return ((EdgeSkipIterState) edges.get(current)).getSkippedEdge2();
         }
 
         @Override
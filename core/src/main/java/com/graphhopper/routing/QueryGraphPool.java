@@ -0,0 +1,173 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.storage.Graph;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps one QueryGraph per thread and routing graph so that its virtual node structures and the
+ * explorers of the main graph are reused instead of recreated for every request. A QueryGraph
+ * from this pool is valid between begin and end, then it is reset and handed out again:
+ * <pre>
+ * pool.begin();
+ * try {
+ *   QueryGraph qGraph = pool.create(graph);
+ *   ...
+ * } finally {
+ *   pool.end();
+ * }
+ * </pre>
+ * Calls of begin and end can be nested. Outside of begin and end create returns a new QueryGraph.
+ * <p/>
+ * @author Peter Karich
+ */
+public class QueryGraphPool
+{
+    private volatile ThreadLocal<ThreadPool> threadPools = createThreadPools();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Starts a new scope for the current thread, all QueryGraphs created until the corresponding
+     * end call can be used.
+     */
+    public void begin()
+    {
+        threadPools.get().depth++;
+    }
+
+    /**
+     * Releases all QueryGraphs created in the current scope of this thread.
+     */
+    public void end()
+    {
+        ThreadPool pool = threadPools.get();
+        if (pool.depth <= 0)
+            throw new IllegalStateException("end called without begin");
+
+        for (Entry entry : pool.entries)
+        {
+            if (entry.depth == pool.depth)
+                entry.depth = 0;
+        }
+        pool.depth--;
+    }
+
+    /**
+     * @return a QueryGraph for the specified graph where lookup was not yet called
+     */
+    public QueryGraph create( Graph graph )
+    {
+        ThreadPool pool = threadPools.get();
+        if (pool.depth == 0)
+            return new QueryGraph(graph);
+
+        for (Entry entry : pool.entries)
+        {
+            if (entry.depth == 0 && entry.queryGraph.getOriginalGraph() == graph)
+            {
+                entry.queryGraph.reset();
+                entry.depth = pool.depth;
+                hits.incrementAndGet();
+                return entry.queryGraph;
+            }
+        }
+
+        misses.incrementAndGet();
+        Entry entry = new Entry(new QueryGraph(graph, true));
+        entry.depth = pool.depth;
+        pool.entries.add(entry);
+        return entry.queryGraph;
+    }
+
+    /**
+     * Releases the QueryGraphs of all threads, e.g. when the underlying graph is closed. The
+     * entries of other threads are dropped by replacing the ThreadLocal, so this must not be
+     * called while a thread is between begin and end.
+     */
+    public void clear()
+    {
+        threadPools.remove();
+        threadPools = createThreadPools();
+    }
+
+    private static ThreadLocal<ThreadPool> createThreadPools()
+    {
+        return new ThreadLocal<ThreadPool>()
+        {
+            @Override
+            protected ThreadPool initialValue()
+            {
+                return new ThreadPool();
+            }
+        };
+    }
+
+    /**
+     * @return the number of QueryGraphs which were reused
+     */
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of QueryGraphs which had to be created
+     */
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * @return the fraction of reused QueryGraphs or 0 if nothing was requested yet
+     */
+    public double getHitRate()
+    {
+        long tmpHits = hits.get();
+        long sum = tmpHits + misses.get();
+        return sum == 0 ? 0 : (double) tmpHits / sum;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "hits:" + getHits() + ", misses:" + getMisses();
+    }
+
+    private static class ThreadPool
+    {
+        final List<Entry> entries = new ArrayList<Entry>(2);
+        int depth;
+    }
+
+    private static class Entry
+    {
+        final QueryGraph queryGraph;
+        // 0 if free, otherwise the depth of the scope which uses this QueryGraph
+        int depth;
+
+        public Entry( QueryGraph queryGraph )
+        {
+            this.queryGraph = queryGraph;
+        }
+    }
+}
@@ -31,14 +31,23 @@ public class RoutingAlgorithmFactorySimple implements RoutingAlgorithmFactory
     {
         AbstractRoutingAlgorithm algo;
         String algoStr = opts.getAlgorithm();
+        boolean reuseSearchState = opts.getHints().getBool(AlgorithmOptions.REUSE_SEARCH_STATE, false);
         if (AlgorithmOptions.DIJKSTRA_BI.equalsIgnoreCase(algoStr))
         {
+            if (reuseSearchState)
+                return new DijkstraBidirectionPrimitive(g, opts.getFlagEncoder(), opts.getWeighting(), opts.getTraversalMode());
+
             return new DijkstraBidirectionRef(g, opts.getFlagEncoder(), opts.getWeighting(), opts.getTraversalMode());
         } else if (AlgorithmOptions.DIJKSTRA.equalsIgnoreCase(algoStr))
         {
             return new Dijkstra(g, opts.getFlagEncoder(), opts.getWeighting(), opts.getTraversalMode());
         } else if (AlgorithmOptions.ASTAR_BI.equalsIgnoreCase(algoStr))
         {
+            if (reuseSearchState)
+                return new AStarBidirectionPrimitive(g, opts.getFlagEncoder(), opts.getWeighting(), opts.getTraversalMode()).
+                        setApproximation(opts.getHints().getBool(AlgorithmOptions.ASTAR_BI + ".approximation", false)).
+                        setApproximationFactor(opts.getHints().getDouble(AlgorithmOptions.ASTAR_BI + ".approximation_factor", 1.2));
+
             return new AStarBidirection(g, opts.getFlagEncoder(), opts.getWeighting(), opts.getTraversalMode()).
                     setApproximation(opts.getHints().getBool(AlgorithmOptions.ASTAR_BI + ".approximation", false)).
                     setApproximationFactor(opts.getHints().getDouble(AlgorithmOptions.ASTAR_BI + ".approximation_factor", 1.2));
@@ -0,0 +1,371 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.storage.EdgeEntry;
+import com.graphhopper.util.NotThreadSafe;
+import java.util.Arrays;
+
+/**
+ * The search state of one direction of a bidirectional search stored in primitive arrays only.
+ * Every entry gets a slot which holds the edge, the adjacent node, the weight and the parent slot.
+ * The traversal ids are mapped to slots via an open addressing table and the slots not yet settled
+ * are kept in a binary heap with decrease-key support.
+ * <p/>
+ * The arrays grow with the number of visited entries and are not released on clear. The table is
+ * cleared in constant time by increasing its version, so the same instance can be reused for many
+ * queries without creating garbage.
+ * <p/>
+ * @author Peter Karich
+ */
+@NotThreadSafe
+public class ShortestPathTree
+{
+    public static final int NO_SLOT = -1;
+    private static final int NO_KEY = -1;
+    private static final int NOT_IN_HEAP = -1;
+    // open addressing table from traversal id to slot, a bucket is only used if it has the current version
+    private int[] tableKeys;
+    private int[] tableSlots;
+    private int[] tableVersions;
+    private int tableMask;
+    private int version = 1;
+    // the entries
+    private int size;
+    private int[] keys;
+    private int[] edges;
+    private int[] adjNodes;
+    private int[] parents;
+    private int[] heapPositions;
+    private double[] weights;
+    // binary heap of slots
+    private int heapSize;
+    private int[] heapSlots;
+    private double[] heapKeys;
+
+    public ShortestPathTree()
+    {
+        this(1 << 10);
+    }
+
+    /**
+     * @param capacity the number of entries which can be stored without growing
+     */
+    public ShortestPathTree( int capacity )
+    {
+        capacity = Math.max(16, capacity);
+        keys = new int[capacity];
+        edges = new int[capacity];
+        adjNodes = new int[capacity];
+        parents = new int[capacity];
+        heapPositions = new int[capacity];
+        weights = new double[capacity];
+        heapSlots = new int[capacity];
+        heapKeys = new double[capacity];
+        initTable(Integer.highestOneBit(capacity) << 2);
+    }
+
+    private void initTable( int tableSize )
+    {
+        tableKeys = new int[tableSize];
+        tableSlots = new int[tableSize];
+        tableVersions = new int[tableSize];
+        tableMask = tableSize - 1;
+    }
+
+    /**
+     * Removes all entries but keeps the allocated memory.
+     */
+    public void clear()
+    {
+        size = 0;
+        heapSize = 0;
+        if (version == Integer.MAX_VALUE)
+        {
+            Arrays.fill(tableVersions, 0);
+            version = 0;
+        }
+        version++;
+    }
+
+    /**
+     * @return the number of entries
+     */
+    public int getSize()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Creates a new entry which is not yet reachable via its traversal id, see put.
+     * <p/>
+     * @return the slot of the new entry
+     */
+    public int create( int edge, int adjNode, double weight, int parentSlot )
+    {
+        if (size == keys.length)
+            grow();
+
+        int slot = size;
+        size++;
+        keys[slot] = NO_KEY;
+        edges[slot] = edge;
+        adjNodes[slot] = adjNode;
+        weights[slot] = weight;
+        parents[slot] = parentSlot;
+        heapPositions[slot] = NOT_IN_HEAP;
+        return slot;
+    }
+
+    /**
+     * Changes edge, weight and parent of the entry in the specified slot.
+     */
+    public void update( int slot, int edge, double weight, int parentSlot )
+    {
+        edges[slot] = edge;
+        weights[slot] = weight;
+        parents[slot] = parentSlot;
+    }
+
+    /**
+     * Associates the specified traversal id with the specified slot.
+     */
+    public void put( int traversalId, int slot )
+    {
+        if (traversalId < 0)
+            throw new IllegalArgumentException("traversal id cannot be negative " + traversalId);
+
+        // keep the load factor below 0.5
+        if (size * 2 > tableMask)
+            rehash();
+
+        keys[slot] = traversalId;
+        insertIntoTable(traversalId, slot);
+    }
+
+    /**
+     * @return the slot for the specified traversal id or NO_SLOT
+     */
+    public int get( int traversalId )
+    {
+        int bucket = hash(traversalId) & tableMask;
+        while (tableVersions[bucket] == version)
+        {
+            if (tableKeys[bucket] == traversalId)
+                return tableSlots[bucket];
+
+            bucket = (bucket + 1) & tableMask;
+        }
+        return NO_SLOT;
+    }
+
+    private void insertIntoTable( int traversalId, int slot )
+    {
+        int bucket = hash(traversalId) & tableMask;
+        while (tableVersions[bucket] == version)
+        {
+            if (tableKeys[bucket] == traversalId)
+                break;
+
+            bucket = (bucket + 1) & tableMask;
+        }
+        tableVersions[bucket] = version;
+        tableKeys[bucket] = traversalId;
+        tableSlots[bucket] = slot;
+    }
+
+    private static int hash( int key )
+    {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void rehash()
+    {
+        initTable((tableMask + 1) * 2);
+        for (int slot = 0; slot < size; slot++)
+        {
+            if (keys[slot] != NO_KEY)
+                insertIntoTable(keys[slot], slot);
+        }
+    }
+
+    private void grow()
+    {
+        int newCapacity = keys.length * 2;
+        keys = Arrays.copyOf(keys, newCapacity);
+        edges = Arrays.copyOf(edges, newCapacity);
+        adjNodes = Arrays.copyOf(adjNodes, newCapacity);
+        parents = Arrays.copyOf(parents, newCapacity);
+        heapPositions = Arrays.copyOf(heapPositions, newCapacity);
+        weights = Arrays.copyOf(weights, newCapacity);
+        heapSlots = Arrays.copyOf(heapSlots, newCapacity);
+        heapKeys = Arrays.copyOf(heapKeys, newCapacity);
+    }
+
+    public int getEdge( int slot )
+    {
+        return edges[slot];
+    }
+
+    public int getAdjNode( int slot )
+    {
+        return adjNodes[slot];
+    }
+
+    public double getWeight( int slot )
+    {
+        return weights[slot];
+    }
+
+    public int getParent( int slot )
+    {
+        return parents[slot];
+    }
+
+    /**
+     * Creates the EdgeEntry objects from the specified slot up to the root e.g. to extract a path.
+     */
+    public EdgeEntry createEdgeEntry( int slot )
+    {
+        EdgeEntry entry = new EdgeEntry(edges[slot], adjNodes[slot], weights[slot]);
+        EdgeEntry curr = entry;
+        int parent = parents[slot];
+        while (parent != NO_SLOT)
+        {
+            curr.parent = new EdgeEntry(edges[parent], adjNodes[parent], weights[parent]);
+            curr = curr.parent;
+            parent = parents[parent];
+        }
+        return entry;
+    }
+
+    public boolean isHeapEmpty()
+    {
+        return heapSize == 0;
+    }
+
+    /**
+     * Inserts the specified slot into the heap or changes its key if it is already in the heap.
+     */
+    public void push( int slot, double key )
+    {
+        int pos = heapPositions[slot];
+        if (pos == NOT_IN_HEAP)
+        {
+            pos = heapSize;
+            heapSize++;
+        } else if (key > heapKeys[pos])
+        {
+            heapKeys[pos] = key;
+            siftDown(pos);
+            return;
+        }
+        siftUp(pos, slot, key);
+    }
+
+    /**
+     * @return the smallest key in the heap, i.e. the key of the slot which poll returns next
+     */
+    public double peekKey()
+    {
+        if (heapSize == 0)
+            throw new IllegalStateException("heap is empty");
+
+        return heapKeys[0];
+    }
+
+    /**
+     * Removes the slot with the smallest key from the heap.
+     */
+    public int poll()
+    {
+        if (heapSize == 0)
+            throw new IllegalStateException("heap is empty");
+
+        int slot = heapSlots[0];
+        heapPositions[slot] = NOT_IN_HEAP;
+        heapSize--;
+        if (heapSize > 0)
+        {
+            int lastSlot = heapSlots[heapSize];
+            heapSlots[0] = lastSlot;
+            heapKeys[0] = heapKeys[heapSize];
+            heapPositions[lastSlot] = 0;
+            siftDown(0);
+        }
+        return slot;
+    }
+
+    private void siftUp( int pos, int slot, double key )
+    {
+        while (pos > 0)
+        {
+            int parentPos = (pos - 1) >> 1;
+            if (heapKeys[parentPos] <= key)
+                break;
+
+            heapSlots[pos] = heapSlots[parentPos];
+            heapKeys[pos] = heapKeys[parentPos];
+            heapPositions[heapSlots[pos]] = pos;
+            pos = parentPos;
+        }
+        heapSlots[pos] = slot;
+        heapKeys[pos] = key;
+        heapPositions[slot] = pos;
+    }
+
+    private void siftDown( int pos )
+    {
+        int slot = heapSlots[pos];
+        double key = heapKeys[pos];
+        while (true)
+        {
+            int child = 2 * pos + 1;
+            if (child >= heapSize)
+                break;
+
+            if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child])
+                child++;
+
+            if (heapKeys[child] >= key)
+                break;
+
+            heapSlots[pos] = heapSlots[child];
+            heapKeys[pos] = heapKeys[child];
+            heapPositions[heapSlots[pos]] = pos;
+            pos = child;
+        }
+        heapSlots[pos] = slot;
+        heapKeys[pos] = key;
+        heapPositions[slot] = pos;
+    }
+
+    /**
+     * @return the allocated memory in bytes
+     */
+    public long getCapacity()
+    {
+        return (long) keys.length * (6 * 4 + 2 * 8) + (long) tableKeys.length * 3 * 4;
+    }
+}
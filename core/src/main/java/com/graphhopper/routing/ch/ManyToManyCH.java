@@ -0,0 +1,360 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.routing.util.DefaultEdgeFilter;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.Weighting;
+import com.graphhopper.storage.EdgeEntry;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.EdgeSkipIterState;
+import com.graphhopper.util.NotThreadSafe;
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.TLongLongMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TLongLongHashMap;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * Calculates the weight, distance and time between many start and many end nodes on a graph
+ * prepared via PrepareContractionHierarchies. Instead of one bidirectional search per pair it does
+ * one upward backward search per end node, stores the settled nodes in buckets and then scans
+ * these buckets in one upward forward search per start node. See "Computing Many-to-Many Shortest
+ * Paths Using Highway Hierarchies" by Knopp et al.
+ * <p/>
+ * Use a new QueryGraph with all points looked up once and call calcMatrix. Unreachable entries
+ * have a weight of Double.MAX_VALUE and a negative distance and time.
+ * <p/>
+ * @author Peter Karich
+ */
+@NotThreadSafe
+public class ManyToManyCH
+{
+    private static final int NO_ENTRY = -1;
+    private final Graph graph;
+    private final FlagEncoder flagEncoder;
+    private final Weighting weighting;
+    private final EdgeExplorer outEdgeExplorer;
+    private final EdgeExplorer inEdgeExplorer;
+    private EdgeFilter additionalEdgeFilter;
+    private TIntObjectMap<MatrixEntry> searchMap;
+    private PriorityQueue<MatrixEntry> searchHeap;
+    // the buckets are single linked lists stored in primitive arrays, the head is stored per node
+    private TIntIntMap bucketHeads;
+    private final TIntArrayList bucketNext = new TIntArrayList();
+    private final TIntArrayList bucketTarget = new TIntArrayList();
+    private final TDoubleArrayList bucketWeight = new TDoubleArrayList();
+    private final TDoubleArrayList bucketDistance = new TDoubleArrayList();
+    private final TLongArrayList bucketMillis = new TLongArrayList();
+    // unpacking shortcuts for the time is expensive so cache it per query
+    private final TLongLongMap shortcutMillis = new TLongLongHashMap();
+    private int initialCollectionSize = 1000;
+    private int visitedNodes;
+    private double[][] weights;
+    private double[][] distances;
+    private long[][] millis;
+
+    public ManyToManyCH( Graph graph, FlagEncoder encoder, Weighting weighting )
+    {
+        this.graph = graph;
+        this.flagEncoder = encoder;
+        this.weighting = weighting;
+        outEdgeExplorer = graph.createEdgeExplorer(new DefaultEdgeFilter(flagEncoder, false, true));
+        inEdgeExplorer = graph.createEdgeExplorer(new DefaultEdgeFilter(flagEncoder, true, false));
+    }
+
+    public ManyToManyCH setEdgeFilter( EdgeFilter additionalEdgeFilter )
+    {
+        this.additionalEdgeFilter = additionalEdgeFilter;
+        return this;
+    }
+
+    /**
+     * The upward search spaces are small compared to a normal Dijkstra, so the collections should
+     * not be too big. E.g. a 500km query only traverses roughly 2000 nodes.
+     */
+    public ManyToManyCH setInitialCollectionSize( int initialCollectionSize )
+    {
+        this.initialCollectionSize = initialCollectionSize;
+        return this;
+    }
+
+    /**
+     * Calculates all entries of the matrix fromNodes x toNodes. Fetch the results afterwards via
+     * getWeights, getDistances and getMillis.
+     */
+    public ManyToManyCH calcMatrix( int[] fromNodes, int[] toNodes )
+    {
+        int rows = fromNodes.length;
+        int cols = toNodes.length;
+        weights = new double[rows][cols];
+        distances = new double[rows][cols];
+        millis = new long[rows][cols];
+        for (int i = 0; i < rows; i++)
+        {
+            Arrays.fill(weights[i], Double.MAX_VALUE);
+            Arrays.fill(distances[i], -1);
+            Arrays.fill(millis[i], -1);
+        }
+
+        visitedNodes = 0;
+        searchMap = new TIntObjectHashMap<MatrixEntry>(initialCollectionSize);
+        searchHeap = new PriorityQueue<MatrixEntry>(initialCollectionSize);
+        bucketHeads = new TIntIntHashMap(initialCollectionSize, 0.5f, -1, NO_ENTRY);
+        bucketNext.resetQuick();
+        bucketTarget.resetQuick();
+        bucketWeight.resetQuick();
+        bucketDistance.resetQuick();
+        bucketMillis.resetQuick();
+        shortcutMillis.clear();
+
+        // 1. backward searches fill the buckets
+        for (int col = 0; col < cols; col++)
+        {
+            fillBuckets(toNodes[col], col);
+        }
+
+        // 2. forward searches scan the buckets
+        for (int row = 0; row < rows; row++)
+        {
+            scanBuckets(fromNodes[row], row);
+        }
+
+        searchMap = null;
+        searchHeap = null;
+        bucketHeads = null;
+        return this;
+    }
+
+    private void fillBuckets( int toNode, final int col )
+    {
+        search(toNode, true, new SettledHandler()
+        {
+            @Override
+            public void settled( MatrixEntry entry )
+            {
+                int index = bucketTarget.size();
+                bucketTarget.add(col);
+                bucketWeight.add(entry.weight);
+                bucketDistance.add(entry.distance);
+                bucketMillis.add(entry.millis);
+                bucketNext.add(bucketHeads.get(entry.adjNode));
+                bucketHeads.put(entry.adjNode, index);
+            }
+        });
+    }
+
+    private void scanBuckets( int fromNode, final int row )
+    {
+        final double[] rowWeights = weights[row];
+        final double[] rowDistances = distances[row];
+        final long[] rowMillis = millis[row];
+        search(fromNode, false, new SettledHandler()
+        {
+            @Override
+            public void settled( MatrixEntry entry )
+            {
+                int index = bucketHeads.get(entry.adjNode);
+                while (index != NO_ENTRY)
+                {
+                    int col = bucketTarget.get(index);
+                    double tmpWeight = entry.weight + bucketWeight.get(index);
+                    if (tmpWeight < rowWeights[col])
+                    {
+                        rowWeights[col] = tmpWeight;
+                        rowDistances[col] = entry.distance + bucketDistance.get(index);
+                        rowMillis[col] = entry.millis + bucketMillis.get(index);
+                    }
+                    index = bucketNext.get(index);
+                }
+            }
+        });
+    }
+
+    /**
+     * A full upward search from the specified node. As edges from higher to lower nodes are
+     * removed while preparation there is no need to stop this search earlier.
+     */
+    private void search( int node, boolean reverse, SettledHandler handler )
+    {
+        searchMap.clear();
+        searchHeap.clear();
+        EdgeExplorer explorer = reverse ? inEdgeExplorer : outEdgeExplorer;
+        MatrixEntry currEntry = new MatrixEntry(EdgeIterator.NO_EDGE, node, 0);
+        searchMap.put(node, currEntry);
+        while (true)
+        {
+            visitedNodes++;
+            handler.settled(currEntry);
+            EdgeIterator iter = explorer.setBaseNode(currEntry.adjNode);
+            while (iter.next())
+            {
+                if (iter.getEdge() == currEntry.edge
+                        || additionalEdgeFilter != null && !additionalEdgeFilter.accept(iter))
+                    continue;
+
+                double tmpWeight = weighting.calcWeight(iter, reverse, currEntry.edge) + currEntry.weight;
+                if (Double.isInfinite(tmpWeight))
+                    continue;
+
+                int adjNode = iter.getAdjNode();
+                MatrixEntry entry = searchMap.get(adjNode);
+                if (entry == null)
+                {
+                    entry = new MatrixEntry(iter.getEdge(), adjNode, tmpWeight);
+                    searchMap.put(adjNode, entry);
+                } else if (entry.weight > tmpWeight)
+                {
+                    searchHeap.remove(entry);
+                    entry.edge = iter.getEdge();
+                    entry.weight = tmpWeight;
+                } else
+                    continue;
+
+                entry.parent = currEntry;
+                entry.distance = currEntry.distance + iter.getDistance();
+                entry.millis = currEntry.millis + calcMillis(iter, reverse);
+                searchHeap.add(entry);
+            }
+
+            if (searchHeap.isEmpty())
+                return;
+
+            currEntry = searchHeap.poll();
+        }
+    }
+
+    /**
+     * Calculates the time of the specified edge where shortcuts are recursively unpacked similar to
+     * Path4CH.
+     */
+    long calcMillis( EdgeIteratorState edgeState, boolean reverse )
+    {
+        if (!(edgeState instanceof EdgeSkipIterState) || !((EdgeSkipIterState) edgeState).isShortcut())
+        {
+            long flags = edgeState.getFlags();
+            double speed = reverse ? flagEncoder.getReverseSpeed(flags) : flagEncoder.getSpeed(flags);
+            if (Double.isInfinite(speed) || Double.isNaN(speed) || speed <= 0)
+                throw new IllegalStateException("Invalid speed stored in edge! " + speed);
+
+            return (long) (edgeState.getDistance() * 3600 / speed);
+        }
+
+        EdgeSkipIterState mainEdgeState = (EdgeSkipIterState) edgeState;
+        int from = mainEdgeState.getBaseNode(), to = mainEdgeState.getAdjNode();
+        if (reverse)
+        {
+            int tmp = from;
+            from = to;
+            to = tmp;
+        }
+
+        long key = ((long) mainEdgeState.getEdge() << 32) | from;
+        long time = shortcutMillis.get(key);
+        if (time > 0)
+            return time;
+
+        // getEdgeProps could possibly return an empty edge if the shortcut is available for both directions
+        int skippedEdge1 = mainEdgeState.getSkippedEdge1();
+        int skippedEdge2 = mainEdgeState.getSkippedEdge2();
+        EdgeIteratorState iter = graph.getEdgeProps(skippedEdge1, from);
+        boolean empty = iter == null;
+        if (empty)
+            iter = graph.getEdgeProps(skippedEdge2, from);
+
+        time = calcMillis(iter, true);
+
+        if (empty)
+            iter = graph.getEdgeProps(skippedEdge1, to);
+        else
+            iter = graph.getEdgeProps(skippedEdge2, to);
+
+        time += calcMillis(iter, false);
+        shortcutMillis.put(key, time);
+        return time;
+    }
+
+    /**
+     * @return the weights where unreachable entries are Double.MAX_VALUE
+     */
+    public double[][] getWeights()
+    {
+        return weights;
+    }
+
+    /**
+     * @return distances in meter where unreachable entries are negative
+     */
+    public double[][] getDistances()
+    {
+        return distances;
+    }
+
+    /**
+     * @return times in millis where unreachable entries are negative
+     */
+    public long[][] getMillis()
+    {
+        return millis;
+    }
+
+    /**
+     * Returns the visited nodes of all searches done in the last calcMatrix call.
+     */
+    public int getVisitedNodes()
+    {
+        return visitedNodes;
+    }
+
+    public String getName()
+    {
+        return "manyToManyCH";
+    }
+
+    @Override
+    public String toString()
+    {
+        return getName() + "|" + weighting;
+    }
+
+    private interface SettledHandler
+    {
+        void settled( MatrixEntry entry );
+    }
+
+    private static class MatrixEntry extends EdgeEntry
+    {
+        double distance;
+        long millis;
+
+        public MatrixEntry( int edgeId, int adjNode, double weight )
+        {
+            super(edgeId, adjNode, weight);
+        }
+    }
+}
@@ -17,6 +17,8 @@
  */
 package com.graphhopper.routing.ch;
 
+import com.graphhopper.coll.GHBitSetImpl;
+import com.graphhopper.coll.GHTBitSet;
 import com.graphhopper.coll.GHTreeMapComposed;
 import com.graphhopper.routing.*;
 import com.graphhopper.routing.util.AbstractAlgoPreparation;
@@ -33,7 +35,12 @@ import com.graphhopper.storage.LevelGraph;
 import com.graphhopper.storage.LevelGraphStorage;
 import com.graphhopper.storage.NodeAccess;
 import com.graphhopper.util.*;
+import gnu.trove.list.array.TIntArrayList;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -47,6 +54,10 @@ import org.slf4j.LoggerFactory;
  * The only difference is that we use two skipped edges instead of one skipped node for faster
  * unpacking.
  * <p/>
+ * With setThreads bigger than 1 independent sets of nodes are contracted concurrently where every
+ * worker thread has its own witness search. The graph itself is only changed from the calling
+ * thread in a fixed order, so the created shortcuts do not depend on the number of threads.
+ * <p/>
  * @author Peter Karich
  */
 public class PrepareContractionHierarchies extends AbstractAlgoPreparation implements RoutingAlgorithmFactory
@@ -54,27 +65,28 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
     private final Logger logger = LoggerFactory.getLogger(getClass());
     private final PreparationWeighting prepareWeighting;
     private final FlagEncoder prepareFlagEncoder;
+    // the access bits of the encoder are used as direction flags of the shortcuts
+    private final long scFwdDir;
+    private final long scDirMask;
     private final TraversalMode traversalMode;
-    private EdgeSkipExplorer vehicleInExplorer;
-    private EdgeSkipExplorer vehicleOutExplorer;
     private EdgeSkipExplorer vehicleAllExplorer;
     private EdgeSkipExplorer vehicleAllTmpExplorer;
-    private EdgeSkipExplorer calcPrioAllExplorer;
     private final LevelGraph prepareGraph;
     // the most important nodes comes last
     private GHTreeMapComposed sortedNodes;
     private int oldPriorities[];
     private final DataAccess originalEdges;
-    private final Map<Shortcut, Shortcut> shortcuts = new HashMap<Shortcut, Shortcut>();
-    private IgnoreNodeFilter ignoreNodeFilter;
-    private DijkstraOneToMany prepareAlgo;
+    // one witness search per thread, the first one is also used for all sequential work
+    private WitnessSearch[] witnessSearches;
+    private WitnessSearch mainSearch;
+    private ExecutorService executorService;
+    // nodes contracted in the current parallel round, ignored in all witness searches of this round
+    private GHBitSetImpl contractingNodes;
     private boolean removesHigher2LowerEdges = true;
     private long counter;
     private int newShortcuts;
-    private long dijkstraCount;
     private double meanDegree;
     private final Random rand = new Random(123);
-    private StopWatch dijkstraSW = new StopWatch();
     private final StopWatch allSW = new StopWatch();
     private int periodicUpdatesPercentage = 20;
     private int lastNodesLazyUpdatePercentage = 10;
@@ -82,16 +94,21 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
     private int initialCollectionSize = 5000;
     private double nodesContractedPercentage = 100;
     private double logMessagesPercentage = 20;
+    private int threads = 1;
+    // limits the nodes polled per round of the parallel contraction
+    private final int maxRoundSize = 1000;
 
     public PrepareContractionHierarchies( LevelGraph g, FlagEncoder encoder, Weighting weighting, TraversalMode traversalMode )
     {
         this.prepareGraph = g;
         this.traversalMode = traversalMode;
         this.prepareFlagEncoder = encoder;
-        long scFwdDir = encoder.setAccess(0, true, false);
+        scFwdDir = encoder.setAccess(0, true, false);
+        scDirMask = encoder.setAccess(0, true, true);
 
-        // shortcuts store weight in flags where we assume bit 1 and 2 are used for access restriction
-        if ((scFwdDir & PrepareEncoder.getScFwdDir()) == 0)
+        // LevelGraphStorage stores the weight in the flags of a shortcut where we assume bit 1 and 2
+        // are used for access restriction. Use a LevelGraphOverlay per vehicle for more vehicles.
+        if (g instanceof LevelGraphStorage && (scFwdDir & PrepareEncoder.getScFwdDir()) == 0)
             throw new IllegalArgumentException("Currently only one vehicle is supported if you enable CH. "
                     + "It seems that you have imported more than one.");
 
@@ -186,7 +203,7 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
      * Disconnect is very important to improve query time and preparation if enabled. It will remove
      * the edge going from the higher level node to the currently contracted one. But the original
      * graph is no longer available, so it is only useful for bidirectional CH algorithms. Default
-     * is true.
+     * is true. Only supported for LevelGraphStorage as a LevelGraphOverlay shares the base graph.
      */
     public PrepareContractionHierarchies setRemoveHigher2LowerEdges( boolean removeHigher2LowerEdges )
     {
@@ -194,6 +211,21 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
         return this;
     }
 
+    /**
+     * Specifies the number of threads used for the witness searches and the priority calculation.
+     * More than one thread contracts independent sets of nodes concurrently, which is a lot faster
+     * for big graphs but creates slightly more shortcuts and skips the lazy updates. The result is
+     * identical for every number of threads bigger than 1. Default is 1.
+     */
+    public PrepareContractionHierarchies setThreads( int threads )
+    {
+        if (threads < 1)
+            return this;
+
+        this.threads = threads;
+        return this;
+    }
+
     @Override
     public void doWork()
     {
@@ -203,6 +235,10 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
         if (prepareWeighting == null)
             throw new IllegalStateException("No weight calculation set.");
 
+        if (removesHigher2LowerEdges && !(prepareGraph instanceof LevelGraphStorage))
+            throw new IllegalStateException("Removing edges is only supported for LevelGraphStorage, "
+                    + "use setRemoveHigher2LowerEdges(false) for " + prepareGraph.getClass().getSimpleName());
+
         allSW.start();
         super.doWork();
 
@@ -210,10 +246,26 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
         if (!prepareEdges())
             return;
 
-        if (!prepareNodes())
-            return;
+        if (threads > 1)
+            executorService = Executors.newFixedThreadPool(threads);
+
+        try
+        {
+            if (!prepareNodes())
+                return;
 
-        contractNodes();
+            if (threads > 1)
+                contractNodesParallel();
+            else
+                contractNodes();
+        } finally
+        {
+            if (executorService != null)
+            {
+                executorService.shutdown();
+                executorService = null;
+            }
+        }
     }
 
     boolean prepareEdges()
@@ -234,6 +286,12 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
     // TODO we could avoid the second storage for skippedEdge as we could store that info into linkB or A if it is disconnected
     boolean prepareNodes()
     {
+        if (threads > 1)
+        {
+            calculateAllPrioritiesParallel();
+            return !sortedNodes.isEmpty();
+        }
+
         int len = prepareGraph.getNodes();
 
         for (int node = 0; node < len; node++)
@@ -285,7 +343,6 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
             neighborUpdate = false;
 
         StopWatch neighborSW = new StopWatch();
-        LevelGraphStorage lg = ((LevelGraphStorage) prepareGraph);
         while (!sortedNodes.isEmpty())
         {
             // periodically update priorities of ALL nodes            
@@ -293,10 +350,10 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
             {
                 periodSW.start();
                 sortedNodes.clear();
-                int len = lg.getNodes();
+                int len = prepareGraph.getNodes();
                 for (int node = 0; node < len; node++)
                 {
-                    if (lg.getLevel(node) != 0)
+                    if (prepareGraph.getLevel(node) != 0)
                         continue;
 
                     int priority = oldPriorities[node] = calculatePriority(node);
@@ -313,15 +370,15 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
                 logger.info(Helper.nf(counter) + ", updates:" + updateCounter
                         + ", nodes: " + Helper.nf(sortedNodes.getSize())
                         + ", shortcuts:" + Helper.nf(newShortcuts)
-                        + ", dijkstras:" + Helper.nf(dijkstraCount)
-                        + ", t(dijk):" + (int) dijkstraSW.getSeconds()
+                        + ", dijkstras:" + Helper.nf(getDijkstraCount())
+                        + ", t(dijk):" + (int) getDijkstraSeconds()
                         + ", t(period):" + (int) periodSW.getSeconds()
                         + ", t(lazy):" + (int) lazySW.getSeconds()
                         + ", t(neighbor):" + (int) neighborSW.getSeconds()
                         + ", meanDegree:" + (long) meanDegree
-                        + ", algo:" + prepareAlgo.getMemoryUsageAsString()
+                        + ", algo:" + mainSearch.algo.getMemoryUsageAsString()
                         + ", " + Helper.getMemInfo());
-                dijkstraSW = new StopWatch();
+                resetDijkstraStopWatches();
                 periodSW = new StopWatch();
                 lazySW = new StopWatch();
                 neighborSW = new StopWatch();
@@ -345,7 +402,7 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
 
             // contract!            
             newShortcuts += addShortcuts(polledNode);
-            lg.setLevel(polledNode, level);
+            prepareGraph.setLevel(polledNode, level);
             level++;
 
             if (sortedNodes.getSize() < nodesToAvoidContract)
@@ -353,7 +410,7 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
                 while (!sortedNodes.isEmpty())
                 {
                     polledNode = sortedNodes.pollKey();
-                    lg.setLevel(polledNode, level);
+                    prepareGraph.setLevel(polledNode, level);
                 }
                 break;
             }
@@ -362,7 +419,7 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
             while (iter.next())
             {
                 int nn = iter.getAdjNode();
-                if (lg.getLevel(nn) != 0)
+                if (prepareGraph.getLevel(nn) != 0)
                     // already contracted no update necessary
                     continue;
 
@@ -378,10 +435,195 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
                 }
 
                 if (removesHigher2LowerEdges)
-                    lg.disconnect(vehicleAllTmpExplorer, iter);
+                    ((LevelGraphStorage) prepareGraph).disconnect(vehicleAllTmpExplorer, iter);
             }
         }
 
+        finish(initSize, periodSW, lazySW, neighborSW);
+    }
+
+    /**
+     * Contracts independent sets of nodes per round. A round polls the nodes with the lowest
+     * priority and skips nodes adjacent to an already selected node. The witness searches of a
+     * round are done in parallel where all nodes of the round are ignored. Afterwards the shortcuts
+     * are added, the levels are set and the neighbors are updated in the order of the selection.
+     */
+    void contractNodesParallel()
+    {
+        meanDegree = prepareGraph.getAllEdges().getCount() / prepareGraph.getNodes();
+        int level = 1;
+        counter = 0;
+        int initSize = sortedNodes.getSize();
+        long logSize = Math.round(Math.max(10, sortedNodes.getSize() / 100 * logMessagesPercentage));
+        if (logMessagesPercentage == 0)
+            logSize = Integer.MAX_VALUE;
+
+        boolean periodicUpdate = periodicUpdatesPercentage != 0;
+        StopWatch periodSW = new StopWatch();
+        int updateCounter = 0;
+        long periodicUpdatesCount = Math.round(Math.max(10, sortedNodes.getSize() / 100d * periodicUpdatesPercentage));
+        long nextPeriodicUpdate = periodicUpdatesCount;
+        long nextLog = 0;
+
+        long nodesToAvoidContract = Math.round((100 - nodesContractedPercentage) / 100 * sortedNodes.getSize());
+        boolean neighborUpdate = neighborUpdatePercentage != 0;
+        StopWatch neighborSW = new StopWatch();
+
+        final TIntArrayList roundNodes = new TIntArrayList(maxRoundSize);
+        TIntArrayList skippedNodes = new TIntArrayList(maxRoundSize);
+        GHTBitSet blockedNodes = new GHTBitSet(maxRoundSize * 8);
+        final List<List<Shortcut>> roundShortcuts = new ArrayList<List<Shortcut>>(maxRoundSize);
+        final long[] roundDegrees = new long[maxRoundSize];
+        TIntArrayList neighbors = new TIntArrayList();
+        TIntArrayList neighborPriorities = new TIntArrayList();
+        GHTBitSet neighborSet = new GHTBitSet();
+        while (!sortedNodes.isEmpty())
+        {
+            if (periodicUpdate && counter >= nextPeriodicUpdate)
+            {
+                periodSW.start();
+                sortedNodes.clear();
+                calculateAllPrioritiesParallel();
+                periodSW.stop();
+                updateCounter++;
+                nextPeriodicUpdate = counter + periodicUpdatesCount;
+                if (sortedNodes.isEmpty())
+                    throw new IllegalStateException("Cannot prepare as no unprepared nodes where found. Called preparation twice?");
+            }
+
+            if (counter >= nextLog)
+            {
+                logger.info(Helper.nf(counter) + ", updates:" + updateCounter
+                        + ", nodes: " + Helper.nf(sortedNodes.getSize())
+                        + ", shortcuts:" + Helper.nf(newShortcuts)
+                        + ", dijkstras:" + Helper.nf(getDijkstraCount())
+                        + ", t(dijk):" + (int) getDijkstraSeconds()
+                        + ", t(period):" + (int) periodSW.getSeconds()
+                        + ", t(neighbor):" + (int) neighborSW.getSeconds()
+                        + ", meanDegree:" + (long) meanDegree
+                        + ", threads:" + threads
+                        + ", " + Helper.getMemInfo());
+                resetDijkstraStopWatches();
+                periodSW = new StopWatch();
+                neighborSW = new StopWatch();
+                nextLog = counter + logSize;
+            }
+
+            // select an independent set of nodes with a low priority
+            roundNodes.resetQuick();
+            skippedNodes.resetQuick();
+            blockedNodes.clear();
+            // poll at most 1% of the remaining nodes as bigger rounds create a lot more shortcuts
+            int roundSize = Math.max(1, Math.min(maxRoundSize, sortedNodes.getSize() / 100));
+            while (skippedNodes.size() + roundNodes.size() < roundSize && !sortedNodes.isEmpty())
+            {
+                int node = sortedNodes.pollKey();
+                if (blockedNodes.contains(node))
+                {
+                    skippedNodes.add(node);
+                    continue;
+                }
+
+                roundNodes.add(node);
+                blockedNodes.add(node);
+                contractingNodes.add(node);
+                EdgeIterator iter = vehicleAllExplorer.setBaseNode(node);
+                while (iter.next())
+                {
+                    blockedNodes.add(iter.getAdjNode());
+                }
+            }
+
+            for (int i = 0; i < skippedNodes.size(); i++)
+            {
+                int node = skippedNodes.get(i);
+                sortedNodes.insert(node, oldPriorities[node]);
+            }
+
+            // find the shortcuts of all nodes of this round without changing the graph
+            roundShortcuts.clear();
+            for (int i = 0; i < roundNodes.size(); i++)
+            {
+                roundShortcuts.add(null);
+            }
+            runParallel(roundNodes.size(), new NodeTask()
+            {
+                @Override
+                public void run( WitnessSearch search, int index )
+                {
+                    int node = roundNodes.get(index);
+                    roundDegrees[index] = search.findShortcuts(search.addScHandler.setNode(node));
+                    roundShortcuts.set(index, new ArrayList<Shortcut>(search.shortcuts.keySet()));
+                }
+            });
+
+            // contract!
+            neighbors.resetQuick();
+            neighborPriorities.resetQuick();
+            neighborSet.clear();
+            for (int i = 0; i < roundNodes.size(); i++)
+            {
+                int node = roundNodes.get(i);
+                updateMeanDegree(roundDegrees[i]);
+                newShortcuts += addShortcuts(roundShortcuts.get(i));
+                prepareGraph.setLevel(node, level);
+                level++;
+                counter++;
+            }
+
+            if (sortedNodes.getSize() < nodesToAvoidContract)
+            {
+                while (!sortedNodes.isEmpty())
+                {
+                    int node = sortedNodes.pollKey();
+                    prepareGraph.setLevel(node, level);
+                }
+                break;
+            }
+
+            for (int i = 0; i < roundNodes.size(); i++)
+            {
+                int node = roundNodes.get(i);
+                contractingNodes.clear(node);
+                EdgeSkipIterator iter = vehicleAllExplorer.setBaseNode(node);
+                while (iter.next())
+                {
+                    int nn = iter.getAdjNode();
+                    if (prepareGraph.getLevel(nn) != 0)
+                        continue;
+
+                    if (neighborUpdate && rand.nextInt(100) < neighborUpdatePercentage && !neighborSet.contains(nn))
+                    {
+                        neighborSet.add(nn);
+                        neighbors.add(nn);
+                        neighborPriorities.add(oldPriorities[nn]);
+                    }
+
+                    if (removesHigher2LowerEdges)
+                        ((LevelGraphStorage) prepareGraph).disconnect(vehicleAllTmpExplorer, iter);
+                }
+            }
+
+            if (!neighbors.isEmpty())
+            {
+                neighborSW.start();
+                calculatePrioritiesParallel(neighbors);
+                for (int i = 0; i < neighbors.size(); i++)
+                {
+                    int nn = neighbors.get(i);
+                    int oldPrio = neighborPriorities.get(i);
+                    if (oldPrio != oldPriorities[nn])
+                        sortedNodes.update(nn, oldPrio, oldPriorities[nn]);
+                }
+                neighborSW.stop();
+            }
+        }
+
+        finish(initSize, periodSW, new StopWatch(), neighborSW);
+    }
+
+    private void finish( int initSize, StopWatch periodSW, StopWatch lazySW, StopWatch neighborSW )
+    {
         // Preparation works only once so we can release temporary data.
         // The preparation object itself has to be intact to create the algorithm.
         close();
@@ -390,8 +632,8 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
                 + ", " + prepareWeighting
                 + ", " + prepareFlagEncoder
                 + ", removeHigher2LowerEdges:" + removesHigher2LowerEdges
-                + ", dijkstras:" + dijkstraCount
-                + ", t(dijk):" + (int) dijkstraSW.getSeconds()
+                + ", dijkstras:" + getDijkstraCount()
+                + ", t(dijk):" + (int) getDijkstraSeconds()
                 + ", t(period):" + (int) periodSW.getSeconds()
                 + ", t(lazy):" + (int) lazySW.getSeconds()
                 + ", t(neighbor):" + (int) neighborSW.getSeconds()
@@ -400,18 +642,141 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
                 + ", periodic:" + periodicUpdatesPercentage
                 + ", lazy:" + lastNodesLazyUpdatePercentage
                 + ", neighbor:" + neighborUpdatePercentage
+                + ", threads:" + threads
                 + ", " + Helper.getMemInfo());
     }
 
+    /**
+     * Calculates the priority of all uncontracted nodes and inserts them into sortedNodes. The
+     * nodes are processed in chunks to avoid a huge temporary array.
+     */
+    private void calculateAllPrioritiesParallel()
+    {
+        int len = prepareGraph.getNodes();
+        int chunkSize = 100000;
+        TIntArrayList chunk = new TIntArrayList(Math.min(len, chunkSize));
+        for (int start = 0; start < len; start += chunkSize)
+        {
+            chunk.resetQuick();
+            int end = Math.min(len, start + chunkSize);
+            for (int node = start; node < end; node++)
+            {
+                if (prepareGraph.getLevel(node) == 0)
+                    chunk.add(node);
+            }
+
+            calculatePrioritiesParallel(chunk);
+            for (int i = 0; i < chunk.size(); i++)
+            {
+                int node = chunk.get(i);
+                sortedNodes.insert(node, oldPriorities[node]);
+            }
+        }
+    }
+
+    /**
+     * Calculates the priorities of the specified nodes and stores them in oldPriorities.
+     */
+    private void calculatePrioritiesParallel( final TIntArrayList nodes )
+    {
+        runParallel(nodes.size(), new NodeTask()
+        {
+            @Override
+            public void run( WitnessSearch search, int index )
+            {
+                int node = nodes.get(index);
+                oldPriorities[node] = search.calculatePriority(node);
+            }
+        });
+    }
+
+    /**
+     * Distributes the indices 0 to size-1 to the worker threads and waits until all are done. As
+     * every worker has its own witness search the task must not change the graph.
+     */
+    private void runParallel( final int size, final NodeTask task )
+    {
+        final int workers = Math.min(threads, size);
+        List<Future<?>> futures = new ArrayList<Future<?>>(workers);
+        for (int w = 0; w < workers; w++)
+        {
+            final int offset = w;
+            final WitnessSearch search = witnessSearches[w];
+            futures.add(executorService.submit(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    for (int i = offset; i < size; i += workers)
+                    {
+                        task.run(search, i);
+                    }
+                }
+            }));
+        }
+
+        for (Future<?> future : futures)
+        {
+            try
+            {
+                future.get();
+            } catch (InterruptedException ex)
+            {
+                throw new RuntimeException("Thread was interrupted.", ex);
+            } catch (ExecutionException ex)
+            {
+                throw new RuntimeException("A contraction worker thread failed, aborting.", ex.getCause());
+            }
+        }
+    }
+
+    interface NodeTask
+    {
+        void run( WitnessSearch search, int index );
+    }
+
     public void close()
     {
-        prepareAlgo.close();
+        for (WitnessSearch search : witnessSearches)
+        {
+            search.algo.close();
+        }
         originalEdges.close();
         sortedNodes = null;
         oldPriorities = null;
+        contractingNodes = null;
+    }
+
+    long getDijkstraCount()
+    {
+        long sum = 0;
+        for (WitnessSearch search : witnessSearches)
+        {
+            sum += search.dijkstraCount;
+        }
+        return sum;
+    }
+
+    /**
+     * @return the time spent in witness searches, summed up over all threads
+     */
+    float getDijkstraSeconds()
+    {
+        float sum = 0;
+        for (WitnessSearch search : witnessSearches)
+        {
+            sum += search.dijkstraSW.getSeconds();
+        }
+        return sum;
+    }
+
+    private void resetDijkstraStopWatches()
+    {
+        for (WitnessSearch search : witnessSearches)
+        {
+            search.dijkstraSW = new StopWatch();
+        }
     }
-    AddShortcutHandler addScHandler = new AddShortcutHandler();
-    CalcShortcutHandler calcScHandler = new CalcShortcutHandler();
 
     interface ShortcutHandler
     {
@@ -456,10 +821,12 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
 
     class AddShortcutHandler implements ShortcutHandler
     {
+        final Map<Shortcut, Shortcut> shortcuts;
         int node;
 
-        public AddShortcutHandler()
+        public AddShortcutHandler( Map<Shortcut, Shortcut> shortcuts )
         {
+            this.shortcuts = shortcuts;
         }
 
         @Override
@@ -499,7 +866,7 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
                 // overwrite flags only if skipped edges are identical
                 if (tmpRetSc.skippedEdge2 == skippedEdge1 && tmpRetSc.skippedEdge1 == outgoingEdges.getEdge())
                 {
-                    tmpRetSc.flags = PrepareEncoder.getScDirMask();
+                    tmpRetSc.flags = scDirMask;
                     return;
                 }
             }
@@ -511,131 +878,164 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
         }
     }
 
-    Set<Shortcut> testFindShortcuts( int node )
-    {
-        findShortcuts(addScHandler.setNode(node));
-        return shortcuts.keySet();
-    }
-
     /**
-     * Calculates the priority of adjNode v without changing the graph. Warning: the calculated
-     * priority must NOT depend on priority(v) and therefor findShortcuts should also not depend on
-     * the priority(v). Otherwise updating the priority before contracting in contractNodes() could
-     * lead to a slowishor even endless loop.
+     * Everything needed to calculate priorities and to find shortcuts without changing the graph.
+     * The sequential contraction uses only one instance, the parallel contraction one per thread.
      */
-    int calculatePriority( int v )
+    class WitnessSearch
     {
-        // set of shortcuts that would be added if adjNode v would be contracted next.
-        findShortcuts(calcScHandler.setNode(v));
-
-//        System.out.println(v + "\t " + tmpShortcuts);
-        // # huge influence: the bigger the less shortcuts gets created and the faster is the preparation
-        //
-        // every adjNode has an 'original edge' number associated. initially it is r=1
-        // when a new shortcut is introduced then r of the associated edges is summed up:
-        // r(u,w)=r(u,v)+r(v,w) now we can define
-        // originalEdgesCount = σ(v) := sum_{ (u,w) ∈ shortcuts(v) } of r(u, w)
-        int originalEdgesCount = calcScHandler.originalEdgesCount;
-//        for (Shortcut sc : tmpShortcuts) {
-//            originalEdgesCount += sc.originalEdges;
-//        }
-
-        // # lowest influence on preparation speed or shortcut creation count 
-        // (but according to paper should speed up queries)
-        //
-        // number of already contracted neighbors of v
-        int contractedNeighbors = 0;
-        int degree = 0;
-        EdgeSkipIterator iter = calcPrioAllExplorer.setBaseNode(v);
-        while (iter.next())
+        final EdgeSkipExplorer inExplorer;
+        final EdgeSkipExplorer outExplorer;
+        final EdgeSkipExplorer calcPrioAllExplorer;
+        final IgnoreNodeFilter ignoreNodeFilter;
+        final DijkstraOneToMany algo;
+        // keep the insertion order so that the shortcuts are always added in the same order
+        final Map<Shortcut, Shortcut> shortcuts = new LinkedHashMap<Shortcut, Shortcut>();
+        final AddShortcutHandler addScHandler = new AddShortcutHandler(shortcuts);
+        final CalcShortcutHandler calcScHandler = new CalcShortcutHandler();
+        long dijkstraCount;
+        StopWatch dijkstraSW = new StopWatch();
+
+        WitnessSearch()
         {
-            degree++;
-            if (iter.isShortcut())
-                contractedNeighbors++;
+            inExplorer = prepareGraph.createEdgeExplorer(new DefaultEdgeFilter(prepareFlagEncoder, true, false));
+            outExplorer = prepareGraph.createEdgeExplorer(new DefaultEdgeFilter(prepareFlagEncoder, false, true));
+            calcPrioAllExplorer = prepareGraph.createEdgeExplorer(new DefaultEdgeFilter(prepareFlagEncoder, true, true));
+            ignoreNodeFilter = new IgnoreNodeFilter(prepareGraph).setAvoidNodes(contractingNodes);
+            algo = new DijkstraOneToMany(prepareGraph, prepareFlagEncoder, prepareWeighting, traversalMode);
         }
 
-        // from shortcuts we can compute the edgeDifference
-        // # low influence: with it the shortcut creation is slightly faster
-        //
-        // |shortcuts(v)| − |{(u, v) | v uncontracted}| − |{(v, w) | v uncontracted}|        
-        // meanDegree is used instead of outDegree+inDegree as if one adjNode is in both directions
-        // only one bucket memory is used. Additionally one shortcut could also stand for two directions.
-        int edgeDifference = calcScHandler.shortcuts - degree;
+        /**
+         * Calculates the priority of adjNode v without changing the graph. Warning: the calculated
+         * priority must NOT depend on priority(v) and therefor findShortcuts should also not depend
+         * on the priority(v). Otherwise updating the priority before contracting in contractNodes()
+         * could lead to a slowishor even endless loop.
+         */
+        int calculatePriority( int v )
+        {
+            // set of shortcuts that would be added if adjNode v would be contracted next.
+            findShortcuts(calcScHandler.setNode(v));
+
+            // # huge influence: the bigger the less shortcuts gets created and the faster is the preparation
+            //
+            // every adjNode has an 'original edge' number associated. initially it is r=1
+            // when a new shortcut is introduced then r of the associated edges is summed up:
+            // r(u,w)=r(u,v)+r(v,w) now we can define
+            // originalEdgesCount = σ(v) := sum_{ (u,w) ∈ shortcuts(v) } of r(u, w)
+            int originalEdgesCount = calcScHandler.originalEdgesCount;
+
+            // # lowest influence on preparation speed or shortcut creation count 
+            // (but according to paper should speed up queries)
+            //
+            // number of already contracted neighbors of v
+            int contractedNeighbors = 0;
+            int degree = 0;
+            EdgeSkipIterator iter = calcPrioAllExplorer.setBaseNode(v);
+            while (iter.next())
+            {
+                degree++;
+                if (iter.isShortcut())
+                    contractedNeighbors++;
+            }
 
-        // according to the paper do a simple linear combination of the properties to get the priority.
-        // this is the current optimum for unterfranken:
-        return 10 * edgeDifference + originalEdgesCount + contractedNeighbors;
-    }
+            // from shortcuts we can compute the edgeDifference
+            // # low influence: with it the shortcut creation is slightly faster
+            //
+            // |shortcuts(v)| − |{(u, v) | v uncontracted}| − |{(v, w) | v uncontracted}|        
+            // meanDegree is used instead of outDegree+inDegree as if one adjNode is in both directions
+            // only one bucket memory is used. Additionally one shortcut could also stand for two directions.
+            int edgeDifference = calcScHandler.shortcuts - degree;
+
+            // according to the paper do a simple linear combination of the properties to get the priority.
+            // this is the current optimum for unterfranken:
+            return 10 * edgeDifference + originalEdgesCount + contractedNeighbors;
+        }
 
-    /**
-     * Finds shortcuts, does not change the underlying graph.
-     */
-    void findShortcuts( ShortcutHandler sch )
-    {
-        long tmpDegreeCounter = 0;
-        EdgeIterator incomingEdges = vehicleInExplorer.setBaseNode(sch.getNode());
-        // collect outgoing nodes (goal-nodes) only once
-        while (incomingEdges.next())
+        /**
+         * Finds shortcuts, does not change the underlying graph.
+         * <p/>
+         * @return the number of incoming edges, used to update the meanDegree
+         */
+        long findShortcuts( ShortcutHandler sch )
         {
-            int u_fromNode = incomingEdges.getAdjNode();
-            // accept only uncontracted nodes
-            if (prepareGraph.getLevel(u_fromNode) != 0)
-                continue;
-
-            double v_u_dist = incomingEdges.getDistance();
-            double v_u_weight = prepareWeighting.calcWeight(incomingEdges, true, EdgeIterator.NO_EDGE);
-            int skippedEdge1 = incomingEdges.getEdge();
-            int incomingEdgeOrigCount = getOrigEdgeCount(skippedEdge1);
+            long tmpDegreeCounter = 0;
+            EdgeIterator incomingEdges = inExplorer.setBaseNode(sch.getNode());
             // collect outgoing nodes (goal-nodes) only once
-            EdgeIterator outgoingEdges = vehicleOutExplorer.setBaseNode(sch.getNode());
-            // force fresh maps etc as this cannot be determined by from node alone (e.g. same from node but different avoidNode)
-            prepareAlgo.clear();
-            tmpDegreeCounter++;
-            while (outgoingEdges.next())
+            while (incomingEdges.next())
             {
-                int w_toNode = outgoingEdges.getAdjNode();
-                // add only uncontracted nodes
-                if (prepareGraph.getLevel(w_toNode) != 0 || u_fromNode == w_toNode)
+                int u_fromNode = incomingEdges.getAdjNode();
+                // accept only uncontracted nodes
+                if (prepareGraph.getLevel(u_fromNode) != 0)
                     continue;
 
-                // Limit weight as ferries or forbidden edges can increase local search too much.
-                // If we decrease the correct weight we only explore less and introduce more shortcuts.
-                // I.e. no change to accuracy is made.
-                double existingDirectWeight = v_u_weight + prepareWeighting.calcWeight(outgoingEdges, false, incomingEdges.getEdge());
-                if (Double.isNaN(existingDirectWeight))
-                    throw new IllegalStateException("Weighting should never return NaN values"
-                            + ", in:" + getCoords(incomingEdges, prepareGraph) + ", out:" + getCoords(outgoingEdges, prepareGraph)
-                            + ", dist:" + outgoingEdges.getDistance() + ", speed:" + prepareFlagEncoder.getSpeed(outgoingEdges.getFlags()));
+                double v_u_dist = incomingEdges.getDistance();
+                double v_u_weight = prepareWeighting.calcWeight(incomingEdges, true, EdgeIterator.NO_EDGE);
+                int skippedEdge1 = incomingEdges.getEdge();
+                int incomingEdgeOrigCount = getOrigEdgeCount(skippedEdge1);
+                // collect outgoing nodes (goal-nodes) only once
+                EdgeIterator outgoingEdges = outExplorer.setBaseNode(sch.getNode());
+                // force fresh maps etc as this cannot be determined by from node alone (e.g. same from node but different avoidNode)
+                algo.clear();
+                tmpDegreeCounter++;
+                while (outgoingEdges.next())
+                {
+                    int w_toNode = outgoingEdges.getAdjNode();
+                    // add only uncontracted nodes
+                    if (prepareGraph.getLevel(w_toNode) != 0 || u_fromNode == w_toNode)
+                        continue;
 
-                if (existingDirectWeight >= Double.MAX_VALUE)
-                    continue;
-                double existingDistSum = v_u_dist + outgoingEdges.getDistance();
-                prepareAlgo.setLimitWeight(existingDirectWeight)
-                        .setLimitVisitedNodes((int) meanDegree * 100)
-                        .setEdgeFilter(ignoreNodeFilter.setAvoidNode(sch.getNode()));
-
-                dijkstraSW.start();
-                dijkstraCount++;
-                int endNode = prepareAlgo.findEndNode(u_fromNode, w_toNode);
-                dijkstraSW.stop();
-
-                // compare end node as the limit could force dijkstra to finish earlier
-                if (endNode == w_toNode && prepareAlgo.getWeight(endNode) <= existingDirectWeight)
-                    // FOUND witness path, so do not add shortcut                
-                    continue;
+                    // Limit weight as ferries or forbidden edges can increase local search too much.
+                    // If we decrease the correct weight we only explore less and introduce more shortcuts.
+                    // I.e. no change to accuracy is made.
+                    double existingDirectWeight = v_u_weight + prepareWeighting.calcWeight(outgoingEdges, false, incomingEdges.getEdge());
+                    if (Double.isNaN(existingDirectWeight))
+                        throw new IllegalStateException("Weighting should never return NaN values"
+                                + ", in:" + getCoords(incomingEdges, prepareGraph) + ", out:" + getCoords(outgoingEdges, prepareGraph)
+                                + ", dist:" + outgoingEdges.getDistance() + ", speed:" + prepareFlagEncoder.getSpeed(outgoingEdges.getFlags()));
+
+                    if (existingDirectWeight >= Double.MAX_VALUE)
+                        continue;
+                    double existingDistSum = v_u_dist + outgoingEdges.getDistance();
+                    algo.setLimitWeight(existingDirectWeight)
+                            .setLimitVisitedNodes((int) meanDegree * 100)
+                            .setEdgeFilter(ignoreNodeFilter.setAvoidNode(sch.getNode()));
+
+                    dijkstraSW.start();
+                    dijkstraCount++;
+                    int endNode = algo.findEndNode(u_fromNode, w_toNode);
+                    dijkstraSW.stop();
+
+                    // compare end node as the limit could force dijkstra to finish earlier
+                    if (endNode == w_toNode && algo.getWeight(endNode) <= existingDirectWeight)
+                        // FOUND witness path, so do not add shortcut                
+                        continue;
 
-                sch.foundShortcut(u_fromNode, w_toNode,
-                        existingDirectWeight, existingDistSum,
-                        outgoingEdges,
-                        skippedEdge1, incomingEdgeOrigCount);
+                    sch.foundShortcut(u_fromNode, w_toNode,
+                            existingDirectWeight, existingDistSum,
+                            outgoingEdges,
+                            skippedEdge1, incomingEdgeOrigCount);
+                }
             }
+            return tmpDegreeCounter;
         }
-        if (sch instanceof AddShortcutHandler)
-        {
-            // sliding mean value when using "*2" => slower changes
-            meanDegree = (meanDegree * 2 + tmpDegreeCounter) / 3;
-            // meanDegree = (meanDegree + tmpDegreeCounter) / 2;
-        }
+    }
+
+    Set<Shortcut> testFindShortcuts( int node )
+    {
+        updateMeanDegree(mainSearch.findShortcuts(mainSearch.addScHandler.setNode(node)));
+        return mainSearch.shortcuts.keySet();
+    }
+
+    int calculatePriority( int v )
+    {
+        return mainSearch.calculatePriority(v);
+    }
+
+    private void updateMeanDegree( long degreeCounter )
+    {
+        // sliding mean value when using "*2" => slower changes
+        meanDegree = (meanDegree * 2 + degreeCounter) / 3;
+        // meanDegree = (meanDegree + tmpDegreeCounter) / 2;
     }
 
     /**
@@ -643,23 +1043,47 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
      */
     int addShortcuts( int v )
     {
-        shortcuts.clear();
-        findShortcuts(addScHandler.setNode(v));
+        updateMeanDegree(mainSearch.findShortcuts(mainSearch.addScHandler.setNode(v)));
+        return addShortcuts(mainSearch.shortcuts.keySet());
+    }
+
+    /**
+     * Adds the specified shortcuts to the graph or updates existing shortcuts.
+     */
+    int addShortcuts( Collection<Shortcut> shortcuts )
+    {
         int tmpNewShortcuts = 0;
-        NEXT_SC:
-        for (Shortcut sc : shortcuts.keySet())
+        for (Shortcut sc : shortcuts)
         {
+            // collect the directions which are already covered by existing shortcuts including the
+            // one-way shortcuts in the other direction. A bidirectional sc then only adds the
+            // missing direction instead of a duplicate parallel shortcut
+            long coveredDirs = 0, shorterDirs = 0;
+            EdgeSkipIterator iter = mainSearch.calcPrioAllExplorer.setBaseNode(sc.from);
+            while (iter.next())
+            {
+                if (!iter.isShortcut() || iter.getAdjNode() != sc.to)
+                    continue;
+
+                double existingWeight = prepareWeighting.calcWeight(iter, false, EdgeIterator.NO_EDGE);
+                if (sc.weight >= existingWeight)
+                    coveredDirs |= iter.getFlags() & scDirMask;
+                if (sc.weight > existingWeight)
+                    shorterDirs |= iter.getFlags() & scDirMask;
+            }
+            if ((sc.flags & scDirMask & ~coveredDirs) == 0)
+                continue;
+
+            // a one-way shortcut with the same weight is upgraded to both directions below
+            long flags = sc.flags & ~shorterDirs;
             boolean updatedInGraph = false;
             // check if we need to update some existing shortcut in the graph
-            EdgeSkipIterator iter = vehicleOutExplorer.setBaseNode(sc.from);
+            iter = mainSearch.calcPrioAllExplorer.setBaseNode(sc.from);
             while (iter.next())
             {
                 if (iter.isShortcut() && iter.getAdjNode() == sc.to
-                        && PrepareEncoder.canBeOverwritten(iter.getFlags(), sc.flags))
+                        && PrepareEncoder.canBeOverwritten(iter.getFlags(), flags, scDirMask))
                 {
-                    if (sc.weight >= prepareWeighting.calcWeight(iter, false, EdgeIterator.NO_EDGE))
-                        continue NEXT_SC;
-
                     if (iter.getEdge() == sc.skippedEdge1 || iter.getEdge() == sc.skippedEdge2)
                     {
                         throw new IllegalStateException("Shortcut cannot update itself! " + iter.getEdge()
@@ -672,7 +1096,7 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
                     }
 
                     // note: flags overwrite weight => call first
-                    iter.setFlags(sc.flags);
+                    iter.setFlags(flags);
                     iter.setWeight(sc.weight);
                     iter.setDistance(sc.dist);
                     iter.setSkippedEdges(sc.skippedEdge1, sc.skippedEdge2);
@@ -686,7 +1110,7 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
             {
                 EdgeSkipIterState edgeState = prepareGraph.shortcut(sc.from, sc.to);
                 // note: flags overwrite weight => call first
-                edgeState.setFlags(sc.flags);
+                edgeState.setFlags(flags);
                 edgeState.setWeight(sc.weight);
                 edgeState.setDistance(sc.dist);
                 edgeState.setSkippedEdges(sc.skippedEdge1, sc.skippedEdge2);
@@ -708,19 +1132,23 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
 
     PrepareContractionHierarchies initFromGraph()
     {
-        vehicleInExplorer = prepareGraph.createEdgeExplorer(new DefaultEdgeFilter(prepareFlagEncoder, true, false));
-        vehicleOutExplorer = prepareGraph.createEdgeExplorer(new DefaultEdgeFilter(prepareFlagEncoder, false, true));
         vehicleAllExplorer = prepareGraph.createEdgeExplorer(new DefaultEdgeFilter(prepareFlagEncoder, true, true));
         vehicleAllTmpExplorer = prepareGraph.createEdgeExplorer(new DefaultEdgeFilter(prepareFlagEncoder, true, true));
-        calcPrioAllExplorer = prepareGraph.createEdgeExplorer(new DefaultEdgeFilter(prepareFlagEncoder, true, true));
-        ignoreNodeFilter = new IgnoreNodeFilter(prepareGraph);
         // Use an alternative to PriorityQueue as it has some advantages: 
         //   1. Gets automatically smaller if less entries are stored => less total RAM used (as Graph is increasing until the end)
         //   2. is slightly faster
         //   but we need additional priorities array to keep old value which is necessary for update method
         sortedNodes = new GHTreeMapComposed();
         oldPriorities = new int[prepareGraph.getNodes()];
-        prepareAlgo = new DijkstraOneToMany(prepareGraph, prepareFlagEncoder, prepareWeighting, traversalMode);
+        if (threads > 1)
+            contractingNodes = new GHBitSetImpl(prepareGraph.getNodes());
+
+        witnessSearches = new WitnessSearch[threads];
+        for (int i = 0; i < threads; i++)
+        {
+            witnessSearches[i] = new WitnessSearch();
+        }
+        mainSearch = witnessSearches[0];
         return this;
     }
 
@@ -732,6 +1160,7 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
     static class IgnoreNodeFilter implements EdgeFilter
     {
         int avoidNode;
+        GHBitSetImpl avoidNodes;
         LevelGraph graph;
 
         public IgnoreNodeFilter( LevelGraph g )
@@ -745,12 +1174,23 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
             return this;
         }
 
+        /**
+         * Additionally ignores all nodes of the specified set, e.g. the nodes contracted in the same
+         * round. Only read access to the set is done while searching.
+         */
+        public IgnoreNodeFilter setAvoidNodes( GHBitSetImpl nodes )
+        {
+            this.avoidNodes = nodes;
+            return this;
+        }
+
         @Override
         public final boolean accept( EdgeIteratorState iter )
         {
             // ignore if it is skipNode or a adjNode already contracted
             int node = iter.getAdjNode();
-            return avoidNode != node && graph.getLevel(node) == 0;
+            return avoidNode != node && graph.getLevel(node) == 0
+                    && (avoidNodes == null || !avoidNodes.contains(node));
         }
     }
 
@@ -870,6 +1310,20 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
         return algo;
     }
 
+    /**
+     * Creates a many-to-many calculator using the same weighting and vehicle as this preparation.
+     * The specified graph is usually a QueryGraph where all points were looked up once.
+     */
+    public ManyToManyCH createManyToMany( Graph graph )
+    {
+        ManyToManyCH manyToMany = new ManyToManyCH(graph, prepareFlagEncoder, prepareWeighting);
+        manyToMany.setInitialCollectionSize(initialCollectionSize);
+        if (!removesHigher2LowerEdges)
+            manyToMany.setEdgeFilter(new LevelEdgeFilter(prepareGraph));
+
+        return manyToMany;
+    }
+
     private static class PriorityNode implements Comparable<PriorityNode>
     {
         int node;
@@ -903,7 +1357,7 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
         double dist;
         double weight;
         int originalEdges;
-        long flags = PrepareEncoder.getScFwdDir();
+        long flags = scFwdDir;
 
         public Shortcut( int from, int to, double weight, double dist )
         {
@@ -940,7 +1394,7 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
         public String toString()
         {
             String str;
-            if (flags == PrepareEncoder.getScDirMask())
+            if (flags == scDirMask)
                 str = from + "<->";
             else
                 str = from + "->";
@@ -19,8 +19,8 @@
 package com.graphhopper.routing.ch;
 
 /**
- * The flags are stored differently for shortcuts: just a weight and the direction flags. Currently
- * it is not allowed to store multiple vehicles.
+ * The flags are stored differently for shortcuts: just a weight and the direction flags. It is not
+ * allowed to store multiple vehicles in one LevelGraphStorage, use one LevelGraphOverlay per vehicle.
  * <p>
  * @author Peter Karich
  */
@@ -55,7 +55,16 @@ public class PrepareEncoder
     // <->        f | f  | t
     public static final boolean canBeOverwritten( long flags1, long flags2 )
     {
-        return (flags2 & scDirMask) == scDirMask
-                || (flags1 & scDirMask) == (flags2 & scDirMask);
+        return canBeOverwritten(flags1, flags2, scDirMask);
+    }
+
+    /**
+     * Same as canBeOverwritten(flags1, flags2) but with the specified direction bits e.g. for
+     * shortcuts of a LevelGraphOverlay which use the access bits of its encoder.
+     */
+    public static final boolean canBeOverwritten( long flags1, long flags2, long dirMask )
+    {
+        return (flags2 & dirMask) == dirMask
+                || (flags1 & dirMask) == (flags2 & dirMask);
     }
 }
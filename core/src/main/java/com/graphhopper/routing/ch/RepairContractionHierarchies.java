@@ -0,0 +1,475 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.coll.GHBitSetImpl;
+import com.graphhopper.coll.IntDoubleBinHeap;
+import com.graphhopper.routing.DijkstraOneToMany;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.util.Weighting;
+import com.graphhopper.storage.LevelGraphOverlay;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.EdgeSkipExplorer;
+import com.graphhopper.util.EdgeSkipIterState;
+import com.graphhopper.util.EdgeSkipIterator;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.StopWatch;
+import gnu.trove.TIntCollection;
+import gnu.trove.iterator.TIntIterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Repairs the contraction hierarchy of a LevelGraphOverlay after edges of the base graph were
+ * changed or added, e.g. from an OSM change file, without contracting the whole graph again.
+ * <p/>
+ * First the weights and directions of all shortcuts are calculated again from their skipped edges
+ * in the order of the level of the node they were created for. Then new nodes get the highest
+ * levels and all nodes whose shortcuts could be affected by the changes are contracted again in
+ * the order of their levels, which adds the missing shortcuts. A node is affected if it is adjacent
+ * to a changed edge or shortcut or if the distance to a changed one is at most three times the
+ * weight of its most expensive upward edge, as the witness searches of the node cannot explore
+ * further. The distance is a lower bound calculated via one Dijkstra which ignores the direction
+ * and where changed edges have no weight.
+ * <p/>
+ * Shortcuts are never removed, outdated ones are only inaccessible or more expensive than
+ * necessary. So the hierarchy becomes a bit slower with every repair and should be prepared again
+ * from time to time. The hierarchy has to be fully contracted, i.e. every node of the base graph
+ * except the new ones has a level, and all nodes which are not in the core have a unique level.
+ * <p/>
+ * @author Peter Karich
+ */
+public class RepairContractionHierarchies
+{
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final LevelGraphOverlay graph;
+    private final FlagEncoder encoder;
+    private final PreparationWeighting weighting;
+    private int maxVisitedNodes = 500;
+    private int[] levels;
+    // the nodes ordered by level and the position of every node in this order
+    private int[] nodesByLevel;
+    private int[] positions;
+    private GHBitSetImpl changed;
+    private GHBitSetImpl dirty;
+    private int changedShortcuts;
+    private int newShortcuts;
+    private int contractedNodes;
+
+    public RepairContractionHierarchies( LevelGraphOverlay graph, Weighting weighting )
+    {
+        this.graph = graph;
+        this.encoder = graph.getEncoder();
+        this.weighting = new PreparationWeighting(weighting);
+    }
+
+    /**
+     * Limits the witness searches like the preparation does via the mean degree. A smaller value
+     * makes the repair faster but creates more shortcuts.
+     */
+    public RepairContractionHierarchies setMaxVisitedNodes( int maxVisitedNodes )
+    {
+        this.maxVisitedNodes = maxVisitedNodes;
+        return this;
+    }
+
+    /**
+     * @param changedEdges the edges of the base graph which were created or got new flags or a new
+     * geometry
+     */
+    public void repair( TIntCollection changedEdges )
+    {
+        StopWatch sw = new StopWatch().start();
+        graph.adaptToBaseGraph();
+        int baseEdges = graph.getBaseGraph().getAllEdges().getCount();
+        changed = new GHBitSetImpl(baseEdges + graph.getShortcuts());
+        TIntIterator iter = changedEdges.iterator();
+        while (iter.hasNext())
+        {
+            changed.add(iter.next());
+        }
+
+        initLevels();
+        updateShortcuts(baseEdges);
+        findDirtyNodes();
+        contractDirtyNodes();
+        sw.stop();
+        logger.info("repaired " + graph.getName() + " in " + sw.getSeconds() + "s, changed edges: "
+                + Helper.nf(changedEdges.size()) + ", changed shortcuts: " + Helper.nf(changedShortcuts)
+                + ", contracted nodes: " + Helper.nf(contractedNodes) + ", new shortcuts: " + Helper.nf(newShortcuts));
+    }
+
+    /**
+     * Puts the new nodes, which have level 0, on top of the hierarchy and sorts all nodes by level.
+     */
+    private void initLevels()
+    {
+        int nodes = graph.getNodes();
+        levels = new int[nodes];
+        int maxLevel = 0;
+        for (int node = 0; node < nodes; node++)
+        {
+            levels[node] = graph.getLevel(node);
+            maxLevel = Math.max(maxLevel, levels[node]);
+        }
+
+        long[] order = new long[nodes];
+        for (int node = 0; node < nodes; node++)
+        {
+            if (levels[node] == 0)
+            {
+                maxLevel++;
+                levels[node] = maxLevel;
+                graph.setLevel(node, maxLevel);
+            }
+            order[node] = ((long) levels[node] << 32) | node;
+        }
+        Arrays.sort(order);
+        nodesByLevel = new int[nodes];
+        positions = new int[nodes];
+        for (int pos = 0; pos < nodes; pos++)
+        {
+            int node = (int) order[pos];
+            nodesByLevel[pos] = node;
+            positions[node] = pos;
+        }
+        dirty = new GHBitSetImpl(nodes);
+    }
+
+    /**
+     * Calculates the weights and directions of the shortcuts with a changed skipped edge. A
+     * skipped shortcut was always created for a node with a lower level, so the shortcuts are
+     * updated in the order of the level of the node between their skipped edges.
+     */
+    private void updateShortcuts( int baseEdges )
+    {
+        int shortcuts = graph.getShortcuts();
+        long[] order = new long[shortcuts];
+        for (int index = 0; index < shortcuts; index++)
+        {
+            EdgeSkipIterState sc = graph.getEdgeProps(baseEdges + index, Integer.MIN_VALUE);
+            int middle = getMiddleNode(sc);
+            order[index] = ((long) levels[middle] << 32) | index;
+        }
+        Arrays.sort(order);
+
+        for (int i = 0; i < shortcuts; i++)
+        {
+            int edge = baseEdges + (int) order[i];
+            EdgeSkipIterState sc = graph.getEdgeProps(edge, Integer.MIN_VALUE);
+            if (changed.contains(sc.getSkippedEdge1()) || changed.contains(sc.getSkippedEdge2()))
+                updateShortcut(sc);
+        }
+    }
+
+    private int getMiddleNode( EdgeSkipIterState sc )
+    {
+        EdgeIteratorState skipped = graph.getEdgeProps(sc.getSkippedEdge1(), Integer.MIN_VALUE);
+        if (skipped.getBaseNode() == sc.getBaseNode() || skipped.getBaseNode() == sc.getAdjNode())
+            return skipped.getAdjNode();
+
+        return skipped.getBaseNode();
+    }
+
+    private void updateShortcut( EdgeSkipIterState sc )
+    {
+        int a = sc.getBaseNode(), b = sc.getAdjNode();
+        int middle = getMiddleNode(sc);
+        int edgeA = sc.getSkippedEdge1(), edgeB = sc.getSkippedEdge2();
+        EdgeIteratorState skipped = graph.getEdgeProps(edgeA, middle);
+        if (skipped == null || skipped.getBaseNode() != a)
+        {
+            edgeA = sc.getSkippedEdge2();
+            edgeB = sc.getSkippedEdge1();
+        }
+
+        double fwdWeight = calcWeight(edgeA, middle) + calcWeight(edgeB, b);
+        double bwdWeight = calcWeight(edgeB, middle) + calcWeight(edgeA, a);
+        double distance = graph.getEdgeProps(edgeA, middle).getDistance() + graph.getEdgeProps(edgeB, b).getDistance();
+        boolean fwd = !Double.isInfinite(fwdWeight), bwd = !Double.isInfinite(bwdWeight);
+        boolean split = fwd && bwd && toInt(fwdWeight) != toInt(bwdWeight);
+        if (split)
+            bwd = false;
+
+        double weight = fwd ? fwdWeight : bwd ? bwdWeight : sc.getWeight();
+        long flags = encoder.setAccess(0, fwd, bwd);
+        boolean isChanged = flags != sc.getFlags() || toInt(weight) != toInt(sc.getWeight());
+        if (isChanged || toInt(distance) != toInt(sc.getDistance()))
+        {
+            sc.setFlags(flags);
+            sc.setWeight(weight);
+            sc.setDistance(distance);
+        }
+
+        if (isChanged)
+        {
+            changed.add(sc.getEdge());
+            changedShortcuts++;
+        }
+
+        if (split)
+        {
+            // the directions have a different weight so the backward direction needs its own shortcut
+            EdgeSkipIterState bwdSc = graph.shortcut(a, b);
+            bwdSc.setFlags(encoder.setAccess(0, false, true));
+            bwdSc.setWeight(bwdWeight);
+            bwdSc.setDistance(distance);
+            bwdSc.setSkippedEdges(sc.getSkippedEdge1(), sc.getSkippedEdge2());
+            changed.add(bwdSc.getEdge());
+            newShortcuts++;
+        }
+    }
+
+    private static long toInt( double weight )
+    {
+        return Math.round(weight * 1000);
+    }
+
+    /**
+     * @return the weight to travel the specified edge or shortcut towards adjNode or infinity if
+     * it is not accessible in this direction
+     */
+    private double calcWeight( int edge, int adjNode )
+    {
+        EdgeIteratorState state = graph.getEdgeProps(edge, adjNode);
+        if (!encoder.isBool(state.getFlags(), FlagEncoder.K_FORWARD))
+            return Double.POSITIVE_INFINITY;
+
+        return weighting.calcWeight(state, false, EdgeIterator.NO_EDGE);
+    }
+
+    /**
+     * Marks the nodes adjacent to changed edges and shortcuts and the nodes which are near enough
+     * to one of them that their witness searches could have used it.
+     */
+    private void findDirtyNodes()
+    {
+        int nodes = graph.getNodes();
+        double[] distances = new double[nodes];
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+        IntDoubleBinHeap heap = new IntDoubleBinHeap();
+        for (int edge = changed.next(0); edge >= 0; edge = changed.next(edge + 1))
+        {
+            EdgeIteratorState state = graph.getEdgeProps(edge, Integer.MIN_VALUE);
+            for (int node : new int[]
+            {
+                state.getBaseNode(), state.getAdjNode()
+            })
+            {
+                dirty.add(positions[node]);
+                if (distances[node] > 0)
+                {
+                    distances[node] = 0;
+                    heap.insert_(0, node);
+                }
+            }
+        }
+
+        EdgeSkipExplorer explorer = graph.createEdgeExplorer();
+        while (!heap.isEmpty())
+        {
+            double distance = heap.peek_key();
+            int node = heap.poll_element();
+            if (distance > distances[node])
+                continue;
+
+            double maxUpWeight = 0;
+            EdgeSkipIterator iter = explorer.setBaseNode(node);
+            while (iter.next())
+            {
+                int adjNode = iter.getAdjNode();
+                boolean fwd = encoder.isBool(iter.getFlags(), FlagEncoder.K_FORWARD);
+                boolean bwd = encoder.isBool(iter.getFlags(), FlagEncoder.K_BACKWARD);
+                double fwdWeight = fwd ? weighting.calcWeight(iter, false, EdgeIterator.NO_EDGE) : Double.POSITIVE_INFINITY;
+                double bwdWeight = bwd ? weighting.calcWeight(iter, true, EdgeIterator.NO_EDGE) : Double.POSITIVE_INFINITY;
+                double minWeight = Math.min(fwdWeight, bwdWeight);
+                if (levels[adjNode] > levels[node] && !Double.isInfinite(minWeight))
+                    maxUpWeight = Math.max(maxUpWeight, Double.isInfinite(fwdWeight) ? bwdWeight
+                            : Double.isInfinite(bwdWeight) ? fwdWeight : Math.max(fwdWeight, bwdWeight));
+
+                double tmpDistance = changed.contains(iter.getEdge()) ? distance : distance + minWeight;
+                if (tmpDistance < distances[adjNode])
+                {
+                    distances[adjNode] = tmpDistance;
+                    heap.insert_(tmpDistance, adjNode);
+                }
+            }
+
+            if (distance <= 3 * maxUpWeight)
+                dirty.add(positions[node]);
+        }
+    }
+
+    /**
+     * Contracts the dirty nodes again in the order of their levels. The created shortcuts make
+     * their lower node dirty which is always contracted later.
+     */
+    private void contractDirtyNodes()
+    {
+        final int[] currentLevel = new int[1];
+        DijkstraOneToMany algo = new DijkstraOneToMany(graph, encoder, weighting, TraversalMode.NODE_BASED);
+        algo.setEdgeFilter(new EdgeFilter()
+        {
+            @Override
+            public boolean accept( EdgeIteratorState edgeState )
+            {
+                return levels[edgeState.getAdjNode()] > currentLevel[0];
+            }
+        });
+        algo.setLimitVisitedNodes(maxVisitedNodes);
+
+        EdgeSkipExplorer explorer = graph.createEdgeExplorer();
+        List<Shortcut> inEdges = new ArrayList<Shortcut>();
+        List<Shortcut> outEdges = new ArrayList<Shortcut>();
+        List<Shortcut> shortcuts = new ArrayList<Shortcut>();
+        for (int pos = dirty.next(0); pos >= 0; pos = dirty.next(pos + 1))
+        {
+            int node = nodesByLevel[pos];
+            int level = levels[node];
+            // nodes of the core share the highest level and are not contracted
+            if (pos > 0 && levels[nodesByLevel[pos - 1]] == level
+                    || pos + 1 < nodesByLevel.length && levels[nodesByLevel[pos + 1]] == level)
+                continue;
+
+            contractedNodes++;
+            currentLevel[0] = level;
+            inEdges.clear();
+            outEdges.clear();
+            EdgeSkipIterator iter = explorer.setBaseNode(node);
+            while (iter.next())
+            {
+                int adjNode = iter.getAdjNode();
+                if (levels[adjNode] <= level)
+                    continue;
+
+                if (encoder.isBool(iter.getFlags(), FlagEncoder.K_BACKWARD))
+                {
+                    double weight = weighting.calcWeight(iter, true, EdgeIterator.NO_EDGE);
+                    if (!Double.isInfinite(weight))
+                        inEdges.add(new Shortcut(adjNode, iter.getEdge(), weight, iter.getDistance()));
+                }
+                if (encoder.isBool(iter.getFlags(), FlagEncoder.K_FORWARD))
+                {
+                    double weight = weighting.calcWeight(iter, false, EdgeIterator.NO_EDGE);
+                    if (!Double.isInfinite(weight))
+                        outEdges.add(new Shortcut(adjNode, iter.getEdge(), weight, iter.getDistance()));
+                }
+            }
+
+            shortcuts.clear();
+            for (Shortcut in : inEdges)
+            {
+                algo.clear();
+                for (Shortcut out : outEdges)
+                {
+                    if (in.node == out.node)
+                        continue;
+
+                    double weight = in.weight + out.weight;
+                    algo.setLimitWeight(weight);
+                    // the tentative weight is already a witness if the search stops at another node
+                    // with the same weight
+                    algo.findEndNode(in.node, out.node);
+                    if (algo.getWeight(out.node) <= weight)
+                        continue;
+
+                    // no witness found => shortcut (in.node, out.node) via (in.edge, out.edge)
+                    Shortcut sc = new Shortcut(in.node, in.edge, weight, in.distance + out.distance);
+                    sc.to = out.node;
+                    sc.skippedEdge2 = out.edge;
+                    addShortcut(shortcuts, sc);
+                }
+            }
+
+            for (Shortcut sc : shortcuts)
+            {
+                EdgeSkipIterState state = graph.shortcut(sc.node, sc.to);
+                state.setFlags(encoder.setAccess(0, true, sc.bothDirections));
+                state.setWeight(sc.weight);
+                state.setDistance(sc.distance);
+                state.setSkippedEdges(sc.edge, sc.skippedEdge2);
+                dirty.add(Math.min(positions[sc.node], positions[sc.to]));
+                newShortcuts++;
+            }
+        }
+    }
+
+    /**
+     * Merges the shortcut with an existing one in the opposite direction if both skip the same
+     * edges and have the same weight.
+     */
+    private void addShortcut( List<Shortcut> shortcuts, Shortcut sc )
+    {
+        for (Shortcut other : shortcuts)
+        {
+            if (other.node == sc.to && other.to == sc.node && other.edge == sc.skippedEdge2
+                    && other.skippedEdge2 == sc.edge && toInt(other.weight) == toInt(sc.weight))
+            {
+                other.bothDirections = true;
+                return;
+            }
+        }
+        shortcuts.add(sc);
+    }
+
+    /**
+     * @return the number of shortcuts which got a new weight or direction
+     */
+    public int getChangedShortcuts()
+    {
+        return changedShortcuts;
+    }
+
+    public int getNewShortcuts()
+    {
+        return newShortcuts;
+    }
+
+    public int getContractedNodes()
+    {
+        return contractedNodes;
+    }
+
+    /**
+     * An edge to a neighbor or, if 'to' is set, a shortcut which is required.
+     */
+    private static class Shortcut
+    {
+        final int node;
+        final int edge;
+        final double weight;
+        final double distance;
+        int to = -1;
+        int skippedEdge2 = EdgeIterator.NO_EDGE;
+        boolean bothDirections;
+
+        Shortcut( int node, int edge, double weight, double distance )
+        {
+            this.node = node;
+            this.edge = edge;
+            this.weight = weight;
+            this.distance = distance;
+        }
+    }
+}
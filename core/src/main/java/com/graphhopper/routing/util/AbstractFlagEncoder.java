@@ -28,6 +28,7 @@ import com.graphhopper.reader.OSMReader;
 import com.graphhopper.reader.OSMTurnRelation;
 import com.graphhopper.reader.OSMWay;
 import com.graphhopper.reader.OSMRelation;
+import com.graphhopper.reader.OSMTagIds;
 import com.graphhopper.reader.OSMTurnRelation.TurnCostTableEntry;
 import com.graphhopper.util.*;
 import java.util.*;
@@ -44,6 +45,21 @@ import java.util.*;
 public abstract class AbstractFlagEncoder implements FlagEncoder, TurnCostEncoder
 {
     private final static Logger logger = LoggerFactory.getLogger(AbstractFlagEncoder.class);
+    // frequently used keys and values, they are registered first and so they have the same ids in
+    // the OSMTagIds of every encoder
+    private static final List<String> COMMON_TAGS = Arrays.asList("highway", "route", "oneway",
+            "junction", "railway", "barrier", "locked", "ford", "yes", "roundabout");
+    protected static final int KEY_HIGHWAY = COMMON_TAGS.indexOf("highway");
+    protected static final int KEY_ROUTE = COMMON_TAGS.indexOf("route");
+    protected static final int KEY_ONEWAY = COMMON_TAGS.indexOf("oneway");
+    protected static final int KEY_JUNCTION = COMMON_TAGS.indexOf("junction");
+    protected static final int KEY_RAILWAY = COMMON_TAGS.indexOf("railway");
+    protected static final int KEY_BARRIER = COMMON_TAGS.indexOf("barrier");
+    protected static final int KEY_LOCKED = COMMON_TAGS.indexOf("locked");
+    protected static final int KEY_FORD = COMMON_TAGS.indexOf("ford");
+    protected static final int VALUE_YES = COMMON_TAGS.indexOf("yes");
+    protected static final int VALUE_FORD = KEY_FORD;
+    protected static final int VALUE_ROUNDABOUT = COMMON_TAGS.indexOf("roundabout");
 
     /* Edge Flag Encoder fields */
     private long nodeBitMask;
@@ -76,6 +92,16 @@ public abstract class AbstractFlagEncoder implements FlagEncoder, TurnCostEncode
     // http://wiki.openstreetmap.org/wiki/Mapfeatures#Barrier
     protected final HashSet<String> absoluteBarriers = new HashSet<String>(5);
     protected final HashSet<String> potentialBarriers = new HashSet<String>(5);
+    /* the ids of the restriction definitions, valid after getTagIds was called */
+    private OSMTagIds tagIds;
+    protected int[] restrictionIds;
+    protected BitSet intendedValueIds;
+    protected BitSet restrictedValueIds;
+    protected BitSet ferryIds;
+    protected BitSet onewayIds;
+    protected BitSet acceptedRailwayIds;
+    protected BitSet absoluteBarrierIds;
+    protected BitSet potentialBarrierIds;
     private boolean blockByDefault = true;
     private boolean blockFords = true;
     protected final int speedBits;
@@ -112,6 +138,40 @@ public abstract class AbstractFlagEncoder implements FlagEncoder, TurnCostEncode
         acceptedRailways.add("obliterated");
     }
 
+    /**
+     * Registers the restriction definitions at the specified OSMTagIds to compare ids instead of
+     * strings while parsing. Called from the EncodingManager, so subclasses have to define the
+     * restrictions before the registration.
+     */
+    void setTagIds( OSMTagIds tagIds )
+    {
+        for (int i = 0; i < COMMON_TAGS.size(); i++)
+        {
+            if (tagIds.register(COMMON_TAGS.get(i)) != i)
+                throw new IllegalArgumentException("The common tags have to be registered first");
+        }
+        restrictionIds = tagIds.register(restrictions);
+        intendedValueIds = tagIds.registerSet(intendedValues);
+        restrictedValueIds = tagIds.registerSet(restrictedValues);
+        ferryIds = tagIds.registerSet(ferries);
+        onewayIds = tagIds.registerSet(oneways);
+        acceptedRailwayIds = tagIds.registerSet(acceptedRailways);
+        absoluteBarrierIds = tagIds.registerSet(absoluteBarriers);
+        potentialBarrierIds = tagIds.registerSet(potentialBarriers);
+        this.tagIds = tagIds;
+    }
+
+    /**
+     * @return the ids used to query the tags of the parsed elements. An encoder which is not
+     * registered at an EncodingManager creates its own ids on the first call.
+     */
+    protected OSMTagIds getTagIds()
+    {
+        if (tagIds == null)
+            setTagIds(new OSMTagIds());
+        return tagIds;
+    }
+
     /**
      * Should potential barriers block when no access limits are given?
      */
@@ -206,23 +266,24 @@ public abstract class AbstractFlagEncoder implements FlagEncoder, TurnCostEncode
      */
     public long handleNodeTags( OSMNode node )
     {
+        OSMTagIds ids = getTagIds();
         // absolute barriers always block
-        if (node.hasTag("barrier", absoluteBarriers))
+        if (node.hasTagId(ids, KEY_BARRIER, absoluteBarrierIds))
             return directionBitMask;
 
         // movable barriers block if they are not marked as passable
-        if (node.hasTag("barrier", potentialBarriers))
+        if (node.hasTagId(ids, KEY_BARRIER, potentialBarrierIds))
         {
             boolean locked = false;
-            if (node.hasTag("locked", "yes"))
+            if (node.hasTagId(ids, KEY_LOCKED, VALUE_YES))
                 locked = true;
 
-            for (String res : restrictions)
+            for (int res : restrictionIds)
             {
-                if (!locked && node.hasTag(res, intendedValues))
+                if (!locked && node.hasTagId(ids, res, intendedValueIds))
                     return 0;
 
-                if (node.hasTag(res, restrictedValues))
+                if (node.hasTagId(ids, res, restrictedValueIds))
                     return directionBitMask;
             }
 
@@ -231,8 +292,8 @@ public abstract class AbstractFlagEncoder implements FlagEncoder, TurnCostEncode
         }
 
         if (blockFords
-                && (node.hasTag("highway", "ford") || node.hasTag("ford"))
-                && !node.hasTag(restrictions, intendedValues))
+                && (node.hasTagId(ids, KEY_HIGHWAY, VALUE_FORD) || node.hasTagId(ids, KEY_FORD))
+                && !node.hasTagId(ids, restrictionIds, intendedValueIds))
             return directionBitMask;
 
         return 0;
@@ -369,6 +430,14 @@ public abstract class AbstractFlagEncoder implements FlagEncoder, TurnCostEncode
         if (Helper.isEmpty(str))
             return -1;
 
+        // avoid the exception for values like 'none' or 'signals' and the substrings for plain numbers
+        if (!Character.isDigit(str.charAt(0)))
+            return -1;
+
+        int plain = parseInt(str);
+        if (plain >= 0)
+            return plain;
+
         try
         {
             int val;
@@ -409,6 +478,27 @@ public abstract class AbstractFlagEncoder implements FlagEncoder, TurnCostEncode
         }
     }
 
+    /**
+     * @return the value if the string contains only digits, otherwise -1
+     */
+    private static int parseInt( String str )
+    {
+        int len = str.length();
+        if (len > 6)
+            return -1;
+
+        int val = 0;
+        for (int i = 0; i < len; i++)
+        {
+            char c = str.charAt(i);
+            if (c < '0' || c > '9')
+                return -1;
+
+            val = val * 10 + (c - '0');
+        }
+        return val;
+    }
+
     /**
      * This method parses a string ala "00:00" (hours and minutes) or "0:00:00" (days, hours and
      * minutes).
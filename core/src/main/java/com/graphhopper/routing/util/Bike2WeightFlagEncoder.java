@@ -18,6 +18,7 @@
  */
 package com.graphhopper.routing.util;
 
+import com.graphhopper.reader.OSMTagIds;
 import com.graphhopper.reader.OSMWay;
 import com.graphhopper.util.BitUtil;
 import com.graphhopper.util.EdgeIteratorState;
@@ -78,8 +79,9 @@ public class Bike2WeightFlagEncoder extends BikeFlagEncoder
     @Override
     public long handleSpeed( OSMWay way, double speed, long encoded )
     {
+        OSMTagIds ids = getTagIds();
         // handle oneways
-        if ((way.hasTag("oneway", oneways) || way.hasTag("junction", "roundabout"))
+        if ((way.hasTagId(ids, KEY_ONEWAY, onewayIds) || way.hasTagId(ids, KEY_JUNCTION, VALUE_ROUNDABOUT))
                 && !way.hasTag("oneway:bicycle", "no")
                 && !way.hasTag("cycleway", oppositeLanes))
         {
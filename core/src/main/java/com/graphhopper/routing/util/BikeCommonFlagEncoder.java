@@ -17,6 +17,7 @@
  */
 package com.graphhopper.routing.util;
 
+import com.graphhopper.reader.OSMTagIds;
 import com.graphhopper.reader.OSMWay;
 import com.graphhopper.reader.OSMRelation;
 import static com.graphhopper.routing.util.PriorityCode.*;
@@ -214,10 +215,11 @@ public class BikeCommonFlagEncoder extends AbstractFlagEncoder
     @Override
     public long acceptWay( OSMWay way )
     {
-        String highwayValue = way.getTag("highway");
+        OSMTagIds ids = getTagIds();
+        String highwayValue = way.getTagById(ids, KEY_HIGHWAY);
         if (highwayValue == null)
         {
-            if (way.hasTag("route", ferries))
+            if (way.hasTagId(ids, KEY_ROUTE, ferryIds))
             {
                 // if bike is NOT explictly tagged allow bike but only if foot is not specified
                 String bikeTag = way.getTag("bicycle");
@@ -242,15 +244,15 @@ public class BikeCommonFlagEncoder extends AbstractFlagEncoder
             return 0;
 
         // do not use fords with normal bikes, flagged fords are in included above
-        if (isBlockFords() && (way.hasTag("highway", "ford") || way.hasTag("ford")))
+        if (isBlockFords() && (way.hasTagId(ids, KEY_HIGHWAY, VALUE_FORD) || way.hasTagId(ids, KEY_FORD)))
             return 0;
 
         // check access restrictions
-        if (way.hasTag(restrictions, restrictedValues))
+        if (way.hasTagId(ids, restrictionIds, restrictedValueIds))
             return 0;
 
         // do not accept railways (sometimes incorrectly mapped!)
-        if (way.hasTag("railway") && !way.hasTag("railway", acceptedRailways))
+        if (way.hasTagId(ids, KEY_RAILWAY) && !way.hasTagId(ids, KEY_RAILWAY, acceptedRailwayIds))
             return 0;
 
         String sacScale = way.getTag("sac_scale");
@@ -322,6 +324,7 @@ public class BikeCommonFlagEncoder extends AbstractFlagEncoder
 
     int getSpeed( OSMWay way )
     {
+        OSMTagIds ids = getTagIds();
         int speed = PUSHING_SECTION_SPEED;
         String s = way.getTag("surface");
         if (!Helper.isEmpty(s))
@@ -339,7 +342,7 @@ public class BikeCommonFlagEncoder extends AbstractFlagEncoder
                     speed = tInt;
             } else
             {
-                String highway = way.getTag("highway");
+                String highway = way.getTagById(ids, KEY_HIGHWAY);
                 if (!Helper.isEmpty(highway))
                 {
                     Integer hwInt = highwaySpeed.get(highway);
@@ -443,8 +446,9 @@ public class BikeCommonFlagEncoder extends AbstractFlagEncoder
      */
     void collect( OSMWay way, TreeMap<Double, Integer> weightToPrioMap )
     {
+        OSMTagIds ids = getTagIds();
         String service = way.getTag("service");
-        String highway = way.getTag("highway");
+        String highway = way.getTagById(ids, KEY_HIGHWAY);
         if (way.hasTag("bicycle", "designated"))
             weightToPrioMap.put(100d, PREFER.getValue());
         if ("cycleway".equals(highway))
@@ -477,8 +481,9 @@ public class BikeCommonFlagEncoder extends AbstractFlagEncoder
      */
     long handleBikeRelated( OSMWay way, long encoded, boolean partOfCycleRelation )
     {
+        OSMTagIds ids = getTagIds();
         String surfaceTag = way.getTag("surface");
-        String highway = way.getTag("highway");
+        String highway = way.getTagById(ids, KEY_HIGHWAY);
         String trackType = way.getTag("tracktype");
 
         // Populate bits at wayTypeMask with wayType            
@@ -579,10 +584,11 @@ public class BikeCommonFlagEncoder extends AbstractFlagEncoder
 
     protected long handleSpeed( OSMWay way, double speed, long encoded )
     {
+        OSMTagIds ids = getTagIds();
         encoded = setSpeed(encoded, speed);
 
         // handle oneways
-        if ((way.hasTag("oneway", oneways) || way.hasTag("junction", "roundabout"))
+        if ((way.hasTagId(ids, KEY_ONEWAY, onewayIds) || way.hasTagId(ids, KEY_JUNCTION, VALUE_ROUNDABOUT))
                 && !way.hasTag("oneway:bicycle", "no")
                 && !way.hasTag("cycleway", oppositeLanes))
         {
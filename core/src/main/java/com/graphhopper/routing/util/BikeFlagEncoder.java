@@ -17,6 +17,7 @@
  */
 package com.graphhopper.routing.util;
 
+import com.graphhopper.reader.OSMTagIds;
 import com.graphhopper.reader.OSMWay;
 
 /**
@@ -65,7 +66,8 @@ public class BikeFlagEncoder extends BikeCommonFlagEncoder
     @Override
     boolean isPushingSection( OSMWay way )
     {
-        String highway = way.getTag("highway");
+        OSMTagIds ids = getTagIds();
+        String highway = way.getTagById(ids, KEY_HIGHWAY);
         String trackType = way.getTag("tracktype");
         return way.hasTag("highway", pushingSections)
                 || "track".equals(highway) && trackType != null && !"grade1".equals(trackType);
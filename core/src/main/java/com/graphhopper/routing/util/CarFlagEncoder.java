@@ -23,6 +23,7 @@ import java.util.Map;
 import java.util.Set;
 
 import com.graphhopper.reader.OSMRelation;
+import com.graphhopper.reader.OSMTagIds;
 import com.graphhopper.reader.OSMWay;
 import com.graphhopper.util.Helper;
 import java.util.*;
@@ -141,7 +142,8 @@ public class CarFlagEncoder extends AbstractFlagEncoder
 
     protected double getSpeed( OSMWay way )
     {
-        String highwayValue = way.getTag("highway");
+        OSMTagIds ids = getTagIds();
+        String highwayValue = way.getTagById(ids, KEY_HIGHWAY);
         Integer speed = defaultSpeedMap.get(highwayValue);
         if (speed == null)
             throw new IllegalStateException(toString() + ", no speed found for:" + highwayValue);
@@ -163,10 +165,11 @@ public class CarFlagEncoder extends AbstractFlagEncoder
     @Override
     public long acceptWay( OSMWay way )
     {
-        String highwayValue = way.getTag("highway");
+        OSMTagIds ids = getTagIds();
+        String highwayValue = way.getTagById(ids, KEY_HIGHWAY);
         if (highwayValue == null)
         {
-            if (way.hasTag("route", ferries))
+            if (way.hasTagId(ids, KEY_ROUTE, ferryIds))
             {
                 String motorcarTag = way.getTag("motorcar");
                 if (motorcarTag == null)
@@ -192,16 +195,16 @@ public class CarFlagEncoder extends AbstractFlagEncoder
             return 0;
 
         // do not drive street cars into fords
-        boolean carsAllowed = way.hasTag(restrictions, intendedValues);
-        if (isBlockFords() && ("ford".equals(highwayValue) || way.hasTag("ford")) && !carsAllowed)
+        boolean carsAllowed = way.hasTagId(ids, restrictionIds, intendedValueIds);
+        if (isBlockFords() && ("ford".equals(highwayValue) || way.hasTagId(ids, KEY_FORD)) && !carsAllowed)
             return 0;
 
         // check access restrictions
-        if (way.hasTag(restrictions, restrictedValues) && !carsAllowed)
+        if (way.hasTagId(ids, restrictionIds, restrictedValueIds) && !carsAllowed)
             return 0;
 
         // do not drive cars over railways (sometimes incorrectly mapped!)
-        if (way.hasTag("railway") && !way.hasTag("railway", acceptedRailways))
+        if (way.hasTagId(ids, KEY_RAILWAY) && !way.hasTagId(ids, KEY_RAILWAY, acceptedRailwayIds))
             return 0;
 
         return acceptBit;
@@ -216,6 +219,7 @@ public class CarFlagEncoder extends AbstractFlagEncoder
     @Override
     public long handleWayTags( OSMWay way, long allowed, long relationFlags )
     {
+        OSMTagIds ids = getTagIds();
         if (!isAccept(allowed))
             return 0;
 
@@ -232,11 +236,11 @@ public class CarFlagEncoder extends AbstractFlagEncoder
 
             encoded = setSpeed(0, speed);
 
-            boolean isRoundabout = way.hasTag("junction", "roundabout");
+            boolean isRoundabout = way.hasTagId(ids, KEY_JUNCTION, VALUE_ROUNDABOUT);
             if (isRoundabout)
                 encoded = setBool(encoded, K_ROUNDABOUT, true);
 
-            if (way.hasTag("oneway", oneways) || isRoundabout)
+            if (way.hasTagId(ids, KEY_ONEWAY, onewayIds) || isRoundabout)
             {
                 if (way.hasTag("oneway", "-1"))
                     encoded |= backwardBit;
@@ -256,8 +260,9 @@ public class CarFlagEncoder extends AbstractFlagEncoder
 
     public String getWayInfo( OSMWay way )
     {
+        OSMTagIds ids = getTagIds();
         String str = "";
-        String highwayValue = way.getTag("highway");
+        String highwayValue = way.getTagById(ids, KEY_HIGHWAY);
         // for now only motorway links
         if ("motorway_link".equals(highwayValue))
         {
@@ -50,6 +50,22 @@ public class DefaultEdgeFilter implements EdgeFilter
         return out && encoder.isBool(flags, FlagEncoder.K_FORWARD) || in && encoder.isBool(flags, FlagEncoder.K_BACKWARD);
     }
 
+    @Override
+    public boolean equals( Object obj )
+    {
+        if (obj == null || obj.getClass() != getClass())
+            return false;
+
+        DefaultEdgeFilter other = (DefaultEdgeFilter) obj;
+        return in == other.in && out == other.out && encoder == other.encoder;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return 31 * encoder.hashCode() + (in ? 2 : 0) + (out ? 1 : 0);
+    }
+
     @Override
     public String toString()
     {
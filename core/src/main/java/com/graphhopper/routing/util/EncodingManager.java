@@ -27,6 +27,7 @@ import java.util.List;
 import com.graphhopper.reader.OSMNode;
 import com.graphhopper.reader.OSMReader;
 import com.graphhopper.reader.OSMRelation;
+import com.graphhopper.reader.OSMTagIds;
 import com.graphhopper.reader.OSMTurnRelation;
 import com.graphhopper.reader.OSMTurnRelation.TurnCostTableEntry;
 import com.graphhopper.reader.OSMWay;
@@ -63,6 +64,8 @@ public class EncodingManager
     private final int bitsForEdgeFlags;
     private final int bitsForTurnFlags = 8 * 4;
     private boolean enableInstructions = true;
+    // the tag ids of all encoders, they are registered in registerEncoder
+    private final OSMTagIds tagIds = new OSMTagIds();
 
     /**
      * Instantiate manager with the given list of encoders. The manager knows the default encoders:
@@ -183,6 +186,7 @@ public class EncodingManager
 
     private void registerEncoder( AbstractFlagEncoder encoder )
     {
+        encoder.setTagIds(tagIds);
         int encoderCount = edgeEncoders.size();
         int usedBits = encoder.defineNodeBits(encoderCount, nextNodeBit);
         if (usedBits > bitsForEdgeFlags)
@@ -284,6 +288,15 @@ public class EncodingManager
         return edgeEncoders.size();
     }
 
+    /**
+     * @return the ids of the tags the encoders are interested in, the readers should resolve the
+     * tags of the parsed elements with them
+     */
+    public OSMTagIds getTagIds()
+    {
+        return tagIds;
+    }
+
     @Override
     public String toString()
     {
@@ -315,6 +328,14 @@ public class EncodingManager
         return str.toString();
     }
 
+    /**
+     * @return a new list containing all encoders of this manager
+     */
+    public List<FlagEncoder> fetchEdgeEncoders()
+    {
+        return new ArrayList<FlagEncoder>(edgeEncoders);
+    }
+
     public FlagEncoder getSingle()
     {
         if (getVehicleCount() > 1)
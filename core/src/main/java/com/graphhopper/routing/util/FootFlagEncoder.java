@@ -21,6 +21,7 @@ import java.util.HashSet;
 import java.util.Set;
 
 import com.graphhopper.reader.OSMRelation;
+import com.graphhopper.reader.OSMTagIds;
 import com.graphhopper.reader.OSMWay;
 import static com.graphhopper.routing.util.PriorityCode.*;
 import java.util.*;
@@ -186,10 +187,11 @@ public class FootFlagEncoder extends AbstractFlagEncoder
     @Override
     public long acceptWay( OSMWay way )
     {
-        String highwayValue = way.getTag("highway");
+        OSMTagIds ids = getTagIds();
+        String highwayValue = way.getTagById(ids, KEY_HIGHWAY);
         if (highwayValue == null)
         {
-            if (way.hasTag("route", ferries))
+            if (way.hasTagId(ids, KEY_ROUTE, ferryIds))
             {
                 String footTag = way.getTag("foot");
                 if (footTag == null || "yes".equals(footTag))
@@ -221,18 +223,18 @@ public class FootFlagEncoder extends AbstractFlagEncoder
             return 0;
 
         // do not get our feet wet, "yes" is already included above
-        if (isBlockFords() && (way.hasTag("highway", "ford") || way.hasTag("ford")))
+        if (isBlockFords() && (way.hasTagId(ids, KEY_HIGHWAY, VALUE_FORD) || way.hasTagId(ids, KEY_FORD)))
             return 0;
 
         if (way.hasTag("bicycle", "official"))
             return 0;
 
         // check access restrictions
-        if (way.hasTag(restrictions, restrictedValues))
+        if (way.hasTagId(ids, restrictionIds, restrictedValueIds))
             return 0;
 
         // do not accept railways (sometimes incorrectly mapped!)
-        if (way.hasTag("railway") && !way.hasTag("railway", acceptedRailways))
+        if (way.hasTagId(ids, KEY_RAILWAY) && !way.hasTagId(ids, KEY_RAILWAY, acceptedRailwayIds))
             return 0;
 
         return acceptBit;
@@ -355,7 +357,8 @@ public class FootFlagEncoder extends AbstractFlagEncoder
      */
     void collect( OSMWay way, TreeMap<Double, Integer> weightToPrioMap )
     {
-        String highway = way.getTag("highway");
+        OSMTagIds ids = getTagIds();
+        String highway = way.getTagById(ids, KEY_HIGHWAY);
         if (way.hasTag("foot", "designated"))
             weightToPrioMap.put(100d, PREFER.getValue());
 
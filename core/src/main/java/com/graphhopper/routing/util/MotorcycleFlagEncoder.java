@@ -17,6 +17,7 @@
  */
 package com.graphhopper.routing.util;
 
+import com.graphhopper.reader.OSMTagIds;
 import com.graphhopper.reader.OSMWay;
 import com.graphhopper.util.BitUtil;
 import static com.graphhopper.routing.util.PriorityCode.*;
@@ -110,10 +111,11 @@ public class MotorcycleFlagEncoder extends CarFlagEncoder
     @Override
     public long acceptWay( OSMWay way )
     {
-        String highwayValue = way.getTag("highway");
+        OSMTagIds ids = getTagIds();
+        String highwayValue = way.getTagById(ids, KEY_HIGHWAY);
         if (highwayValue == null)
         {
-            if (way.hasTag("route", ferries))
+            if (way.hasTagId(ids, KEY_ROUTE, ferryIds))
             {
                 String motorcycleTag = way.getTag("motorcycle");
                 if (motorcycleTag == null)
@@ -139,16 +141,16 @@ public class MotorcycleFlagEncoder extends CarFlagEncoder
             return 0;
 
         // do not drive street cars into fords
-        boolean carsAllowed = way.hasTag(restrictions, intendedValues);
-        if (isBlockFords() && ("ford".equals(highwayValue) || way.hasTag("ford")) && !carsAllowed)
+        boolean carsAllowed = way.hasTagId(ids, restrictionIds, intendedValueIds);
+        if (isBlockFords() && ("ford".equals(highwayValue) || way.hasTagId(ids, KEY_FORD)) && !carsAllowed)
             return 0;
 
         // check access restrictions
-        if (way.hasTag(restrictions, restrictedValues) && !carsAllowed)
+        if (way.hasTagId(ids, restrictionIds, restrictedValueIds) && !carsAllowed)
             return 0;
 
         // do not drive cars over railways (sometimes incorrectly mapped!)
-        if (way.hasTag("railway") && !way.hasTag("railway", acceptedRailways))
+        if (way.hasTagId(ids, KEY_RAILWAY) && !way.hasTagId(ids, KEY_RAILWAY, acceptedRailwayIds))
             return 0;
 
         return acceptBit;
@@ -157,6 +159,7 @@ public class MotorcycleFlagEncoder extends CarFlagEncoder
     @Override
     public long handleWayTags( OSMWay way, long allowed, long relationFlags )
     {
+        OSMTagIds ids = getTagIds();
         if (!isAccept(allowed))
             return 0;
 
@@ -177,11 +180,11 @@ public class MotorcycleFlagEncoder extends CarFlagEncoder
             if (speed > 30 && way.hasTag("surface", badSurfaceSpeedMap))
                 speed = 30;
 
-            boolean isRoundabout = way.hasTag("junction", "roundabout");
+            boolean isRoundabout = way.hasTagId(ids, KEY_JUNCTION, VALUE_ROUNDABOUT);
             if (isRoundabout)
                 encoded = setBool(0, K_ROUNDABOUT, true);
 
-            if (way.hasTag("oneway", oneways) || isRoundabout)
+            if (way.hasTagId(ids, KEY_ONEWAY, onewayIds) || isRoundabout)
             {
                 if (way.hasTag("oneway", "-1"))
                 {
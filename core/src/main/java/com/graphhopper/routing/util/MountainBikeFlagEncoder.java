@@ -18,6 +18,7 @@
 package com.graphhopper.routing.util;
 
 import com.graphhopper.reader.OSMRelation;
+import com.graphhopper.reader.OSMTagIds;
 import com.graphhopper.reader.OSMWay;
 import static com.graphhopper.routing.util.BikeCommonFlagEncoder.PUSHING_SECTION_SPEED;
 import static com.graphhopper.routing.util.PriorityCode.*;
@@ -133,9 +134,10 @@ public class MountainBikeFlagEncoder extends BikeCommonFlagEncoder
     @Override
     void collect( OSMWay way, TreeMap<Double, Integer> weightToPrioMap )
     {
+        OSMTagIds ids = getTagIds();
         super.collect(way, weightToPrioMap);
 
-        String highway = way.getTag("highway");
+        String highway = way.getTagById(ids, KEY_HIGHWAY);
         if ("track".equals(highway))
         {
             String trackType = way.getTag("tracktype");
@@ -17,6 +17,7 @@
  */
 package com.graphhopper.routing.util;
 
+import com.graphhopper.reader.OSMTagIds;
 import com.graphhopper.reader.OSMWay;
 import static com.graphhopper.routing.util.PriorityCode.*;
 import java.util.TreeMap;
@@ -119,9 +120,10 @@ public class RacingBikeFlagEncoder extends BikeCommonFlagEncoder
     @Override
     void collect( OSMWay way, TreeMap<Double, Integer> weightToPrioMap )
     {
+        OSMTagIds ids = getTagIds();
         super.collect(way, weightToPrioMap);
 
-        String highway = way.getTag("highway");
+        String highway = way.getTagById(ids, KEY_HIGHWAY);
         if ("service".equals(highway))
         {
             weightToPrioMap.put(40d, UNCHANGED.getValue());
@@ -138,7 +140,8 @@ public class RacingBikeFlagEncoder extends BikeCommonFlagEncoder
     @Override
     boolean isPushingSection( OSMWay way )
     {
-        String highway = way.getTag("highway");
+        OSMTagIds ids = getTagIds();
+        String highway = way.getTagById(ids, KEY_HIGHWAY);
         String trackType = way.getTag("tracktype");
         return way.hasTag("highway", pushingSections)
                 || "track".equals(highway) && trackType != null && !"grade1".equals(trackType);
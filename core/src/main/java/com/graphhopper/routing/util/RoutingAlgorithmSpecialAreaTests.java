@@ -119,6 +119,15 @@ public class RoutingAlgorithmSpecialAreaTests
         prepare.add(new AlgoHelperEntry(g, astarbiOpts, idx));
         prepare.add(new AlgoHelperEntry(g, dijkstrabiOpts, idx));
 
+        // the same algorithms but with the search state reused per thread
+        final AlgorithmOptions astarbiReuseOpts = new AlgorithmOptions(AlgorithmOptions.ASTAR_BI, encoder, weighting, tMode);
+        astarbiReuseOpts.getHints().put(AlgorithmOptions.ASTAR_BI + ".approximation", "true");
+        astarbiReuseOpts.getHints().put(AlgorithmOptions.REUSE_SEARCH_STATE, "true");
+        final AlgorithmOptions dijkstrabiReuseOpts = new AlgorithmOptions(AlgorithmOptions.DIJKSTRA_BI, encoder, weighting, tMode);
+        dijkstrabiReuseOpts.getHints().put(AlgorithmOptions.REUSE_SEARCH_STATE, "true");
+        prepare.add(new AlgoHelperEntry(g, astarbiReuseOpts, idx));
+        prepare.add(new AlgoHelperEntry(g, dijkstrabiReuseOpts, idx));
+
         if (withCh)
         {
             final LevelGraph graphCH = (LevelGraph) ((GraphStorage) g).copyTo(new GraphBuilder(manager).
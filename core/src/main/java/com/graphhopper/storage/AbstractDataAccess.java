@@ -22,7 +22,16 @@ import com.graphhopper.util.Helper;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * @author Peter Karich
@@ -34,6 +43,8 @@ public abstract class AbstractDataAccess implements DataAccess
     // reserve some space for downstream usage (in classes using/extending this)
     protected static final int HEADER_OFFSET = 20 * 4 + 20;
     protected static final byte[] EMPTY = new byte[1024];
+    // the segments are loaded in chunks of roughly this size
+    private static final int CHUNK_BYTES = 1 << 24;
     protected int header[] = new int[(HEADER_OFFSET - 20) / 4];
     private final String location;
     protected String name;
@@ -43,6 +54,10 @@ public abstract class AbstractDataAccess implements DataAccess
     protected final ByteOrder byteOrder;
     protected final BitUtil bitUtil;
     protected transient boolean closed = false;
+    // set while GHDirectory.loadExisting loads this object with the threads of all objects
+    private transient ExecutorService loadExecutor;
+    private transient int loadThreads;
+    private transient boolean preloaded = false;
 
     public AbstractDataAccess( String name, String location, ByteOrder order )
     {
@@ -176,7 +191,8 @@ public abstract class AbstractDataAccess implements DataAccess
     @Override
     public DataAccess setSegmentSize( int bytes )
     {
-        if (bytes > 0)
+        // the segments in place, e.g. loaded from disc, keep their size
+        if (bytes > 0 && getSegments() == 0)
         {
             // segment size should be a power of 2
             int tmp = (int) (Math.log(bytes) / Math.log(2));
@@ -187,6 +203,17 @@ public abstract class AbstractDataAccess implements DataAccess
         return this;
     }
 
+    /**
+     * Takes over the segment size of the specified object also if segments are in place, e.g. in
+     * copyTo right before they are replaced.
+     */
+    void copySegmentSize( AbstractDataAccess da )
+    {
+        segmentSizeInBytes = da.segmentSizeInBytes;
+        // keeps this size if segments are in place but updates the derived values of subclasses
+        setSegmentSize(segmentSizeInBytes);
+    }
+
     @Override
     public int getSegmentSize()
     {
@@ -247,4 +274,139 @@ public abstract class AbstractDataAccess implements DataAccess
     {
         return false;
     }
+
+    /**
+     * Calls loadExisting and reads the segments with the specified executor. If this succeeds the
+     * next call of loadExisting returns true without reading the file again, so the storages do
+     * not need to know that GHDirectory.loadExisting already loaded this object.
+     */
+    boolean preload( ExecutorService executor, int threads )
+    {
+        loadExecutor = executor;
+        loadThreads = threads;
+        try
+        {
+            preloaded = loadExisting();
+            return preloaded;
+        } finally
+        {
+            loadExecutor = null;
+        }
+    }
+
+    /**
+     * @return true only for the first call after a successful preload
+     */
+    protected boolean wasPreloaded()
+    {
+        if (!preloaded)
+            return false;
+
+        preloaded = false;
+        return true;
+    }
+
+    interface SegmentTask
+    {
+        /**
+         * @param bytes a buffer of the segment size which is reused for the segments of a chunk or
+         * null if not requested
+         */
+        void run( int segment, byte[] bytes ) throws IOException;
+    }
+
+    /**
+     * Runs the task for every segment. The segments are split into chunks of consecutive segments
+     * which run in the executor of GHDirectory.loadExisting or, for more than one thread, in an own
+     * executor and otherwise in the calling thread.
+     */
+    protected void runParallel( final int segmentCount, int threads, final boolean buffered, final SegmentTask task )
+            throws IOException
+    {
+        ExecutorService executor = loadExecutor;
+        if (executor != null)
+            threads = loadThreads;
+
+        final int chunkSegments = Math.max(1, Math.min(CHUNK_BYTES / segmentSizeInBytes,
+                (segmentCount + threads - 1) / threads));
+        if (threads <= 1 || chunkSegments >= segmentCount)
+        {
+            byte[] bytes = buffered ? new byte[segmentSizeInBytes] : null;
+            for (int s = 0; s < segmentCount; s++)
+            {
+                task.run(s, bytes);
+            }
+            return;
+        }
+
+        boolean ownExecutor = executor == null;
+        if (ownExecutor)
+            executor = Executors.newFixedThreadPool(threads);
+        try
+        {
+            List<Future<Object>> futures = new ArrayList<Future<Object>>();
+            for (int chunkStart = 0; chunkStart < segmentCount; chunkStart += chunkSegments)
+            {
+                final int from = chunkStart;
+                final int to = Math.min(segmentCount, chunkStart + chunkSegments);
+                futures.add(executor.submit(new Callable<Object>()
+                {
+                    @Override
+                    public Object call() throws IOException
+                    {
+                        byte[] bytes = buffered ? new byte[segmentSizeInBytes] : null;
+                        for (int s = from; s < to; s++)
+                        {
+                            task.run(s, bytes);
+                        }
+                        return null;
+                    }
+                }));
+            }
+
+            for (Future<Object> future : futures)
+            {
+                try
+                {
+                    future.get();
+                } catch (InterruptedException ex)
+                {
+                    throw new RuntimeException("Thread was interrupted.", ex);
+                } catch (ExecutionException ex)
+                {
+                    if (ex.getCause() instanceof IOException)
+                        throw (IOException) ex.getCause();
+
+                    throw new RuntimeException("A worker thread failed for " + toString(), ex.getCause());
+                }
+            }
+        } finally
+        {
+            if (ownExecutor)
+                executor.shutdown();
+        }
+    }
+
+    /**
+     * Reads the specified segment via positional reads, so several threads can use the same
+     * channel. The bytes after the end of a truncated file are not touched.
+     * <p/>
+     * @return the number of bytes read
+     */
+    protected int readSegment( FileChannel channel, int segment, ByteBuffer bb ) throws IOException
+    {
+        long pos = HEADER_OFFSET + (long) segment * segmentSizeInBytes;
+        int start = bb.position();
+        while (bb.hasRemaining())
+        {
+            int read = channel.read(bb, pos + bb.position() - start);
+            if (read < 0)
+                break;
+        }
+        int read = bb.position() - start;
+        if (read == 0)
+            throw new IllegalStateException("segment " + segment + " is empty? " + toString());
+
+        return read;
+    }
 }
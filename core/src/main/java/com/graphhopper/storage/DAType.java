@@ -53,13 +53,29 @@ public class DAType
      */
     public static final DAType MMAP_RO = new DAType(MemRef.MMAP, true, false, false, false);
     /**
-     * Experimental API. Do not use yet.
+     * The DA object is hold entirely in native memory which is accessed via sun.misc.Unsafe.
+     * Loading and flushing is a no-op. See UnsafeDataAccess.
+     */
+    public static final DAType UNSAFE = new DAType(MemRef.UNSAFE, false, false, true, false);
+    /**
+     * Like RAM_STORE and with the same file format but in native memory accessed via
+     * sun.misc.Unsafe. See UnsafeDataAccess.
      */
     public static final DAType UNSAFE_STORE = new DAType(MemRef.UNSAFE, true, false, true, false);
+    /**
+     * The DA object is hold entirely in direct memory outside of the JVM heap. Loading and flushing
+     * is a no-op. See DirectDataAccess.
+     */
+    public static final DAType DIRECT = new DAType(MemRef.DIRECT, false, false, true, false);
+    /**
+     * Like RAM_STORE and with the same file format but outside of the JVM heap, which avoids long
+     * garbage collection pauses for big graphs. See DirectDataAccess.
+     */
+    public static final DAType DIRECT_STORE = new DAType(MemRef.DIRECT, true, false, true, false);
 
     public enum MemRef
     {
-        HEAP, MMAP, UNSAFE /*, DIRECT */
+        HEAP, MMAP, UNSAFE, DIRECT
 
     };
     private final MemRef memRef;
@@ -112,6 +128,14 @@ public class DAType
         return memRef == MemRef.MMAP;
     }
 
+    /**
+     * @return true if data resides in direct memory outside of the JVM heap.
+     */
+    public boolean isDirect()
+    {
+        return memRef == MemRef.DIRECT;
+    }
+
     /**
      * Temporary data or store (with loading and storing)? default is false
      */
@@ -146,6 +170,8 @@ public class DAType
             str = "MMAP";
         else if (getMemRef() == MemRef.HEAP)
             str = "RAM";
+        else if (getMemRef() == MemRef.DIRECT)
+            str = "DIRECT";
         else
             str = "UNSAFE";
 
@@ -165,8 +191,18 @@ public class DAType
         if (dataAccess.contains("MMAP"))
             type = DAType.MMAP;
         else if (dataAccess.contains("UNSAFE"))
-            type = DAType.UNSAFE_STORE;
-        else
+        {
+            if (dataAccess.contains("STORE"))
+                type = DAType.UNSAFE_STORE;
+            else
+                type = DAType.UNSAFE;
+        } else if (dataAccess.contains("DIRECT"))
+        {
+            if (dataAccess.contains("STORE"))
+                type = DAType.DIRECT_STORE;
+            else
+                type = DAType.DIRECT;
+        } else
         {
             if (dataAccess.contains("RAM_STORE"))
                 type = DAType.RAM_STORE;
@@ -113,7 +113,8 @@ public interface DataAccess extends Storable<DataAccess>
 
     /**
      * In order to increase allocated space one needs to layout the underlying storage in segments.
-     * This is how you can customize the size.
+     * This is how you can customize the size. It has no effect if segments already exist, e.g.
+     * after create or loadExisting.
      */
     DataAccess setSegmentSize( int bytes );
 
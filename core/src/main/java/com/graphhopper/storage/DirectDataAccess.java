@@ -0,0 +1,396 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.util.Helper;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This is an in-memory data structure like RAMDataAccess but its segments are direct ByteBuffers
+ * outside of the JVM heap, so they are not scanned by the garbage collector. It reads and writes
+ * the same file format as RAMDataAccess. The memory is released in close, the total amount of
+ * allocated memory is available via getAllocatedBytes. The JVM limits it via
+ * -XX:MaxDirectMemorySize. Thread safe for reading.
+ * <p/>
+ * @author Peter Karich
+ */
+public class DirectDataAccess extends AbstractDataAccess
+{
+    private static final AtomicLong allocatedBytes = new AtomicLong();
+    private ByteBuffer[] segments = new ByteBuffer[0];
+    private boolean store;
+
+    DirectDataAccess( String name, String location, boolean store, ByteOrder order )
+    {
+        super(name, location, order);
+        this.store = store;
+    }
+
+    /**
+     * @return the bytes of all DirectDataAccess objects which are not yet closed
+     */
+    public static long getAllocatedBytes()
+    {
+        return allocatedBytes.get();
+    }
+
+    @Override
+    public boolean isStoring()
+    {
+        return store;
+    }
+
+    @Override
+    public DataAccess copyTo( DataAccess da )
+    {
+        if (da instanceof DirectDataAccess)
+        {
+            copyHeader(da);
+            DirectDataAccess dda = (DirectDataAccess) da;
+            dda.release(0);
+            // the target takes over the segment size of this object before its segments are allocated
+            dda.setSegmentSize(segmentSizeInBytes);
+            dda.segments = new ByteBuffer[segments.length];
+            for (int i = 0; i < segments.length; i++)
+            {
+                ByteBuffer copy = dda.allocate();
+                copy.put(duplicate(segments[i]));
+                dda.segments[i] = copy;
+            }
+            return da;
+        } else
+        {
+            return super.copyTo(da);
+        }
+    }
+
+    @Override
+    public DirectDataAccess create( long bytes )
+    {
+        if (segments.length > 0)
+            throw new IllegalThreadStateException("already created");
+
+        setSegmentSize(segmentSizeInBytes);
+        ensureCapacity(Math.max(10 * 4, bytes));
+        return this;
+    }
+
+    @Override
+    public boolean ensureCapacity( long bytes )
+    {
+        if (bytes < 0)
+            throw new IllegalArgumentException("new capacity has to be strictly positive");
+
+        long cap = getCapacity();
+        long todoBytes = bytes - cap;
+        if (todoBytes <= 0)
+            return false;
+
+        int segmentsToCreate = (int) (todoBytes / segmentSizeInBytes);
+        if (todoBytes % segmentSizeInBytes != 0)
+            segmentsToCreate++;
+
+        try
+        {
+            ByteBuffer[] newSegs = Arrays.copyOf(segments, segments.length + segmentsToCreate);
+            for (int i = segments.length; i < newSegs.length; i++)
+            {
+                newSegs[i] = allocate();
+            }
+            segments = newSegs;
+        } catch (OutOfMemoryError err)
+        {
+            throw new OutOfMemoryError(err.getMessage() + " - problem when allocating new direct memory. Old capacity: "
+                    + cap + ", new bytes:" + todoBytes + ", new segments:" + segmentsToCreate
+                    + ", existing:" + segments.length + ", allocated by all objects:" + getAllocatedBytes()
+                    + ". Increase -XX:MaxDirectMemorySize");
+        }
+        return true;
+    }
+
+    private ByteBuffer allocate()
+    {
+        ByteBuffer bb = ByteBuffer.allocateDirect(segmentSizeInBytes).order(byteOrder);
+        allocatedBytes.addAndGet(segmentSizeInBytes);
+        return bb;
+    }
+
+    /**
+     * Frees the memory of all segments starting at the specified one.
+     */
+    private void release( int fromSegment )
+    {
+        for (int i = fromSegment; i < segments.length; i++)
+        {
+            allocatedBytes.addAndGet(-segments[i].capacity());
+            Helper.cleanMappedByteBuffer(segments[i]);
+            segments[i] = null;
+        }
+        segments = Arrays.copyOf(segments, Math.min(fromSegment, segments.length));
+    }
+
+    @Override
+    public boolean loadExisting()
+    {
+        if (wasPreloaded())
+            return true;
+
+        if (segments.length > 0)
+            throw new IllegalStateException("already initialized");
+
+        if (isClosed())
+            throw new IllegalStateException("already closed");
+
+        if (!store)
+            return false;
+
+        File file = new File(getFullName());
+        if (!file.exists() || file.length() == 0)
+            return false;
+
+        try
+        {
+            RandomAccessFile raFile = new RandomAccessFile(getFullName(), "r");
+            try
+            {
+                long byteCount = readHeader(raFile) - HEADER_OFFSET;
+                if (byteCount < 0)
+                    return false;
+
+                int segmentCount = (int) (byteCount / segmentSizeInBytes);
+                if (byteCount % segmentSizeInBytes != 0)
+                    segmentCount++;
+
+                final FileChannel channel = raFile.getChannel();
+                segments = new ByteBuffer[segmentCount];
+                for (int s = 0; s < segmentCount; s++)
+                {
+                    segments[s] = allocate();
+                }
+                runParallel(segmentCount, 1, false, new SegmentTask()
+                {
+                    @Override
+                    public void run( int segment, byte[] unused ) throws IOException
+                    {
+                        readSegment(channel, segment, duplicate(segments[segment]));
+                    }
+                });
+                return true;
+            } finally
+            {
+                raFile.close();
+            }
+        } catch (IOException ex)
+        {
+            throw new RuntimeException("Problem while loading " + getFullName(), ex);
+        }
+    }
+
+    @Override
+    public void flush()
+    {
+        if (closed)
+            throw new IllegalStateException("already closed");
+
+        if (!store)
+            return;
+
+        try
+        {
+            RandomAccessFile raFile = new RandomAccessFile(getFullName(), "rw");
+            try
+            {
+                long len = getCapacity();
+                writeHeader(raFile, len, segmentSizeInBytes);
+                FileChannel channel = raFile.getChannel();
+                long pos = HEADER_OFFSET;
+                for (int s = 0; s < segments.length; s++)
+                {
+                    ByteBuffer bb = duplicate(segments[s]);
+                    while (bb.hasRemaining())
+                    {
+                        pos += channel.write(bb, pos);
+                    }
+                }
+            } finally
+            {
+                raFile.close();
+            }
+        } catch (Exception ex)
+        {
+            throw new RuntimeException("Couldn't store bytes to " + toString(), ex);
+        }
+    }
+
+    /**
+     * The position of a shared buffer must not be changed, so bulk operations use a duplicate.
+     */
+    private ByteBuffer duplicate( ByteBuffer bb )
+    {
+        ByteBuffer dup = bb.duplicate();
+        dup.clear();
+        return dup;
+    }
+
+    @Override
+    public final void setInt( long bytePos, int value )
+    {
+        assert segmentSizePower > 0 : "call create or loadExisting before usage!";
+        int bufferIndex = (int) (bytePos >>> segmentSizePower);
+        int index = (int) (bytePos & indexDivisor);
+        segments[bufferIndex].putInt(index, value);
+    }
+
+    @Override
+    public final int getInt( long bytePos )
+    {
+        assert segmentSizePower > 0 : "call create or loadExisting before usage!";
+        int bufferIndex = (int) (bytePos >>> segmentSizePower);
+        int index = (int) (bytePos & indexDivisor);
+        return segments[bufferIndex].getInt(index);
+    }
+
+    @Override
+    public final void setShort( long bytePos, short value )
+    {
+        assert segmentSizePower > 0 : "call create or loadExisting before usage!";
+        int bufferIndex = (int) (bytePos >>> segmentSizePower);
+        int index = (int) (bytePos & indexDivisor);
+        segments[bufferIndex].putShort(index, value);
+    }
+
+    @Override
+    public final short getShort( long bytePos )
+    {
+        assert segmentSizePower > 0 : "call create or loadExisting before usage!";
+        int bufferIndex = (int) (bytePos >>> segmentSizePower);
+        int index = (int) (bytePos & indexDivisor);
+        return segments[bufferIndex].getShort(index);
+    }
+
+    @Override
+    public void setBytes( long bytePos, byte[] values, int length )
+    {
+        assert length <= segmentSizeInBytes : "the length has to be smaller or equal to the segment size: " + length + " vs. " + segmentSizeInBytes;
+        assert segmentSizePower > 0 : "call create or loadExisting before usage!";
+        int bufferIndex = (int) (bytePos >>> segmentSizePower);
+        int index = (int) (bytePos & indexDivisor);
+        ByteBuffer bb = duplicate(segments[bufferIndex]);
+        bb.position(index);
+        int delta = index + length - segmentSizeInBytes;
+        if (delta > 0)
+        {
+            length -= delta;
+            bb.put(values, 0, length);
+            bb = duplicate(segments[bufferIndex + 1]);
+            bb.put(values, length, delta);
+        } else
+        {
+            bb.put(values, 0, length);
+        }
+    }
+
+    @Override
+    public void getBytes( long bytePos, byte[] values, int length )
+    {
+        assert length <= segmentSizeInBytes : "the length has to be smaller or equal to the segment size: " + length + " vs. " + segmentSizeInBytes;
+        assert segmentSizePower > 0 : "call create or loadExisting before usage!";
+        int bufferIndex = (int) (bytePos >>> segmentSizePower);
+        int index = (int) (bytePos & indexDivisor);
+        ByteBuffer bb = duplicate(segments[bufferIndex]);
+        bb.position(index);
+        int delta = index + length - segmentSizeInBytes;
+        if (delta > 0)
+        {
+            length -= delta;
+            bb.get(values, 0, length);
+            bb = duplicate(segments[bufferIndex + 1]);
+            bb.get(values, length, delta);
+        } else
+        {
+            bb.get(values, 0, length);
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        super.close();
+        release(0);
+        closed = true;
+    }
+
+    @Override
+    public long getCapacity()
+    {
+        return (long) getSegments() * segmentSizeInBytes;
+    }
+
+    @Override
+    public int getSegments()
+    {
+        return segments.length;
+    }
+
+    @Override
+    public void trimTo( long capacity )
+    {
+        if (capacity > getCapacity())
+        {
+            throw new IllegalStateException("Cannot increase capacity (" + getCapacity() + ") to " + capacity
+                    + " via trimTo. Use ensureCapacity instead. ");
+        }
+
+        if (capacity < segmentSizeInBytes)
+            capacity = segmentSizeInBytes;
+
+        int remainingSegments = (int) (capacity / segmentSizeInBytes);
+        if (capacity % segmentSizeInBytes != 0)
+            remainingSegments++;
+
+        release(remainingSegments);
+    }
+
+    @Override
+    public void rename( String newName )
+    {
+        if (!checkBeforeRename(newName))
+            return;
+
+        if (store)
+            super.rename(newName);
+
+        // in every case set the name
+        name = newName;
+    }
+
+    @Override
+    public DAType getType()
+    {
+        if (isStoring())
+            return DAType.DIRECT_STORE;
+        return DAType.DIRECT;
+    }
+}
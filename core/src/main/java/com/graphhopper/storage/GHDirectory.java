@@ -18,11 +18,24 @@
 package com.graphhopper.storage;
 
 import com.graphhopper.util.Helper;
+import com.graphhopper.util.StopWatch;
 import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.ByteOrder;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Implements some common methods for the subclasses.
@@ -31,8 +44,11 @@ import java.util.Map;
  */
 public class GHDirectory implements Directory
 {
+    private static final Logger logger = LoggerFactory.getLogger(GHDirectory.class);
     protected Map<String, DataAccess> map = new HashMap<String, DataAccess>();
     protected Map<String, DAType> types = new HashMap<String, DAType>();
+    // objects closed via close(DataAccess), their files are removed in clear
+    private final Map<String, DAType> closed = new HashMap<String, DAType>();
     protected final String location;
     private final DAType defaultType;
     private final ByteOrder byteOrder = ByteOrder.LITTLE_ENDIAN;
@@ -122,18 +138,211 @@ public class GHDirectory implements Directory
         } else if (type.isMMap())
         {            
             da = new MMapDataAccess(name, location, byteOrder, type.isAllowWrites());
+        } else if (type.isDirect())
+        {
+            da = new DirectDataAccess(name, location, type.isStoring(), byteOrder);
         } else
         {
-            da = new UnsafeDataAccess(name, location, byteOrder);
+            da = new UnsafeDataAccess(name, location, type.isStoring(), byteOrder);
         }
 
         if (type.isSynched())
             da = new SynchedDAWrapper(da);
 
+        closed.remove(name);
         map.put(name, da);
         return da;
     }
 
+    /**
+     * Loads the DataAccess objects which were already found by the storages, see
+     * loadExisting(Collection, int). Other files of this directory, e.g. from a removed storage,
+     * are not read.
+     */
+    public List<String> loadExisting( int threads )
+    {
+        return loadExisting(new ArrayList<String>(map.keySet()), threads);
+    }
+
+    /**
+     * Loads the specified DataAccess files of this directory concurrently where the segments of
+     * every file are read in chunks by the specified number of threads. The storages find the
+     * loaded objects and their next loadExisting call returns true without reading the file again.
+     * Missing files, memory mapped, synchronized and not storing types are skipped. The throughput
+     * of every file is logged.
+     * <p/>
+     * @return the names of the loaded objects
+     */
+    public List<String> loadExisting( Collection<String> names, final int threads )
+    {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads has to be positive but was " + threads);
+
+        List<String> loaded = new ArrayList<String>();
+        List<AbstractDataAccess> toLoad = new ArrayList<AbstractDataAccess>();
+        for (String name : names)
+        {
+            DAType type = types.get(name);
+            if (type == null)
+                type = defaultType;
+
+            if (!type.isStoring() || type.isMMap() || type.isSynched() || !isDataAccessFile(new File(location, name)))
+                continue;
+
+            DataAccess da = find(name);
+            // already loaded or created
+            if (da.getSegments() == 0 && da instanceof AbstractDataAccess)
+                toLoad.add((AbstractDataAccess) da);
+        }
+        if (toLoad.isEmpty())
+            return loaded;
+
+        StopWatch sw = new StopWatch().start();
+        final ExecutorService chunkExecutor = Executors.newFixedThreadPool(threads);
+        // the files share the chunk threads, more file threads would only wait for them
+        ExecutorService fileExecutor = Executors.newFixedThreadPool(Math.min(threads, toLoad.size()));
+        try
+        {
+            List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>(toLoad.size());
+            for (final AbstractDataAccess da : toLoad)
+            {
+                futures.add(fileExecutor.submit(new Callable<Boolean>()
+                {
+                    @Override
+                    public Boolean call()
+                    {
+                        StopWatch fileSW = new StopWatch().start();
+                        boolean result = da.preload(chunkExecutor, threads);
+                        fileSW.stop();
+                        if (result)
+                            logger.info("loaded " + da.getName() + " " + getThroughput(da.getCapacity(), fileSW.getSeconds()));
+
+                        return result;
+                    }
+                }));
+            }
+
+            long bytes = 0;
+            for (int i = 0; i < futures.size(); i++)
+            {
+                try
+                {
+                    if (futures.get(i).get())
+                    {
+                        loaded.add(toLoad.get(i).getName());
+                        bytes += toLoad.get(i).getCapacity();
+                    }
+                } catch (InterruptedException ex)
+                {
+                    throw new RuntimeException("Thread was interrupted.", ex);
+                } catch (ExecutionException ex)
+                {
+                    throw new RuntimeException("Couldn't load " + toLoad.get(i).getName() + " in " + location, ex.getCause());
+                }
+            }
+            logger.info("loaded " + loaded.size() + " files with " + threads + " threads, "
+                    + getThroughput(bytes, sw.stop().getSeconds()));
+        } finally
+        {
+            fileExecutor.shutdown();
+            chunkExecutor.shutdown();
+        }
+        return loaded;
+    }
+
+    /**
+     * Reads the memory mapped files into the page cache in the specified order, so hot files like
+     * the location index and the edges become resident first. The segments of every file are
+     * loaded by the specified number of threads. Unknown names and other types are skipped and
+     * logged.
+     */
+    public void warmUp( List<String> names, int threads )
+    {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads has to be positive but was " + threads);
+
+        StopWatch sw = new StopWatch().start();
+        long bytes = 0;
+        for (String name : names)
+        {
+            DataAccess da = unwrap(map.get(name));
+            if (!(da instanceof MMapDataAccess))
+            {
+                if (da == null)
+                    logger.warn("cannot warm up " + name + ", not found in " + location);
+                else
+                    logger.info("skipped warm up of " + name + ", not memory mapped but " + da.getType());
+                continue;
+            }
+
+            MMapDataAccess mmapDA = (MMapDataAccess) da;
+            StopWatch fileSW = new StopWatch().start();
+            mmapDA.warmUp(threads);
+            fileSW.stop();
+            bytes += mmapDA.getCapacity();
+            logger.info("warmed up " + name + " " + getThroughput(mmapDA.getCapacity(), fileSW.getSeconds())
+                    + ", resident segments:" + mmapDA.getResidentSegments() + "/" + mmapDA.getSegments());
+        }
+        logger.info("warm up finished with " + threads + " threads, " + getThroughput(bytes, sw.stop().getSeconds()));
+    }
+
+    /**
+     * @return the fraction of segments of every memory mapped file which are probably completely
+     * in physical memory
+     */
+    public Map<String, Float> getResidency()
+    {
+        Map<String, Float> residency = new TreeMap<String, Float>();
+        for (DataAccess tmp : map.values())
+        {
+            DataAccess da = unwrap(tmp);
+            if (da instanceof MMapDataAccess && da.getSegments() > 0)
+            {
+                MMapDataAccess mmapDA = (MMapDataAccess) da;
+                residency.put(da.getName(), (float) mmapDA.getResidentSegments() / mmapDA.getSegments());
+            }
+        }
+        return residency;
+    }
+
+    private static DataAccess unwrap( DataAccess da )
+    {
+        if (da instanceof SynchedDAWrapper)
+            return ((SynchedDAWrapper) da).getInner();
+
+        return da;
+    }
+
+    private static String getThroughput( long bytes, float seconds )
+    {
+        float mb = (float) bytes / Helper.MB;
+        return mb + "MB in " + seconds + "s, " + (mb / Math.max(seconds, 0.001f)) + "MB/s";
+    }
+
+    /**
+     * @return true if the file starts with the marker written by AbstractDataAccess.writeHeader
+     */
+    private static boolean isDataAccessFile( File file )
+    {
+        if (!file.isFile() || file.length() < AbstractDataAccess.HEADER_OFFSET)
+            return false;
+
+        try
+        {
+            RandomAccessFile raFile = new RandomAccessFile(file, "r");
+            try
+            {
+                return raFile.readUnsignedShort() == 2 && raFile.read() == 'G' && raFile.read() == 'H';
+            } finally
+            {
+                raFile.close();
+            }
+        } catch (IOException ex)
+        {
+            return false;
+        }
+    }
+
     @Override
     public void clear()
     {
@@ -152,6 +361,13 @@ public class GHDirectory implements Directory
         if (mmapDA != null)
             Helper.cleanHack();
         map.clear();
+
+        for (Map.Entry<String, DAType> entry : closed.entrySet())
+        {
+            if (entry.getValue().isStoring())
+                Helper.removeDir(new File(location + entry.getKey()));
+        }
+        closed.clear();
     }
 
     @Override
@@ -161,6 +377,17 @@ public class GHDirectory implements Directory
         removeDA(da, da.getName(), true);
     }
 
+    /**
+     * Closes the specified object and removes it from this directory without deleting its files,
+     * so that a later find and loadExisting can use the stored data again.
+     */
+    public void close( DataAccess da )
+    {
+        removeFromMap(da.getName());
+        da.close();
+        closed.put(da.getName(), da.getType());
+    }
+
     void removeDA( DataAccess da, String name, boolean forceClean )
     {
         if (da instanceof MMapDataAccess)
@@ -196,7 +423,8 @@ public class GHDirectory implements Directory
             new File(location).mkdirs();
     }
 
-    Collection<DataAccess> getAll()
+    @Override
+    public Collection<DataAccess> getAll()
     {
         return map.values();
     }
@@ -32,6 +32,7 @@ import com.graphhopper.util.GHUtility;
 import com.graphhopper.util.Helper;
 import com.graphhopper.util.PointList;
 import com.graphhopper.util.shapes.BBox;
+import gnu.trove.list.TIntList;
 
 import static com.graphhopper.util.Helper.nf;
 import java.io.UnsupportedEncodingException;
@@ -59,6 +60,8 @@ public class GraphHopperStorage implements GraphStorage
     private static final int MAX_EDGES = 1000;
     // distance of around +-1000 000 meter are ok
     private static final double INT_DIST_FACTOR = 1000d;
+    private static final String GEOMETRY_RAW = "raw";
+    private static final String GEOMETRY_DELTA_VARINT = "delta_varint";
     private final Directory dir;
     // edge memory layout:
     protected int E_NODEA, E_NODEB, E_LINKA, E_LINKB, E_DIST, E_FLAGS, E_GEO, E_NAME, E_ADDITIONAL;
@@ -90,6 +93,8 @@ public class GraphHopperStorage implements GraphStorage
     // as we use integer index in 'egdes' area => 'geometry' area is limited to 2GB (currently ~311M for world wide)
     private final DataAccess wayGeometry;
     private int maxGeoRef;
+    // count | zigzag varint deltas of lat, lon (, ele) starting from the values of nodeA
+    private boolean compressedGeometry = false;
     private boolean initialized = false;
     private EncodingManager encodingManager;
     private final NameIndex nameIndex;
@@ -125,6 +130,24 @@ public class GraphHopperStorage implements GraphStorage
         extendedStorage.init(this);
     }
 
+    /**
+     * Stores the pillar nodes as zigzag varint deltas relative to the previous point, starting from
+     * the base node of the edge. This halves the size of the geometry area for typical OSM data. The
+     * coordinates of both nodes of an edge have to be set before its geometry and must not be
+     * changed afterwards. A loaded graph uses the stored format. Default is false.
+     */
+    public GraphHopperStorage setCompressedGeometry( boolean compressedGeometry )
+    {
+        checkInit();
+        this.compressedGeometry = compressedGeometry;
+        return this;
+    }
+
+    public boolean isCompressedGeometry()
+    {
+        return compressedGeometry;
+    }
+
     void checkInit()
     {
         if (initialized)
@@ -195,6 +218,7 @@ public class GraphHopperStorage implements GraphStorage
 
         properties.put("graph.byteOrder", dir.getByteOrder());
         properties.put("graph.dimension", nodeAccess.getDimension());
+        properties.put("graph.geometryFormat", compressedGeometry ? GEOMETRY_DELTA_VARINT : GEOMETRY_RAW);
         properties.putCurrentVersions();
         initStorage();
         // 0 stands for no separate geoRef
@@ -960,39 +984,166 @@ public class GraphHopperStorage implements GraphStorage
                 throw new IllegalArgumentException("Cannot use pointlist which is " + pillarNodes.getDimension()
                         + "D for graph which is " + nodeAccess.getDimension() + "D");
 
-            int len = pillarNodes.getSize();
-            int dim = nodeAccess.getDimension();
-            int tmpRef = nextGeoRef(len * dim);
+            byte[] bytes = new byte[getMaxGeometryBytes(pillarNodes.getSize())];
+            int length = encodeWayGeometry(pillarNodes, edgePointer, reverse, bytes);
+            // the reference is in units of 4 bytes and the first integer stores the size itself
+            int tmpRef = nextGeoRef((length + 3) / 4 - 1);
             edges.setInt(edgePointer + E_GEO, tmpRef);
             long geoRef = (long) tmpRef * 4;
-            byte[] bytes = new byte[len * dim * 4 + 4];
-            ensureGeometry(geoRef, bytes.length);
-            bitUtil.fromInt(bytes, len, 0);
-            if (reverse)
-                pillarNodes.reverse();
+            ensureGeometry(geoRef, length);
+            wayGeometry.setBytes(geoRef, bytes, length);
+        } else
+        {
+            edges.setInt(edgePointer + E_GEO, 0);
+        }
+    }
+
+    private int getMaxGeometryBytes( int points )
+    {
+        // 5 bytes is the maximum length of a varint
+        if (compressedGeometry)
+            return 5 + points * nodeAccess.getDimension() * 5;
+
+        return 4 + points * nodeAccess.getDimension() * 4;
+    }
 
+    /**
+     * @return the number of bytes written into the specified array
+     */
+    private int encodeWayGeometry( PointList pillarNodes, long edgePointer, boolean reverse, byte[] bytes )
+    {
+        int len = pillarNodes.getSize();
+        boolean is3D = nodeAccess.is3D();
+        if (!compressedGeometry)
+        {
+            bitUtil.fromInt(bytes, len, 0);
             int tmpOffset = 4;
-            boolean is3D = nodeAccess.is3D();
             for (int i = 0; i < len; i++)
             {
-                double lat = pillarNodes.getLatitude(i);
-                bitUtil.fromInt(bytes, Helper.degreeToInt(lat), tmpOffset);
+                int index = reverse ? len - 1 - i : i;
+                bitUtil.fromInt(bytes, Helper.degreeToInt(pillarNodes.getLatitude(index)), tmpOffset);
                 tmpOffset += 4;
-                bitUtil.fromInt(bytes, Helper.degreeToInt(pillarNodes.getLongitude(i)), tmpOffset);
+                bitUtil.fromInt(bytes, Helper.degreeToInt(pillarNodes.getLongitude(index)), tmpOffset);
                 tmpOffset += 4;
 
                 if (is3D)
                 {
-                    bitUtil.fromInt(bytes, Helper.eleToInt(pillarNodes.getElevation(i)), tmpOffset);
+                    bitUtil.fromInt(bytes, Helper.eleToInt(pillarNodes.getElevation(index)), tmpOffset);
                     tmpOffset += 4;
                 }
             }
+            return tmpOffset;
+        }
+
+        int offset = writeVarint(bytes, 0, len);
+        long nodePointer = (long) edges.getInt(edgePointer + E_NODEA) * nodeEntryBytes;
+        int prevLat = nodes.getInt(nodePointer + N_LAT);
+        int prevLon = nodes.getInt(nodePointer + N_LON);
+        int prevEle = is3D ? nodes.getInt(nodePointer + N_ELE) : 0;
+        for (int i = 0; i < len; i++)
+        {
+            int index = reverse ? len - 1 - i : i;
+            int lat = Helper.degreeToInt(pillarNodes.getLatitude(index));
+            int lon = Helper.degreeToInt(pillarNodes.getLongitude(index));
+            offset = writeVarint(bytes, offset, zigzag(lat - prevLat));
+            offset = writeVarint(bytes, offset, zigzag(lon - prevLon));
+            prevLat = lat;
+            prevLon = lon;
+            if (is3D)
+            {
+                int ele = Helper.eleToInt(pillarNodes.getElevation(index));
+                offset = writeVarint(bytes, offset, zigzag(ele - prevEle));
+                prevEle = ele;
+            }
+        }
+        return offset;
+    }
 
-            wayGeometry.setBytes(geoRef, bytes, bytes.length);
-        } else
+    private PointList fetchCompressedWayGeometry( long edgePointer, long geoRef, int mode )
+    {
+        geoRef *= 4;
+        // read the count and then all deltas, the data ends at most at the end of the geometry area
+        byte[] bytes = new byte[(int) Math.min(5, (long) maxGeoRef * 4 - geoRef)];
+        wayGeometry.getBytes(geoRef, bytes, bytes.length);
+        int count = readVarint(bytes, 0);
+        int offset = varintLength(count);
+        boolean is3D = nodeAccess.is3D();
+        bytes = new byte[(int) Math.min(count * nodeAccess.getDimension() * 5, (long) maxGeoRef * 4 - geoRef - offset)];
+        wayGeometry.getBytes(geoRef + offset, bytes, bytes.length);
+
+        PointList pillarNodes = new PointList(count + mode, is3D);
+        long nodePointer = (long) edges.getInt(edgePointer + E_NODEA) * nodeEntryBytes;
+        int lat = nodes.getInt(nodePointer + N_LAT);
+        int lon = nodes.getInt(nodePointer + N_LON);
+        int ele = is3D ? nodes.getInt(nodePointer + N_ELE) : 0;
+        int index = 0;
+        for (int i = 0; i < count; i++)
         {
-            edges.setInt(edgePointer + E_GEO, 0);
+            int value = readVarint(bytes, index);
+            index += varintLength(value);
+            lat += unzigzag(value);
+            value = readVarint(bytes, index);
+            index += varintLength(value);
+            lon += unzigzag(value);
+            if (is3D)
+            {
+                value = readVarint(bytes, index);
+                index += varintLength(value);
+                ele += unzigzag(value);
+                pillarNodes.add(Helper.intToDegree(lat), Helper.intToDegree(lon), Helper.intToEle(ele));
+            } else
+            {
+                pillarNodes.add(Helper.intToDegree(lat), Helper.intToDegree(lon));
+            }
+        }
+        return pillarNodes;
+    }
+
+    static int zigzag( int value )
+    {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static int unzigzag( int value )
+    {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * @return the offset after the written value
+     */
+    static int writeVarint( byte[] bytes, int offset, int value )
+    {
+        while ((value & ~0x7F) != 0)
+        {
+            bytes[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[offset++] = (byte) value;
+        return offset;
+    }
+
+    static int readVarint( byte[] bytes, int offset )
+    {
+        int value = 0;
+        for (int shift = 0;; shift += 7)
+        {
+            byte b = bytes[offset++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+    }
+
+    static int varintLength( int value )
+    {
+        int len = 1;
+        while ((value & ~0x7F) != 0)
+        {
+            value >>>= 7;
+            len++;
         }
+        return len;
     }
 
     private PointList fetchWayGeometry( long edgePointer, boolean reverse, int mode, int baseNode, int adjNode )
@@ -1000,7 +1151,12 @@ public class GraphHopperStorage implements GraphStorage
         long geoRef = edges.getInt(edgePointer + E_GEO);
         int count = 0;
         byte[] bytes = null;
-        if (geoRef > 0)
+        PointList compressed = null;
+        if (geoRef > 0 && compressedGeometry)
+        {
+            compressed = fetchCompressedWayGeometry(edgePointer, geoRef, mode);
+            count = compressed.getSize();
+        } else if (geoRef > 0)
         {
             geoRef *= 4;
             count = wayGeometry.getInt(geoRef);
@@ -1022,8 +1178,11 @@ public class GraphHopperStorage implements GraphStorage
                 pillarNodes.add(nodeAccess, baseNode);
         }
 
+        if (compressed != null)
+            pillarNodes.add(compressed);
+
         int index = 0;
-        for (int i = 0; i < count; i++)
+        for (int i = 0; compressed == null && i < count; i++)
         {
             double lat = Helper.intToDegree(bitUtil.toInt(bytes, index));
             index += 4;
@@ -1096,6 +1255,7 @@ public class GraphHopperStorage implements GraphStorage
         setWayGeometryHeader();
         wayGeometry.copyTo(clonedG.wayGeometry);
         clonedG.loadWayGeometryHeader();
+        clonedG.compressedGeometry = compressedGeometry;
 
         // extStorage
         extStorage.copyTo(clonedG.extStorage);
@@ -1314,10 +1474,14 @@ public class GraphHopperStorage implements GraphStorage
             int linkA = edges.getInt(getLinkPosInEdgeArea(nodeA, nodeB, edgePointer));
             int linkB = edges.getInt(getLinkPosInEdgeArea(nodeB, nodeA, edgePointer));
             long flags = getFlags(edgePointer, false);
+            boolean flip = updatedA < updatedB != nodeA < nodeB;
+            // fetch the geometry while nodeA is still the old one as the compressed format depends on it,
+            // the moved nodes keep their coordinates so the geometry of the other edges stays valid
+            PointList geometry = flip ? fetchWayGeometry(edgePointer, false, 0, -1, -1) : null;
             writeEdge(edge, updatedA, updatedB, linkA, linkB);
             setFlags(edgePointer, updatedA > updatedB, flags);
-            if (updatedA < updatedB != nodeA < nodeB)
-                setWayGeometry(fetchWayGeometry(edgePointer, true, 0, -1, -1), edgePointer, false);
+            if (flip)
+                setWayGeometry(geometry, edgePointer, true);
         }
 
         // we do not remove the invalid edges => edgeCount stays the same!
@@ -1365,6 +1529,221 @@ public class GraphHopperStorage implements GraphStorage
         removedNodes = null;
     }
 
+    /**
+     * Relabels all nodes and edges in place to improve the memory locality, e.g. after the
+     * preparation of contraction hierarchies so that the shortcuts are reordered too. The edges get
+     * the order of their lower node, so the edges of neighbouring nodes are stored close together.
+     * Edge references like the links of the adjacency lists or the skipped edges of shortcuts are
+     * updated. Indices depending on node or edge ids like the LocationIndex have to be created
+     * afterwards.
+     * <p/>
+     * @param oldToNewNodeList the new id of every node, has to be a permutation of all node ids
+     */
+    public void relabel( TIntList oldToNewNodeList )
+    {
+        if (extStorage.isRequireNodeField())
+            throw new IllegalStateException("Relabeling is not supported for a graph with " + extStorage
+                    + " as it could reference node or edge ids");
+
+        if (oldToNewNodeList.size() < nodeCount)
+            throw new IllegalArgumentException("The new ids of all " + nodeCount + " nodes are necessary but got "
+                    + oldToNewNodeList.size());
+
+        int[] oldToNewNode = new int[nodeCount];
+        GHBitSet usedIds = new GHBitSetImpl(nodeCount);
+        for (int node = 0; node < nodeCount; node++)
+        {
+            int newNode = oldToNewNodeList.get(node);
+            if (newNode < 0 || newNode >= nodeCount || usedIds.contains(newNode))
+                throw new IllegalArgumentException("The new node ids are no permutation, node " + node
+                        + " has the invalid or duplicate id " + newNode);
+
+            usedIds.add(newNode);
+            oldToNewNode[node] = newNode;
+        }
+
+        // the lower node has to be stored as nodeA, so flip the edges while the old ids are still valid
+        for (int edge = 0; edge < edgeCount; edge++)
+        {
+            long edgePointer = (long) edge * edgeEntryBytes;
+            int nodeA = edges.getInt(edgePointer + E_NODEA);
+            if (nodeA != NO_NODE && oldToNewNode[nodeA] > oldToNewNode[edges.getInt(edgePointer + E_NODEB)])
+                flipEdge(edgePointer);
+        }
+
+        int[] oldToNewEdge = createEdgeOrder(oldToNewNode);
+        for (int edge = 0; edge < edgeCount; edge++)
+        {
+            long edgePointer = (long) edge * edgeEntryBytes;
+            int nodeA = edges.getInt(edgePointer + E_NODEA);
+            if (nodeA == NO_NODE)
+                continue;
+
+            edges.setInt(edgePointer + E_NODEA, oldToNewNode[nodeA]);
+            edges.setInt(edgePointer + E_NODEB, oldToNewNode[edges.getInt(edgePointer + E_NODEB)]);
+            relabelEdgeRef(edgePointer + E_LINKA, oldToNewEdge);
+            relabelEdgeRef(edgePointer + E_LINKB, oldToNewEdge);
+            relabelEdgeRefs(edgePointer, oldToNewEdge);
+        }
+
+        for (int node = 0; node < nodeCount; node++)
+        {
+            long nodePointer = (long) node * nodeEntryBytes;
+            int edge = nodes.getInt(nodePointer + N_EDGE_REF);
+            if (edge > EdgeIterator.NO_EDGE)
+                nodes.setInt(nodePointer + N_EDGE_REF, oldToNewEdge[edge]);
+        }
+
+        permute(nodes, nodeEntryBytes, oldToNewNode, nodeCount);
+        permute(edges, edgeEntryBytes, oldToNewEdge, edgeCount);
+    }
+
+    /**
+     * Swaps nodeA and nodeB of the specified edge including their links, flags and the geometry.
+     * The geometry keeps its place if the compressed format does not need more space.
+     */
+    private void flipEdge( long edgePointer )
+    {
+        long flags = getFlags(edgePointer, false);
+        int tmpRef = edges.getInt(edgePointer + E_GEO);
+        PointList geometry = tmpRef > 0 ? fetchWayGeometry(edgePointer, false, 0, -1, -1) : null;
+        byte[] bytes = null;
+        int oldLength = 0;
+        if (geometry != null)
+        {
+            bytes = new byte[getMaxGeometryBytes(geometry.getSize())];
+            oldLength = encodeWayGeometry(geometry, edgePointer, false, bytes);
+        }
+
+        int nodeA = edges.getInt(edgePointer + E_NODEA);
+        int linkA = edges.getInt(edgePointer + E_LINKA);
+        edges.setInt(edgePointer + E_NODEA, edges.getInt(edgePointer + E_NODEB));
+        edges.setInt(edgePointer + E_NODEB, nodeA);
+        edges.setInt(edgePointer + E_LINKA, edges.getInt(edgePointer + E_LINKB));
+        edges.setInt(edgePointer + E_LINKB, linkA);
+        setFlags(edgePointer, true, flags);
+        if (geometry == null)
+            return;
+
+        int length = encodeWayGeometry(geometry, edgePointer, true, bytes);
+        if ((length + 3) / 4 > (oldLength + 3) / 4)
+        {
+            setWayGeometry(geometry, edgePointer, true);
+            return;
+        }
+        wayGeometry.setBytes((long) tmpRef * 4, bytes, length);
+    }
+
+    /**
+     * Assigns the new edge ids in the order of the new lower node of every edge. The edges before
+     * getEdgeOrderSplit and the ones after it are ordered separately. Removed edges are moved to
+     * the end of their range.
+     */
+    private int[] createEdgeOrder( int[] oldToNewNode )
+    {
+        int[] oldToNewEdge = new int[edgeCount];
+        int split = getEdgeOrderSplit();
+        createEdgeOrder(oldToNewNode, oldToNewEdge, 0, split);
+        createEdgeOrder(oldToNewNode, oldToNewEdge, split, edgeCount);
+        return oldToNewEdge;
+    }
+
+    private void createEdgeOrder( int[] oldToNewNode, int[] oldToNewEdge, int fromEdge, int toEdge )
+    {
+        // counting sort with the lower node as key, removed edges get the key nodeCount
+        int[] starts = new int[nodeCount + 2];
+        for (int edge = fromEdge; edge < toEdge; edge++)
+        {
+            starts[getEdgeOrderKey(oldToNewNode, edge) + 1]++;
+        }
+        starts[0] = fromEdge;
+        for (int i = 1; i < starts.length; i++)
+        {
+            starts[i] += starts[i - 1];
+        }
+        for (int edge = fromEdge; edge < toEdge; edge++)
+        {
+            oldToNewEdge[edge] = starts[getEdgeOrderKey(oldToNewNode, edge)]++;
+        }
+    }
+
+    private int getEdgeOrderKey( int[] oldToNewNode, int edge )
+    {
+        // edges are already flipped so nodeA is the lower node
+        int nodeA = edges.getInt((long) edge * edgeEntryBytes + E_NODEA);
+        return nodeA == NO_NODE ? nodeCount : oldToNewNode[nodeA];
+    }
+
+    /**
+     * @return the first edge id which is ordered separately from the previous edges while
+     * relabeling
+     */
+    int getEdgeOrderSplit()
+    {
+        return edgeCount;
+    }
+
+    /**
+     * Updates further edge references of the specified edge while relabeling.
+     */
+    void relabelEdgeRefs( long edgePointer, int[] oldToNewEdge )
+    {
+    }
+
+    final void relabelEdgeRef( long pointer, int[] oldToNewEdge )
+    {
+        int edge = edges.getInt(pointer);
+        if (edge > EdgeIterator.NO_EDGE)
+            edges.setInt(pointer, oldToNewEdge[edge]);
+    }
+
+    /**
+     * Moves every entry to its new index following the cycles of the permutation, so only a few
+     * additional bytes are necessary.
+     */
+    private static void permute( DataAccess da, int entryBytes, int[] oldToNew, int count )
+    {
+        int ints = entryBytes / 4;
+        int[] current = new int[ints];
+        int[] tmp = new int[ints];
+        GHBitSet moved = new GHBitSetImpl(count);
+        for (int start = 0; start < count; start++)
+        {
+            if (moved.contains(start) || oldToNew[start] == start)
+                continue;
+
+            readEntry(da, (long) start * entryBytes, current);
+            int index = start;
+            do
+            {
+                index = oldToNew[index];
+                long pointer = (long) index * entryBytes;
+                readEntry(da, pointer, tmp);
+                writeEntry(da, pointer, current);
+                moved.add(index);
+                int[] swap = current;
+                current = tmp;
+                tmp = swap;
+            } while (index != start);
+        }
+    }
+
+    private static void readEntry( DataAccess da, long pointer, int[] entry )
+    {
+        for (int i = 0; i < entry.length; i++)
+        {
+            entry[i] = da.getInt(pointer + i * 4);
+        }
+    }
+
+    private static void writeEntry( DataAccess da, long pointer, int[] entry )
+    {
+        for (int i = 0; i < entry.length; i++)
+        {
+            da.setInt(pointer + i * 4, entry[i]);
+        }
+    }
+
     private static boolean isTestingEnabled()
     {
         boolean enableIfAssert = false;
@@ -1408,6 +1787,15 @@ public class GraphHopperStorage implements GraphStorage
             if (!dim.equalsIgnoreCase("" + nodeAccess.getDimension()))
                 throw new IllegalStateException("Configured dimension (" + dim + ") is not equal to dimension of loaded graph (" + nodeAccess.getDimension() + ")");
 
+            // graphs without this property were created before the compressed format existed
+            String geometryFormat = properties.get("graph.geometryFormat");
+            if (GEOMETRY_DELTA_VARINT.equals(geometryFormat))
+                compressedGeometry = true;
+            else if (geometryFormat.isEmpty() || GEOMETRY_RAW.equals(geometryFormat))
+                compressedGeometry = false;
+            else
+                throw new IllegalStateException("Unsupported geometry format " + geometryFormat + " of loaded graph");
+
             String byteOrder = properties.get("graph.byteOrder");
             if (!byteOrder.equalsIgnoreCase("" + dir.getByteOrder()))
                 throw new IllegalStateException("Configured byteOrder (" + dim + ") is not equal to byteOrder of loaded graph (" + dir.getByteOrder() + ")");
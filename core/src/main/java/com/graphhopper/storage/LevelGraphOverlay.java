@@ -0,0 +1,767 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.util.AllEdgesSkipIterator;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.EdgeSkipExplorer;
+import com.graphhopper.util.EdgeSkipIterState;
+import com.graphhopper.util.EdgeSkipIterator;
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.shapes.BBox;
+
+import static com.graphhopper.util.Helper.nf;
+
+/**
+ * A LevelGraph which stores the levels and shortcuts of one vehicle in separate DataAccess objects
+ * and uses the nodes and edges of a shared base graph. This way several contraction hierarchies
+ * (e.g. one for car and one for foot) can be prepared for the same base graph. If nodes or edges
+ * are added to the base graph afterwards adaptToBaseGraph has to be called.
+ * <p/>
+ * Edge ids of shortcuts start after the last edge of the base graph. In contrast to
+ * LevelGraphStorage the flags of a shortcut contain only the access bits of the specified
+ * encoder, the weight is stored separately.
+ * <p/>
+ * @see LevelGraphStorage
+ * @author Peter Karich
+ */
+public class LevelGraphOverlay implements LevelGraph, Storable<LevelGraphOverlay>
+{
+    private static final double INT_DIST_FACTOR = 1000d;
+    private static final double WEIGHT_FACTOR = 1000d;
+    private static final double MAX_WEIGHT = Integer.MAX_VALUE / WEIGHT_FACTOR;
+    private static final int NO_SHORTCUT = -1;
+    private static final int DIR_FWD = 1, DIR_BWD = 2;
+    // node memory layout: level, first shortcut index + 1 where 0 means no shortcut
+    private static final int N_LEVEL = 0, N_SHORTCUT = 4, NODE_ENTRY_BYTES = 8;
+    // shortcut memory layout, the links are the next shortcut index + 1 of nodeA and nodeB
+    private static final int S_NODEA = 0, S_NODEB = 4, S_LINKA = 8, S_LINKB = 12, S_SKIP_EDGE1 = 16,
+            S_SKIP_EDGE2 = 20, S_DIST = 24, S_WEIGHT = 28, S_DIR = 32, SHORTCUT_ENTRY_BYTES = 36;
+    private final GraphStorage baseGraph;
+    private final FlagEncoder encoder;
+    private final String name;
+    private final DataAccess nodes;
+    private final DataAccess shortcuts;
+    private int nodeCount;
+    private int baseEdgeCount;
+    private int shortcutCount;
+
+    /**
+     * @param name a unique name of this overlay within the directory of the base graph, e.g. the
+     * vehicle
+     */
+    public LevelGraphOverlay( GraphStorage baseGraph, FlagEncoder encoder, String name )
+    {
+        this.baseGraph = baseGraph;
+        this.encoder = encoder;
+        this.name = name;
+        Directory dir = baseGraph.getDirectory();
+        nodes = dir.find("nodes_ch_" + name);
+        shortcuts = dir.find("shortcuts_" + name);
+    }
+
+    public GraphStorage getBaseGraph()
+    {
+        return baseGraph;
+    }
+
+    public FlagEncoder getEncoder()
+    {
+        return encoder;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public void setSegmentSize( int bytes )
+    {
+        nodes.setSegmentSize(bytes);
+        shortcuts.setSegmentSize(bytes);
+    }
+
+    /**
+     * Creates the storage for the current nodes and edges of the base graph.
+     * <p/>
+     * @param byteCount the initial bytes for the shortcuts
+     */
+    @Override
+    public LevelGraphOverlay create( long byteCount )
+    {
+        nodeCount = baseGraph.getNodes();
+        baseEdgeCount = baseGraph.getAllEdges().getCount();
+        shortcutCount = 0;
+        nodes.create(Math.max(NODE_ENTRY_BYTES, (long) nodeCount * NODE_ENTRY_BYTES));
+        shortcuts.create(Math.max(SHORTCUT_ENTRY_BYTES, byteCount));
+        return this;
+    }
+
+    /**
+     * Removes all shortcuts and levels e.g. to prepare the overlay again after the flags of the
+     * base graph were changed.
+     */
+    public void clear()
+    {
+        if (nodeCount != baseGraph.getNodes() || baseEdgeCount != baseGraph.getAllEdges().getCount())
+            throw new IllegalStateException("The base graph was changed after the overlay " + name + " was created");
+
+        long bytes = (long) nodeCount * NODE_ENTRY_BYTES;
+        for (long pointer = 0; pointer < bytes; pointer += 4)
+        {
+            nodes.setInt(pointer, 0);
+        }
+        shortcutCount = 0;
+    }
+
+    /**
+     * Adapts this overlay after nodes and edges were added to the base graph, e.g. while applying
+     * OSM changes. The new nodes get level 0 and the shortcut ids are shifted by the number of new
+     * edges, also where they are referenced as skipped edges. The hierarchy has to be repaired
+     * afterwards, see RepairContractionHierarchies.
+     */
+    public void adaptToBaseGraph()
+    {
+        int newNodeCount = baseGraph.getNodes();
+        int newBaseEdgeCount = baseGraph.getAllEdges().getCount();
+        if (newNodeCount < nodeCount || newBaseEdgeCount < baseEdgeCount)
+            throw new IllegalStateException("Nodes or edges were removed from the base graph of the overlay " + name);
+
+        int delta = newBaseEdgeCount - baseEdgeCount;
+        if (delta > 0)
+        {
+            for (int index = 0; index < shortcutCount; index++)
+            {
+                long pointer = (long) index * SHORTCUT_ENTRY_BYTES;
+                for (int skip = S_SKIP_EDGE1; skip <= S_SKIP_EDGE2; skip += 4)
+                {
+                    int edge = shortcuts.getInt(pointer + skip);
+                    if (edge >= baseEdgeCount)
+                        shortcuts.setInt(pointer + skip, edge + delta);
+                }
+            }
+        }
+
+        if (newNodeCount > nodeCount)
+        {
+            long bytes = (long) newNodeCount * NODE_ENTRY_BYTES;
+            nodes.ensureCapacity(bytes);
+            for (long pointer = (long) nodeCount * NODE_ENTRY_BYTES; pointer < bytes; pointer += 4)
+            {
+                nodes.setInt(pointer, 0);
+            }
+        }
+        nodeCount = newNodeCount;
+        baseEdgeCount = newBaseEdgeCount;
+    }
+
+    @Override
+    public boolean loadExisting()
+    {
+        if (!nodes.loadExisting())
+            return false;
+
+        if (!shortcuts.loadExisting())
+            throw new IllegalStateException("Cannot load shortcuts of " + name + ". corrupt file or directory? "
+                    + baseGraph.getDirectory());
+
+        nodeCount = nodes.getHeader(0);
+        shortcutCount = shortcuts.getHeader(0);
+        baseEdgeCount = shortcuts.getHeader(4);
+        if (nodeCount != baseGraph.getNodes() || baseEdgeCount != baseGraph.getAllEdges().getCount())
+            throw new IllegalStateException("The CH overlay " + name + " was created for a different base graph. "
+                    + "nodes: " + nodeCount + " vs. " + baseGraph.getNodes()
+                    + ", edges: " + baseEdgeCount + " vs. " + baseGraph.getAllEdges().getCount());
+
+        return true;
+    }
+
+    @Override
+    public void flush()
+    {
+        nodes.setHeader(0, nodeCount);
+        shortcuts.setHeader(0, shortcutCount);
+        shortcuts.setHeader(4, baseEdgeCount);
+        nodes.flush();
+        shortcuts.flush();
+    }
+
+    @Override
+    public void close()
+    {
+        nodes.close();
+        shortcuts.close();
+    }
+
+    @Override
+    public boolean isClosed()
+    {
+        return nodes.isClosed();
+    }
+
+    @Override
+    public long getCapacity()
+    {
+        return nodes.getCapacity() + shortcuts.getCapacity();
+    }
+
+    @Override
+    public int getNodes()
+    {
+        return baseGraph.getNodes();
+    }
+
+    @Override
+    public NodeAccess getNodeAccess()
+    {
+        return baseGraph.getNodeAccess();
+    }
+
+    @Override
+    public BBox getBounds()
+    {
+        return baseGraph.getBounds();
+    }
+
+    @Override
+    public GraphExtension getExtension()
+    {
+        return baseGraph.getExtension();
+    }
+
+    @Override
+    public EdgeIteratorState edge( int a, int b )
+    {
+        throw new UnsupportedOperationException("Create edges via the base graph before creating the overlay " + name);
+    }
+
+    @Override
+    public EdgeIteratorState edge( int a, int b, double distance, boolean bothDirections )
+    {
+        throw new UnsupportedOperationException("Create edges via the base graph before creating the overlay " + name);
+    }
+
+    @Override
+    public Graph copyTo( Graph g )
+    {
+        throw new UnsupportedOperationException("Not supported for the overlay " + name);
+    }
+
+    @Override
+    public final void setLevel( int index, int level )
+    {
+        checkNodeIndex(index);
+        nodes.setInt((long) index * NODE_ENTRY_BYTES + N_LEVEL, level);
+    }
+
+    @Override
+    public final int getLevel( int index )
+    {
+        checkNodeIndex(index);
+        return nodes.getInt((long) index * NODE_ENTRY_BYTES + N_LEVEL);
+    }
+
+    private void checkNodeIndex( int index )
+    {
+        if (index < 0 || index >= nodeCount)
+            throw new IllegalArgumentException("node " + index + " out of bounds [0," + nf(nodeCount) + "]");
+    }
+
+    /**
+     * @return the number of shortcuts stored in this overlay
+     */
+    public int getShortcuts()
+    {
+        return shortcutCount;
+    }
+
+    @Override
+    public EdgeSkipIterState shortcut( int a, int b )
+    {
+        checkNodeIndex(a);
+        checkNodeIndex(b);
+        if (baseEdgeCount != baseGraph.getAllEdges().getCount())
+            throw new IllegalStateException("The base graph was changed after the overlay " + name + " was created");
+
+        int index = shortcutCount;
+        shortcutCount++;
+        long pointer = (long) index * SHORTCUT_ENTRY_BYTES;
+        shortcuts.ensureCapacity(pointer + SHORTCUT_ENTRY_BYTES);
+        shortcuts.setInt(pointer + S_NODEA, a);
+        shortcuts.setInt(pointer + S_NODEB, b);
+        shortcuts.setInt(pointer + S_LINKA, getFirstShortcut(a) + 1);
+        setFirstShortcut(a, index);
+        if (a != b)
+        {
+            shortcuts.setInt(pointer + S_LINKB, getFirstShortcut(b) + 1);
+            setFirstShortcut(b, index);
+        }
+        shortcuts.setInt(pointer + S_SKIP_EDGE1, EdgeIterator.NO_EDGE);
+        shortcuts.setInt(pointer + S_SKIP_EDGE2, EdgeIterator.NO_EDGE);
+
+        OverlayEdgeState state = new OverlayEdgeState();
+        state.setShortcut(index, a, b, false);
+        return state;
+    }
+
+    private int getFirstShortcut( int node )
+    {
+        return nodes.getInt((long) node * NODE_ENTRY_BYTES + N_SHORTCUT) - 1;
+    }
+
+    private void setFirstShortcut( int node, int index )
+    {
+        nodes.setInt((long) node * NODE_ENTRY_BYTES + N_SHORTCUT, index + 1);
+    }
+
+    @Override
+    public EdgeSkipIterState getEdgeProps( int edgeId, int adjNode )
+    {
+        if (edgeId < baseEdgeCount)
+        {
+            EdgeIteratorState baseEdge = baseGraph.getEdgeProps(edgeId, adjNode);
+            if (baseEdge == null)
+                return null;
+
+            OverlayEdgeState state = new OverlayEdgeState();
+            state.setBaseEdge(baseEdge);
+            return state;
+        }
+
+        int index = edgeId - baseEdgeCount;
+        if (index >= shortcutCount)
+            throw new IllegalStateException("edgeId " + edgeId + " out of bounds [0,"
+                    + nf(baseEdgeCount + shortcutCount) + "]");
+
+        if (adjNode < 0 && adjNode != Integer.MIN_VALUE)
+            throw new IllegalStateException("adjNode " + adjNode + " out of bounds [0," + nf(nodeCount) + "]");
+
+        long pointer = (long) index * SHORTCUT_ENTRY_BYTES;
+        int nodeA = shortcuts.getInt(pointer + S_NODEA);
+        int nodeB = shortcuts.getInt(pointer + S_NODEB);
+        OverlayEdgeState state = new OverlayEdgeState();
+        if (adjNode == nodeB || adjNode == Integer.MIN_VALUE)
+            state.setShortcut(index, nodeA, nodeB, false);
+        else if (adjNode == nodeA)
+            state.setShortcut(index, nodeB, nodeA, true);
+        else
+            // if edgeId exists but adjacent nodes do not match
+            return null;
+
+        return state;
+    }
+
+    @Override
+    public EdgeSkipExplorer createEdgeExplorer()
+    {
+        return createEdgeExplorer(EdgeFilter.ALL_EDGES);
+    }
+
+    @Override
+    public EdgeSkipExplorer createEdgeExplorer( EdgeFilter filter )
+    {
+        return new OverlayEdgeIterator(filter);
+    }
+
+    @Override
+    public AllEdgesSkipIterator getAllEdges()
+    {
+        return new OverlayAllEdgesIterator();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "overlay " + name + ", shortcuts:" + nf(shortcutCount) + "(" + shortcuts.getCapacity() / (1 << 20)
+                + "MB), " + baseGraph;
+    }
+
+    /**
+     * Points either to an edge of the base graph or to a shortcut of this overlay.
+     */
+    class OverlayEdgeState implements EdgeSkipIterState
+    {
+        // null if a shortcut
+        EdgeIteratorState baseEdge;
+        int shortcut = NO_SHORTCUT;
+        long scPointer;
+        int baseNode;
+        int adjNode;
+        boolean reverse;
+
+        final void setBaseEdge( EdgeIteratorState edge )
+        {
+            baseEdge = edge;
+            shortcut = NO_SHORTCUT;
+        }
+
+        final void setShortcut( int index, int base, int adj, boolean reverse )
+        {
+            baseEdge = null;
+            shortcut = index;
+            scPointer = (long) index * SHORTCUT_ENTRY_BYTES;
+            baseNode = base;
+            adjNode = adj;
+            this.reverse = reverse;
+        }
+
+        @Override
+        public final boolean isShortcut()
+        {
+            return baseEdge == null;
+        }
+
+        @Override
+        public final int getEdge()
+        {
+            if (isShortcut())
+                return baseEdgeCount + shortcut;
+
+            return baseEdge.getEdge();
+        }
+
+        @Override
+        public final int getBaseNode()
+        {
+            if (isShortcut())
+                return baseNode;
+
+            return baseEdge.getBaseNode();
+        }
+
+        @Override
+        public final int getAdjNode()
+        {
+            if (isShortcut())
+                return adjNode;
+
+            return baseEdge.getAdjNode();
+        }
+
+        @Override
+        public final double getDistance()
+        {
+            if (isShortcut())
+                return shortcuts.getInt(scPointer + S_DIST) / INT_DIST_FACTOR;
+
+            return baseEdge.getDistance();
+        }
+
+        @Override
+        public final EdgeIteratorState setDistance( double dist )
+        {
+            if (!isShortcut())
+            {
+                baseEdge.setDistance(dist);
+                return this;
+            }
+
+            int integ = (int) (dist * INT_DIST_FACTOR);
+            if (integ < 0)
+                throw new IllegalArgumentException("Distance cannot be empty: "
+                        + dist + ", maybe overflow issue? integer: " + integ);
+
+            shortcuts.setInt(scPointer + S_DIST, integ);
+            return this;
+        }
+
+        /**
+         * For a shortcut the flags contain only the access bits of the encoder.
+         */
+        @Override
+        public final long getFlags()
+        {
+            if (!isShortcut())
+                return baseEdge.getFlags();
+
+            int dir = shortcuts.getInt(scPointer + S_DIR);
+            boolean fwd = (dir & DIR_FWD) != 0;
+            boolean bwd = (dir & DIR_BWD) != 0;
+            if (reverse)
+                return encoder.setAccess(0, bwd, fwd);
+
+            return encoder.setAccess(0, fwd, bwd);
+        }
+
+        @Override
+        public final EdgeIteratorState setFlags( long flags )
+        {
+            if (!isShortcut())
+            {
+                baseEdge.setFlags(flags);
+                return this;
+            }
+
+            boolean fwd = encoder.isBool(flags, FlagEncoder.K_FORWARD);
+            boolean bwd = encoder.isBool(flags, FlagEncoder.K_BACKWARD);
+            if (reverse)
+            {
+                boolean tmp = fwd;
+                fwd = bwd;
+                bwd = tmp;
+            }
+            shortcuts.setInt(scPointer + S_DIR, (fwd ? DIR_FWD : 0) | (bwd ? DIR_BWD : 0));
+            return this;
+        }
+
+        @Override
+        public final EdgeSkipIterState setWeight( double weight )
+        {
+            if (!isShortcut())
+                throw new IllegalStateException("setWeight is only available for shortcuts");
+            if (weight < 0)
+                throw new IllegalArgumentException("weight cannot be negative! but was " + weight);
+
+            int weightInt;
+            if (weight >= MAX_WEIGHT)
+                weightInt = Integer.MAX_VALUE;
+            else
+                weightInt = (int) (weight * WEIGHT_FACTOR);
+
+            shortcuts.setInt(scPointer + S_WEIGHT, weightInt);
+            return this;
+        }
+
+        @Override
+        public final double getWeight()
+        {
+            if (!isShortcut())
+                throw new IllegalStateException("getWeight is only available for shortcuts");
+
+            int weightInt = shortcuts.getInt(scPointer + S_WEIGHT);
+            if (weightInt == Integer.MAX_VALUE)
+                return Double.POSITIVE_INFINITY;
+
+            return weightInt / WEIGHT_FACTOR;
+        }
+
+        @Override
+        public final void setSkippedEdges( int edge1, int edge2 )
+        {
+            if (!isShortcut())
+                throw new IllegalStateException("setSkippedEdges is only available for shortcuts");
+
+            if (EdgeIterator.Edge.isValid(edge1) != EdgeIterator.Edge.isValid(edge2))
+            {
+                throw new IllegalStateException("Skipped edges of a shortcut needs "
+                        + "to be both valid or invalid but they were not " + edge1 + ", " + edge2);
+            }
+            shortcuts.setInt(scPointer + S_SKIP_EDGE1, edge1);
+            shortcuts.setInt(scPointer + S_SKIP_EDGE2, edge2);
+        }
+
+        @Override
+        public final int getSkippedEdge1()
+        {
+            if (!isShortcut())
+                return EdgeIterator.NO_EDGE;
+
+            return shortcuts.getInt(scPointer + S_SKIP_EDGE1);
+        }
+
+        @Override
+        public final int getSkippedEdge2()
+        {
+            if (!isShortcut())
+                return EdgeIterator.NO_EDGE;
+
+            return shortcuts.getInt(scPointer + S_SKIP_EDGE2);
+        }
+
+        @Override
+        public final PointList fetchWayGeometry( int mode )
+        {
+            if (isShortcut())
+                throw new IllegalStateException("Cannot call fetchWayGeometry on shortcut " + getEdge());
+
+            return baseEdge.fetchWayGeometry(mode);
+        }
+
+        @Override
+        public final EdgeIteratorState setWayGeometry( PointList list )
+        {
+            if (isShortcut())
+                throw new IllegalStateException("Cannot call setWayGeometry on shortcut " + getEdge());
+
+            baseEdge.setWayGeometry(list);
+            return this;
+        }
+
+        @Override
+        public final int getAdditionalField()
+        {
+            if (isShortcut())
+                throw new IllegalStateException("Cannot call getAdditionalField on shortcut " + getEdge());
+
+            return baseEdge.getAdditionalField();
+        }
+
+        @Override
+        public final EdgeIteratorState setAdditionalField( int value )
+        {
+            if (isShortcut())
+                throw new IllegalStateException("Cannot call setAdditionalField on shortcut " + getEdge());
+
+            baseEdge.setAdditionalField(value);
+            return this;
+        }
+
+        @Override
+        public final String getName()
+        {
+            if (isShortcut())
+                throw new IllegalStateException("Cannot call getName on shortcut " + getEdge());
+
+            return baseEdge.getName();
+        }
+
+        @Override
+        public final EdgeIteratorState setName( String name )
+        {
+            if (isShortcut())
+                throw new IllegalStateException("Cannot call setName on shortcut " + getEdge());
+
+            baseEdge.setName(name);
+            return this;
+        }
+
+        @Override
+        public final EdgeIteratorState detach( boolean reverseArg )
+        {
+            OverlayEdgeState state = new OverlayEdgeState();
+            if (!isShortcut())
+                state.setBaseEdge(baseEdge.detach(reverseArg));
+            else if (reverseArg)
+                state.setShortcut(shortcut, adjNode, baseNode, !reverse);
+            else
+                state.setShortcut(shortcut, baseNode, adjNode, reverse);
+
+            return state;
+        }
+
+        @Override
+        public final EdgeIteratorState copyPropertiesTo( EdgeIteratorState edge )
+        {
+            if (isShortcut())
+                throw new IllegalStateException("Cannot call copyPropertiesTo on shortcut " + getEdge());
+
+            return baseEdge.copyPropertiesTo(edge);
+        }
+
+        @Override
+        public String toString()
+        {
+            return getEdge() + " " + getBaseNode() + "-" + getAdjNode();
+        }
+    }
+
+    /**
+     * Iterates first over the shortcuts of a node and then over the edges of the base graph.
+     */
+    class OverlayEdgeIterator extends OverlayEdgeState implements EdgeSkipExplorer, EdgeSkipIterator
+    {
+        private final EdgeFilter filter;
+        private final EdgeExplorer baseExplorer;
+        private EdgeIterator baseIter;
+        private int node;
+        private int nextShortcut;
+
+        public OverlayEdgeIterator( EdgeFilter filter )
+        {
+            this.filter = filter;
+            baseExplorer = baseGraph.createEdgeExplorer(filter);
+        }
+
+        @Override
+        public EdgeSkipIterator setBaseNode( int baseNode )
+        {
+            node = baseNode;
+            nextShortcut = getFirstShortcut(baseNode);
+            baseIter = baseExplorer.setBaseNode(baseNode);
+            shortcut = NO_SHORTCUT;
+            return this;
+        }
+
+        @Override
+        public boolean next()
+        {
+            while (nextShortcut != NO_SHORTCUT)
+            {
+                long pointer = (long) nextShortcut * SHORTCUT_ENTRY_BYTES;
+                int nodeA = shortcuts.getInt(pointer + S_NODEA);
+                if (nodeA == node)
+                {
+                    setShortcut(nextShortcut, node, shortcuts.getInt(pointer + S_NODEB), false);
+                    nextShortcut = shortcuts.getInt(pointer + S_LINKA) - 1;
+                } else
+                {
+                    setShortcut(nextShortcut, node, nodeA, true);
+                    nextShortcut = shortcuts.getInt(pointer + S_LINKB) - 1;
+                }
+
+                if (filter.accept(this))
+                    return true;
+            }
+
+            setBaseEdge(baseIter);
+            return baseIter.next();
+        }
+    }
+
+    /**
+     * Iterates first over all edges of the base graph and then over all shortcuts.
+     */
+    class OverlayAllEdgesIterator extends OverlayEdgeState implements AllEdgesSkipIterator
+    {
+        private final AllEdgesIterator baseIter = baseGraph.getAllEdges();
+        private boolean baseFinished;
+        private int nextShortcut;
+
+        @Override
+        public int getCount()
+        {
+            return baseEdgeCount + shortcutCount;
+        }
+
+        @Override
+        public boolean next()
+        {
+            if (!baseFinished)
+            {
+                setBaseEdge(baseIter);
+                if (baseIter.next())
+                    return true;
+
+                baseFinished = true;
+            }
+
+            if (nextShortcut >= shortcutCount)
+                return false;
+
+            long pointer = (long) nextShortcut * SHORTCUT_ENTRY_BYTES;
+            setShortcut(nextShortcut, shortcuts.getInt(pointer + S_NODEA), shortcuts.getInt(pointer + S_NODEB), false);
+            nextShortcut++;
+            return true;
+        }
+    }
+}
@@ -416,6 +416,20 @@ public class LevelGraphStorage extends GraphHopperStorage implements LevelGraph
         return weight;
     }
 
+    @Override
+    int getEdgeOrderSplit()
+    {
+        // shortcuts have to stay behind the edges
+        return lastEdgeIndex + 1;
+    }
+
+    @Override
+    void relabelEdgeRefs( long edgePointer, int[] oldToNewEdge )
+    {
+        relabelEdgeRef(edgePointer + I_SKIP_EDGE1, oldToNewEdge);
+        relabelEdgeRef(edgePointer + I_SKIP_EDGE2, oldToNewEdge);
+    }
+
     @Override
     protected int loadEdgesHeader()
     {
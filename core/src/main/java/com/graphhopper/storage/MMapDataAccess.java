@@ -390,6 +390,49 @@ public class MMapDataAccess extends AbstractDataAccess
         return segments.size();
     }
 
+    /**
+     * Reads all segments into the page cache to avoid page faults for the first requests. The
+     * segments are split into chunks which are loaded by the specified number of threads.
+     */
+    public void warmUp( int threads )
+    {
+        if (isClosed())
+            throw new IllegalStateException("already closed");
+
+        final List<ByteBuffer> tmpSegments = segments;
+        try
+        {
+            runParallel(tmpSegments.size(), threads, false, new SegmentTask()
+            {
+                @Override
+                public void run( int segment, byte[] unused )
+                {
+                    ByteBuffer bb = tmpSegments.get(segment);
+                    if (bb instanceof MappedByteBuffer)
+                        ((MappedByteBuffer) bb).load();
+                }
+            });
+        } catch (IOException ex)
+        {
+            throw new RuntimeException("Couldn't warm up " + toString(), ex);
+        }
+    }
+
+    /**
+     * @return the number of segments which are probably completely in physical memory. The
+     * operating system can evict pages at any time, so this is only a hint.
+     */
+    public int getResidentSegments()
+    {
+        int resident = 0;
+        for (ByteBuffer bb : segments)
+        {
+            if (bb instanceof MappedByteBuffer && ((MappedByteBuffer) bb).isLoaded())
+                resident++;
+        }
+        return resident;
+    }
+
     /**
      * Cleans up MappedByteBuffers. Be sure you bring the segments list in a consistent state
      * afterwards.
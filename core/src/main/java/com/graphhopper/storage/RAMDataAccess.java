@@ -20,7 +20,9 @@ package com.graphhopper.storage;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
 import org.slf4j.LoggerFactory;
 
@@ -64,13 +66,13 @@ public class RAMDataAccess extends AbstractDataAccess
             copyHeader(da);
             RAMDataAccess rda = (RAMDataAccess) da;
             // TODO PERFORMANCE we could reuse rda segments!
+            rda.copySegmentSize(this);
             rda.segments = new byte[segments.length][];
             for (int i = 0; i < segments.length; i++)
             {
                 byte[] area = segments[i];
                 rda.segments[i] = Arrays.copyOf(area, area.length);
             }
-            rda.setSegmentSize(segmentSizeInBytes);
             // leave id, store and close unchanged
             return da;
         } else
@@ -126,6 +128,9 @@ public class RAMDataAccess extends AbstractDataAccess
     @Override
     public boolean loadExisting()
     {
+        if (wasPreloaded())
+            return true;
+
         if (segments.length > 0)
             throw new IllegalStateException("already initialized");
 
@@ -148,22 +153,23 @@ public class RAMDataAccess extends AbstractDataAccess
                 if (byteCount < 0)
                     return false;
 
-                raFile.seek(HEADER_OFFSET);
-                // raFile.readInt() <- too slow                
                 int segmentCount = (int) (byteCount / segmentSizeInBytes);
                 if (byteCount % segmentSizeInBytes != 0)
                     segmentCount++;
 
-                segments = new byte[segmentCount][];
-                for (int s = 0; s < segmentCount; s++)
+                final FileChannel channel = raFile.getChannel();
+                final byte[][] tmpSegments = new byte[segmentCount][];
+                runParallel(segmentCount, 1, false, new SegmentTask()
                 {
-                    byte[] bytes = new byte[segmentSizeInBytes];
-                    int read = raFile.read(bytes);
-                    if (read <= 0)
-                        throw new IllegalStateException("segment " + s + " is empty? " + toString());
-
-                    segments[s] = bytes;
-                }
+                    @Override
+                    public void run( int segment, byte[] unused ) throws IOException
+                    {
+                        byte[] bytes = new byte[segmentSizeInBytes];
+                        readSegment(channel, segment, ByteBuffer.wrap(bytes));
+                        tmpSegments[segment] = bytes;
+                    }
+                });
+                segments = tmpSegments;
                 return true;
             } finally
             {
@@ -20,7 +20,9 @@ package com.graphhopper.storage;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
 
 /**
@@ -65,13 +67,13 @@ class RAMIntDataAccess extends AbstractDataAccess
             copyHeader(da);
             RAMIntDataAccess rda = (RAMIntDataAccess) da;
             // TODO PERFORMANCE we could reuse rda segments!
+            rda.copySegmentSize(this);
             rda.segments = new int[segments.length][];
             for (int i = 0; i < segments.length; i++)
             {
                 int[] area = segments[i];
                 rda.segments[i] = Arrays.copyOf(area, area.length);
             }
-            rda.setSegmentSize(segmentSizeInBytes);
             // leave id, store and close unchanged
             return da;
         } else
@@ -129,6 +131,9 @@ class RAMIntDataAccess extends AbstractDataAccess
     @Override
     public boolean loadExisting()
     {
+        if (wasPreloaded())
+            return true;
+
         if (segments.length > 0)
             throw new IllegalStateException("already initialized");
 
@@ -153,24 +158,27 @@ class RAMIntDataAccess extends AbstractDataAccess
                 {
                     return false;
                 }
-                byte[] bytes = new byte[segmentSizeInBytes];
-                raFile.seek(HEADER_OFFSET);
-                // raFile.readInt() <- too slow                
                 int segmentCount = (int) (byteCount / segmentSizeInBytes);
                 if (byteCount % segmentSizeInBytes != 0)
                     segmentCount++;
 
-                segments = new int[segmentCount][];
-                for (int s = 0; s < segmentCount; s++)
+                final FileChannel channel = raFile.getChannel();
+                final int[][] tmpSegments = new int[segmentCount][];
+                runParallel(segmentCount, 1, true, new SegmentTask()
                 {
-                    int read = raFile.read(bytes) / 4;
-                    int area[] = new int[read];
-                    for (int j = 0; j < read; j++)
+                    @Override
+                    public void run( int segment, byte[] bytes ) throws IOException
                     {
-                        area[j] = bitUtil.toInt(bytes, j * 4);
+                        int read = readSegment(channel, segment, ByteBuffer.wrap(bytes)) / 4;
+                        int area[] = new int[read];
+                        for (int j = 0; j < read; j++)
+                        {
+                            area[j] = bitUtil.toInt(bytes, j * 4);
+                        }
+                        tmpSegments[segment] = area;
                     }
-                    segments[s] = area;
-                }
+                });
+                segments = tmpSegments;
                 return true;
             } finally
             {
@@ -33,6 +33,14 @@ class SynchedDAWrapper implements DataAccess
         this.type = new DAType(inner.getType(), true);
     }
 
+    /**
+     * @return the wrapped object, e.g. to access the methods of a specific implementation
+     */
+    DataAccess getInner()
+    {
+        return inner;
+    }
+
     @Override
     public synchronized String getName()
     {
@@ -1,14 +1,14 @@
 /*
  *  Licensed to GraphHopper and Peter Karich under one or more contributor
- *  license agreements. See the NOTICE file distributed with this work for 
+ *  license agreements. See the NOTICE file distributed with this work for
  *  additional information regarding copyright ownership.
- * 
- *  GraphHopper licenses this file to you under the Apache License, 
- *  Version 2.0 (the "License"); you may not use this file except in 
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
  *  compliance with the License. You may obtain a copy of the License at
- * 
+ *
  *       http://www.apache.org/licenses/LICENSE-2.0
- * 
+ *
  *  Unless required by applicable law or agreed to in writing, software
  *  distributed under the License is distributed on an "AS IS" BASIS,
  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
@@ -17,31 +17,39 @@
  */
 package com.graphhopper.storage;
 
-import com.graphhopper.util.NotThreadSafe;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
 
 /**
  * This is a data structure which uses an unsafe access to native memory. The speed up compared to
  * RAMDataAccess is roughly 10% due to index calculations and BitUtil overhead in RAMDataAccess.
  * Notes:
  * <p>
- * 1. Highly experimental. Still some bugs and access through file/MMAP should work at some point
+ * 1. The memory is allocated in segments, so increasing the capacity does not copy existing data.
+ * An access beyond the capacity fails with an exception via the segment array. Enable assertions
+ * to check that an int or short does not cross the end of its segment.
  * <p>
- * 2. Compared to MMAP no syncDAWrapper is need to make it read and write safe from multiple threads
+ * 2. Uses the same file format as RAMDataAccess and loads and flushes the segments in parallel.
  * <p>
  * 3. Cannot be used on Android as no memory allocation methods are available there
+ * <p>
+ * 4. close frees the native memory immediately and reads are not checked against it. The caller
+ * has to ensure that no other thread still reads from this object, e.g. a routing thread while
+ * shutting down, otherwise that thread reads freed memory which can crash the JVM.
  * <p/>
  * @author Peter Karich
  */
-@NotThreadSafe
 public class UnsafeDataAccess extends AbstractDataAccess
 {
     @SuppressWarnings("all")
     static final sun.misc.Unsafe UNSAFE;
+    private static final long BYTE_ARRAY_OFFSET;
 
     static
     {
@@ -53,71 +61,126 @@ public class UnsafeDataAccess extends AbstractDataAccess
             Field field = sun.misc.Unsafe.class.getDeclaredField("theUnsafe");
             field.setAccessible(true);
             UNSAFE = (sun.misc.Unsafe) field.get(null);
+            BYTE_ARRAY_OFFSET = UNSAFE.arrayBaseOffset(byte[].class);
         } catch (Exception e)
         {
             throw new AssertionError(e);
         }
     }
 
-    private long address;
-    private long capacity;    
+    // the addresses of the segments
+    private long[] segments = new long[0];
+    private final boolean store;
+    // the memory uses the byte order of the file, only necessary to swap on big endian systems
+    private final boolean swap;
+    private int threads = Runtime.getRuntime().availableProcessors();
 
-    UnsafeDataAccess( String name, String location, ByteOrder order )
+    UnsafeDataAccess( String name, String location, boolean store, ByteOrder order )
     {
         super(name, location, order);
+        this.store = store;
+        this.swap = !order.equals(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * The number of threads to load and flush the segments.
+     */
+    public UnsafeDataAccess setThreads( int threads )
+    {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads has to be positive but was " + threads);
+
+        this.threads = threads;
+        return this;
+    }
+
+    @Override
+    public boolean isStoring()
+    {
+        return store;
     }
 
     @Override
     public UnsafeDataAccess create( long bytes )
     {
-        // TODO use unsafe.pageSize() instead segmentSizeInBytes?
-        // e.g. on my system pageSize is only 4096
+        if (segments.length > 0)
+            throw new IllegalThreadStateException("already created");
+
         setSegmentSize(segmentSizeInBytes);
-        ensureCapacity(bytes);
+        ensureCapacity(Math.max(10 * 4, bytes));
         return this;
     }
 
     @Override
-    public final boolean ensureCapacity(long bytes)
+    public final boolean ensureCapacity( long bytes )
     {
         return ensureCapacity(bytes, true);
     }
 
     final boolean ensureCapacity( long bytes, boolean clearNewMem )
     {
-        long oldCap = getCapacity();
-        long todoBytes = bytes - oldCap;
+        if (bytes < 0)
+            throw new IllegalArgumentException("new capacity has to be strictly positive");
+
+        long cap = getCapacity();
+        long todoBytes = bytes - cap;
         if (todoBytes <= 0)
             return false;
 
-        // avoid frequent increase of allocation area, instead increase by segment size
-        int allSegments = (int) (bytes / segmentSizeInBytes);
-        if (bytes % segmentSizeInBytes != 0)
-            allSegments++;
-        capacity = allSegments * segmentSizeInBytes;
+        int segmentsToCreate = (int) (todoBytes / segmentSizeInBytes);
+        if (todoBytes % segmentSizeInBytes != 0)
+            segmentsToCreate++;
 
+        int oldLength = segments.length;
+        segments = Arrays.copyOf(segments, oldLength + segmentsToCreate);
         try
         {
-            address = UNSAFE.reallocateMemory(address, capacity);
+            for (int s = oldLength; s < segments.length; s++)
+            {
+                long address = UNSAFE.allocateMemory(segmentSizeInBytes);
+                if (clearNewMem)
+                    UNSAFE.setMemory(address, segmentSizeInBytes, (byte) 0);
+
+                segments[s] = address;
+            }
         } catch (OutOfMemoryError err)
         {
+            release(oldLength);
             throw new OutOfMemoryError(err.getMessage() + " - problem when allocating new memory. Old capacity: "
-                    + oldCap + ", new bytes:" + todoBytes + ", segmentSizeIntsPower:" + segmentSizePower);
+                    + cap + ", new bytes:" + todoBytes + ", segmentSizeIntsPower:" + segmentSizePower);
         }
-
-        if (clearNewMem)
-            UNSAFE.setMemory(address + oldCap, capacity - oldCap, (byte) 0);
         return true;
     }
 
+    /**
+     * Frees the memory of all segments starting at the specified one.
+     */
+    private void release( int fromSegment )
+    {
+        for (int s = fromSegment; s < segments.length; s++)
+        {
+            // zero if the allocation failed
+            if (segments[s] != 0)
+                UNSAFE.freeMemory(segments[s]);
+        }
+        segments = Arrays.copyOf(segments, Math.min(fromSegment, segments.length));
+    }
+
     @Override
     public DataAccess copyTo( DataAccess da )
     {
         if (da instanceof UnsafeDataAccess)
         {
-            // TODO
-            // unsafe.copyMemory(address, da.address, capacity);
-            // return this;
+            copyHeader(da);
+            UnsafeDataAccess uda = (UnsafeDataAccess) da;
+            uda.release(0);
+            uda.setSegmentSize(segmentSizeInBytes);
+            uda.ensureCapacity(getCapacity(), false);
+            for (int s = 0; s < segments.length; s++)
+            {
+                UNSAFE.copyMemory(segments[s], uda.segments[s], segmentSizeInBytes);
+            }
+            return da;
         }
         return super.copyTo(da);
     }
@@ -125,9 +188,18 @@ public class UnsafeDataAccess extends AbstractDataAccess
     @Override
     public boolean loadExisting()
     {
+        if (wasPreloaded())
+            return true;
+
+        if (segments.length > 0)
+            throw new IllegalStateException("already initialized");
+
         if (isClosed())
             throw new IllegalStateException("already closed");
 
+        if (!store)
+            return false;
+
         File file = new File(getFullName());
         if (!file.exists() || file.length() == 0)
             return false;
@@ -141,22 +213,23 @@ public class UnsafeDataAccess extends AbstractDataAccess
                 if (byteCount < 0)
                     return false;
 
-                raFile.seek(HEADER_OFFSET);
                 int segmentCount = (int) (byteCount / segmentSizeInBytes);
                 if (byteCount % segmentSizeInBytes != 0)
                     segmentCount++;
 
-                ensureCapacity(byteCount, false);
-                byte[] bytes = new byte[segmentSizeInBytes];
-                for (int s = 0; s < segmentCount; s++)
+                ensureCapacity((long) segmentCount * segmentSizeInBytes, false);
+                final FileChannel channel = raFile.getChannel();
+                runParallel(segmentCount, threads, true, new SegmentTask()
                 {
-                    int read = raFile.read(bytes);
-                    if (read <= 0)
-                        throw new IllegalStateException("segment " + s + " is empty? " + toString());
-
-                    // is there a faster method?
-                    setBytes(s * segmentSizeInBytes, bytes, segmentSizeInBytes);
-                }
+                    @Override
+                    public void run( int segment, byte[] bytes ) throws IOException
+                    {
+                        int read = readSegment(channel, segment, ByteBuffer.wrap(bytes));
+                        // the remaining bytes of a truncated file are zero
+                        Arrays.fill(bytes, read, bytes.length, (byte) 0);
+                        UNSAFE.copyMemory(bytes, BYTE_ARRAY_OFFSET, null, segments[segment], segmentSizeInBytes);
+                    }
+                });
                 return true;
             } finally
             {
@@ -174,6 +247,9 @@ public class UnsafeDataAccess extends AbstractDataAccess
         if (isClosed())
             throw new IllegalStateException("already closed");
 
+        if (!store)
+            return;
+
         try
         {
             RandomAccessFile raFile = new RandomAccessFile(getFullName(), "rw");
@@ -181,14 +257,21 @@ public class UnsafeDataAccess extends AbstractDataAccess
             {
                 long len = getCapacity();
                 writeHeader(raFile, len, segmentSizeInBytes);
-                raFile.seek(HEADER_OFFSET);
-                byte bytes[] = new byte[segmentSizeInBytes];
-                int segs = getSegments();
-                for (int s = 0; s < segs; s++)
+                final FileChannel channel = raFile.getChannel();
+                runParallel(segments.length, threads, true, new SegmentTask()
                 {
-                    getBytes(s * segmentSizeInBytes, bytes, segmentSizeInBytes);
-                    raFile.write(bytes);
-                }
+                    @Override
+                    public void run( int segment, byte[] bytes ) throws IOException
+                    {
+                        UNSAFE.copyMemory(null, segments[segment], bytes, BYTE_ARRAY_OFFSET, segmentSizeInBytes);
+                        ByteBuffer bb = ByteBuffer.wrap(bytes);
+                        long pos = HEADER_OFFSET + (long) segment * segmentSizeInBytes;
+                        while (bb.hasRemaining())
+                        {
+                            channel.write(bb, pos + bb.position());
+                        }
+                    }
+                });
             } finally
             {
                 raFile.close();
@@ -199,43 +282,70 @@ public class UnsafeDataAccess extends AbstractDataAccess
         }
     }
 
+    /**
+     * Frees the native memory. No other thread must read from or write to this object at the same
+     * time or afterwards.
+     */
     @Override
     public void close()
     {
         super.close();
-        UNSAFE.freeMemory(address);
+        release(0);
     }
 
     @Override
     public final void setInt( long bytePos, int value )
     {
-        UNSAFE.putInt(address + bytePos, value);
+        int bufferIndex = (int) (bytePos >>> segmentSizePower);
+        long index = bytePos & indexDivisor;
+        assert index + 4 <= segmentSizeInBytes : "int at " + bytePos + " crosses the segment end of " + toString();
+        UNSAFE.putInt(segments[bufferIndex] + index, swap ? Integer.reverseBytes(value) : value);
     }
 
     @Override
     public final int getInt( long bytePos )
     {
-        return UNSAFE.getInt(address + bytePos);
+        int bufferIndex = (int) (bytePos >>> segmentSizePower);
+        long index = bytePos & indexDivisor;
+        assert index + 4 <= segmentSizeInBytes : "int at " + bytePos + " crosses the segment end of " + toString();
+        int value = UNSAFE.getInt(segments[bufferIndex] + index);
+        return swap ? Integer.reverseBytes(value) : value;
     }
 
     @Override
-    public short getShort( long bytePos )
+    public final short getShort( long bytePos )
     {
-        return UNSAFE.getShort(address + bytePos);
+        int bufferIndex = (int) (bytePos >>> segmentSizePower);
+        long index = bytePos & indexDivisor;
+        assert index + 2 <= segmentSizeInBytes : "short at " + bytePos + " crosses the segment end of " + toString();
+        short value = UNSAFE.getShort(segments[bufferIndex] + index);
+        return swap ? Short.reverseBytes(value) : value;
     }
 
     @Override
-    public void setShort( long bytePos, short value )
+    public final void setShort( long bytePos, short value )
     {
-        UNSAFE.putShort(address + bytePos, value);
+        int bufferIndex = (int) (bytePos >>> segmentSizePower);
+        long index = bytePos & indexDivisor;
+        assert index + 2 <= segmentSizeInBytes : "short at " + bytePos + " crosses the segment end of " + toString();
+        UNSAFE.putShort(segments[bufferIndex] + index, swap ? Short.reverseBytes(value) : value);
     }
 
     @Override
     public final void setBytes( long bytePos, byte[] values, int length )
     {
-        for (int offset = 0; offset < length; offset++)
+        assert length <= segmentSizeInBytes : "the length has to be smaller or equal to the segment size: " + length + " vs. " + segmentSizeInBytes;
+        int bufferIndex = (int) (bytePos >>> segmentSizePower);
+        long index = bytePos & indexDivisor;
+        long delta = index + length - segmentSizeInBytes;
+        if (delta > 0)
+        {
+            length -= delta;
+            UNSAFE.copyMemory(values, BYTE_ARRAY_OFFSET, null, segments[bufferIndex] + index, length);
+            UNSAFE.copyMemory(values, BYTE_ARRAY_OFFSET + length, null, segments[bufferIndex + 1], delta);
+        } else
         {
-            UNSAFE.putByte(address + bytePos + offset, values[offset]);
+            UNSAFE.copyMemory(values, BYTE_ARRAY_OFFSET, null, segments[bufferIndex] + index, length);
         }
     }
 
@@ -243,41 +353,69 @@ public class UnsafeDataAccess extends AbstractDataAccess
     public final void getBytes( long bytePos, byte[] values, int length )
     {
         assert length <= segmentSizeInBytes : "the length has to be smaller or equal to the segment size: " + length + " vs. " + segmentSizeInBytes;
-        for (int offset = 0; offset < length; offset++)
+        int bufferIndex = (int) (bytePos >>> segmentSizePower);
+        long index = bytePos & indexDivisor;
+        long delta = index + length - segmentSizeInBytes;
+        if (delta > 0)
         {
-            values[offset] = UNSAFE.getByte(address + bytePos + offset);
+            length -= delta;
+            UNSAFE.copyMemory(null, segments[bufferIndex] + index, values, BYTE_ARRAY_OFFSET, length);
+            UNSAFE.copyMemory(null, segments[bufferIndex + 1], values, BYTE_ARRAY_OFFSET + length, delta);
+        } else
+        {
+            UNSAFE.copyMemory(null, segments[bufferIndex] + index, values, BYTE_ARRAY_OFFSET, length);
         }
     }
 
     @Override
     public final long getCapacity()
     {
-        return capacity;
+        return (long) getSegments() * segmentSizeInBytes;
     }
 
     @Override
     public final int getSegments()
     {
-        return (int) (capacity / segmentSizeInBytes);
+        return segments.length;
     }
 
     @Override
-    public final void trimTo( long bytes )
+    public final void trimTo( long capacity )
     {
-        if (bytes > this.capacity)
-            throw new IllegalStateException("Use ensureCapacity to increase capacity!");
-
-        int allSegments = (int) (bytes / segmentSizeInBytes);
-        if (bytes % segmentSizeInBytes != 0)
-            allSegments++;
-        if (allSegments <= 0)
-            allSegments = 1;
-        capacity = allSegments * segmentSizeInBytes;
+        if (capacity > getCapacity())
+        {
+            throw new IllegalStateException("Cannot increase capacity (" + getCapacity() + ") to " + capacity
+                    + " via trimTo. Use ensureCapacity instead. ");
+        }
+
+        if (capacity < segmentSizeInBytes)
+            capacity = segmentSizeInBytes;
+
+        int remainingSegments = (int) (capacity / segmentSizeInBytes);
+        if (capacity % segmentSizeInBytes != 0)
+            remainingSegments++;
+
+        release(remainingSegments);
+    }
+
+    @Override
+    public void rename( String newName )
+    {
+        if (!checkBeforeRename(newName))
+            return;
+
+        if (store)
+            super.rename(newName);
+
+        // in every case set the name
+        name = newName;
     }
 
     @Override
     public DAType getType()
     {
-        return DAType.UNSAFE_STORE;
+        if (isStoring())
+            return DAType.UNSAFE_STORE;
+        return DAType.UNSAFE;
     }
 }
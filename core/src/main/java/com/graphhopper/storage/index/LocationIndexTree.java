@@ -29,8 +29,11 @@ import com.graphhopper.storage.NodeAccess;
 import com.graphhopper.util.*;
 import com.graphhopper.util.shapes.BBox;
 import com.graphhopper.util.shapes.GHPoint;
+import gnu.trove.TIntCollection;
 import gnu.trove.iterator.TIntIterator;
+import gnu.trove.iterator.TLongObjectIterator;
 import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TLongObjectHashMap;
 import gnu.trove.procedure.TIntProcedure;
 import gnu.trove.set.hash.TIntHashSet;
 import java.util.*;
@@ -44,6 +47,11 @@ import org.slf4j.LoggerFactory;
  * line for different resolutions, especially if a leaf node could be split into a tree-node and
  * resolution changes.
  * <p/>
+ * Edges which are added or changed after the index was prepared can be added via addEdges. Their
+ * entries are kept in a separate map per tile which is stored in 'locationIndex_updates' and
+ * merged into the results of a tile. The tiles are calculated with the bounds of the graph at the
+ * time of the preparation, points outside of them belong to the tiles at the border.
+ * <p/>
  * @author Peter Karich
  */
 public class LocationIndexTree implements LocationIndex
@@ -55,6 +63,11 @@ public class LocationIndexTree implements LocationIndex
     protected final Graph graph;
     private final NodeAccess nodeAccess;
     final DataAccess dataAccess;
+    private final DataAccess updatesDA;
+    private boolean updatesStored;
+    // spatial key to the nodes added after the preparation
+    private TLongObjectHashMap<TIntArrayList> updates;
+    private BBox bounds;
     private int[] entries;
     private byte[] shifts;
     // convert spatial key to index for subentry of current depth
@@ -80,6 +93,7 @@ public class LocationIndexTree implements LocationIndex
         this.graph = g;
         this.nodeAccess = g.getNodeAccess();
         dataAccess = dir.find("locationIndex");
+        updatesDA = dir.find("locationIndex_updates");
     }
 
     public int getMinResolutionInMeter()
@@ -123,7 +137,9 @@ public class LocationIndexTree implements LocationIndex
         // now calculate the necessary maxDepth d for our current bounds
         // if we assume a minimum resolution like 0.5km for a leaf-tile                
         // n^(depth/2) = toMeter(dLon) / minResolution
-        BBox bounds = graph.getBounds();
+        if (bounds == null)
+            bounds = graph.getBounds().clone();
+
         if (graph.getNodes() == 0 || !bounds.check())
             throw new IllegalStateException("Bounds of graph are invalid: " + bounds);
 
@@ -251,7 +267,19 @@ public class LocationIndexTree implements LocationIndex
             throw new IllegalStateException("location2id index was opened with incorrect graph");
 
         setMinResolutionInMeter(dataAccess.getHeader(2 * 4));
+        // indices without stored bounds were created with the unchanged bounds of the graph
+        BBox tmpBounds = new BBox(getDoubleHeader(7), getDoubleHeader(9), getDoubleHeader(3), getDoubleHeader(5));
+        if (tmpBounds.check())
+            bounds = tmpBounds;
+
         prepareAlgo();
+        if (updatesDA.loadExisting())
+        {
+            updatesStored = true;
+            // ignore the updates of an older index
+            if (updatesDA.getHeader(1 * 4) == dataAccess.getHeader(1 * 4))
+                readUpdates();
+        }
         initialized = true;
         return true;
     }
@@ -288,9 +316,122 @@ public class LocationIndexTree implements LocationIndex
         dataAccess.setHeader(0, MAGIC_INT);
         dataAccess.setHeader(1 * 4, calcChecksum());
         dataAccess.setHeader(2 * 4, minResolutionInMeter);
+        // the exact bounds are necessary to calculate the same spatial keys after loading
+        setDoubleHeader(3, bounds.minLat);
+        setDoubleHeader(5, bounds.maxLat);
+        setDoubleHeader(7, bounds.minLon);
+        setDoubleHeader(9, bounds.maxLon);
 
         // saving space not necessary: dataAccess.trimTo((lastPointer + 1) * 4);
         dataAccess.flush();
+        if (updates != null)
+            writeUpdates();
+    }
+
+    private double getDoubleHeader( int index )
+    {
+        long bits = ((long) dataAccess.getHeader(index * 4) << 32) | (dataAccess.getHeader((index + 1) * 4) & 0xFFFFFFFFL);
+        return Double.longBitsToDouble(bits);
+    }
+
+    private void setDoubleHeader( int index, double value )
+    {
+        long bits = Double.doubleToLongBits(value);
+        dataAccess.setHeader(index * 4, (int) (bits >>> 32));
+        dataAccess.setHeader((index + 1) * 4, (int) bits);
+    }
+
+    /**
+     * Adds the specified edges, e.g. the created or moved ones of an OSM change file, to the
+     * index. Entries of removed edges or of the old geometry are not removed, they are only
+     * skipped by the edge filter of the query or are a bit further away.
+     */
+    public void addEdges( TIntCollection edges )
+    {
+        if (!initialized)
+            throw new IllegalStateException("Call loadExisting or prepareIndex before adding edges");
+
+        if (updates == null)
+            updates = new TLongObjectHashMap<TIntArrayList>();
+
+        TIntIterator iter = edges.iterator();
+        while (iter.hasNext())
+        {
+            EdgeIteratorState edge = graph.getEdgeProps(iter.next(), Integer.MIN_VALUE);
+            PointList points = edge.fetchWayGeometry(3);
+            final int bestNode = pickBestNode(edge.getBaseNode(), edge.getAdjNode());
+            PointEmitter pointEmitter = new PointEmitter()
+            {
+                @Override
+                public void set( double lat, double lon )
+                {
+                    long key = keyAlgo.encode(lat, lon);
+                    TIntArrayList nodes = updates.get(key);
+                    if (nodes == null)
+                    {
+                        nodes = new TIntArrayList(4);
+                        updates.put(key, nodes);
+                    }
+                    if (!nodes.contains(bestNode))
+                        nodes.add(bestNode);
+                }
+            };
+            for (int i = 1; i < points.getSize(); i++)
+            {
+                BresenhamLine.calcPoints(points.getLatitude(i - 1), points.getLongitude(i - 1),
+                        points.getLatitude(i), points.getLongitude(i), pointEmitter,
+                        bounds.minLat, bounds.minLon, deltaLat, deltaLon);
+            }
+        }
+    }
+
+    // layout: spatial key (two ints), count, nodes
+    private void readUpdates()
+    {
+        updates = new TLongObjectHashMap<TIntArrayList>();
+        long max = (long) updatesDA.getHeader(0) * 4;
+        long pointer = 0;
+        while (pointer < max)
+        {
+            long key = ((long) updatesDA.getInt(pointer) << 32) | (updatesDA.getInt(pointer + 4) & 0xFFFFFFFFL);
+            int count = updatesDA.getInt(pointer + 8);
+            pointer += 12;
+            TIntArrayList nodes = new TIntArrayList(count);
+            for (int i = 0; i < count; i++, pointer += 4)
+            {
+                nodes.add(updatesDA.getInt(pointer));
+            }
+            updates.put(key, nodes);
+        }
+    }
+
+    private void writeUpdates()
+    {
+        if (!updatesStored)
+        {
+            updatesDA.create(4 * 1024);
+            updatesStored = true;
+        }
+
+        long pointer = 0;
+        TLongObjectIterator<TIntArrayList> iter = updates.iterator();
+        while (iter.hasNext())
+        {
+            iter.advance();
+            TIntArrayList nodes = iter.value();
+            updatesDA.ensureCapacity(pointer + 12 + nodes.size() * 4);
+            updatesDA.setInt(pointer, (int) (iter.key() >>> 32));
+            updatesDA.setInt(pointer + 4, (int) iter.key());
+            updatesDA.setInt(pointer + 8, nodes.size());
+            pointer += 12;
+            for (int i = 0; i < nodes.size(); i++, pointer += 4)
+            {
+                updatesDA.setInt(pointer, nodes.get(i));
+            }
+        }
+        updatesDA.setHeader(0, (int) (pointer / 4));
+        updatesDA.setHeader(1 * 4, calcChecksum());
+        updatesDA.flush();
     }
 
     @Override
@@ -338,6 +479,8 @@ public class LocationIndexTree implements LocationIndex
     public void close()
     {
         dataAccess.close();
+        if (updatesStored)
+            updatesDA.close();
     }
 
     @Override
@@ -349,7 +492,7 @@ public class LocationIndexTree implements LocationIndex
     @Override
     public long getCapacity()
     {
-        return dataAccess.getCapacity();
+        return dataAccess.getCapacity() + (updatesStored ? updatesDA.getCapacity() : 0);
     }
 
     @Override
@@ -419,7 +562,7 @@ public class LocationIndexTree implements LocationIndex
                 }
             };
             BresenhamLine.calcPoints(lat1, lon1, lat2, lon2, pointEmitter,
-                    graph.getBounds().minLat, graph.getBounds().minLon,
+                    bounds.minLat, bounds.minLon,
                     deltaLat, deltaLon);
         }
 
@@ -768,6 +911,12 @@ public class LocationIndexTree implements LocationIndex
     {
         long keyPart = createReverseKey(queryLat, queryLon);
         fillIDs(keyPart, START_POINTER, storedNetworkEntryIds, 0);
+        if (updates != null)
+        {
+            TIntArrayList nodes = updates.get(keyAlgo.encode(queryLat, queryLon));
+            if (nodes != null)
+                storedNetworkEntryIds.addAll(nodes);
+        }
     }
 
     @Override
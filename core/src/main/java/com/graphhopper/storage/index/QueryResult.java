@@ -187,6 +187,22 @@ public class QueryResult
             snappedPoint = new GHPoint3D(tmpLat, tmpLon, tmpEle);
     }
 
+    /**
+     * @return a copy of this result, e.g. to use the same lookup for several QueryGraphs as
+     * QueryGraph.lookup changes the closest node
+     */
+    public QueryResult copy()
+    {
+        QueryResult res = new QueryResult(queryPoint.lat, queryPoint.lon);
+        res.queryDistance = queryDistance;
+        res.wayIndex = wayIndex;
+        res.closestNode = closestNode;
+        res.closestEdge = closestEdge;
+        res.snappedPoint = snappedPoint;
+        res.snappedPosition = snappedPosition;
+        return res;
+    }
+
     @Override
     public String toString()
     {
@@ -210,6 +210,15 @@ public class GHUtility
      * significant difference (bfs) for querying or are worse (z-curve).
      */
     public static Graph sortDFS( Graph g, Graph sortedGraph )
+    {
+        return createSortedGraph(g, sortedGraph, createDFSOrder(g));
+    }
+
+    /**
+     * @return the new id of every node in depth-first search order, e.g. for
+     * GraphHopperStorage.relabel
+     */
+    public static TIntList createDFSOrder( Graph g )
     {
         final TIntList list = new TIntArrayList(g.getNodes(), -1);
         int nodes = g.getNodes();
@@ -236,11 +245,24 @@ public class GHUtility
                 }
             }.start(explorer, startNode);
         }
-        return createSortedGraph(g, sortedGraph, list);
+        return list;
     }
 
     static Graph createSortedGraph( Graph fromGraph, Graph toSortedGraph, final TIntList oldToNewNodeList )
     {
+        // copy nodes first as a compressed geometry depends on the coordinates of the nodes
+        int nodes = fromGraph.getNodes();
+        NodeAccess na = fromGraph.getNodeAccess();
+        NodeAccess sna = toSortedGraph.getNodeAccess();
+        for (int old = 0; old < nodes; old++)
+        {
+            int newIndex = oldToNewNodeList.get(old);
+            if (sna.is3D())
+                sna.setNode(newIndex, na.getLatitude(old), na.getLongitude(old), na.getElevation(old));
+            else
+                sna.setNode(newIndex, na.getLatitude(old), na.getLongitude(old));
+        }
+
         AllEdgesIterator eIter = fromGraph.getAllEdges();
         while (eIter.next())
         {
@@ -255,18 +277,6 @@ public class GHUtility
 
             eIter.copyPropertiesTo(toSortedGraph.edge(newBaseIndex, newAdjIndex));
         }
-
-        int nodes = fromGraph.getNodes();
-        NodeAccess na = fromGraph.getNodeAccess();
-        NodeAccess sna = toSortedGraph.getNodeAccess();
-        for (int old = 0; old < nodes; old++)
-        {
-            int newIndex = oldToNewNodeList.get(old);
-            if (sna.is3D())
-                sna.setNode(newIndex, na.getLatitude(old), na.getLongitude(old), na.getElevation(old));
-            else
-                sna.setNode(newIndex, na.getLatitude(old), na.getLongitude(old));
-        }
         return toSortedGraph;
     }
 
@@ -276,14 +286,7 @@ public class GHUtility
     // TODO very similar to createSortedGraph -> use a 'int map(int)' interface
     public static Graph copyTo( Graph fromGraph, Graph toGraph )
     {
-        AllEdgesIterator eIter = fromGraph.getAllEdges();
-        while (eIter.next())
-        {
-            int base = eIter.getBaseNode();
-            int adj = eIter.getAdjNode();
-            eIter.copyPropertiesTo(toGraph.edge(base, adj));
-        }
-
+        // copy nodes first as a compressed geometry depends on the coordinates of the nodes
         NodeAccess fna = fromGraph.getNodeAccess();
         NodeAccess tna = toGraph.getNodeAccess();
         int nodes = fromGraph.getNodes();
@@ -294,6 +297,14 @@ public class GHUtility
             else
                 tna.setNode(node, fna.getLatitude(node), fna.getLongitude(node));
         }
+
+        AllEdgesIterator eIter = fromGraph.getAllEdges();
+        while (eIter.next())
+        {
+            int base = eIter.getBaseNode();
+            int adj = eIter.getAdjNode();
+            eIter.copyPropertiesTo(toGraph.edge(base, adj));
+        }
         return toGraph;
     }
 
@@ -314,13 +325,16 @@ public class GHUtility
 
     static GraphStorage guessStorage( Graph g, Directory outdir, EncodingManager encodingManager )
     {
-        GraphStorage store;
+        GraphHopperStorage store;
         boolean is3D = g.getNodeAccess().is3D();
         if (g instanceof LevelGraphStorage)
             store = new LevelGraphStorage(outdir, encodingManager, is3D);
         else
             store = new GraphHopperStorage(outdir, encodingManager, is3D);
 
+        if (g instanceof GraphHopperStorage)
+            store.setCompressedGeometry(((GraphHopperStorage) g).isCompressedGeometry());
+
         return store;
     }
 
@@ -0,0 +1,134 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread safe histogram for non negative long values without locking. The values are counted in
+ * buckets which grow exponentially: every power of two is split into 8 buckets, so a percentile
+ * is at most 12.5% higher than the real value. Small values below 8 are counted exactly.
+ * <p/>
+ * @author Peter Karich
+ */
+public class Histogram
+{
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BITS) * SUB_BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record( long value )
+    {
+        if (value < 0)
+            value = 0;
+
+        counts.incrementAndGet(getIndex(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long tmpMax = max.get();
+        while (value > tmpMax && !max.compareAndSet(tmpMax, value))
+        {
+            tmpMax = max.get();
+        }
+    }
+
+    static int getIndex( long value )
+    {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+
+        int exp = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exp - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return the highest value which is counted in the bucket of the specified index
+     */
+    static long getUpperBound( int index )
+    {
+        if (index < SUB_BUCKETS)
+            return index;
+
+        int exp = index / SUB_BUCKETS + SUB_BITS - 1;
+        int sub = index % SUB_BUCKETS;
+        long bound = ((long) (SUB_BUCKETS + sub + 1) << (exp - SUB_BITS)) - 1;
+        return bound < 0 ? Long.MAX_VALUE : bound;
+    }
+
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    public long getSum()
+    {
+        return sum.get();
+    }
+
+    public long getMax()
+    {
+        return max.get();
+    }
+
+    public double getMean()
+    {
+        long tmpCount = count.get();
+        return tmpCount == 0 ? 0 : (double) sum.get() / tmpCount;
+    }
+
+    /**
+     * @param percentile a value between 0 and 1, e.g. 0.99
+     * @return an upper estimate of the value below which the specified fraction of values falls
+     */
+    public long getPercentile( double percentile )
+    {
+        if (percentile < 0 || percentile > 1)
+            throw new IllegalArgumentException("percentile has to be in [0, 1] but was " + percentile);
+
+        long tmpCount = 0;
+        int len = counts.length();
+        for (int i = 0; i < len; i++)
+        {
+            tmpCount += counts.get(i);
+        }
+        if (tmpCount == 0)
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(percentile * tmpCount));
+        long seen = 0;
+        for (int i = 0; i < len; i++)
+        {
+            seen += counts.get(i);
+            if (seen >= rank)
+                return Math.min(getUpperBound(i), max.get());
+        }
+        return max.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "count:" + getCount() + ", mean:" + getMean() + ", p50:" + getPercentile(0.5)
+                + ", p99:" + getPercentile(0.99) + ", max:" + getMax();
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.util;
+
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.storage.StorableProperties;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Records the wall time, CPU time, peak heap, the bytes of every DataAccess object and some
+ * element counts for each stage of an import, e.g. to compare the import performance of different
+ * builds. The stages must not overlap.
+ * <p/>
+ * @author Peter Karich
+ */
+public class ImportReport
+{
+    private final Map<String, Stage> stages = new LinkedHashMap<String, Stage>();
+
+    /**
+     * Starts a new stage and resets the peak heap usage.
+     */
+    public Stage start( String name )
+    {
+        Stage stage = new Stage(name);
+        stages.put(name, stage);
+        return stage;
+    }
+
+    /**
+     * @return the stage or null if it was not started
+     */
+    public Stage getStage( String name )
+    {
+        return stages.get(name);
+    }
+
+    public Collection<Stage> getStages()
+    {
+        return stages.values();
+    }
+
+    /**
+     * Stores all values of the finished stages with keys like import.report.optimize.wall_ms
+     */
+    public void store( StorableProperties properties )
+    {
+        for (Stage stage : stages.values())
+        {
+            for (Map.Entry<String, Object> entry : stage.toMap().entrySet())
+            {
+                String prefix = "import.report." + stage.getName() + "." + entry.getKey();
+                if (entry.getValue() instanceof Map)
+                {
+                    for (Map.Entry<?, ?> subEntry : ((Map<?, ?>) entry.getValue()).entrySet())
+                    {
+                        properties.put(prefix + "." + subEntry.getKey(), subEntry.getValue());
+                    }
+                } else
+                {
+                    properties.put(prefix, entry.getValue());
+                }
+            }
+        }
+    }
+
+    public Map<String, Object> toMap()
+    {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        long wallNanos = 0;
+        long cpuNanos = 0;
+        Map<String, Object> stagesMap = new LinkedHashMap<String, Object>();
+        for (Stage stage : stages.values())
+        {
+            wallNanos += stage.getWallNanos();
+            cpuNanos += Math.max(0, stage.getCpuNanos());
+            stagesMap.put(stage.getName(), stage.toMap());
+        }
+        map.put("wall_ms", wallNanos / 1000000);
+        map.put("cpu_ms", cpuNanos / 1000000);
+        map.put("stages", stagesMap);
+        return map;
+    }
+
+    public String toJSON()
+    {
+        StringBuilder sb = new StringBuilder();
+        appendJSON(sb, toMap());
+        return sb.toString();
+    }
+
+    private static void appendJSON( StringBuilder sb, Object value )
+    {
+        if (value instanceof Map)
+        {
+            sb.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet())
+            {
+                if (!first)
+                    sb.append(',');
+
+                first = false;
+                appendJSON(sb, entry.getKey().toString());
+                sb.append(':');
+                appendJSON(sb, entry.getValue());
+            }
+            sb.append('}');
+        } else if (value instanceof Number || value instanceof Boolean)
+        {
+            sb.append(value);
+        } else
+        {
+            sb.append('"');
+            String str = value.toString();
+            for (int i = 0; i < str.length(); i++)
+            {
+                char c = str.charAt(i);
+                if (c == '"' || c == '\\')
+                    sb.append('\\').append(c);
+                else if (c < 0x20)
+                    sb.append(String.format("\\u%04x", (int) c));
+                else
+                    sb.append(c);
+            }
+            sb.append('"');
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return toJSON();
+    }
+
+    /**
+     * @return the CPU time of all threads of this process or -1 if not supported by the JVM
+     */
+    static long getProcessCpuNanos()
+    {
+        try
+        {
+            Class<?> beanClass = Class.forName("com.sun.management.OperatingSystemMXBean");
+            Object bean = ManagementFactory.getOperatingSystemMXBean();
+            if (!beanClass.isInstance(bean))
+                return -1;
+
+            Method method = beanClass.getMethod("getProcessCpuTime");
+            return ((Number) method.invoke(bean)).longValue();
+        } catch (Exception ex)
+        {
+            return -1;
+        }
+    }
+
+    public static class Stage
+    {
+        private final String name;
+        private final long startNanos;
+        private final long startCpuNanos;
+        private long wallNanos = -1;
+        private long cpuNanos = -1;
+        private long peakHeapBytes = -1;
+        private final Map<String, Long> counts = new LinkedHashMap<String, Long>();
+        private final Map<String, Long> dataAccessBytes = new TreeMap<String, Long>();
+
+        Stage( String name )
+        {
+            this.name = name;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+            {
+                if (pool.getType() == MemoryType.HEAP && pool.isValid())
+                    pool.resetPeakUsage();
+            }
+            startCpuNanos = getProcessCpuNanos();
+            startNanos = System.nanoTime();
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public Stage put( String key, long count )
+        {
+            counts.put(key, count);
+            return this;
+        }
+
+        /**
+         * Finishes this stage and records the size of all open DataAccess objects of the specified
+         * directory.
+         */
+        public Stage stop( Directory dir )
+        {
+            wallNanos = System.nanoTime() - startNanos;
+            long cpu = getProcessCpuNanos();
+            if (cpu >= 0 && startCpuNanos >= 0)
+                cpuNanos = cpu - startCpuNanos;
+
+            // the sum of the peaks of all pools is an upper bound as they need not occur at the same time
+            long peak = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+            {
+                if (pool.getType() == MemoryType.HEAP && pool.isValid())
+                    peak += pool.getPeakUsage().getUsed();
+            }
+            peakHeapBytes = peak;
+
+            if (dir != null)
+            {
+                for (DataAccess da : dir.getAll())
+                {
+                    if (!da.isClosed())
+                        dataAccessBytes.put(da.getName(), da.getCapacity());
+                }
+            }
+            return this;
+        }
+
+        public long getWallNanos()
+        {
+            return wallNanos;
+        }
+
+        /**
+         * @return the CPU time of all threads while this stage was running or -1 if unknown
+         */
+        public long getCpuNanos()
+        {
+            return cpuNanos;
+        }
+
+        public long getPeakHeapBytes()
+        {
+            return peakHeapBytes;
+        }
+
+        /**
+         * @return the count or -1 if not recorded
+         */
+        public long getCount( String key )
+        {
+            Long count = counts.get(key);
+            return count == null ? -1 : count;
+        }
+
+        public Map<String, Long> getDataAccessBytes()
+        {
+            return dataAccessBytes;
+        }
+
+        public Map<String, Object> toMap()
+        {
+            Map<String, Object> map = new LinkedHashMap<String, Object>();
+            map.put("wall_ms", wallNanos / 1000000);
+            map.put("cpu_ms", cpuNanos < 0 ? -1 : cpuNanos / 1000000);
+            map.put("peak_heap_bytes", peakHeapBytes);
+            map.put("counts", counts);
+            map.put("data_access_bytes", dataAccessBytes);
+            return map;
+        }
+
+        @Override
+        public String toString()
+        {
+            return name + " " + toMap();
+        }
+    }
+}
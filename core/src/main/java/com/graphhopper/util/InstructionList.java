@@ -113,10 +113,7 @@ public class InstructionList implements Iterable<Instruction>
             instrList.add(instrJson);
 
             InstructionAnnotation ia = instruction.getAnnotation();
-            String str = instruction.getTurnDescription(tr);
-            if (Helper.isEmpty(str))
-                str = ia.getMessage();
-            instrJson.put("text", Helper.firstBig(str));
+            instrJson.put("text", createText(instruction));
             if (!ia.isEmpty())
             {
                 instrJson.put("annotationText", ia.getMessage());
@@ -140,6 +137,18 @@ public class InstructionList implements Iterable<Instruction>
         return instrList;
     }
 
+    /**
+     * @return the turn description or, if empty, the annotation message of the specified
+     * instruction
+     */
+    public String createText( Instruction instruction )
+    {
+        String str = instruction.getTurnDescription(tr);
+        if (Helper.isEmpty(str))
+            str = instruction.getAnnotation().getMessage();
+        return Helper.firstBig(str);
+    }
+
     public boolean isEmpty()
     {
         return instructions.isEmpty();
@@ -48,6 +48,7 @@ public class PathMerger
         PointList fullPoints = PointList.EMPTY;
         for (int pathIndex = 0; pathIndex < paths.size(); pathIndex++)
         {
+            long start = System.nanoTime();
             Path path = paths.get(pathIndex);
             fullMillis += path.getMillis();
             fullDistance += path.getDistance();
@@ -99,13 +100,11 @@ public class PathMerger
             }
 
             allFound = allFound && path.isFound();
+            rsp.getMetrics().addInstructionNanos(System.nanoTime() - start);
         }
 
         if (!fullPoints.isEmpty())
-        {
-            String debug = rsp.getDebugInfo() + ", simplify (" + origPoints + "->" + fullPoints.getSize() + ")";
-            rsp.setDebugInfo(debug);
-        }
+            rsp.addDebugInfo("simplify (" + origPoints + "->" + fullPoints.getSize() + ")");
 
         if (enableInstructions)
             rsp.setInstructions(fullInstructions);
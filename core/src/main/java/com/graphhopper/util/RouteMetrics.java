@@ -0,0 +1,166 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The metrics of one route request. The times of all legs are summed up.
+ * <p/>
+ * @author Peter Karich
+ */
+public class RouteMetrics
+{
+    private String algorithm = "";
+    private long lookupNanos;
+    private long algoInitNanos;
+    private long searchNanos;
+    private long extractNanos;
+    private long instructionNanos;
+    private long visitedNodes;
+
+    public String getAlgorithm()
+    {
+        return algorithm;
+    }
+
+    public RouteMetrics setAlgorithm( String algorithm )
+    {
+        this.algorithm = algorithm;
+        return this;
+    }
+
+    /**
+     * @return the time to find the closest edges and to create the virtual nodes
+     */
+    public long getLookupNanos()
+    {
+        return lookupNanos;
+    }
+
+    public RouteMetrics addLookupNanos( long nanos )
+    {
+        lookupNanos += nanos;
+        return this;
+    }
+
+    /**
+     * @return the time to create the routing algorithms
+     */
+    public long getAlgoInitNanos()
+    {
+        return algoInitNanos;
+    }
+
+    public RouteMetrics addAlgoInitNanos( long nanos )
+    {
+        algoInitNanos += nanos;
+        return this;
+    }
+
+    /**
+     * @return the time of the shortest path search excluding the path extraction
+     */
+    public long getSearchNanos()
+    {
+        return searchNanos;
+    }
+
+    public RouteMetrics addSearchNanos( long nanos )
+    {
+        searchNanos += nanos;
+        return this;
+    }
+
+    /**
+     * @return the time to extract the paths from the shortest path trees
+     */
+    public long getExtractNanos()
+    {
+        return extractNanos;
+    }
+
+    public RouteMetrics addExtractNanos( long nanos )
+    {
+        extractNanos += nanos;
+        return this;
+    }
+
+    /**
+     * @return the time to calculate the points, the instructions and to simplify them
+     */
+    public long getInstructionNanos()
+    {
+        return instructionNanos;
+    }
+
+    public RouteMetrics addInstructionNanos( long nanos )
+    {
+        instructionNanos += nanos;
+        return this;
+    }
+
+    public long getVisitedNodes()
+    {
+        return visitedNodes;
+    }
+
+    public RouteMetrics addVisitedNodes( long visited )
+    {
+        visitedNodes += visited;
+        return this;
+    }
+
+    public long getTotalNanos()
+    {
+        return lookupNanos + algoInitNanos + searchNanos + extractNanos + instructionNanos;
+    }
+
+    /**
+     * @return the metrics where the times are in milliseconds, e.g. to create JSON
+     */
+    public Map<String, Object> toMap()
+    {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("algorithm", algorithm);
+        map.put("lookup", toMillis(lookupNanos));
+        map.put("algo_init", toMillis(algoInitNanos));
+        map.put("search", toMillis(searchNanos));
+        map.put("extract", toMillis(extractNanos));
+        map.put("instructions", toMillis(instructionNanos));
+        map.put("visited_nodes", visitedNodes);
+        return map;
+    }
+
+    private static double toMillis( long nanos )
+    {
+        return Helper.round(nanos / 1e6, 3);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "idLookup:" + lookupNanos / 1e9f + "s"
+                + ", algoInit:" + algoInitNanos / 1e9f + "s"
+                + ", " + algorithm + "-routing:" + searchNanos / 1e9f + "s"
+                + ", extract:" + extractNanos / 1e9f + "s"
+                + ", visited:" + visitedNodes
+                + ", instructions:" + instructionNanos / 1e9f + "s";
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the RouteMetrics of all requests into histograms, e.g. to watch the latency
+ * percentiles of a server. Times are recorded in microseconds.
+ * <p/>
+ * @author Peter Karich
+ */
+public class RouteStatistics
+{
+    private final Histogram lookup = new Histogram();
+    private final Histogram algoInit = new Histogram();
+    private final Histogram search = new Histogram();
+    private final Histogram extract = new Histogram();
+    private final Histogram instructions = new Histogram();
+    private final Histogram total = new Histogram();
+    private final Histogram visitedNodes = new Histogram();
+    private final AtomicLong errors = new AtomicLong();
+
+    public void record( RouteMetrics metrics )
+    {
+        lookup.record(metrics.getLookupNanos() / 1000);
+        algoInit.record(metrics.getAlgoInitNanos() / 1000);
+        search.record(metrics.getSearchNanos() / 1000);
+        extract.record(metrics.getExtractNanos() / 1000);
+        instructions.record(metrics.getInstructionNanos() / 1000);
+        total.record(metrics.getTotalNanos() / 1000);
+        visitedNodes.record(metrics.getVisitedNodes());
+    }
+
+    public void recordError()
+    {
+        errors.incrementAndGet();
+    }
+
+    public long getErrors()
+    {
+        return errors.get();
+    }
+
+    public Histogram getLookup()
+    {
+        return lookup;
+    }
+
+    public Histogram getAlgoInit()
+    {
+        return algoInit;
+    }
+
+    public Histogram getSearch()
+    {
+        return search;
+    }
+
+    public Histogram getExtract()
+    {
+        return extract;
+    }
+
+    public Histogram getInstructions()
+    {
+        return instructions;
+    }
+
+    /**
+     * @return the histogram of the times of complete requests without errors
+     */
+    public Histogram getTotal()
+    {
+        return total;
+    }
+
+    public Histogram getVisitedNodes()
+    {
+        return visitedNodes;
+    }
+
+    /**
+     * @return the statistics where the times are in milliseconds, e.g. to create JSON
+     */
+    public Map<String, Object> toMap()
+    {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("requests", total.getCount());
+        map.put("errors", errors.get());
+        map.put("total", toMap(total, 1e-3));
+        map.put("lookup", toMap(lookup, 1e-3));
+        map.put("algo_init", toMap(algoInit, 1e-3));
+        map.put("search", toMap(search, 1e-3));
+        map.put("extract", toMap(extract, 1e-3));
+        map.put("instructions", toMap(instructions, 1e-3));
+        map.put("visited_nodes", toMap(visitedNodes, 1));
+        return map;
+    }
+
+    private static Map<String, Object> toMap( Histogram histogram, double factor )
+    {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("mean", Helper.round(histogram.getMean() * factor, 3));
+        map.put("p50", Helper.round(histogram.getPercentile(0.5) * factor, 3));
+        map.put("p90", Helper.round(histogram.getPercentile(0.9) * factor, 3));
+        map.put("p99", Helper.round(histogram.getPercentile(0.99) * factor, 3));
+        map.put("p999", Helper.round(histogram.getPercentile(0.999) * factor, 3));
+        map.put("max", Helper.round(histogram.getMax() * factor, 3));
+        return map;
+    }
+}
@@ -19,15 +19,23 @@ package com.graphhopper;
 
 import com.graphhopper.reader.DataReader;
 import com.graphhopper.routing.AlgorithmOptions;
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.LevelGraphOverlay;
+import com.graphhopper.storage.LevelGraphStorage;
+import com.graphhopper.storage.NodeAccess;
 import com.graphhopper.storage.index.QueryResult;
 import com.graphhopper.util.CmdArgs;
 import com.graphhopper.util.Helper;
+import com.graphhopper.util.ImportReport;
 import com.graphhopper.util.Instruction;
+import com.graphhopper.util.RouteMetrics;
 import com.graphhopper.util.shapes.GHPoint;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.*;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
@@ -126,6 +134,64 @@ public class GraphHopperTest
         gh.close();
     }
 
+    @Test
+    public void testImportReport() throws IOException
+    {
+        GraphHopper gh = new GraphHopper().setStoreOnFlush(true).
+                setEncodingManager(new EncodingManager("CAR")).
+                setGraphHopperLocation(ghLoc).
+                setOSMFile(testOsm);
+        gh.importOrLoad();
+        ImportReport report = gh.getImportReport();
+        List<String> names = new ArrayList<String>();
+        for (ImportReport.Stage stage : report.getStages())
+        {
+            names.add(stage.getName());
+            assertTrue(stage.getWallNanos() >= 0);
+            assertTrue(stage.getPeakHeapBytes() > 0);
+        }
+        assertEquals(Arrays.asList("preprocess", "write_graph", "subnetworks", "optimize", "prepare", "index"), names);
+        assertEquals(gh.getGraph().getNodes(), report.getStage("optimize").getCount("nodes"));
+        assertTrue(report.getStage("prepare").getCount("shortcuts") >= 0);
+        assertTrue(report.getStage("write_graph").getDataAccessBytes().get("edges") > 0);
+        assertTrue(report.getStage("index").getDataAccessBytes().containsKey("locationIndex"));
+
+        String json = Helper.isToString(new FileInputStream(new File(ghLoc, "import_report.json")));
+        assertTrue(json, json.startsWith("{\"wall_ms\":"));
+        assertTrue(json, json.contains("\"write_graph\":{"));
+        gh.close();
+
+        gh = new GraphHopper().setStoreOnFlush(true).
+                setEncodingManager(new EncodingManager("CAR"));
+        assertTrue(gh.load(ghLoc));
+        assertNull(gh.getImportReport());
+        assertEquals(report.getStage("write_graph").getCount("edges") + "",
+                gh.getGraph().getProperties().get("import.report.write_graph.counts.edges"));
+        gh.close();
+    }
+
+    @Test
+    public void testMemoryMappedWarmUp()
+    {
+        GraphHopper gh = new GraphHopper().setStoreOnFlush(true).
+                setEncodingManager(new EncodingManager("CAR")).
+                setGraphHopperLocation(ghLoc).
+                setOSMFile(testOsm);
+        gh.importOrLoad();
+        gh.close();
+
+        gh = new GraphHopper().setMemoryMapped().setLoadThreads(2).
+                setWarmUpFiles("locationIndex", " edges", "nodes", "unknown").
+                setEncodingManager(new EncodingManager("CAR"));
+        assertTrue(gh.load(ghLoc));
+        Map<String, Float> residency = gh.getResidency();
+        assertTrue(residency.toString(), residency.containsKey("locationIndex"));
+        assertTrue(residency.toString(), residency.containsKey("geometry"));
+        assertTrue(residency.toString(), residency.get("edges") > 0);
+        assertTrue(gh.route(new GHRequest(51.2492152, 9.4317166, 51.2, 9.4)).isFound());
+        gh.close();
+    }
+
     @Test
     public void testAllowMultipleReadingInstances()
     {
@@ -263,6 +329,145 @@ public class GraphHopperTest
         assertEquals("route method should not change instance field", old, instance.enableInstructions);
     }
 
+    @Test
+    public void testSortedGraph_onlyOnceAndPrepared()
+    {
+        // an unprepared graph is not sorted
+        instance = new GraphHopper().setStoreOnFlush(true).
+                setSortGraph(true).
+                setDoPrepare(false).
+                setEncodingManager(new EncodingManager("CAR")).
+                setGraphHopperLocation(ghLoc).
+                setOSMFile(testOsm);
+        instance.importOrLoad();
+        assertEquals("", instance.getGraph().getProperties().get("graph.sorted"));
+        instance.close();
+        Helper.removeDir(new File(ghLoc));
+
+        // a stored graph is only sorted while importing, not when it is loaded
+        instance = new GraphHopper().setStoreOnFlush(true).
+                setEncodingManager(new EncodingManager("CAR")).
+                setGraphHopperLocation(ghLoc).
+                setOSMFile(testOsm);
+        instance.importOrLoad();
+        instance.close();
+        long indexModified = new File(ghLoc, "locationIndex").lastModified();
+        instance = new GraphHopper().setStoreOnFlush(true).
+                setSortGraph(true).
+                setEncodingManager(new EncodingManager("CAR"));
+        assertTrue(instance.load(ghLoc));
+        assertEquals("", instance.getGraph().getProperties().get("graph.sorted"));
+        assertTrue(new File(ghLoc, "locationIndex").exists());
+        assertEquals(indexModified, new File(ghLoc, "locationIndex").lastModified());
+        instance.close();
+        Helper.removeDir(new File(ghLoc));
+
+        instance = new GraphHopper().setStoreOnFlush(true).
+                setSortGraph(true).
+                setEncodingManager(new EncodingManager("CAR")).
+                setGraphHopperLocation(ghLoc).
+                setOSMFile(testOsm);
+        instance.importOrLoad();
+        assertEquals("true", instance.getGraph().getProperties().get("graph.sorted"));
+        NodeAccess na = instance.getGraph().getNodeAccess();
+        int nodes = instance.getGraph().getNodes();
+        double[] lats = new double[nodes];
+        for (int node = 0; node < nodes; node++)
+        {
+            lats[node] = na.getLatitude(node);
+        }
+        GHResponse expected = instance.route(new GHRequest(51.2492152, 9.4317166, 51.2, 9.4));
+        assertTrue(expected.isFound());
+        instance.close();
+
+        // loading does not relabel the graph again, so the stored location index stays valid
+        instance = new GraphHopper().setStoreOnFlush(true).
+                setSortGraph(true).
+                setEncodingManager(new EncodingManager("CAR"));
+        assertTrue(instance.load(ghLoc));
+        na = instance.getGraph().getNodeAccess();
+        for (int node = 0; node < nodes; node++)
+        {
+            assertEquals(lats[node], na.getLatitude(node), 1e-6);
+        }
+        GHResponse rsp = instance.route(new GHRequest(51.2492152, 9.4317166, 51.2, 9.4));
+        assertEquals(expected.getPoints(), rsp.getPoints());
+    }
+
+    @Test
+    public void testSortedGraph_CH()
+    {
+        GraphHopper unsorted = new GraphHopper().setStoreOnFlush(false).
+                setEncodingManager(new EncodingManager("CAR")).
+                setGraphHopperLocation(ghLoc).
+                setOSMFile("files/monaco.osm.gz");
+        unsorted.importOrLoad();
+        instance = new GraphHopper().setStoreOnFlush(false).
+                setSortGraph(true).
+                setEncodingManager(new EncodingManager("CAR")).
+                setGraphHopperLocation(ghLoc).
+                setOSMFile("files/monaco.osm.gz");
+        instance.importOrLoad();
+        assertNotNull(instance.getImportReport().getStage("sort"));
+        assertEquals(unsorted.getGraph().getNodes(), instance.getGraph().getNodes());
+
+        // the shortcuts are relabeled too, so CH queries still find the same routes
+        double[][] queries = new double[][]
+        {
+            {
+                43.727687, 7.418737, 43.74958, 7.436566
+            },
+            {
+                43.730864, 7.420771, 43.727687, 7.418737
+            },
+            {
+                43.741069, 7.426854, 43.733802, 7.413433
+            }
+        };
+        for (double[] q : queries)
+        {
+            GHResponse expected = unsorted.route(new GHRequest(q[0], q[1], q[2], q[3]));
+            GHResponse rsp = instance.route(new GHRequest(q[0], q[1], q[2], q[3]));
+            assertTrue(rsp.isFound());
+            assertTrue(rsp.getDistance() > 100);
+            assertEquals(expected.getDistance(), rsp.getDistance(), 1e-3);
+            assertEquals(expected.getPoints(), rsp.getPoints());
+        }
+        unsorted.close();
+    }
+
+    @Test
+    public void testMetrics()
+    {
+        instance = new GraphHopper().setStoreOnFlush(false).
+                setEncodingManager(new EncodingManager("CAR")).
+                setCHEnable(false).
+                setGraphHopperLocation(ghLoc).
+                setOSMFile(testOsm);
+        instance.importOrLoad();
+        GHResponse rsp = instance.route(new GHRequest(51.2492152, 9.4317166, 51.2, 9.4));
+        assertTrue(rsp.isFound());
+        RouteMetrics metrics = rsp.getMetrics();
+        assertEquals(AlgorithmOptions.DIJKSTRA_BI, metrics.getAlgorithm());
+        assertTrue(metrics.getVisitedNodes() > 0);
+        assertTrue(metrics.getSearchNanos() > 0);
+        assertTrue(metrics.getInstructionNanos() > 0);
+        assertTrue(rsp.getDebugInfo(), rsp.getDebugInfo().startsWith("idLookup:"));
+        assertTrue(rsp.getDebugInfo(), rsp.getDebugInfo().contains(", simplify ("));
+
+        rsp = new GHResponse().setDebugInfo("algo");
+        rsp.addDebugInfo("simplify (3->2)");
+        assertEquals("algo, simplify (3->2)", rsp.getDebugInfo());
+
+        instance.route(new GHRequest(51.2492152, 9.4317166, 51.2, 9.4));
+        assertEquals(2, instance.getRouteStatistics().getTotal().getCount());
+        assertEquals(2 * metrics.getVisitedNodes(), instance.getVisitedSum());
+
+        instance.route(new GHRequest(51.2492152, 9.4317166, 51.2, 9.4).setVehicle("FOOT"));
+        assertEquals(1, instance.getRouteStatistics().getErrors());
+        assertEquals(2, instance.getRouteStatistics().getTotal().getCount());
+    }
+
     @Test
     public void testFootAndCar()
     {
@@ -307,6 +512,253 @@ public class GraphHopperTest
         assertEquals(3, res.getPoints().getSize());
     }
 
+    @Test
+    public void testRoutingPool()
+    {
+        instance = new GraphHopper().setStoreOnFlush(false).
+                setEncodingManager(new EncodingManager("CAR,FOOT")).
+                setCHEnable(false).
+                setEnableRoutingPool(true).
+                setGraphHopperLocation(ghLoc).
+                setOSMFile(testOsm3);
+        instance.importOrLoad();
+        checkFootAndCar(instance);
+        checkFootAndCar(instance);
+
+        // without CH all vehicles share one graph and so one QueryGraph is enough
+        assertEquals(1, instance.getQueryGraphPool().getMisses());
+        assertEquals(5, instance.getQueryGraphPool().getHits());
+    }
+
+    @Test
+    public void testRouteBatch()
+    {
+        instance = new GraphHopper().setStoreOnFlush(false).
+                setEncodingManager(new EncodingManager("CAR,FOOT")).
+                setCHWeighting("shortest").
+                setBatchThreads(3).
+                setGraphHopperLocation(ghLoc).
+                setOSMFile(testOsm3);
+        instance.importOrLoad();
+
+        List<GHRequest> requests = Arrays.asList(
+                new GHRequest(11.1, 50, 11.3, 51).setVehicle(EncodingManager.CAR),
+                new GHRequest(11.1, 50, 11.3, 51).setVehicle(EncodingManager.FOOT),
+                new GHRequest(11.1, 50, 10, 51).setVehicle(EncodingManager.FOOT),
+                new GHRequest(11.1, 50, 11.3, 51).setVehicle(EncodingManager.BIKE),
+                new GHRequest(11.1, 50, 11.3, 51));
+        final Set<Integer> notified = Collections.synchronizedSet(new HashSet<Integer>());
+        List<GHResponse> responses = instance.routeBatch(requests, new RouteBatchListener()
+        {
+            @Override
+            public void onResponse( int index, GHResponse response )
+            {
+                assertTrue(notified.add(index));
+            }
+        });
+
+        assertEquals(5, notified.size());
+        assertEquals(5, responses.size());
+        for (int i = 0; i < 3; i++)
+        {
+            GHResponse expected = instance.route(requests.get(i));
+            GHResponse rsp = responses.get(i);
+            assertFalse(rsp.getErrors().toString(), rsp.hasErrors());
+            assertEquals(expected.getDistance(), rsp.getDistance(), 1e-6);
+            assertEquals(expected.getPoints(), rsp.getPoints());
+        }
+        // unsupported vehicle and vehicle missing with more than one encoder
+        assertTrue(responses.get(3).hasErrors());
+        assertTrue(responses.get(4).hasErrors());
+
+        // the threads are reused by the next batch
+        responses = instance.routeBatch(requests.subList(0, 2));
+        assertEquals(responses.get(0).getDistance(), instance.route(requests.get(0)).getDistance(), 1e-6);
+        try
+        {
+            instance.setBatchThreads(2);
+            assertTrue(false);
+        } catch (IllegalStateException ex)
+        {
+        }
+
+        instance.close();
+        try
+        {
+            instance.routeBatch(requests);
+            assertTrue(false);
+        } catch (IllegalStateException ex)
+        {
+        }
+    }
+
+    @Test
+    public void testRoutingPoolWithCH()
+    {
+        instance = new GraphHopper().setStoreOnFlush(false).
+                setEncodingManager(new EncodingManager("CAR,FOOT")).
+                setCHWeighting("shortest").
+                setEnableRoutingPool(true).
+                setGraphHopperLocation(ghLoc).
+                setOSMFile(testOsm3);
+        instance.importOrLoad();
+        checkFootAndCar(instance);
+        checkFootAndCar(instance);
+
+        // one QueryGraph per CH graph
+        assertEquals(2, instance.getQueryGraphPool().getMisses());
+        assertEquals(4, instance.getQueryGraphPool().getHits());
+    }
+
+    @Test
+    public void testFootAndCarWithCH()
+    {
+        instance = new GraphHopper().setStoreOnFlush(true).
+                setEncodingManager(new EncodingManager("CAR,FOOT")).
+                setCHWeighting("shortest").
+                setGraphHopperLocation(ghLoc).
+                setOSMFile(testOsm3);
+        instance.importOrLoad();
+        assertEquals(8, instance.getGraph().getAllEdges().getCount());
+        assertTrue(instance.getRoutingGraph(EncodingManager.CAR) instanceof LevelGraphOverlay);
+        assertNotSame(instance.getRoutingGraph(EncodingManager.CAR), instance.getRoutingGraph(EncodingManager.FOOT));
+        checkFootAndCar(instance);
+        instance.close();
+
+        // the overlays are loaded from disc
+        instance = new GraphHopper().setStoreOnFlush(true).
+                setEncodingManager(new EncodingManager("CAR,FOOT")).
+                setCHWeighting("shortest");
+        assertTrue(instance.load(ghLoc));
+        assertTrue(instance.getAlgorithmFactory(EncodingManager.FOOT) instanceof PrepareContractionHierarchies);
+        checkFootAndCar(instance);
+    }
+
+    @Test
+    public void testApplyChangesWithCH()
+    {
+        instance = new GraphHopper().setStoreOnFlush(true).
+                setEncodingManager(new EncodingManager("CAR,FOOT")).
+                setCHWeighting("shortest").
+                setEnableWayIndex(true).
+                setGraphHopperLocation(ghLoc).
+                setOSMFile(testOsm3);
+        instance.importOrLoad();
+        checkFootAndCar(instance);
+
+        instance.applyChanges("./src/test/resources/com/graphhopper/reader/test-osm3-changes.osc");
+        checkChanges(instance);
+        instance.close();
+
+        // the changes, the repaired overlays and the location index are loaded from disc
+        instance = new GraphHopper().setStoreOnFlush(true).
+                setEncodingManager(new EncodingManager("CAR,FOOT")).
+                setCHWeighting("shortest");
+        assertTrue(instance.load(ghLoc));
+        checkChanges(instance);
+    }
+
+    @Test
+    public void testApplyChangesWithSingleVehicle()
+    {
+        instance = new GraphHopper().setStoreOnFlush(true).
+                setEncodingManager(new EncodingManager("CAR")).
+                setCHWeighting("shortest").
+                setEnableWayIndex(true).
+                setGraphHopperLocation(ghLoc).
+                setOSMFile(testOsm3);
+        instance.importOrLoad();
+        // the shortcuts are stored in an overlay so that they can be repaired
+        assertFalse(instance.getGraph() instanceof LevelGraphStorage);
+        LevelGraphOverlay chGraph = (LevelGraphOverlay) instance.getRoutingGraph(EncodingManager.CAR);
+        int shortcuts = chGraph.getShortcuts();
+        GHResponse res = instance.route(new GHRequest(11.1, 50, 10, 51).setVehicle(EncodingManager.CAR));
+        assertEquals(3, res.getPoints().getSize());
+
+        instance.applyChanges("./src/test/resources/com/graphhopper/reader/test-osm3-changes.osc");
+        assertTrue(chGraph.getShortcuts() >= shortcuts);
+        checkChanges(instance);
+        instance.close();
+
+        instance = new GraphHopper().setStoreOnFlush(true).
+                setEncodingManager(new EncodingManager("CAR")).
+                setCHWeighting("shortest");
+        assertTrue(instance.load(ghLoc));
+        assertFalse(instance.getGraph() instanceof LevelGraphStorage);
+        assertTrue(instance.getRoutingGraph(EncodingManager.CAR) instanceof LevelGraphOverlay);
+        checkChanges(instance);
+    }
+
+    private void checkChanges( GraphHopper hopper )
+    {
+        // A E for car
+        GHResponse res = hopper.route(new GHRequest(11.1, 50, 10, 51).setVehicle(EncodingManager.CAR));
+        assertTrue(res.isFound());
+        assertEquals(2, res.getPoints().getSize());
+        assertEquals("A E C Road", res.getInstructions().get(0).getName());
+
+        // the new node F is in the location index
+        res = hopper.route(new GHRequest(11.2, 52, 10, 52.5).setVehicle(EncodingManager.CAR));
+        assertTrue(res.isFound());
+        int last = res.getPoints().getSize() - 1;
+        assertEquals(10, res.getPoints().getLatitude(last), 1e-3);
+        assertEquals(52.5, res.getPoints().getLongitude(last), 1e-3);
+    }
+
+    private void checkFootAndCar( GraphHopper hopper )
+    {
+        // A to D
+        GHResponse res = hopper.route(new GHRequest(11.1, 50, 11.3, 51).setVehicle(EncodingManager.CAR));
+        assertFalse(res.hasErrors());
+        assertEquals(3, res.getPoints().getSize());
+        assertEquals(11.3, res.getPoints().getLatitude(2), 1e-3);
+
+        // A to E only for foot
+        res = hopper.route(new GHRequest(11.1, 50, 10, 51).setVehicle(EncodingManager.FOOT));
+        assertTrue(res.isFound());
+        assertEquals(2, res.getPoints().size());
+
+        // A D E for car
+        res = hopper.route(new GHRequest(11.1, 50, 10, 51).setVehicle(EncodingManager.CAR));
+        assertTrue(res.isFound());
+        assertEquals(3, res.getPoints().getSize());
+    }
+
+    @Test
+    public void testLoadConcurrently()
+    {
+        instance = new GraphHopper().init(
+                new CmdArgs().
+                put("osmreader.osm", "files/monaco.osm.gz").
+                put("graph.dataaccess", "RAM_STORE").
+                put("graph.flagEncoders", "CAR,FOOT").
+                put("graph.dataaccess.segmentSize", 1 << 12)).
+                setGraphHopperLocation(ghLoc);
+        instance.importOrLoad();
+        GHResponse carRsp = instance.route(new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setVehicle("CAR"));
+        GHResponse footRsp = instance.route(new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setVehicle("FOOT"));
+        assertTrue(carRsp.isFound());
+        assertTrue(footRsp.isFound());
+        instance.close();
+
+        // a different segment size must not change the loaded files
+        instance = new GraphHopper().init(
+                new CmdArgs().
+                put("osmreader.osm", "files/monaco.osm.gz").
+                put("graph.dataaccess", "RAM_STORE").
+                put("graph.flagEncoders", "CAR,FOOT").
+                put("graph.dataaccess.segmentSize", 1 << 20).
+                put("graph.dataaccess.loadThreads", 3));
+        assertTrue(instance.load(ghLoc));
+        GHResponse rsp = instance.route(new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setVehicle("CAR"));
+        assertTrue(rsp.isFound());
+        assertEquals(carRsp.getDistance(), rsp.getDistance(), 1e-3);
+        assertEquals(carRsp.getPoints().getSize(), rsp.getPoints().getSize());
+        rsp = instance.route(new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setVehicle("FOOT"));
+        assertTrue(rsp.isFound());
+        assertEquals(footRsp.getDistance(), rsp.getDistance(), 1e-3);
+    }
+
     @Test
     public void testFailsForWrongConfig() throws IOException
     {
@@ -0,0 +1,104 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.coll;
+
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.RAMDirectory;
+import gnu.trove.map.hash.TLongIntHashMap;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich
+ */
+public class OSMIDDenseMapTest
+{
+    @Test
+    public void testStatesAndValues()
+    {
+        OSMIDDenseMap map = new OSMIDDenseMap(new RAMDirectory(), DAType.RAM, 1, -2);
+        assertEquals(-1, map.put(100, 1));
+        assertEquals(-1, map.put(3, 1));
+        assertEquals(1, map.put(100, -2));
+        assertEquals(-1, map.put(-5, 7));
+        assertEquals(3, map.getSize());
+        assertEquals(-2, map.get(100));
+        assertEquals(1, map.get(3));
+        assertEquals(-1, map.get(4));
+        assertEquals(-1, map.get(1000));
+        assertEquals(7, map.get(-5));
+
+        try
+        {
+            map.put(50, 12);
+            assertTrue(false);
+        } catch (IllegalStateException ex)
+        {
+        }
+
+        map.optimize();
+        assertEquals(-2, map.get(100));
+        assertEquals(1, map.get(3));
+        assertEquals(-2, map.put(100, 12));
+        assertEquals(12, map.get(100));
+        assertEquals(1, map.get(3));
+
+        // new ids are still possible
+        assertEquals(-1, map.put(50, 13));
+        assertEquals(-1, map.put(5000, 14));
+        assertEquals(13, map.get(50));
+        assertEquals(14, map.get(5000));
+        assertEquals(12, map.get(100));
+        assertEquals(5, map.getSize());
+    }
+
+    @Test
+    public void testRandom()
+    {
+        Random rand = new Random(0);
+        OSMIDDenseMap map = new OSMIDDenseMap(new RAMDirectory(), DAType.RAM, 1, -2);
+        TLongIntHashMap expected = new TLongIntHashMap(100, 0.5f, -1, -1);
+        for (int i = 0; i < 20000; i++)
+        {
+            long key = rand.nextInt(100000);
+            int value = expected.get(key) == -1 ? 1 : -2;
+            map.put(key, value);
+            expected.put(key, value);
+        }
+        assertEquals(expected.size(), map.getSize());
+        for (long key : expected.keys())
+        {
+            assertEquals(expected.get(key), map.get(key));
+        }
+
+        map.optimize();
+        for (long key : expected.keys())
+        {
+            assertEquals(expected.get(key), map.get(key));
+            int value = rand.nextInt(1000000) - 500000;
+            map.put(key, value);
+            expected.put(key, value);
+        }
+
+        for (long key = 0; key < 100010; key++)
+        {
+            assertEquals(expected.get(key), map.get(key));
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader;
+
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.util.CarFlagEncoder;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.FootFlagEncoder;
+import com.graphhopper.routing.util.ShortestWeighting;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.GraphStorage;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.util.DistanceCalc;
+import com.graphhopper.util.DistanceCalcEarth;
+import com.graphhopper.util.EdgeIteratorState;
+import java.io.File;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich
+ */
+public class OSMChangeReaderTest
+{
+    private final CarFlagEncoder carEncoder = new CarFlagEncoder();
+    private final EncodingManager encodingManager = new EncodingManager(carEncoder, new FootFlagEncoder());
+
+    @Test
+    public void testApplyChanges() throws Exception
+    {
+        GraphStorage graph = new GraphHopperStorage(new RAMDirectory(), encodingManager, false);
+        OSMWayIndex wayIndex = new OSMWayIndex(graph.getDirectory()).create(100);
+        new OSMReader(graph).setWayIndex(wayIndex).setEncodingManager(encodingManager).
+                setOSMFile(new File(getClass().getResource("test-osm2.xml").toURI())).readGraph();
+
+        int edges = graph.getAllEdges().getCount();
+        long[] oldFlags = new long[edges];
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next())
+        {
+            oldFlags[iter.getEdge()] = iter.getFlags();
+        }
+
+        OSMChangeReader reader = new OSMChangeReader(graph, wayIndex).
+                setOSMFile(new File(getClass().getResource("test-osm2-changes.osc").toURI()));
+        reader.readGraph();
+        assertEquals(3, reader.getUpdatedEdges());
+        assertEquals(1, reader.getRemovedEdges());
+        assertEquals(1, reader.getCreatedEdges());
+        assertEquals(1, reader.getMovedNodes());
+        assertEquals(0, reader.getIgnoredWays());
+        assertEquals(0, reader.getIgnoredNodes());
+        assertEquals(edges + 1, graph.getAllEdges().getCount());
+
+        iter = graph.getAllEdges();
+        while (iter.next())
+        {
+            long wayId = wayIndex.getWayId(iter.getEdge());
+            long flags = iter.getFlags();
+            if (wayId == 11)
+            {
+                // unchanged even though the edge is stored against the direction of the way
+                assertEquals(oldFlags[iter.getEdge()], flags);
+                assertTrue(carEncoder.isBool(flags, FlagEncoder.K_FORWARD) != carEncoder.isBool(flags, FlagEncoder.K_BACKWARD));
+                assertEquals("A 3", iter.getName());
+            } else if (wayId == 12)
+            {
+                assertEquals(0, flags);
+            } else if (wayId == 13)
+            {
+                assertFalse(carEncoder.isBool(oldFlags[iter.getEdge()], FlagEncoder.K_BACKWARD));
+                assertTrue(carEncoder.isBool(flags, FlagEncoder.K_FORWARD));
+                assertTrue(carEncoder.isBool(flags, FlagEncoder.K_BACKWARD));
+                assertEquals("Ring Road", iter.getName());
+            } else if (wayId == 20)
+            {
+                assertEquals(35, carEncoder.getSpeed(oldFlags[iter.getEdge()]), 1e-1);
+                assertEquals(90, carEncoder.getSpeed(flags), 1e-1);
+            } else if (wayId == 30)
+            {
+                assertEquals(edges, iter.getEdge());
+                assertTrue(carEncoder.isBool(flags, FlagEncoder.K_FORWARD));
+                assertTrue(carEncoder.isBool(flags, FlagEncoder.K_BACKWARD));
+            } else
+            {
+                assertEquals(oldFlags[iter.getEdge()], flags);
+            }
+        }
+    }
+
+    @Test
+    public void testNewWaysAndMovedNodes() throws Exception
+    {
+        GraphStorage graph = new GraphHopperStorage(new RAMDirectory(), encodingManager, false);
+        OSMWayIndex wayIndex = new OSMWayIndex(graph.getDirectory()).create(100);
+        new OSMReader(graph).setWayIndex(wayIndex).setEncodingManager(encodingManager).
+                setOSMFile(new File(getClass().getResource("test-osm6.xml").toURI())).readGraph();
+        assertEquals(3, graph.getNodes());
+        assertEquals(2, graph.getAllEdges().getCount());
+
+        OSMChangeReader reader = new OSMChangeReader(graph, wayIndex).
+                setOSMFile(new File(getClass().getResource("test-osm6-changes.osc").toURI()));
+        reader.readGraph();
+        // way 100 is split at its pillar node 2
+        assertEquals(4, reader.getCreatedEdges());
+        assertEquals(1, reader.getRemovedEdges());
+        assertEquals(1, reader.getMovedNodes());
+        assertEquals(0, reader.getIgnoredWays());
+        assertEquals(5, graph.getNodes());
+        assertEquals(6, graph.getAllEdges().getCount());
+
+        DistanceCalc distCalc = new DistanceCalcEarth();
+        int node1 = findNode(graph, 50, 10), node2 = findNode(graph, 50, 10.01);
+        int node3 = findNode(graph, 50, 10.02), node4 = findNode(graph, 50.012, 10.02);
+        int node5 = findNode(graph, 50.01, 10.01);
+        assertEquals(-1, findNode(graph, 50.01, 10.02));
+
+        Path path = calcPath(graph, node1, node5);
+        assertTrue(path.isFound());
+        assertEquals(distCalc.calcDist(50, 10, 50, 10.01) + distCalc.calcDist(50, 10.01, 50.01, 10.01),
+                path.getDistance(), 1e-1);
+        assertEquals(3, path.calcNodes().size());
+
+        path = calcPath(graph, node5, node4);
+        assertTrue(path.isFound());
+        assertEquals(node2, path.calcNodes().get(1));
+        assertEquals(node3, path.calcNodes().get(2));
+        assertEquals(distCalc.calcDist(50.01, 10.01, 50, 10.01) + distCalc.calcDist(50, 10.01, 50, 10.02)
+                + distCalc.calcDist(50, 10.02, 50.012, 10.02), path.getDistance(), 1e-1);
+
+        int loops = 0;
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next())
+        {
+            if (iter.getBaseNode() == iter.getAdjNode())
+            {
+                loops++;
+                assertEquals(node5, iter.getBaseNode());
+                assertEquals(103, wayIndex.getWayId(iter.getEdge()));
+                assertEquals(2, iter.fetchWayGeometry(0).getSize());
+                assertTrue(wayIndex.isAscending(iter.getEdge()));
+            }
+        }
+        assertEquals(1, loops);
+
+        // the new node entries are found after the way index was stored
+        wayIndex.flush();
+        EdgeIteratorState edge = graph.getEdgeProps(wayIndex.getNodeEdge(wayIndex.findNode(6)), Integer.MIN_VALUE);
+        assertEquals(103, wayIndex.getWayId(edge.getEdge()));
+        assertTrue(wayIndex.findNode(7) >= 0);
+        assertEquals(-1, wayIndex.findNode(8));
+    }
+
+    private Path calcPath( GraphStorage graph, int from, int to )
+    {
+        return new Dijkstra(graph, carEncoder, new ShortestWeighting(), TraversalMode.NODE_BASED).calcPath(from, to);
+    }
+
+    private int findNode( GraphStorage graph, double lat, double lon )
+    {
+        NodeAccess na = graph.getNodeAccess();
+        for (int node = 0; node < graph.getNodes(); node++)
+        {
+            if (Math.abs(na.getLatitude(node) - lat) < 1e-6 && Math.abs(na.getLongitude(node) - lon) < 1e-6)
+                return node;
+        }
+        return -1;
+    }
+}
@@ -17,6 +17,7 @@
  */
 package com.graphhopper.reader;
 
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Map;
 import org.junit.Test;
@@ -49,4 +50,88 @@ public class OSMElementTest
         instance.setTags(null);
         assertFalse(instance.hasTag("test", "xy"));
     }
+
+    @Test
+    public void testSetAndRemoveTags()
+    {
+        OSMElement instance = new OSMWay(1);
+        assertFalse(instance.hasTags());
+        for (int i = 0; i < 10; i++)
+        {
+            instance.setTag("key" + i, "value" + i);
+        }
+        assertEquals("value7", instance.getTag("key7"));
+
+        instance.setTag("key7", "changed");
+        assertEquals("changed", instance.getTag("key7"));
+        assertEquals("value5", instance.getTag("key5", "default"));
+
+        instance.removeTag("key0");
+        assertNull(instance.getTag("key0"));
+        assertEquals("value9", instance.getTag("key9"));
+        assertEquals("x", instance.getTag("key0", "x"));
+
+        instance.clearTags();
+        assertFalse(instance.hasTags());
+        assertNull(instance.getTag("key9"));
+    }
+
+    @Test
+    public void testTagIds()
+    {
+        OSMTagIds ids = new OSMTagIds();
+        int keyId = ids.register("test_key");
+        int valueId = ids.register("test_value");
+        assertEquals(keyId, ids.getId("test_key"));
+        assertEquals(-1, ids.getId("test_unregistered"));
+
+        OSMElement instance = new OSMWay(1);
+        instance.setTag("test_key", "test_value");
+        instance.setTag("name", "test_free_text");
+        assertTrue(instance.hasTagId(ids, keyId));
+        assertTrue(instance.hasTagId(ids, keyId, valueId));
+        assertEquals("test_value", instance.getTagById(ids, keyId));
+        assertFalse(instance.hasTagId(ids, -1));
+        assertEquals(-1, instance.getTagValueId(ids, ids.register("name")));
+
+        BitSet set = new BitSet();
+        set.set(valueId);
+        assertTrue(instance.hasTagId(ids, new int[]
+        {
+            ids.register("test_other"), keyId
+        }, set));
+
+        instance.removeTag("test_key");
+        assertFalse(instance.hasTagId(ids, keyId));
+        assertEquals("test_free_text", instance.getTag("name"));
+
+        // tags set before their strings were registered get the ids later
+        instance.setTag("test_late_key", "test_late_value");
+        int lateKeyId = ids.register("test_late_key");
+        assertTrue(instance.hasTagId(ids, lateKeyId, ids.register("test_late_value")));
+
+        // the ids of another instance are resolved again
+        OSMTagIds otherIds = new OSMTagIds();
+        otherIds.register("unused");
+        int otherKeyId = otherIds.register("test_late_key");
+        assertTrue(lateKeyId != otherKeyId);
+        assertEquals("test_late_value", instance.getTagById(otherIds, otherKeyId));
+        assertTrue(instance.hasTagId(ids, lateKeyId));
+    }
+
+    @Test
+    public void testTagIdsResolvedBeforeRegistration()
+    {
+        // like the pbf decoder: the count is taken before the ids are resolved, then a string is
+        // registered concurrently
+        OSMTagIds ids = new OSMTagIds();
+        int count = ids.getCount();
+        int resolvedKeyId = ids.getId("test_key");
+        int keyId = ids.register("test_key");
+
+        OSMElement instance = new OSMNode(1, 0, 0);
+        instance.setTagIds(ids, count);
+        instance.setTag("test_key", resolvedKeyId, "test_value", -1);
+        assertTrue(instance.hasTagId(ids, keyId));
+    }
 }
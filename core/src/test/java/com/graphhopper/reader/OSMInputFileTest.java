@@ -0,0 +1,206 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader;
+
+import gnu.trove.list.array.TLongArrayList;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich
+ */
+public class OSMInputFileTest
+{
+    private final File pbfFile = new File("files/andorra.osm.pbf");
+
+    @Test
+    public void testReadPBF() throws Exception
+    {
+        TLongArrayList expected = readIds(pbfFile, 1);
+        assertTrue(expected.size() > 1000);
+        assertEquals(expected, readIds(pbfFile, 4));
+        // without memory mapping
+        assertEquals(expected, readIds(pbfFile, 2, false));
+    }
+
+    @Test
+    public void testReadBZip2() throws Exception
+    {
+        File gzFile = new File("files/monaco.osm.gz");
+        File bz2File = new File("./target/tmp/monaco.osm.bz2");
+        bz2File.getParentFile().mkdirs();
+        InputStream in = new GZIPInputStream(new FileInputStream(gzFile));
+        OutputStream out = new BZip2CompressorOutputStream(new FileOutputStream(bz2File), 1);
+        try
+        {
+            byte[] buffer = new byte[10000];
+            int len;
+            while ((len = in.read(buffer)) > 0)
+            {
+                out.write(buffer, 0, len);
+            }
+        } finally
+        {
+            in.close();
+            out.close();
+        }
+
+        TLongArrayList expected = readIds(gzFile, 1);
+        assertTrue(expected.size() > 1000);
+        assertEquals(expected, readIds(bz2File, 1));
+        assertEquals(expected, readIds(bz2File, 3));
+        bz2File.delete();
+    }
+
+    @Test
+    public void testElementTypes() throws Exception
+    {
+        File xmlFile = new File(getClass().getResource("test-osm.xml").toURI());
+        for (File file : new File[]
+        {
+            pbfFile, xmlFile
+        })
+        {
+            int[] all = countTypes(new OSMInputFile(file));
+            assertTrue(all[OSMElement.NODE] > 0);
+            assertTrue(all[OSMElement.WAY] > 0);
+
+            int[] counts = countTypes(new OSMInputFile(file).setElementTypes(OSMElement.WAY, OSMElement.RELATION));
+            assertEquals(0, counts[OSMElement.NODE]);
+            assertEquals(all[OSMElement.WAY], counts[OSMElement.WAY]);
+            assertEquals(all[OSMElement.RELATION], counts[OSMElement.RELATION]);
+
+            counts = countTypes(new OSMInputFile(file).setElementTypes(OSMElement.NODE));
+            assertEquals(all[OSMElement.NODE], counts[OSMElement.NODE]);
+            assertEquals(0, counts[OSMElement.WAY]);
+            assertEquals(0, counts[OSMElement.RELATION]);
+        }
+    }
+
+    int[] countTypes( OSMInputFile in ) throws Exception
+    {
+        int[] counts = new int[3];
+        in.setWorkerThreads(2).open();
+        try
+        {
+            OSMElement item;
+            while ((item = in.getNext()) != null)
+            {
+                counts[item.getType()]++;
+            }
+        } finally
+        {
+            in.close();
+        }
+        return counts;
+    }
+
+    @Test
+    public void testCloseBeforeEnd() throws Exception
+    {
+        OSMInputFile in = new OSMInputFile(pbfFile).setWorkerThreads(2).open();
+        for (int i = 0; i < 10; i++)
+        {
+            assertNotNull(in.getNext());
+        }
+        in.close();
+        assertTrue(in.isEOF());
+    }
+
+    @Test
+    public void testCloseWithFullQueue() throws Exception
+    {
+        // andorra never fills the queue, so feed more blocks than it can hold like PbfReader does
+        final OSMInputFile in = new OSMInputFile(pbfFile);
+        final List<OSMElement> block = Collections.<OSMElement>singletonList(new OSMNode(1, 42.5, 1.5));
+        Thread producer = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    for (int i = 0; i < 20; i++)
+                    {
+                        in.process(block);
+                    }
+                } finally
+                {
+                    in.complete();
+                }
+            }
+        };
+        producer.setDaemon(true);
+        producer.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler()
+        {
+            @Override
+            public void uncaughtException( Thread t, Throwable e )
+            {
+                // expected as the reading was stopped
+            }
+        });
+        in.pbfReaderThread = producer;
+        producer.start();
+        // wait until the queue is full
+        while (producer.getState() != Thread.State.TIMED_WAITING && producer.getState() != Thread.State.WAITING)
+        {
+            Thread.sleep(10);
+        }
+        in.close();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+    }
+
+    TLongArrayList readIds( File file, int workerThreads ) throws Exception
+    {
+        return readIds(file, workerThreads, true);
+    }
+
+    TLongArrayList readIds( File file, int workerThreads, boolean memoryMapped ) throws Exception
+    {
+        TLongArrayList ids = new TLongArrayList();
+        OSMInputFile in = new OSMInputFile(file).setWorkerThreads(workerThreads).
+                setMemoryMapped(memoryMapped).open();
+        try
+        {
+            int lastType = OSMElement.NODE;
+            OSMElement item;
+            while ((item = in.getNext()) != null)
+            {
+                // nodes, then ways, then relations
+                assertTrue(item.getType() >= lastType);
+                lastType = item.getType();
+                ids.add(item.getId());
+            }
+            assertTrue(in.isEOF());
+        } finally
+        {
+            in.close();
+        }
+        return ids;
+    }
+}
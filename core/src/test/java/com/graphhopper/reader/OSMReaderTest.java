@@ -35,10 +35,12 @@ import org.junit.Before;
 import org.junit.Test;
 
 import com.graphhopper.GraphHopper;
+import com.graphhopper.reader.dem.CGIARProvider;
 import com.graphhopper.reader.dem.ElevationProvider;
 import com.graphhopper.reader.dem.SRTMProvider;
 import com.graphhopper.routing.util.*;
 import com.graphhopper.storage.AbstractGraphStorageTester;
+import com.graphhopper.storage.DAType;
 import com.graphhopper.storage.GraphExtension;
 import com.graphhopper.storage.Graph;
 import com.graphhopper.storage.GraphHopperStorage;
@@ -273,6 +275,44 @@ public class OSMReaderTest
         assertFalse(iter.next());
     }
 
+    @Test
+    public void testElevationOnlyWithinBounds()
+    {
+        final AtomicInteger lookups = new AtomicInteger();
+        final AtomicInteger outOfBounds = new AtomicInteger();
+        GraphHopper hopper = new GraphHopperTest(file1)
+        {
+            @Override
+            protected DataReader createReader( GraphStorage tmpGraph )
+            {
+                return initOSMReader(new OSMReader(tmpGraph)
+                {
+                    @Override
+                    public boolean isInBounds( OSMNode node )
+                    {
+                        return node.getLat() > 49 && node.getLon() > 8;
+                    }
+                });
+            }
+        };
+        hopper.setElevationProvider(new CGIARProvider()
+        {
+            @Override
+            public double getEle( double lat, double lon )
+            {
+                lookups.incrementAndGet();
+                if (lat <= 49 || lon <= 8)
+                    outOfBounds.incrementAndGet();
+                return 0;
+            }
+        });
+        hopper.importOrLoad();
+
+        assertEquals(4, hopper.getGraph().getNodes());
+        assertTrue(lookups.get() > 0);
+        assertEquals(0, outOfBounds.get());
+    }
+
     @Test
     public void testOneWay()
     {
@@ -516,6 +556,50 @@ public class OSMReaderTest
         assertTrue(flags != flags3);
     }
 
+    @Test
+    public void testParallelWaysAndDenseNodeMap() throws Exception
+    {
+        for (String file : new String[]
+        {
+            file1, file2, fileBarriers, fileTurnRestrictions, fileNegIds
+        })
+        {
+            GraphStorage expected = readGraph(file, 1, null);
+            assertSameGraph(file, expected, readGraph(file, 3, null));
+            assertSameGraph(file, expected, readGraph(file, 1, DAType.MMAP));
+        }
+    }
+
+    void assertSameGraph( String file, GraphStorage expected, GraphStorage graph )
+    {
+        assertEquals(file, expected.getNodes(), graph.getNodes());
+        assertEquals(file, expected.getAllEdges().getCount(), graph.getAllEdges().getCount());
+        for (int edge = 0; edge < expected.getAllEdges().getCount(); edge++)
+        {
+            EdgeIteratorState e1 = expected.getEdgeProps(edge, Integer.MIN_VALUE);
+            EdgeIteratorState e2 = graph.getEdgeProps(edge, Integer.MIN_VALUE);
+            assertEquals(file, e1.getBaseNode(), e2.getBaseNode());
+            assertEquals(file, e1.getAdjNode(), e2.getAdjNode());
+            assertEquals(file, e1.getFlags(), e2.getFlags());
+            assertEquals(file, e1.getDistance(), e2.getDistance(), 1e-6);
+            assertEquals(file, e1.getName(), e2.getName());
+            assertEquals(file, e1.fetchWayGeometry(3), e2.fetchWayGeometry(3));
+        }
+    }
+
+    GraphStorage readGraph( String file, int workerThreads, DAType nodeMapType ) throws Exception
+    {
+        EncodingManager manager = new EncodingManager(new CarFlagEncoder(5, 5, 3), new FootFlagEncoder());
+        GraphStorage graph = newGraph(dir, manager, false, true);
+        OSMReader reader = new OSMReader(graph);
+        if (nodeMapType != null)
+            reader.setDenseNodeMap(nodeMapType);
+
+        reader.setEncodingManager(manager).setWorkerThreads(workerThreads).
+                setOSMFile(new File(getClass().getResource(file).toURI())).readGraph();
+        return graph;
+    }
+
     @Test
     public void testTurnRestrictions()
     {
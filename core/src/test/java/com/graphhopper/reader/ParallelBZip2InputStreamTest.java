@@ -0,0 +1,153 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich
+ */
+public class ParallelBZip2InputStreamTest
+{
+    @Test
+    public void testManyBlocks() throws IOException
+    {
+        byte[] data = createData(new Random(0), 2000000);
+        // 100KB blocks
+        byte[] compressed = compress(data, 1);
+        assertArrayEquals(data, readAll(new ParallelBZip2InputStream(new ByteArrayInputStream(compressed), 3)));
+        assertArrayEquals(data, readAll(new ParallelBZip2InputStream(new ByteArrayInputStream(compressed), 1)));
+    }
+
+    @Test
+    public void testConcatenatedStreams() throws IOException
+    {
+        Random rand = new Random(1);
+        byte[] data1 = createData(rand, 300000);
+        byte[] data2 = createData(rand, 10);
+        byte[] data3 = createData(rand, 500000);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        compressed.write(compress(data1, 1));
+        compressed.write(compress(data2, 9));
+        compressed.write(compress(data3, 2));
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(data1);
+        expected.write(data2);
+        expected.write(data3);
+        assertArrayEquals(expected.toByteArray(),
+                readAll(new ParallelBZip2InputStream(new ByteArrayInputStream(compressed.toByteArray()), 2)));
+    }
+
+    @Test
+    public void testCorruptStream() throws IOException
+    {
+        byte[] compressed = compress(createData(new Random(2), 300000), 1);
+        compressed[compressed.length / 2] ^= 0x55;
+        try
+        {
+            readAll(new ParallelBZip2InputStream(new ByteArrayInputStream(compressed), 2));
+            assertTrue(false);
+        } catch (IOException ex)
+        {
+        }
+
+        try
+        {
+            readAll(new ParallelBZip2InputStream(new ByteArrayInputStream(new byte[]
+            {
+                'x', 'y', 'z', 'w'
+            }), 2));
+            assertTrue(false);
+        } catch (IOException ex)
+        {
+        }
+    }
+
+    @Test
+    public void testBitWriter()
+    {
+        ParallelBZip2InputStream.BitWriter writer = new ParallelBZip2InputStream.BitWriter(1);
+        writer.write(5, 3);
+        byte[] data = new byte[]
+        {
+            (byte) 0xAB, (byte) 0xCD, (byte) 0xEF
+        };
+        // 0xBCDE
+        writer.write(data, 4, 16);
+        byte[] res = writer.toByteArray();
+        assertEquals(3, res.length);
+        assertEquals(0xBCDE, ParallelBZip2InputStream.readBits(res, 3, 16));
+        assertEquals(5, ParallelBZip2InputStream.readBits(res, 0, 3));
+        // padding
+        assertEquals(0, ParallelBZip2InputStream.readBits(res, 19, 5));
+    }
+
+    /**
+     * Creates text like data which compresses well but not too well.
+     */
+    static byte[] createData( Random rand, int size )
+    {
+        String[] words =
+        {
+            "<node ", "id=\"", "lat=\"", "lon=\"", "/>\n", "<tag k=\"highway\" v=\"", "residential", "\" ", " "
+        };
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+        while (out.size() < size)
+        {
+            byte[] word = rand.nextBoolean() ? words[rand.nextInt(words.length)].getBytes()
+                    : Integer.toString(rand.nextInt(100000)).getBytes();
+            out.write(word, 0, Math.min(word.length, size - out.size()));
+        }
+        return out.toByteArray();
+    }
+
+    static byte[] compress( byte[] data, int blockSize ) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BZip2CompressorOutputStream bzOut = new BZip2CompressorOutputStream(out, blockSize);
+        bzOut.write(data);
+        bzOut.close();
+        return out.toByteArray();
+    }
+
+    static byte[] readAll( InputStream in ) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try
+        {
+            byte[] buffer = new byte[10000];
+            int len;
+            while ((len = in.read(buffer)) > 0)
+            {
+                out.write(buffer, 0, len);
+            }
+        } finally
+        {
+            in.close();
+        }
+        return out.toByteArray();
+    }
+}
@@ -97,4 +97,35 @@ public class SRTMProviderTest
         instance.setDAType(DAType.MMAP);
         assertEquals(161, instance.getEle(55.8943144, -3), 1e-1);
     }
+
+    @Test
+    public void testBatchWithSmallCache() throws IOException
+    {
+        instance.setCacheDir(new File("./files/"));
+        instance.setMaxCachedTiles(1);
+        // alternating tiles, every tile would be loaded again for every point without grouping
+        double[] lats =
+        {
+            49.968651, -28.88316, 55.8943144, 49.958233, -28.671311, 55.4711873
+        };
+        double[] lons =
+        {
+            11.574869, -71.070557, -3, 11.558647, -71.38916, 19.2501641
+        };
+        double[] eles = new double[lats.length + 1];
+        eles[lats.length] = -1;
+        instance.getEle(lats, lons, eles, lats.length);
+        assertEquals(466, eles[0], 1e-1);
+        assertEquals(1678, eles[1], 1e-1);
+        assertEquals(161, eles[2], 1e-1);
+        assertEquals(330, eles[3], 1e-1);
+        assertEquals(0, eles[4], 1e-1);
+        assertEquals(0, eles[5], 1e-1);
+        assertEquals(-1, eles[6], 1e-1);
+
+        // evicted tiles are loaded again
+        assertEquals(466, instance.getEle(49.968651, 11.574869), 1e-1);
+        assertEquals(161, instance.getEle(55.8943144, -3), 1e-1);
+        assertEquals(466, instance.getEle(49.968651, 11.574869), 1e-1);
+    }
 }
@@ -0,0 +1,94 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader.pbf;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich
+ */
+public class PbfMappedFileTest
+{
+    private final File pbfFile = new File("files/andorra.osm.pbf");
+
+    @Test
+    public void testSameBlobsAsStream() throws IOException
+    {
+        List<PbfRawBlob> expected = new ArrayList<PbfRawBlob>();
+        PbfStreamSplitter splitter = new PbfStreamSplitter(new DataInputStream(
+                new BufferedInputStream(new FileInputStream(pbfFile))));
+        while (splitter.hasNext())
+        {
+            expected.add(splitter.next());
+        }
+        splitter.release();
+        assertTrue(expected.size() > 2);
+
+        // a small window forces several mappings
+        for (PbfMappedFile mappedFile : new PbfMappedFile[]
+        {
+            new PbfMappedFile(pbfFile), new PbfMappedFile(pbfFile, 300000)
+        })
+        {
+            assertEquals(expected.size(), mappedFile.getBlobCount());
+            int index = 0;
+            for (PbfRawBlob blob : mappedFile)
+            {
+                assertEquals(expected.get(index).getType(), blob.getType());
+                assertTrue(Arrays.equals(expected.get(index).getData(), blob.getData()));
+                index++;
+            }
+            assertEquals(expected.size(), index);
+            // random access must not be affected by the iteration
+            assertTrue(Arrays.equals(expected.get(1).getData(), mappedFile.getBlob(1).getData()));
+        }
+    }
+
+    @Test
+    public void testTruncatedFile() throws IOException
+    {
+        File file = new File("./target/tmp/truncated.osm.pbf");
+        file.getParentFile().mkdirs();
+        RandomAccessFile in = new RandomAccessFile(pbfFile, "r");
+        byte[] bytes = new byte[(int) in.length() - 10];
+        in.readFully(bytes);
+        in.close();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(bytes);
+        out.close();
+        try
+        {
+            new PbfMappedFile(file);
+            assertTrue(false);
+        } catch (IOException ex)
+        {
+        }
+        file.delete();
+    }
+}
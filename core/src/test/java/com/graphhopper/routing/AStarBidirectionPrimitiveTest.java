@@ -0,0 +1,119 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.util.DistanceCalc;
+import com.graphhopper.util.DistanceCalcEarth;
+
+/**
+ *
+ * @author Peter Karich
+ */
+@RunWith(Parameterized.class)
+public class AStarBidirectionPrimitiveTest extends AbstractRoutingAlgorithmTester
+{
+    /**
+     * Runs the same test with each of the supported traversal modes
+     */
+    @Parameters
+    public static Collection<Object[]> configs()
+    {
+        return Arrays.asList(new Object[][]
+        {
+            { TraversalMode.NODE_BASED },
+            { TraversalMode.EDGE_BASED_1DIR },
+            { TraversalMode.EDGE_BASED_2DIR },
+            { TraversalMode.EDGE_BASED_2DIR_UTURN }
+        });
+    }
+
+    private final TraversalMode traversalMode;
+
+    public AStarBidirectionPrimitiveTest( TraversalMode tMode )
+    {
+        this.traversalMode = tMode;
+    }
+
+    @Override
+    public RoutingAlgorithmFactory createFactory( Graph prepareGraph, AlgorithmOptions prepareOpts )
+    {
+        return new RoutingAlgorithmFactory()
+        {
+            @Override
+            public RoutingAlgorithm createAlgo( Graph g, AlgorithmOptions opts )
+            {
+                return new AStarBidirectionPrimitive(g, opts.getFlagEncoder(), opts.getWeighting(), traversalMode);
+            }
+        };
+    }
+
+    @Test
+    public void testSameWeightsAsAStarBidirection()
+    {
+        // the distances are up to four times longer than the air line, so the estimation is not tight
+        Graph g = createGraph(false);
+        NodeAccess na = g.getNodeAccess();
+        DistanceCalc distCalc = new DistanceCalcEarth();
+        Random rand = new Random(1);
+        int size = 15;
+        for (int node = 0; node < size * size; node++)
+        {
+            na.setNode(node, 49 + (node / size) * 0.001 + rand.nextDouble() * 0.0005,
+                    11 + (node % size) * 0.001 + rand.nextDouble() * 0.0005);
+        }
+        for (int node = 0; node < size * size; node++)
+        {
+            if (node % size + 1 < size)
+                g.edge(node, node + 1, (1 + 3 * rand.nextDouble()) * distCalc.calcDist(na.getLatitude(node),
+                        na.getLongitude(node), na.getLatitude(node + 1), na.getLongitude(node + 1)), true);
+            if (node + size < size * size)
+                g.edge(node, node + size, (1 + 3 * rand.nextDouble()) * distCalc.calcDist(na.getLatitude(node),
+                        na.getLongitude(node), na.getLatitude(node + size), na.getLongitude(node + size)), true);
+        }
+
+        for (int i = 0; i < 100; i++)
+        {
+            int from = rand.nextInt(size * size);
+            int to = rand.nextInt(size * size);
+            if (from == to)
+                continue;
+
+            Path refPath = new AStarBidirection(g, carEncoder, defaultOpts.getWeighting(), traversalMode).calcPath(from, to);
+            Path path = createAlgo(g).calcPath(from, to);
+            assertEquals(from + "->" + to, refPath.isFound(), path.isFound());
+            assertEquals(from + "->" + to, refPath.getWeight(), path.getWeight(), 1e-2);
+
+            // without approximation the result has to be exact
+            Path exactPath = new Dijkstra(g, carEncoder, defaultOpts.getWeighting(), traversalMode).calcPath(from, to);
+            assertEquals(from + "->" + to, exactPath.getWeight(), path.getWeight(), 1e-2);
+        }
+    }
+}
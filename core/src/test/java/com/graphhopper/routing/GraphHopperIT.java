@@ -17,6 +17,8 @@
  */
 package com.graphhopper.routing;
 
+import com.graphhopper.GHMatrixRequest;
+import com.graphhopper.GHMatrixResponse;
 import com.graphhopper.GHRequest;
 import com.graphhopper.GHResponse;
 import com.graphhopper.GraphHopper;
@@ -26,6 +28,7 @@ import com.graphhopper.util.*;
 import com.graphhopper.util.shapes.GHPoint;
 
 import java.io.File;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import org.junit.After;
@@ -290,4 +293,38 @@ public class GraphHopperIT
         assertEquals(Instruction.REACHED_VIA, rsp.getInstructions().createJson().get(0).get("sign"));
         assertEquals(Instruction.FINISH, rsp.getInstructions().createJson().get(1).get("sign"));
     }
+
+    @Test
+    public void testMonacoMatrix()
+    {
+        GraphHopper hopper = new GraphHopper().
+                setStoreOnFlush(true).
+                setOSMFile(osmFile).
+                setCHWeighting("fastest").
+                setGraphHopperLocation(graphFile).
+                setEncodingManager(new EncodingManager("CAR")).
+                importOrLoad();
+
+        List<GHPoint> points = Arrays.asList(new GHPoint(43.727687, 7.418737), new GHPoint(43.74958, 7.436566),
+                new GHPoint(43.739213, 7.427806), new GHPoint(43.733802, 7.413433));
+        GHMatrixResponse matrixRsp = hopper.matrix(new GHMatrixRequest(points).setVehicle("CAR"));
+        assertFalse(matrixRsp.getErrors().toString(), matrixRsp.hasErrors());
+        for (int i = 0; i < points.size(); i++)
+        {
+            for (int j = 0; j < points.size(); j++)
+            {
+                if (i == j)
+                {
+                    assertEquals(0, matrixRsp.getDistances()[i][j], .1);
+                    continue;
+                }
+
+                GHResponse rsp = hopper.route(new GHRequest(points.get(i), points.get(j)).setVehicle("CAR"));
+                assertTrue(matrixRsp.isFound(i, j));
+                assertEquals(rsp.getDistance(), matrixRsp.getDistances()[i][j], .1);
+                assertEquals(rsp.getMillis(), matrixRsp.getMillis()[i][j], 10);
+            }
+        }
+        hopper.close();
+    }
 }
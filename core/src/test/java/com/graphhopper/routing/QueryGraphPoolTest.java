@@ -0,0 +1,128 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.GraphBuilder;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich
+ */
+public class QueryGraphPoolTest
+{
+    private Graph createGraph()
+    {
+        Graph g = new GraphBuilder(new EncodingManager("CAR")).create();
+        g.edge(0, 1, 10, true);
+        return g;
+    }
+
+    @Test
+    public void testReuse()
+    {
+        Graph g = createGraph();
+        QueryGraphPool pool = new QueryGraphPool();
+
+        // no pooling outside of begin and end
+        assertNotSame(pool.create(g), pool.create(g));
+        assertEquals(0, pool.getMisses());
+
+        pool.begin();
+        QueryGraph qGraph1 = pool.create(g);
+        QueryGraph qGraph2 = pool.create(g);
+        assertNotSame(qGraph1, qGraph2);
+        pool.end();
+        assertEquals(0, pool.getHits());
+        assertEquals(2, pool.getMisses());
+
+        pool.begin();
+        assertSame(qGraph1, pool.create(g));
+
+        // nested scope
+        pool.begin();
+        assertSame(qGraph2, pool.create(g));
+        pool.end();
+
+        assertSame(qGraph2, pool.create(g));
+        pool.end();
+
+        assertEquals(3, pool.getHits());
+        assertEquals(2, pool.getMisses());
+        assertEquals(0.6, pool.getHitRate(), 1e-6);
+
+        // a different graph
+        pool.begin();
+        assertNotSame(qGraph1, pool.create(createGraph()));
+        pool.end();
+        assertEquals(3, pool.getMisses());
+
+        try
+        {
+            pool.end();
+            assertTrue(false);
+        } catch (IllegalStateException ex)
+        {
+        }
+    }
+
+    @Test
+    public void testPerThread() throws InterruptedException
+    {
+        final Graph g = createGraph();
+        final QueryGraphPool pool = new QueryGraphPool();
+        pool.begin();
+        final QueryGraph qGraph = pool.create(g);
+        pool.end();
+
+        final QueryGraph[] otherQGraph = new QueryGraph[1];
+        Thread thread = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                pool.begin();
+                otherQGraph[0] = pool.create(g);
+                pool.end();
+            }
+        };
+        thread.start();
+        thread.join();
+        assertNotNull(otherQGraph[0]);
+        assertNotSame(qGraph, otherQGraph[0]);
+        assertEquals(2, pool.getMisses());
+    }
+
+    @Test
+    public void testClear()
+    {
+        Graph g = createGraph();
+        QueryGraphPool pool = new QueryGraphPool();
+        pool.begin();
+        QueryGraph qGraph = pool.create(g);
+        pool.end();
+
+        pool.clear();
+        pool.begin();
+        assertNotSame(qGraph, pool.create(g));
+        pool.end();
+        assertEquals(2, pool.getMisses());
+    }
+}
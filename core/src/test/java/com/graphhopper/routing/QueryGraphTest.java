@@ -145,6 +145,49 @@ public class QueryGraphTest
         assertEquals(2, getPoints(queryGraph, 3, 2).getSize());
     }
 
+    @Test
+    public void testReset()
+    {
+        initGraph(g);
+        EdgeExplorer expl = g.createEdgeExplorer();
+        EdgeIterator iter = expl.setBaseNode(1);
+        iter.next();
+        QueryGraph queryGraph = new QueryGraph(g, true);
+        queryGraph.lookup(Arrays.asList(createLocationResult(1.5, 2, iter, 0, EDGE)));
+        assertEquals(4, queryGraph.getNodes());
+        assertEquals(GHUtility.asSet(3), GHUtility.getNeighbors(queryGraph.createEdgeExplorer().setBaseNode(1)));
+        try
+        {
+            queryGraph.lookup(Arrays.asList(createLocationResult(1.5, 2, iter, 0, EDGE)));
+            assertTrue(false);
+        } catch (IllegalStateException ex)
+        {
+        }
+
+        queryGraph.reset();
+        assertEquals(3, queryGraph.getNodes());
+        iter = expl.setBaseNode(2);
+        iter.next();
+        QueryResult res = createLocationResult(0.5, 0.1, iter, 0, EDGE);
+        queryGraph.lookup(Arrays.asList(res));
+        assertEquals(3, res.getClosestNode());
+        assertEquals(4, queryGraph.getNodes());
+        assertEquals(new GHPoint(0.5, 0), res.getSnappedPoint());
+        EdgeExplorer queryExpl = queryGraph.createEdgeExplorer();
+        assertEquals(GHUtility.asSet(0, 2), GHUtility.getNeighbors(queryExpl.setBaseNode(3)));
+        // the virtual edges of the previous lookup are gone
+        assertEquals(GHUtility.asSet(0), GHUtility.getNeighbors(queryExpl.setBaseNode(1)));
+        assertEquals(2, getPoints(queryGraph, 0, 3).getSize());
+
+        try
+        {
+            new QueryGraph(g).reset();
+            assertTrue(false);
+        } catch (IllegalStateException ex)
+        {
+        }
+    }
+
     @Test
     public void testFillVirtualEdges()
     {
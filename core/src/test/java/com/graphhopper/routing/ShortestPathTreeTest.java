@@ -0,0 +1,88 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.storage.EdgeEntry;
+import java.util.Random;
+import java.util.PriorityQueue;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich
+ */
+public class ShortestPathTreeTest
+{
+    @Test
+    public void testPutGetAndClear()
+    {
+        ShortestPathTree tree = new ShortestPathTree(4);
+        for (int i = 0; i < 100; i++)
+        {
+            int slot = tree.create(i, i * 2, i / 10d, i - 1);
+            tree.put(i * 7, slot);
+        }
+        assertEquals(100, tree.getSize());
+        assertEquals(42, tree.get(42 * 7));
+        assertEquals(84, tree.getAdjNode(42));
+        assertEquals(4.2, tree.getWeight(42), 1e-6);
+        assertEquals(ShortestPathTree.NO_SLOT, tree.get(43));
+
+        EdgeEntry ee = tree.createEdgeEntry(3);
+        assertEquals(3, ee.edge);
+        assertEquals(2, ee.parent.edge);
+        assertEquals(0, ee.parent.parent.parent.edge);
+        assertNull(ee.parent.parent.parent.parent);
+
+        tree.clear();
+        assertTrue(tree.isEmpty());
+        assertEquals(ShortestPathTree.NO_SLOT, tree.get(42 * 7));
+        int slot = tree.create(1, 1, 1, ShortestPathTree.NO_SLOT);
+        tree.put(5, slot);
+        assertEquals(slot, tree.get(5));
+    }
+
+    @Test
+    public void testHeap()
+    {
+        ShortestPathTree tree = new ShortestPathTree(4);
+        Random rand = new Random(0);
+        PriorityQueue<Double> expected = new PriorityQueue<Double>();
+        for (int i = 0; i < 100; i++)
+        {
+            double key = rand.nextDouble();
+            int slot = tree.create(i, i, key, ShortestPathTree.NO_SLOT);
+            tree.push(slot, key);
+            if (i % 3 == 0)
+            {
+                // decrease key
+                key /= 2;
+                tree.update(slot, i, key, ShortestPathTree.NO_SLOT);
+                tree.push(slot, key);
+            }
+            expected.add(key);
+        }
+
+        while (!expected.isEmpty())
+        {
+            assertFalse(tree.isHeapEmpty());
+            assertEquals(expected.poll(), tree.getWeight(tree.poll()), 1e-10);
+        }
+        assertTrue(tree.isHeapEmpty());
+    }
+}
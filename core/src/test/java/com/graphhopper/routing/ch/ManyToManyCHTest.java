@@ -0,0 +1,139 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.util.*;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.storage.LevelGraph;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * @author Peter Karich
+ */
+public class ManyToManyCHTest
+{
+    private final EncodingManager encodingManager = new EncodingManager("CAR");
+    private final CarFlagEncoder carEncoder = (CarFlagEncoder) encodingManager.getEncoder("CAR");
+    private final TraversalMode tMode = TraversalMode.NODE_BASED;
+
+    LevelGraph createGraph()
+    {
+        return new GraphBuilder(encodingManager).levelGraphCreate();
+    }
+
+    @Test
+    public void testCompareWithDijkstra()
+    {
+        assertSameAsDijkstra(new ShortestWeighting(), false);
+    }
+
+    @Test
+    public void testCompareWithDijkstraWithoutRemovingEdges()
+    {
+        assertSameAsDijkstra(new ShortestWeighting(), true);
+    }
+
+    @Test
+    public void testDirectedGraph()
+    {
+        LevelGraph g = createGraph();
+        PrepareContractionHierarchiesTest.initDirected1(g);
+        PrepareContractionHierarchies prepare = new PrepareContractionHierarchies(g, carEncoder, new ShortestWeighting(), tMode);
+        prepare.doWork();
+
+        Graph reference = createGraph();
+        PrepareContractionHierarchiesTest.initDirected1(reference);
+        int[] nodes = allNodes(g);
+        ManyToManyCH algo = prepare.createManyToMany(g).calcMatrix(nodes, nodes);
+        for (int from : nodes)
+        {
+            for (int to : nodes)
+            {
+                Path p = new Dijkstra(reference, carEncoder, new ShortestWeighting(), tMode).calcPath(from, to);
+                if (p.isFound())
+                    assertEquals(from + "->" + to, p.getDistance(), algo.getDistances()[from][to], 1e-4);
+                else
+                    assertTrue(from + "->" + to, algo.getDistances()[from][to] < 0);
+            }
+        }
+    }
+
+    @Test
+    public void testDifferentFromAndTo()
+    {
+        LevelGraph g = PrepareContractionHierarchiesTest.initShortcutsGraph(createGraph());
+        PrepareContractionHierarchies prepare = new PrepareContractionHierarchies(g, carEncoder, new ShortestWeighting(), tMode);
+        prepare.doWork();
+
+        ManyToManyCH algo = prepare.createManyToMany(g).calcMatrix(new int[]
+        {
+            0, 16
+        }, new int[]
+        {
+            16, 3, 10
+        });
+        double[][] distances = algo.getDistances();
+        assertEquals(2, distances.length);
+        assertEquals(3, distances[0].length);
+        assertEquals(4, distances[0][0], 1e-4);
+        assertEquals(2, distances[0][1], 1e-4);
+        assertEquals(3, distances[0][2], 1e-4);
+        assertEquals(0, distances[1][0], 1e-4);
+        assertEquals(3, distances[1][1], 1e-4);
+        assertEquals(2, distances[1][2], 1e-4);
+        assertTrue(algo.getVisitedNodes() > 0);
+    }
+
+    void assertSameAsDijkstra( Weighting weighting, boolean keepHigher2LowerEdges )
+    {
+        LevelGraph g = PrepareContractionHierarchiesTest.initShortcutsGraph(createGraph());
+        PrepareContractionHierarchies prepare = new PrepareContractionHierarchies(g, carEncoder, weighting, tMode);
+        prepare.setRemoveHigher2LowerEdges(!keepHigher2LowerEdges);
+        prepare.doWork();
+
+        Graph reference = PrepareContractionHierarchiesTest.initShortcutsGraph(createGraph());
+        int[] nodes = allNodes(g);
+        ManyToManyCH algo = prepare.createManyToMany(g).calcMatrix(nodes, nodes);
+        for (int from : nodes)
+        {
+            for (int to : nodes)
+            {
+                Path p = new Dijkstra(reference, carEncoder, weighting, tMode).calcPath(from, to);
+                assertTrue(p.isFound());
+                String str = from + "->" + to;
+                assertEquals(str, p.getWeight(), algo.getWeights()[from][to], 1e-4);
+                assertEquals(str, p.getDistance(), algo.getDistances()[from][to], 1e-4);
+                assertEquals(str, p.getMillis(), algo.getMillis()[from][to], 1);
+            }
+        }
+    }
+
+    int[] allNodes( Graph g )
+    {
+        int[] nodes = new int[g.getNodes()];
+        for (int i = 0; i < nodes.length; i++)
+        {
+            nodes[i] = i;
+        }
+        return nodes;
+    }
+}
@@ -21,12 +21,16 @@ import com.graphhopper.routing.*;
 import com.graphhopper.routing.ch.PrepareContractionHierarchies.Shortcut;
 import com.graphhopper.routing.util.*;
 import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.GraphStorage;
 import com.graphhopper.storage.LevelGraph;
+import com.graphhopper.storage.LevelGraphOverlay;
 import com.graphhopper.storage.LevelGraphStorage;
 import com.graphhopper.storage.GraphBuilder;
 import com.graphhopper.util.*;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.Random;
 import static org.junit.Assert.*;
 import org.junit.Test;
 
@@ -273,7 +277,7 @@ public class PrepareContractionHierarchiesTest
         int old = g.getAllEdges().getCount();
         PrepareContractionHierarchies prepare = new PrepareContractionHierarchies(g, carEncoder, weighting, tMode);
         prepare.doWork();
-        assertEquals(old + 22, g.getAllEdges().getCount());
+        assertEquals(old + 23, g.getAllEdges().getCount());
         RoutingAlgorithm algo = prepare.createAlgo(g, new AlgorithmOptions(AlgorithmOptions.DIJKSTRA_BI, carEncoder, weighting, tMode));
         Path p = algo.calcPath(4, 7);
         assertEquals(Helper.createTList(4, 5, 6, 7), p.calcNodes());
@@ -535,6 +539,173 @@ public class PrepareContractionHierarchiesTest
 //        }
 //        System.out.println("---");
 //    }
+    // grid with random distances where every 7th edge is a one-way
+    void initRandomGrid( Graph g, int size, long seed )
+    {
+        Random rand = new Random(seed);
+        int counter = 0;
+        for (int y = 0; y < size; y++)
+        {
+            for (int x = 0; x < size; x++)
+            {
+                int node = y * size + x;
+                if (x + 1 < size)
+                    g.edge(node, node + 1, 1 + rand.nextInt(10), counter++ % 7 != 0);
+                if (y + 1 < size)
+                    g.edge(node, node + size, 1 + rand.nextInt(10), counter++ % 7 != 0);
+            }
+        }
+    }
+
+    @Test
+    public void testParallelContraction()
+    {
+        LevelGraph g = createGraph();
+        initRandomGrid(g, 20, 1);
+        Graph reference = createGraph();
+        initRandomGrid(reference, 20, 1);
+
+        PrepareContractionHierarchies prepare = new PrepareContractionHierarchies(g, carEncoder, weighting, tMode).
+                setThreads(3);
+        prepare.doWork();
+        assertTrue(prepare.getShortcuts() > 0);
+
+        Random rand = new Random(2);
+        AlgorithmOptions opts = new AlgorithmOptions(AlgorithmOptions.DIJKSTRA_BI, carEncoder, weighting, tMode);
+        for (int i = 0; i < 200; i++)
+        {
+            int from = rand.nextInt(g.getNodes());
+            int to = rand.nextInt(g.getNodes());
+            Path refPath = new Dijkstra(reference, carEncoder, weighting, tMode).calcPath(from, to);
+            Path chPath = prepare.createAlgo(g, opts).calcPath(from, to);
+            assertEquals(from + "->" + to, refPath.isFound(), chPath.isFound());
+            assertEquals(from + "->" + to, refPath.getDistance(), chPath.getDistance(), 1e-5);
+        }
+    }
+
+    @Test
+    public void testOverlaysForTwoVehicles()
+    {
+        EncodingManager em = new EncodingManager("CAR,FOOT");
+        FlagEncoder car = em.getEncoder("CAR");
+        FlagEncoder foot = em.getEncoder("FOOT");
+        GraphStorage g = new GraphBuilder(em).create();
+        initRandomGrid(g, 15, 4);
+        // make the vehicles differ
+        AllEdgesIterator edgeIter = g.getAllEdges();
+        while (edgeIter.next())
+        {
+            if (edgeIter.getEdge() % 5 == 0)
+                edgeIter.setFlags(car.setAccess(edgeIter.getFlags(), false, false));
+        }
+
+        LevelGraphOverlay carGraph = new LevelGraphOverlay(g, car, "car").create(100);
+        LevelGraphOverlay footGraph = new LevelGraphOverlay(g, foot, "foot").create(100);
+        PrepareContractionHierarchies carPrepare = new PrepareContractionHierarchies(carGraph, car, weighting, tMode).
+                setRemoveHigher2LowerEdges(false);
+        carPrepare.doWork();
+        PrepareContractionHierarchies footPrepare = new PrepareContractionHierarchies(footGraph, foot, weighting, tMode).
+                setRemoveHigher2LowerEdges(false);
+        footPrepare.doWork();
+        assertTrue(carPrepare.getShortcuts() > 0);
+        assertTrue(footPrepare.getShortcuts() > 0);
+        assertEquals(carPrepare.getShortcuts(), carGraph.getShortcuts());
+        assertEquals(footPrepare.getShortcuts(), footGraph.getShortcuts());
+
+        Random rand = new Random(5);
+        for (int i = 0; i < 100; i++)
+        {
+            int from = rand.nextInt(g.getNodes());
+            int to = rand.nextInt(g.getNodes());
+            Path refPath = new Dijkstra(g, car, weighting, tMode).calcPath(from, to);
+            Path chPath = carPrepare.createAlgo(carGraph, new AlgorithmOptions(AlgorithmOptions.DIJKSTRA_BI, car, weighting, tMode)).
+                    calcPath(from, to);
+            assertEquals("car " + from + "->" + to, refPath.isFound(), chPath.isFound());
+            assertEquals("car " + from + "->" + to, refPath.getDistance(), chPath.getDistance(), 1e-5);
+
+            refPath = new Dijkstra(g, foot, weighting, tMode).calcPath(from, to);
+            chPath = footPrepare.createAlgo(footGraph, new AlgorithmOptions(AlgorithmOptions.DIJKSTRA_BI, foot, weighting, tMode)).
+                    calcPath(from, to);
+            assertEquals("foot " + from + "->" + to, refPath.isFound(), chPath.isFound());
+            assertEquals("foot " + from + "->" + to, refPath.getDistance(), chPath.getDistance(), 1e-5);
+        }
+    }
+
+    @Test
+    public void testAddShortcutsMergesDirections()
+    {
+        LevelGraph g = createGraph();
+        g.edge(0, 1, 2, true);
+        g.edge(1, 2, 2, true);
+        PrepareContractionHierarchies prepare = new PrepareContractionHierarchies(g, carEncoder, weighting, tMode);
+        prepare.initFromGraph();
+
+        Shortcut oneDir = prepare.new Shortcut(0, 2, 3, 3);
+        oneDir.flags = carEncoder.setAccess(0, true, false);
+        assertEquals(1, prepare.addShortcuts(Arrays.asList(oneDir)));
+
+        // the existing shorter shortcut covers the forward direction, so only the backward one is added
+        Shortcut bothDir = prepare.new Shortcut(0, 2, 4, 4);
+        bothDir.flags = carEncoder.setAccess(0, true, true);
+        assertEquals(1, prepare.addShortcuts(Arrays.asList(bothDir)));
+
+        // now both directions are covered
+        Shortcut again = prepare.new Shortcut(0, 2, 4, 4);
+        again.flags = carEncoder.setAccess(0, true, true);
+        assertEquals(0, prepare.addShortcuts(Arrays.asList(again)));
+
+        int forward = 0, backward = 0;
+        EdgeSkipIterator iter = g.createEdgeExplorer().setBaseNode(0);
+        while (iter.next())
+        {
+            if (!iter.isShortcut())
+                continue;
+
+            assertEquals(2, iter.getAdjNode());
+            if (carEncoder.isBool(iter.getFlags(), FlagEncoder.K_FORWARD))
+                forward++;
+            if (carEncoder.isBool(iter.getFlags(), FlagEncoder.K_BACKWARD))
+                backward++;
+        }
+        assertEquals(1, forward);
+        assertEquals(1, backward);
+    }
+
+    @Test
+    public void testParallelContractionIsDeterministic()
+    {
+        LevelGraph g1 = createGraph();
+        initRandomGrid(g1, 20, 3);
+        PrepareContractionHierarchies prepare1 = new PrepareContractionHierarchies(g1, carEncoder, weighting, tMode).
+                setThreads(2);
+        prepare1.doWork();
+
+        LevelGraph g2 = createGraph();
+        initRandomGrid(g2, 20, 3);
+        PrepareContractionHierarchies prepare2 = new PrepareContractionHierarchies(g2, carEncoder, weighting, tMode).
+                setThreads(5);
+        prepare2.doWork();
+
+        assertEquals(prepare1.getShortcuts(), prepare2.getShortcuts());
+        assertEquals(g1.getAllEdges().getCount(), g2.getAllEdges().getCount());
+        for (int node = 0; node < g1.getNodes(); node++)
+        {
+            assertEquals(g1.getLevel(node), g2.getLevel(node));
+        }
+
+        AllEdgesSkipIterator iter1 = g1.getAllEdges();
+        AllEdgesSkipIterator iter2 = g2.getAllEdges();
+        while (iter1.next())
+        {
+            assertTrue(iter2.next());
+            assertEquals(iter1.getBaseNode(), iter2.getBaseNode());
+            assertEquals(iter1.getAdjNode(), iter2.getAdjNode());
+            assertEquals(iter1.getFlags(), iter2.getFlags());
+            assertEquals(iter1.getSkippedEdge1(), iter2.getSkippedEdge1());
+            assertEquals(iter1.getSkippedEdge2(), iter2.getSkippedEdge2());
+        }
+    }
+
     @Test
     public void testBits()
     {
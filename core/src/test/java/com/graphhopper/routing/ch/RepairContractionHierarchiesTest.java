@@ -0,0 +1,128 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.routing.*;
+import com.graphhopper.routing.util.*;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.storage.GraphStorage;
+import com.graphhopper.storage.LevelGraphOverlay;
+import com.graphhopper.util.EdgeIteratorState;
+import gnu.trove.set.hash.TIntHashSet;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * @author Peter Karich
+ */
+public class RepairContractionHierarchiesTest
+{
+    private final EncodingManager encodingManager = new EncodingManager("CAR");
+    private final CarFlagEncoder carEncoder = (CarFlagEncoder) encodingManager.getEncoder("CAR");
+    private final Weighting weighting = new ShortestWeighting();
+    private final TraversalMode tMode = TraversalMode.NODE_BASED;
+
+    @Test
+    public void testRepairAfterChanges()
+    {
+        GraphStorage g = new GraphBuilder(encodingManager).create();
+        new PrepareContractionHierarchiesTest().initRandomGrid(g, 15, 7);
+        LevelGraphOverlay chGraph = new LevelGraphOverlay(g, carEncoder, "car").create(100);
+        PrepareContractionHierarchies prepare = new PrepareContractionHierarchies(chGraph, carEncoder, weighting, tMode).
+                setRemoveHigher2LowerEdges(false);
+        prepare.doWork();
+        int shortcuts = chGraph.getShortcuts();
+        assertTrue(shortcuts > 0);
+
+        Random rand = new Random(3);
+        for (int round = 0; round < 3; round++)
+        {
+            TIntHashSet changed = new TIntHashSet();
+            int edges = g.getAllEdges().getCount();
+            for (int i = 0; i < 15; i++)
+            {
+                int edge = rand.nextInt(edges);
+                EdgeIteratorState state = g.getEdgeProps(edge, Integer.MIN_VALUE);
+                long flags = state.getFlags();
+                if (i % 2 == 0)
+                    flags = carEncoder.setAccess(flags, rand.nextBoolean(), rand.nextBoolean());
+                else
+                    state.setDistance(1 + rand.nextInt(20));
+                state.setFlags(flags);
+                changed.add(edge);
+            }
+
+            // new edges between existing nodes and to a new node
+            int newNode = g.getNodes();
+            for (int i = 0; i < 5; i++)
+            {
+                changed.add(g.edge(rand.nextInt(newNode), rand.nextInt(newNode), 1 + rand.nextInt(30), i % 2 == 0).getEdge());
+            }
+            changed.add(g.edge(newNode, rand.nextInt(newNode), 2, true).getEdge());
+            changed.add(g.edge(newNode, rand.nextInt(newNode), 3, false).getEdge());
+
+            RepairContractionHierarchies repair = new RepairContractionHierarchies(chGraph, weighting);
+            repair.repair(changed);
+            assertTrue(repair.getContractedNodes() > 0);
+            assertEquals(g.getNodes(), chGraph.getNodes());
+            assertTrue(chGraph.getShortcuts() >= shortcuts);
+            shortcuts = chGraph.getShortcuts();
+            assertTrue(chGraph.getLevel(newNode) > 0);
+
+            checkRoutes(g, chGraph, prepare, rand, "round " + round);
+        }
+    }
+
+    @Test
+    public void testRepairIsLocal()
+    {
+        GraphStorage g = new GraphBuilder(encodingManager).create();
+        new PrepareContractionHierarchiesTest().initRandomGrid(g, 40, 2);
+        LevelGraphOverlay chGraph = new LevelGraphOverlay(g, carEncoder, "car").create(100);
+        PrepareContractionHierarchies prepare = new PrepareContractionHierarchies(chGraph, carEncoder, weighting, tMode).
+                setRemoveHigher2LowerEdges(false);
+        prepare.doWork();
+
+        TIntHashSet changed = new TIntHashSet();
+        EdgeIteratorState state = g.getEdgeProps(3, Integer.MIN_VALUE);
+        state.setDistance(state.getDistance() + 5);
+        changed.add(3);
+        changed.add(g.edge(1, 40, 1, true).getEdge());
+        RepairContractionHierarchies repair = new RepairContractionHierarchies(chGraph, weighting);
+        repair.repair(changed);
+        assertTrue(repair.getContractedNodes() > 0);
+        assertTrue(repair.getContractedNodes() < g.getNodes() / 2);
+        checkRoutes(g, chGraph, prepare, new Random(4), "local");
+    }
+
+    private void checkRoutes( GraphStorage g, LevelGraphOverlay chGraph, PrepareContractionHierarchies prepare,
+            Random rand, String msg )
+    {
+        AlgorithmOptions opts = new AlgorithmOptions(AlgorithmOptions.DIJKSTRA_BI, carEncoder, weighting, tMode);
+        for (int i = 0; i < 200; i++)
+        {
+            int from = rand.nextInt(g.getNodes());
+            int to = rand.nextInt(g.getNodes());
+            Path refPath = new Dijkstra(g, carEncoder, weighting, tMode).calcPath(from, to);
+            Path chPath = prepare.createAlgo(chGraph, opts).calcPath(from, to);
+            assertEquals(msg + ", " + from + "->" + to, refPath.isFound(), chPath.isFound());
+            assertEquals(msg + ", " + from + "->" + to, refPath.getDistance(), chPath.getDistance(), 1e-5);
+        }
+    }
+}
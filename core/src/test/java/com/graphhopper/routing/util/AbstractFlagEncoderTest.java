@@ -38,6 +38,9 @@ public class AbstractFlagEncoderTest
         assertEquals(18.52, AbstractFlagEncoder.parseSpeed("10 knots"), 1e-3);
         assertEquals(19, AbstractFlagEncoder.parseSpeed("19 kph"), 1e-3);
         assertEquals(19, AbstractFlagEncoder.parseSpeed("19kph"), 1e-3);
+        assertEquals(50, AbstractFlagEncoder.parseSpeed("50"), 1e-3);
+        assertEquals(-1, AbstractFlagEncoder.parseSpeed("none"), 1e-3);
+        assertEquals(-1, AbstractFlagEncoder.parseSpeed("signals"), 1e-3);
     }
 
     @Test
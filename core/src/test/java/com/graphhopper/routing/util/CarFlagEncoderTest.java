@@ -96,6 +96,20 @@ public class CarFlagEncoderTest
         assertFalse(encoder.isBool(flags, FlagEncoder.K_BACKWARD));
     }
 
+    @Test
+    public void testAccessWithoutEncodingManager()
+    {
+        // the restriction ids are created on first use
+        CarFlagEncoder standalone = new CarFlagEncoder();
+        standalone.defineWayBits(0, 0);
+        OSMWay way = new OSMWay(1);
+        way.setTag("highway", "service");
+        assertTrue(standalone.acceptWay(way) > 0);
+        way.setTag("access", "no");
+        assertFalse(standalone.acceptWay(way) > 0);
+        assertFalse(encoder.acceptWay(way) > 0);
+    }
+
     @Test
     public void testSetAccess()
     {
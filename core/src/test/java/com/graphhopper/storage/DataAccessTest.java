@@ -191,6 +191,21 @@ public abstract class DataAccessTest
         da2.close();
     }
 
+    @Test
+    public void testCopyDifferentSegmentSize()
+    {
+        DataAccess da1 = createDataAccess(name);
+        da1.setSegmentSize(128).create(10 * 128);
+        da1.setInt(300 * 4, 300);
+
+        DataAccess da2 = createDataAccess(name + "2");
+        da2.setSegmentSize(256).create(10);
+        da1.copyTo(da2);
+        assertEquals(300, da2.getInt(300 * 4));
+        da1.close();
+        da2.close();
+    }
+
     @Test
     public void testSegments()
     {
@@ -292,6 +307,20 @@ public abstract class DataAccessTest
         da.close();
     }
 
+    @Test
+    public void testSegmentSizeAfterCreate()
+    {
+        DataAccess da = createDataAccess(name);
+        da.setSegmentSize(128);
+        da.create(300);
+        da.setInt(260, 123);
+        // existing segments keep their size
+        da.setSegmentSize(1024);
+        assertEquals(128, da.getSegmentSize());
+        assertEquals(123, da.getInt(260));
+        da.close();
+    }
+
     @Test
     public void testRenameNoFlush()
     {
@@ -0,0 +1,105 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * @author Peter Karich
+ */
+public class DirectDataAccessTest extends DataAccessTest
+{
+    @Override
+    public DataAccess createDataAccess( String name )
+    {
+        return new DirectDataAccess(name, directory, true, defaultOrder).setSegmentSize(128);
+    }
+
+    @Test
+    public void testMixRAM2Direct()
+    {
+        DataAccess da = new RAMDataAccess(name, directory, true, defaultOrder).setSegmentSize(128);
+        da.create(300);
+        da.setInt(7 * 4, 123);
+        da.setInt(299 - 3, -5);
+        da.setHeader(0, 42);
+        da.flush();
+        da.close();
+
+        da = createDataAccess(name);
+        assertTrue(da.loadExisting());
+        assertEquals(3, da.getSegments());
+        assertEquals(123, da.getInt(7 * 4));
+        assertEquals(-5, da.getInt(299 - 3));
+        assertEquals(42, da.getHeader(0));
+        da.setInt(8 * 4, 456);
+        da.flush();
+        da.close();
+
+        da = new RAMDataAccess(name, directory, true, defaultOrder);
+        assertTrue(da.loadExisting());
+        assertEquals(123, da.getInt(7 * 4));
+        assertEquals(456, da.getInt(8 * 4));
+        da.close();
+    }
+
+    @Test
+    public void testMemoryIsReleased()
+    {
+        long before = DirectDataAccess.getAllocatedBytes();
+        DataAccess da = createDataAccess(name);
+        da.create(300);
+        assertEquals(before + 3 * 128, DirectDataAccess.getAllocatedBytes());
+        da.trimTo(200);
+        assertEquals(before + 2 * 128, DirectDataAccess.getAllocatedBytes());
+
+        DataAccess copy = da.copyTo(createDataAccess(name + "2"));
+        assertEquals(before + 4 * 128, DirectDataAccess.getAllocatedBytes());
+        da.close();
+        assertEquals(before + 2 * 128, DirectDataAccess.getAllocatedBytes());
+        copy.close();
+        assertEquals(before, DirectDataAccess.getAllocatedBytes());
+    }
+
+    @Test
+    public void testCopyToDifferentSegmentSize()
+    {
+        long before = DirectDataAccess.getAllocatedBytes();
+        DataAccess da = createDataAccess(name);
+        da.create(300);
+        da.setInt(260, 123);
+
+        DataAccess copy = da.copyTo(createDataAccess(name + "2").setSegmentSize(1024));
+        assertEquals(128, copy.getSegmentSize());
+        assertEquals(before + 6 * 128, DirectDataAccess.getAllocatedBytes());
+        assertEquals(123, copy.getInt(260));
+        da.close();
+        copy.close();
+        assertEquals(before, DirectDataAccess.getAllocatedBytes());
+    }
+
+    @Test
+    public void testFromString()
+    {
+        assertEquals(DAType.DIRECT_STORE, DAType.fromString("DIRECT_STORE"));
+        assertEquals(DAType.DIRECT, DAType.fromString("direct"));
+        assertEquals("DIRECT_STORE", DAType.DIRECT_STORE.toString());
+        assertTrue(new GHDirectory(directory, DAType.DIRECT_STORE).find("test") instanceof DirectDataAccess);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PointList;
+import java.io.File;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Runs all storage tests with the delta varint geometry format.
+ * <p/>
+ * @author Peter Karich
+ */
+public class GraphHopperStorageCompressedGeometryTest extends GraphHopperStorageTest
+{
+    @Override
+    protected GraphStorage newGraph( Directory dir, boolean enabled3D )
+    {
+        return new GraphHopperStorage(dir, encodingManager, enabled3D).setCompressedGeometry(true);
+    }
+
+    @Test
+    public void testZigzagVarint()
+    {
+        for (int value : new int[]
+        {
+            0, 1, -1, 63, -64, 64, 1000000, -1000000, Integer.MAX_VALUE, Integer.MIN_VALUE
+        })
+        {
+            int zigzag = GraphHopperStorage.zigzag(value);
+            assertEquals(value, GraphHopperStorage.unzigzag(zigzag));
+            byte[] bytes = new byte[5];
+            int length = GraphHopperStorage.writeVarint(bytes, 0, zigzag);
+            assertEquals(length, GraphHopperStorage.varintLength(zigzag));
+            assertEquals(zigzag, GraphHopperStorage.readVarint(bytes, 0));
+        }
+        assertEquals(1, GraphHopperStorage.varintLength(GraphHopperStorage.zigzag(-64)));
+        assertEquals(5, GraphHopperStorage.varintLength(GraphHopperStorage.zigzag(Integer.MIN_VALUE)));
+    }
+
+    @Test
+    public void testGeometry3DAndFormatIsKept()
+    {
+        Directory dir = new RAMDirectory(defaultGraphLoc, true);
+        graph = newGraph(dir, true).create(defaultSize);
+        NodeAccess na = graph.getNodeAccess();
+        na.setNode(0, 50, 10, 100);
+        na.setNode(1, 49.9, 10.1, -20);
+        PointList pillars = new PointList(3, true);
+        pillars.add(50.001, 10.02, 90);
+        pillars.add(49.95, 9.98, -400.5);
+        pillars.add(-10, -170, 8000);
+        EdgeIteratorState edge = graph.edge(1, 0, 10, true);
+        edge.setWayGeometry(pillars);
+
+        PointList expected = new PointList(3, true);
+        expected.add(49.9, 10.1, -20);
+        expected.add(pillars);
+        expected.add(50, 10, 100);
+        assertEquals(expected, edge.fetchWayGeometry(3));
+        assertEquals(expected.clone(true), graph.getEdgeProps(edge.getEdge(), 1).fetchWayGeometry(3));
+        graph.flush();
+        graph.close();
+
+        // the stored format wins over the configured one
+        graph = new GraphHopperStorage(new RAMDirectory(defaultGraphLoc, true), encodingManager, true);
+        assertTrue(graph.loadExisting());
+        assertTrue(((GraphHopperStorage) graph).isCompressedGeometry());
+        assertEquals(expected, graph.getEdgeProps(edge.getEdge(), 0).fetchWayGeometry(3));
+    }
+
+    @Test
+    public void testSmallerThanRaw()
+    {
+        int rawSize = fillAndGetGeometryInts(new GraphHopperStorageTest().newGraph(
+                new RAMDirectory(defaultGraphLoc, true), true));
+        Helper.removeDir(new File(defaultGraphLoc));
+        int compressedSize = fillAndGetGeometryInts(newGraph(new RAMDirectory(defaultGraphLoc, true), true));
+        assertTrue(rawSize + " vs. " + compressedSize, rawSize > 1.8 * compressedSize);
+    }
+
+    private int fillAndGetGeometryInts( GraphStorage g )
+    {
+        g.create(defaultSize);
+        NodeAccess na = g.getNodeAccess();
+        for (int i = 0; i < 100; i++)
+        {
+            na.setNode(i, 50 + i * 0.001, 10 + i * 0.001, 100);
+        }
+        for (int i = 1; i < 100; i++)
+        {
+            PointList pillars = new PointList(10, true);
+            for (int j = 1; j <= 10; j++)
+            {
+                pillars.add(50 + (i - 1) * 0.001 + j * 0.0001, 10 + (i - 1) * 0.001 - j * 0.00005, 100 + j);
+            }
+            g.edge(i - 1, i, 10, true).setWayGeometry(pillars);
+        }
+        g.flush();
+        int ints = g.getDirectory().find("geometry").getHeader(0);
+        g.close();
+        return ints;
+    }
+}
@@ -17,8 +17,10 @@
  */
 package com.graphhopper.storage;
 
+import com.graphhopper.routing.util.AllEdgesIterator;
 import com.graphhopper.util.*;
 import com.graphhopper.util.shapes.BBox;
+import gnu.trove.list.array.TIntArrayList;
 import java.io.IOException;
 import static org.junit.Assert.*;
 import org.junit.Test;
@@ -187,6 +189,64 @@ public class GraphHopperStorageTest extends AbstractGraphStorageTester
         graph.close();
     }
 
+    @Test
+    public void testRelabel()
+    {
+        graph = createGraph();
+        initRelabelGraph(graph);
+        ((GraphHopperStorage) graph).relabel(new TIntArrayList(new int[]
+        {
+            4, 3, 2, 1, 0
+        }));
+        checkRelabeledGraph(graph);
+    }
+
+    protected void initRelabelGraph( Graph g )
+    {
+        NodeAccess na = g.getNodeAccess();
+        for (int i = 0; i < 5; i++)
+        {
+            na.setNode(i, 10 + i, 20 - i);
+        }
+        g.edge(0, 1, 10, true).setWayGeometry(Helper.createPointList(10.2, 19.9, 10.6, 19.5)).setName("0-1");
+        g.edge(1, 2, 20, false).setWayGeometry(Helper.createPointList(11.5, 18.5));
+        g.edge(0, 3, 30, true);
+        g.edge(4, 3, 40, false);
+        g.edge(2, 4, 50, true);
+    }
+
+    protected void checkRelabeledGraph( Graph g )
+    {
+        assertEquals(5, g.getNodes());
+        assertEquals(14, g.getNodeAccess().getLatitude(0), 1e-6);
+        assertEquals(10, g.getNodeAccess().getLatitude(4), 1e-6);
+        EdgeExplorer explorer = g.createEdgeExplorer(carOutFilter);
+        assertEquals(GHUtility.asSet(3, 1), GHUtility.getNeighbors(explorer.setBaseNode(4)));
+        assertEquals(GHUtility.asSet(4, 2), GHUtility.getNeighbors(explorer.setBaseNode(3)));
+        assertEquals(GHUtility.asSet(0), GHUtility.getNeighbors(explorer.setBaseNode(2)));
+        assertEquals(GHUtility.asSet(4), GHUtility.getNeighbors(explorer.setBaseNode(1)));
+        assertEquals(GHUtility.asSet(2, 1), GHUtility.getNeighbors(explorer.setBaseNode(0)));
+
+        EdgeIteratorState edge = GHUtility.getEdge(g, 4, 3);
+        assertEquals(10, edge.getDistance(), 1e-6);
+        assertEquals("0-1", edge.getName());
+        assertEquals(Helper.createPointList(10, 20, 10.2, 19.9, 10.6, 19.5, 11, 19), edge.fetchWayGeometry(3));
+        assertEquals(Helper.createPointList(11, 19, 10.6, 19.5, 10.2, 19.9, 10, 20),
+                GHUtility.getEdge(g, 3, 4).fetchWayGeometry(3));
+        assertEquals(Helper.createPointList(11, 19, 11.5, 18.5, 12, 18), GHUtility.getEdge(g, 3, 2).fetchWayGeometry(3));
+        assertEquals(40, GHUtility.getEdge(g, 0, 1).getDistance(), 1e-6);
+
+        // the edges are ordered by their lower node
+        AllEdgesIterator iter = g.getAllEdges();
+        int prevBase = -1;
+        while (iter.next())
+        {
+            assertTrue(iter.getBaseNode() >= prevBase);
+            assertTrue(iter.getBaseNode() < iter.getAdjNode());
+            prevBase = iter.getBaseNode();
+        }
+    }
+
     @Test
     public void testDoThrowExceptionIfDimDoesNotMatch()
     {
@@ -22,6 +22,7 @@ import java.util.Random;
 
 import com.graphhopper.util.EdgeIteratorState;
 import com.graphhopper.util.Helper;
+import gnu.trove.list.array.TIntArrayList;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
@@ -48,6 +49,25 @@ public class GraphHopperStorageWithTurnCostsTest extends GraphHopperStorageTest
         return newGraph(new RAMDirectory(), false);
     }
 
+    @Test
+    @Override
+    public void testRelabel()
+    {
+        graph = createGraph();
+        initRelabelGraph(graph);
+        try
+        {
+            // the turn cost entries reference edge ids
+            ((GraphHopperStorage) graph).relabel(new TIntArrayList(new int[]
+            {
+                4, 3, 2, 1, 0
+            }));
+            assertTrue(false);
+        } catch (IllegalStateException ex)
+        {
+        }
+    }
+
     @Test
     public void testSave_and_fileFormat_withTurnCostEntries() throws IOException
     {
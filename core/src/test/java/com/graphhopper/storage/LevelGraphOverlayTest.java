@@ -0,0 +1,190 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.routing.util.AllEdgesSkipIterator;
+import com.graphhopper.routing.util.DefaultEdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeSkipIterState;
+import com.graphhopper.util.EdgeSkipIterator;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.Helper;
+import java.io.File;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich
+ */
+public class LevelGraphOverlayTest
+{
+    private final String location = "./target/tmp/overlay";
+    private final EncodingManager encodingManager = new EncodingManager("CAR,FOOT");
+    private final FlagEncoder carEncoder = encodingManager.getEncoder("CAR");
+    private final FlagEncoder footEncoder = encodingManager.getEncoder("FOOT");
+
+    @Before
+    public void setUp()
+    {
+        Helper.removeDir(new File(location));
+    }
+
+    @After
+    public void tearDown()
+    {
+        Helper.removeDir(new File(location));
+    }
+
+    GraphStorage createBaseGraph( boolean store )
+    {
+        GraphStorage g = new GraphBuilder(encodingManager).setLocation(location).setStore(store).create();
+        //   3
+        //   |
+        // 0-1-2
+        g.edge(0, 1, 10, true);
+        g.edge(1, 2, 20, true);
+        g.edge(1, 3, 30, false);
+        return g;
+    }
+
+    @Test
+    public void testShortcutsAreStoredPerOverlay()
+    {
+        GraphStorage g = createBaseGraph(false);
+        LevelGraphOverlay car = new LevelGraphOverlay(g, carEncoder, "car").create(100);
+        LevelGraphOverlay foot = new LevelGraphOverlay(g, footEncoder, "foot").create(100);
+
+        EdgeSkipIterState sc = car.shortcut(0, 2);
+        sc.setFlags(carEncoder.setAccess(0, true, false));
+        sc.setWeight(30).setDistance(30);
+        sc.setSkippedEdges(0, 1);
+        assertEquals(3, sc.getEdge());
+        assertTrue(sc.isShortcut());
+        car.setLevel(1, 5);
+
+        assertEquals(4, car.getAllEdges().getCount());
+        assertEquals(3, foot.getAllEdges().getCount());
+        assertEquals(3, g.getAllEdges().getCount());
+        assertEquals(5, car.getLevel(1));
+        assertEquals(0, foot.getLevel(1));
+
+        assertEquals(2, GHUtility.count(car.createEdgeExplorer().setBaseNode(0)));
+        assertEquals(1, GHUtility.count(foot.createEdgeExplorer().setBaseNode(0)));
+        assertEquals(GHUtility.asSet(0, 1), GHUtility.getNeighbors(car.createEdgeExplorer().setBaseNode(2)));
+        assertEquals(GHUtility.asSet(1), GHUtility.getNeighbors(foot.createEdgeExplorer().setBaseNode(2)));
+        assertEquals(GHUtility.asSet(1, 2), GHUtility.getNeighbors(car.createEdgeExplorer().setBaseNode(0)));
+        assertEquals(2, GHUtility.count(car.createEdgeExplorer(new DefaultEdgeFilter(carEncoder, true, false)).setBaseNode(2)));
+
+        EdgeSkipIterator iter = car.createEdgeExplorer().setBaseNode(2);
+        assertTrue(iter.next());
+        assertTrue(iter.isShortcut());
+        assertEquals(0, iter.getAdjNode());
+        assertEquals(30, iter.getWeight(), 1e-6);
+        assertEquals(30, iter.getDistance(), 1e-6);
+        assertEquals(0, iter.getSkippedEdge1());
+        assertEquals(1, iter.getSkippedEdge2());
+        assertFalse(carEncoder.isBool(iter.getFlags(), FlagEncoder.K_FORWARD));
+        assertTrue(carEncoder.isBool(iter.getFlags(), FlagEncoder.K_BACKWARD));
+        assertTrue(iter.next());
+        assertFalse(iter.isShortcut());
+        assertEquals(1, iter.getAdjNode());
+        assertEquals(20, iter.getDistance(), 1e-6);
+        assertFalse(iter.next());
+    }
+
+    @Test
+    public void testGetEdgeProps()
+    {
+        GraphStorage g = createBaseGraph(false);
+        LevelGraphOverlay car = new LevelGraphOverlay(g, carEncoder, "car").create(100);
+        car.shortcut(0, 2).setFlags(carEncoder.setAccess(0, true, true));
+
+        EdgeSkipIterState edge = car.getEdgeProps(1, 2);
+        assertFalse(edge.isShortcut());
+        assertEquals(1, edge.getBaseNode());
+        assertEquals(EdgeIterator.NO_EDGE, edge.getSkippedEdge1());
+
+        edge = car.getEdgeProps(3, 0);
+        assertTrue(edge.isShortcut());
+        assertEquals(2, edge.getBaseNode());
+        assertEquals(0, edge.getAdjNode());
+        assertTrue(carEncoder.isBool(edge.getFlags(), FlagEncoder.K_FORWARD));
+        assertTrue(carEncoder.isBool(edge.getFlags(), FlagEncoder.K_BACKWARD));
+        assertNull(car.getEdgeProps(3, 1));
+
+        // a new edge in the base graph would collide with the shortcut ids
+        g.edge(2, 3, 10, true);
+        try
+        {
+            car.shortcut(1, 3);
+            assertTrue(false);
+        } catch (IllegalStateException ex)
+        {
+        }
+    }
+
+    @Test
+    public void testAllEdges()
+    {
+        GraphStorage g = createBaseGraph(false);
+        LevelGraphOverlay car = new LevelGraphOverlay(g, carEncoder, "car").create(100);
+        car.shortcut(0, 2).setWeight(3);
+        car.shortcut(3, 2).setWeight(4);
+
+        AllEdgesSkipIterator iter = car.getAllEdges();
+        assertEquals(5, iter.getCount());
+        int shortcuts = 0;
+        int edges = 0;
+        while (iter.next())
+        {
+            assertEquals(edges, iter.getEdge());
+            if (iter.isShortcut())
+                shortcuts++;
+            edges++;
+        }
+        assertEquals(5, edges);
+        assertEquals(2, shortcuts);
+    }
+
+    @Test
+    public void testFlushAndLoad()
+    {
+        GraphStorage g = createBaseGraph(true);
+        LevelGraphOverlay car = new LevelGraphOverlay(g, carEncoder, "car").create(100);
+        car.shortcut(0, 2).setWeight(3).setDistance(30);
+        car.setLevel(3, 7);
+        g.flush();
+        car.flush();
+        car.close();
+        g.close();
+
+        g = new GraphBuilder(encodingManager).setLocation(location).setStore(true).build();
+        assertTrue(g.loadExisting());
+        car = new LevelGraphOverlay(g, carEncoder, "car");
+        assertTrue(car.loadExisting());
+        assertEquals(1, car.getShortcuts());
+        assertEquals(7, car.getLevel(3));
+        assertEquals(3, car.getEdgeProps(3, 2).getWeight(), 1e-6);
+        assertFalse(new LevelGraphOverlay(g, footEncoder, "foot").loadExisting());
+        g.close();
+    }
+}
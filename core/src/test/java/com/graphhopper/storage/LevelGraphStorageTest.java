@@ -23,8 +23,11 @@ import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.routing.util.FlagEncoder;
 import com.graphhopper.routing.util.LevelEdgeFilter;
 import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
 import com.graphhopper.util.EdgeSkipIterState;
+import com.graphhopper.util.EdgeSkipIterator;
 import com.graphhopper.util.GHUtility;
+import gnu.trove.list.array.TIntArrayList;
 import static org.junit.Assert.*;
 import org.junit.Test;
 
@@ -153,6 +156,55 @@ public class LevelGraphStorageTest extends GraphHopperStorageTest
         assertEquals(0, GHUtility.count(carOutExplorer.setBaseNode(2)));
     }
 
+    @Test
+    public void testRelabelShortcuts()
+    {
+        LevelGraphStorage g = createGraph();
+        int edge01 = g.edge(0, 1, 10, true).getEdge();
+        int edge12 = g.edge(1, 2, 20, true).getEdge();
+        g.edge(2, 3, 30, true);
+        EdgeSkipIterState sc = g.shortcut(0, 2);
+        sc.setDistance(30).setFlags(carEncoder.setProperties(10, true, false));
+        sc.setWeight(3);
+        sc.setSkippedEdges(edge01, edge12);
+        for (int i = 0; i < 4; i++)
+        {
+            g.setLevel(i, 10 + i);
+        }
+
+        g.relabel(new TIntArrayList(new int[]
+        {
+            3, 2, 1, 0
+        }));
+        for (int i = 0; i < 4; i++)
+        {
+            assertEquals(10 + i, g.getLevel(3 - i));
+        }
+
+        EdgeSkipIterator iter = g.createEdgeExplorer().setBaseNode(3);
+        EdgeSkipIterState found = null;
+        while (iter.next())
+        {
+            if (iter.isShortcut())
+                found = (EdgeSkipIterState) iter.detach(false);
+        }
+        assertNotNull(found);
+        assertEquals(1, found.getAdjNode());
+        assertEquals(3, found.getWeight(), 1e-3);
+        assertTrue(carEncoder.isBool(found.getFlags(), FlagEncoder.K_FORWARD));
+        assertFalse(carEncoder.isBool(found.getFlags(), FlagEncoder.K_BACKWARD));
+        // the shortcut stays behind the edges
+        assertEquals(3, found.getEdge());
+
+        EdgeIteratorState skipped1 = g.getEdgeProps(found.getSkippedEdge1(), 2);
+        assertEquals(3, skipped1.getBaseNode());
+        assertEquals(10, skipped1.getDistance(), 1e-6);
+        assertFalse(((EdgeSkipIterState) skipped1).isShortcut());
+        EdgeIteratorState skipped2 = g.getEdgeProps(found.getSkippedEdge2(), 1);
+        assertEquals(2, skipped2.getBaseNode());
+        assertEquals(20, skipped2.getDistance(), 1e-6);
+    }
+
     @Test
     public void testGetWeight()
     {
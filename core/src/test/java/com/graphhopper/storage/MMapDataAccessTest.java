@@ -31,6 +31,25 @@ public class MMapDataAccessTest extends DataAccessTest
         return new MMapDataAccess(name, directory, defaultOrder, true).setSegmentSize(128);
     }
 
+    @Test
+    public void testWarmUp()
+    {
+        MMapDataAccess da = (MMapDataAccess) createDataAccess(name);
+        da.create(128 * 10);
+        da.setInt(9 * 128, 123);
+        da.flush();
+        da.close();
+
+        da = (MMapDataAccess) createDataAccess(name);
+        assertTrue(da.loadExisting());
+        da.warmUp(3);
+        // residency depends on the page cache of the OS, so only check that it is reported
+        assertTrue(da.getResidentSegments() > 0);
+        assertTrue(da.getResidentSegments() <= 10);
+        assertEquals(123, da.getInt(9 * 128));
+        da.close();
+    }
+
     @Test
     public void textMixRAM2MMAP()
     {
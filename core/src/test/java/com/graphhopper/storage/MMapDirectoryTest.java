@@ -17,6 +17,10 @@
  */
 package com.graphhopper.storage;
 
+import java.util.Arrays;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
 /**
  *
  * @author Peter Karich
@@ -28,4 +32,19 @@ public class MMapDirectoryTest extends AbstractDirectoryTester
     {
         return new MMapDirectory(location);
     }
+
+    @Test
+    public void testWarmUpSynched()
+    {
+        GHDirectory dir = new MMapDirectory(location);
+        DataAccess da = dir.find("synched", new DAType(DAType.MMAP, true));
+        da.create(128 * 10);
+        da.setInt(9 * 128, 123);
+        da.flush();
+
+        dir.warmUp(Arrays.asList("synched", "unknown"), 2);
+        assertTrue(dir.getResidency().containsKey("synched"));
+        assertEquals(123, da.getInt(9 * 128));
+        da.close();
+    }
 }
@@ -17,6 +17,14 @@
  */
 package com.graphhopper.storage;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
 /**
  *
  * @author Peter Karich
@@ -28,4 +36,58 @@ public class RAMDirectoryTest extends AbstractDirectoryTester
     {
         return new RAMDirectory(location, true);
     }
+
+    @Test
+    public void testLoadExisting() throws IOException
+    {
+        GHDirectory dir = (GHDirectory) createDir();
+        // int based and byte based, stale is not used anymore
+        for (String name : Arrays.asList("nodes", "other", "stale"))
+        {
+            DataAccess da = dir.find(name).setSegmentSize(128).create(128 * 50);
+            for (int i = 0; i < 128 * 50 / 4; i++)
+            {
+                da.setInt(i * 4, i);
+            }
+            da.setHeader(0, 42);
+            da.flush();
+            da.close();
+        }
+        FileWriter writer = new FileWriter(new File(location, "report.json"));
+        writer.write("{\"no\":\"dataaccess file, but longer than the header\"" + new String(new char[100]) + "}");
+        writer.close();
+
+        dir = (GHDirectory) createDir();
+        List<String> loaded = dir.loadExisting(Arrays.asList("nodes", "other", "missing", "report.json"), 3);
+        assertEquals(2, loaded.size());
+        assertTrue(loaded.contains("nodes"));
+        assertTrue(loaded.contains("other"));
+        for (String name : loaded)
+        {
+            DataAccess da = dir.find(name);
+            assertEquals(50, da.getSegments());
+            // the storages call loadExisting as usual
+            assertTrue(da.loadExisting());
+            assertEquals(42, da.getHeader(0));
+            for (int i = 0; i < 128 * 50 / 4; i++)
+            {
+                assertEquals(i, da.getInt(i * 4));
+            }
+            try
+            {
+                da.loadExisting();
+                assertTrue(false);
+            } catch (IllegalStateException ex)
+            {
+            }
+        }
+
+        // nothing left to load
+        assertTrue(dir.loadExisting(3).isEmpty());
+
+        // only the objects found by the storages are loaded
+        dir = (GHDirectory) createDir();
+        dir.find("nodes");
+        assertEquals(Arrays.asList("nodes"), dir.loadExisting(3));
+    }
 }
@@ -31,19 +31,66 @@ public class UnsafeDataAccessTest extends DataAccessTest
     @Override
     public DataAccess createDataAccess( String name )
     {
-        return new UnsafeDataAccess(name, directory, defaultOrder).setSegmentSize(128);
+        return new UnsafeDataAccess(name, directory, true, defaultOrder).setSegmentSize(128);
     }
 
-    @Override
-    public void testExceptionIfNoEnsureCapacityWasCalled()
+    @Test
+    public void testParallelLoadFlush()
     {
-        // SKIP as unsafe failes with SIGSEGV and not with an exception!
+        UnsafeDataAccess da = (UnsafeDataAccess) createDataAccess(name);
+        da.setThreads(3).create(128 * 10);
+        for (int i = 0; i < 128 * 10 / 4; i++)
+        {
+            da.setInt(i * 4, i * 7);
+        }
+        da.flush();
+        da.close();
+
+        // the file is compatible to RAM_STORE
+        DataAccess ramDA = new RAMDataAccess(name, directory, true, defaultOrder);
+        assertTrue(ramDA.loadExisting());
+        assertEquals(10, ramDA.getSegments());
+        ramDA.setInt(9 * 4, -1);
+        ramDA.flush();
+        ramDA.close();
+
+        da = (UnsafeDataAccess) createDataAccess(name);
+        assertTrue(da.setThreads(4).loadExisting());
+        assertEquals(10, da.getSegments());
+        for (int i = 0; i < 128 * 10 / 4; i++)
+        {
+            assertEquals(i == 9 ? -1 : i * 7, da.getInt(i * 4));
+        }
+        da.close();
     }
 
-    @Override
-    public void testBoundsCheck()
+    @Test
+    public void testSegmentedGrowthAndCopy()
     {
-        // SKIP as unsafe has no bounds checks
+        DataAccess da = createDataAccess(name);
+        da.create(128);
+        da.setInt(31 * 4, 123);
+        da.ensureCapacity(128 * 3);
+        assertEquals(123, da.getInt(31 * 4));
+        assertEquals(0, da.getInt(128 * 3 - 4));
+        da.setInt(128 * 3 - 4, 456);
+        byte[] bytes = new byte[]
+        {
+            1, 2, 3, 4, 5, 6
+        };
+        da.setBytes(128 * 2 - 3, bytes, bytes.length);
+        da.setHeader(0, 7);
+
+        DataAccess copy = da.copyTo(createDataAccess(name + "2"));
+        da.close();
+        assertEquals(3, copy.getSegments());
+        assertEquals(7, copy.getHeader(0));
+        assertEquals(123, copy.getInt(31 * 4));
+        assertEquals(456, copy.getInt(128 * 3 - 4));
+        byte[] result = new byte[bytes.length];
+        copy.getBytes(128 * 2 - 3, result, result.length);
+        assertArrayEquals(bytes, result);
+        copy.close();
     }
 
     @Test
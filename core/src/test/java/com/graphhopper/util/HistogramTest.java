@@ -0,0 +1,64 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.util;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich
+ */
+public class HistogramTest
+{
+    @Test
+    public void testBuckets()
+    {
+        for (long value = 0; value < 100000; value++)
+        {
+            int index = Histogram.getIndex(value);
+            assertTrue(value + " " + index, value <= Histogram.getUpperBound(index));
+            if (index > 0)
+                assertTrue(value + " " + index, value > Histogram.getUpperBound(index - 1));
+
+            // at most 12.5% too high
+            assertTrue(Histogram.getUpperBound(index) <= value * 1.125 + 1);
+        }
+
+        assertEquals(Long.MAX_VALUE, Histogram.getUpperBound(Histogram.getIndex(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void testPercentile()
+    {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getPercentile(0.5));
+        for (int i = 1; i <= 1000; i++)
+        {
+            histogram.record(i);
+        }
+        histogram.record(-5);
+
+        assertEquals(1001, histogram.getCount());
+        assertEquals(1000, histogram.getMax());
+        assertEquals(500500, histogram.getSum());
+        assertEquals(500, histogram.getPercentile(0.5), 500 * 0.125);
+        assertEquals(990, histogram.getPercentile(0.99), 990 * 0.125);
+        assertEquals(1000, histogram.getPercentile(1));
+        assertEquals(0, histogram.getPercentile(0));
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.util;
+
+import com.graphhopper.storage.Directory;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.storage.StorableProperties;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich
+ */
+public class ImportReportTest
+{
+    @Test
+    public void testStagesAndJSON()
+    {
+        Directory dir = new RAMDirectory();
+        dir.find("nodes").create(1000);
+        dir.find("edges");
+        dir.find("closed").create(100);
+        dir.find("closed").close();
+
+        ImportReport report = new ImportReport();
+        report.start("write \"graph\"").put("nodes", 12).stop(dir);
+        ImportReport.Stage stage = report.getStage("write \"graph\"");
+        assertEquals(12, stage.getCount("nodes"));
+        assertEquals(-1, stage.getCount("edges"));
+        assertTrue(stage.getWallNanos() >= 0);
+        // closed objects are skipped, not yet created ones are included
+        assertEquals(2, stage.getDataAccessBytes().size());
+        assertEquals(0, (long) stage.getDataAccessBytes().get("edges"));
+        long bytes = stage.getDataAccessBytes().get("nodes");
+        assertTrue(bytes >= 1000);
+
+        String json = report.toJSON();
+        assertTrue(json, json.contains("\"stages\":{\"write \\\"graph\\\"\":{\"wall_ms\":"));
+        assertTrue(json, json.contains("\"counts\":{\"nodes\":12},\"data_access_bytes\":{\"edges\":0,\"nodes\":" + bytes + "}}"));
+
+        StorableProperties properties = new StorableProperties(dir);
+        report.store(properties);
+        assertEquals("12", properties.get("import.report.write \"graph\".counts.nodes"));
+        assertEquals(bytes + "", properties.get("import.report.write \"graph\".data_access_bytes.nodes"));
+    }
+}
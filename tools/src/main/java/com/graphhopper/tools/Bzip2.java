@@ -17,14 +17,17 @@
  */
 package com.graphhopper.tools;
 
+import com.graphhopper.reader.ParallelBZip2InputStream;
 import com.graphhopper.util.Helper;
+import java.io.BufferedInputStream;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import java.io.InputStream;
 
 /**
- * Simple bzip2 uncompression. TODO integrate with OSMReader!
+ * Simple bzip2 uncompression on all cores. OSMInputFile reads .bz2 files directly via
+ * ParallelBZip2InputStream too.
  */
 public class Bzip2
 {
@@ -42,9 +45,9 @@ public class Bzip2
         }
         String toFile = Helper.pruneFileEnd(fromFile);
 
-        FileInputStream in = new FileInputStream(fromFile);
+        InputStream in = new BufferedInputStream(new FileInputStream(fromFile), 50000);
         FileOutputStream out = new FileOutputStream(toFile);
-        BZip2CompressorInputStream bzIn = new BZip2CompressorInputStream(in);
+        InputStream bzIn = new ParallelBZip2InputStream(in, Runtime.getRuntime().availableProcessors());
         try
         {
             final byte[] buffer = new byte[1024 * 8];
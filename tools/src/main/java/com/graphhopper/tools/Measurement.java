@@ -20,20 +20,33 @@ package com.graphhopper.tools;
 import com.graphhopper.GHRequest;
 import com.graphhopper.GHResponse;
 import com.graphhopper.GraphHopper;
+import com.graphhopper.reader.OSMElement;
+import com.graphhopper.reader.OSMInputFile;
+import com.graphhopper.routing.AlgorithmOptions;
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
 import com.graphhopper.routing.util.*;
 import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.GHDirectory;
 import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.GraphHopperStorage;
 import com.graphhopper.storage.GraphStorage;
+import com.graphhopper.storage.LevelGraph;
+import com.graphhopper.storage.LevelGraphStorage;
 import com.graphhopper.storage.NodeAccess;
 import com.graphhopper.storage.RAMDirectory;
 import com.graphhopper.util.CmdArgs;
 import com.graphhopper.util.Constants;
 import com.graphhopper.util.DistanceCalc;
 import com.graphhopper.util.DistanceCalcEarth;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.GHUtility;
 import com.graphhopper.util.Helper;
 import com.graphhopper.util.MiniPerfTest;
 import com.graphhopper.util.StopWatch;
 import com.graphhopper.util.shapes.BBox;
+import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
@@ -106,6 +119,13 @@ public class Measurement
         seed = args.getLong("measurement.seed", 123);
         String gitCommit = args.get("measurement.gitinfo", "");
         int count = args.getInt("measurement.count", 5000);
+        // compare the single-threaded CH preparation with the parallel one, disabled by default
+        int prepareThreads = args.getInt("measurement.prepareThreads", 0);
+        // measure how fast the OSM file is read and decoded (without creating a graph), disabled by default
+        String osmFile = args.get("measurement.osmFile", "");
+        int readThreads = args.getInt("osmreader.workerThreads", -1);
+        // compare the edge iteration on copies of the graph, e.g. RAM,RAM_INT,MMAP,UNSAFE, disabled by default
+        String daTypes = args.get("measurement.dataAccessTypes", "");
 
         MeasureHopper hopper = new MeasureHopper();
         hopper.forDesktop().setEnableInstructions(false);
@@ -123,18 +143,34 @@ public class Measurement
             maxNode = g.getNodes();
             printGraphDetails(g);
             printLocationIndexQuery(g, hopper.getLocationIndex(), count);
+            if (!Helper.isEmpty(daTypes))
+                printEdgeIteration(g, daTypes, count);
 
             // Route via dijkstrabi. Normal routing takes a lot of time => smaller query number than CH
             // => values are not really comparable to routingCH as e.g. the mean distance etc is different            
             hopper.setCHEnable(false);
-            printTimeOfRouteQuery(hopper, count / 20, "routing", vehicleStr);
+            printTimeOfRouteQuery(hopper, count / 20, "routing", vehicleStr, false);
 
             System.gc();
 
+            // same queries but with the search state reused per thread, see DijkstraBidirectionPrimitive
+            printTimeOfRouteQuery(hopper, count / 20, "routingReuse", vehicleStr, true);
+
+            System.gc();
+
+            if (prepareThreads > 1)
+            {
+                printPrepareCH(hopper, g, 1);
+                printPrepareCH(hopper, g, prepareThreads);
+            }
+
+            if (!Helper.isEmpty(osmFile))
+                printReadOSM(osmFile, readThreads);
+
             // route via CH. do preparation before                        
             hopper.setCHEnable(true);
             hopper.doPostProcessing();
-            printTimeOfRouteQuery(hopper, count, "routingCH", vehicleStr);
+            printTimeOfRouteQuery(hopper, count, "routingCH", vehicleStr, false);
             logger.info("store into " + propLocation);
         } catch (Exception ex)
         {
@@ -169,6 +205,110 @@ public class Measurement
         put("graph.encoder", g.getEncodingManager().getSingle().toString());
     }
 
+    /**
+     * Prepares a copy of the unprepared graph with the specified number of threads.
+     */
+    private void printPrepareCH( GraphHopper hopper, GraphStorage g, int threads )
+    {
+        if (!(g instanceof LevelGraph))
+            throw new IllegalStateException("Graph has to be a LevelGraph to measure the CH preparation");
+
+        GraphStorage copy = GHUtility.newStorage(g);
+        g.copyTo(copy);
+        FlagEncoder encoder = g.getEncodingManager().getSingle();
+        Weighting weighting = hopper.createWeighting(new WeightingMap(hopper.getCHWeighting()), encoder);
+        PrepareContractionHierarchies prepare = new PrepareContractionHierarchies((LevelGraph) copy, encoder,
+                weighting, hopper.getTraversalMode()).setThreads(threads);
+        System.gc();
+        StopWatch sw = new StopWatch().start();
+        prepare.doWork();
+        String prefix = "prepareCH.threads" + threads;
+        put(prefix + ".time", sw.stop().getTime());
+        put(prefix + ".shortcuts", prepare.getShortcuts());
+        copy.close();
+    }
+
+    private void printReadOSM( String osmFile, int threads ) throws Exception
+    {
+        StopWatch sw = new StopWatch().start();
+        long nodes = 0, ways = 0, relations = 0;
+        OSMInputFile in = new OSMInputFile(new File(osmFile)).setWorkerThreads(threads).open();
+        try
+        {
+            OSMElement item;
+            while ((item = in.getNext()) != null)
+            {
+                if (item.isType(OSMElement.NODE))
+                    nodes++;
+                else if (item.isType(OSMElement.WAY))
+                    ways++;
+                else
+                    relations++;
+            }
+        } finally
+        {
+            in.close();
+        }
+        float seconds = sw.stop().getSeconds();
+        put("readOSM.time", sw.getTime());
+        put("readOSM.nodes", nodes);
+        put("readOSM.ways", ways);
+        put("readOSM.relations", relations);
+        put("readOSM.elementsPerSecond", (long) ((nodes + ways + relations) / Math.max(seconds, 0.001f)));
+    }
+
+    /**
+     * Measures EdgeExplorer.setBaseNode and EdgeIterator.next for a copy of the graph per DataAccess
+     * type. RAM_INT uses the int based DataAccess for nodes and edges, RAM the byte based one.
+     */
+    private void printEdgeIteration( GraphStorage g, String daTypes, int count )
+    {
+        File folder = new File(System.getProperty("java.io.tmpdir"), "gh-measurement-da");
+        for (String daTypeStr : daTypes.split(","))
+        {
+            daTypeStr = daTypeStr.trim().toUpperCase();
+            Helper.removeDir(folder);
+            DAType daType = DAType.fromString(daTypeStr);
+            GHDirectory dir = new GHDirectory(folder.getAbsolutePath(), daType);
+            if (!daTypeStr.contains("INT"))
+            {
+                dir.put("edges", daType);
+                dir.put("nodes", daType);
+            }
+            boolean is3D = g.getNodeAccess().is3D();
+            GraphStorage copy = g instanceof LevelGraph
+                    ? new LevelGraphStorage(dir, g.getEncodingManager(), is3D)
+                    : new GraphHopperStorage(dir, g.getEncodingManager(), is3D);
+            GHUtility.clone(g, copy);
+
+            final EdgeExplorer explorer = copy.createEdgeExplorer();
+            final Random rand = new Random(seed);
+            MiniPerfTest miniPerf = new MiniPerfTest()
+            {
+                @Override
+                public int doCalc( boolean warmup, int run )
+                {
+                    int sum = 0;
+                    // some consecutive nodes as in a search
+                    int node = rand.nextInt(maxNode);
+                    for (int i = 0; i < 10; i++)
+                    {
+                        EdgeIterator iter = explorer.setBaseNode((node + i) % maxNode);
+                        while (iter.next())
+                        {
+                            sum += iter.getAdjNode();
+                        }
+                    }
+                    return sum;
+                }
+            }.setIterations(count * 10).start();
+
+            print("edgeIteration." + daTypeStr, miniPerf);
+            copy.close();
+        }
+        Helper.removeDir(folder);
+    }
+
     private void printLocationIndexQuery( Graph g, final LocationIndex idx, int count )
     {
         count *= 2;
@@ -194,7 +334,8 @@ public class Measurement
         print("location2id", miniPerf);
     }
 
-    private void printTimeOfRouteQuery( final GraphHopper hopper, int count, String prefix, final String vehicle )
+    private void printTimeOfRouteQuery( final GraphHopper hopper, int count, String prefix, final String vehicle,
+            final boolean reuseSearchState )
     {
         final Graph g = hopper.getGraph();
         final AtomicLong maxDistance = new AtomicLong(0);
@@ -224,6 +365,7 @@ public class Measurement
                 GHRequest req = new GHRequest(fromLat, fromLon, toLat, toLon).
                         setWeighting("fastest").
                         setVehicle(vehicle);
+                req.getHints().put(AlgorithmOptions.REUSE_SEARCH_STATE, reuseSearchState);
                 GHResponse res;
                 try
                 {
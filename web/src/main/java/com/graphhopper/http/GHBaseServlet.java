@@ -17,7 +17,14 @@
  */
 package com.graphhopper.http;
 
+import com.graphhopper.util.shapes.GHPoint;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import javax.inject.Named;
 import javax.inject.Inject;
 import javax.servlet.http.HttpServlet;
@@ -40,44 +47,82 @@ public class GHBaseServlet extends HttpServlet
     private boolean jsonpAllowed;
 
     protected void writeJson( HttpServletRequest req, HttpServletResponse res, JSONObject json ) throws JSONException, IOException
+    {
+        String callbackName = initJsonResponse(req, res);
+        if (callbackName == null)
+            return;
+
+        String str = isPrettyJson(req) ? json.toString(2) : json.toString();
+        if (callbackName.isEmpty())
+            writeResponse(res, str);
+        else
+            writeResponse(res, callbackName + "(" + str + ")");
+    }
+
+    /**
+     * Streams the map directly to the output stream without creating a JSONObject and a String
+     * first. The output is identical to writeJson(req, res, new JSONObject(map)), only for pretty
+     * printing the JSONObject is still created.
+     */
+    protected void writeJson( HttpServletRequest req, HttpServletResponse res, Map<String, Object> map ) throws JSONException, IOException
+    {
+        if (isPrettyJson(req))
+        {
+            writeJson(req, res, new JSONObject(map));
+            return;
+        }
+
+        String callbackName = initJsonResponse(req, res);
+        if (callbackName == null)
+            return;
+
+        res.setStatus(SC_OK);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(res.getOutputStream(), "UTF-8"));
+        if (!callbackName.isEmpty())
+            writer.write(callbackName + "(");
+
+        new JsonWriter(writer).writeValue(map);
+        if (!callbackName.isEmpty())
+            writer.write(")");
+
+        writer.flush();
+    }
+
+    protected boolean isPrettyJson( HttpServletRequest req )
+    {
+        return getBooleanParam(req, "debug", false) || getBooleanParam(req, "pretty", false);
+    }
+
+    /**
+     * Sets the content type of the response.
+     * <p/>
+     * @return the callback name for jsonp, an empty string for plain json or null if an error was
+     * sent
+     */
+    private String initJsonResponse( HttpServletRequest req, HttpServletResponse res ) throws IOException
     {
         String type = getParam(req, "type", "json");
         res.setCharacterEncoding("UTF-8");
-        boolean debug = getBooleanParam(req, "debug", false) || getBooleanParam(req, "pretty", false);
         if ("jsonp".equals(type))
         {
             res.setContentType("application/javascript");
             if (!jsonpAllowed)
             {
                 res.sendError(SC_BAD_REQUEST, "Server is not configured to allow jsonp!");
-                return;
+                return null;
             }
 
             String callbackName = getParam(req, "callback", null);
             if (callbackName == null)
             {
                 res.sendError(SC_BAD_REQUEST, "No callback provided, necessary if type=jsonp");
-                return;
-            }
-
-            if (debug)
-            {
-                writeResponse(res, callbackName + "(" + json.toString(2) + ")");
-            } else
-            {
-                writeResponse(res, callbackName + "(" + json.toString() + ")");
-            }
-        } else
-        {
-            res.setContentType("application/json");
-            if (debug)
-            {
-                writeResponse(res, json.toString(2));
-            } else
-            {
-                writeResponse(res, json.toString());
+                return null;
             }
+            return callbackName;
         }
+
+        res.setContentType("application/json");
+        return "";
     }
 
     void returnError( HttpServletResponse res, String errorMessage ) throws IOException
@@ -104,6 +149,24 @@ public class GHBaseServlet extends HttpServlet
         return new String[0];
     }
 
+    protected List<GHPoint> getPoints( HttpServletRequest req, String key )
+    {
+        String[] pointsAsStr = getParams(req, key);
+        final List<GHPoint> infoPoints = new ArrayList<GHPoint>(pointsAsStr.length);
+        for (String str : pointsAsStr)
+        {
+            String[] fromStrs = str.split(",");
+            if (fromStrs.length == 2)
+            {
+                GHPoint place = GHPoint.parse(str);
+                if (place != null)
+                    infoPoints.add(place);
+            }
+        }
+
+        return infoPoints;
+    }
+
     protected long getLongParam( HttpServletRequest req, String string, long _default )
     {
         try
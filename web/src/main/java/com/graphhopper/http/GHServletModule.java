@@ -62,7 +62,13 @@ public class GHServletModule extends ServletModule
         serve("/info*").with(InfoServlet.class);
         bind(InfoServlet.class).in(Singleton.class);
 
+        serve("/metrics*").with(MetricsServlet.class);
+        bind(MetricsServlet.class).in(Singleton.class);
+
         serve("/route*").with(GraphHopperServlet.class);
         bind(GraphHopperServlet.class).in(Singleton.class);
+
+        serve("/matrix*").with(MatrixServlet.class);
+        bind(MatrixServlet.class).in(Singleton.class);
     }
 }
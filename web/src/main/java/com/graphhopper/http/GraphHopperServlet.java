@@ -20,15 +20,21 @@ package com.graphhopper.http;
 import com.graphhopper.GHRequest;
 import com.graphhopper.GraphHopper;
 import com.graphhopper.GHResponse;
+import com.graphhopper.RouteBatchListener;
 import com.graphhopper.routing.util.FlagEncoder;
 import com.graphhopper.routing.util.WeightingMap;
 import com.graphhopper.util.*;
 import com.graphhopper.util.Helper;
+import com.graphhopper.util.shapes.BBox;
 import com.graphhopper.util.shapes.GHPoint;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.inject.Inject;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -40,7 +46,10 @@ import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
+import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
@@ -74,18 +83,17 @@ public class GraphHopperServlet extends GHBaseServlet
 
     void writePath( HttpServletRequest req, HttpServletResponse res ) throws Exception
     {
-        List<GHPoint> infoPoints = getPoints(req);
+        List<GHPoint> infoPoints = getPoints(req, "point");
 
-        // we can reduce the path length based on the maximum differences to the original coordinates
-        double minPathPrecision = getDoubleParam(req, "way_point_max_distance", 1d);
-        boolean writeGPX = "gpx".equalsIgnoreCase(getParam(req, "type", "json"));
+        String type = getParam(req, "type", "json");
+        boolean writeGPX = "gpx".equalsIgnoreCase(type);
+        boolean writeProtobuf = "protobuf".equalsIgnoreCase(type);
         boolean enableInstructions = writeGPX || getBooleanParam(req, "instructions", true);
         boolean calcPoints = getBooleanParam(req, "calc_points", true);
         boolean elevation = getBooleanParam(req, "elevation", false);
         String vehicleStr = getParam(req, "vehicle", "CAR").toUpperCase();
         String weighting = getParam(req, "weighting", "fastest");
         String algoStr = getParam(req, "algorithm", "");
-        String localeStr = getParam(req, "locale", "en");
 
         StopWatch sw = new StopWatch().start();
         GHResponse ghRsp;
@@ -97,20 +105,7 @@ public class GraphHopperServlet extends GHBaseServlet
             ghRsp = new GHResponse().addError(new IllegalArgumentException("Elevation not supported!"));
         } else
         {
-            FlagEncoder algoVehicle = hopper.getEncodingManager().getEncoder(vehicleStr);
-            GHRequest request = new GHRequest(infoPoints);
-
-            initHints(request, req.getParameterMap());
-            request.setVehicle(algoVehicle.toString()).
-                    setWeighting(weighting).
-                    setAlgorithm(algoStr).
-                    setLocale(localeStr).
-                    getHints().
-                    put("calcPoints", calcPoints).
-                    put("instructions", enableInstructions).
-                    put("wayPointMaxDistance", minPathPrecision);
-
-            ghRsp = hopper.route(request);
+            ghRsp = hopper.route(createRequest(req, infoPoints, enableInstructions));
         }
 
         float took = sw.stop().getSeconds();
@@ -127,8 +122,150 @@ public class GraphHopperServlet extends GHBaseServlet
 
         if (writeGPX)
             writeResponse(res, createGPXString(req, res, ghRsp));
+        else if (writeProtobuf)
+            writeProtobuf(res, ghRsp, took, calcPoints, enableInstructions, elevation);
         else
-            writeJson(req, res, new JSONObject(createJson(req, ghRsp, took)));
+            writeJson(req, res, createJson(req, ghRsp, took, !isPrettyJson(req)));
+    }
+
+    /**
+     * Calculates the routes of many requests at once. The requests are posted as JSON like
+     * {"requests": [{"point": ["lat,lon", "lat,lon"]}, ...]}, all other parameters are specified in
+     * the URL like for GET and apply to all requests. The responses are streamed as JSON array as
+     * soon as they are calculated, so their order is arbitrary and every response contains the
+     * index of its request. If the batch fails after the streaming started the array is closed
+     * with an element without index containing the error.
+     */
+    @Override
+    public void doPost( HttpServletRequest req, HttpServletResponse res ) throws ServletException, IOException
+    {
+        try
+        {
+            writeBatch(req, res);
+        } catch (IllegalArgumentException ex)
+        {
+            writeError(res, SC_BAD_REQUEST, ex.getMessage());
+        } catch (Exception ex)
+        {
+            logger.error("Error while executing batch request: " + req.getQueryString(), ex);
+            writeError(res, SC_INTERNAL_SERVER_ERROR, "Problem occured:" + ex.getMessage());
+        }
+    }
+
+    void writeBatch( final HttpServletRequest req, HttpServletResponse res ) throws Exception
+    {
+        String vehicleStr = getParam(req, "vehicle", "CAR").toUpperCase();
+        if (!hopper.getEncodingManager().supports(vehicleStr))
+            throw new IllegalArgumentException("Vehicle not supported: " + vehicleStr);
+        if (getBooleanParam(req, "elevation", false) && !hopper.hasElevation())
+            throw new IllegalArgumentException("Elevation not supported!");
+
+        JSONArray jsonRequests;
+        try
+        {
+            jsonRequests = new JSONObject(new JSONTokener(req.getReader())).getJSONArray("requests");
+        } catch (JSONException ex)
+        {
+            throw new IllegalArgumentException("Cannot parse batch request: " + ex.getMessage());
+        }
+
+        boolean enableInstructions = getBooleanParam(req, "instructions", true);
+        List<GHRequest> requests = new ArrayList<GHRequest>(jsonRequests.length());
+        for (int i = 0; i < jsonRequests.length(); i++)
+        {
+            JSONArray jsonPoints = jsonRequests.getJSONObject(i).getJSONArray("point");
+            List<GHPoint> points = new ArrayList<GHPoint>(jsonPoints.length());
+            for (int j = 0; j < jsonPoints.length(); j++)
+            {
+                GHPoint point = GHPoint.parse(jsonPoints.getString(j));
+                if (point == null)
+                    throw new IllegalArgumentException("Cannot parse point " + j + " of request " + i
+                            + ": " + jsonPoints.getString(j));
+                points.add(point);
+            }
+            requests.add(createRequest(req, points, enableInstructions));
+        }
+
+        StopWatch sw = new StopWatch().start();
+        res.setStatus(SC_OK);
+        res.setCharacterEncoding("UTF-8");
+        res.setContentType("application/json");
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(res.getOutputStream(), "UTF-8"));
+        final JsonWriter json = new JsonWriter(writer);
+        json.startArray();
+        // the status and a part of the array are committed from now on, so no error page can be sent
+        final AtomicBoolean writeFailed = new AtomicBoolean(false);
+        try
+        {
+            hopper.routeBatch(requests, new RouteBatchListener()
+            {
+                @Override
+                public void onResponse( int index, GHResponse rsp )
+                {
+                    float took = rsp.getMetrics().getTotalNanos() / 1e9f;
+                    Map<String, Object> map = createJson(req, rsp, took, true);
+                    map.put("index", index);
+                    synchronized (json)
+                    {
+                        if (writeFailed.get())
+                            return;
+
+                        try
+                        {
+                            json.writeValue(map);
+                            writer.flush();
+                        } catch (IOException ex)
+                        {
+                            writeFailed.set(true);
+                            throw new RuntimeException(ex);
+                        }
+                    }
+                }
+            });
+        } catch (RuntimeException ex)
+        {
+            if (writeFailed.get())
+            {
+                // the connection is broken, e.g. the client went away
+                logger.warn("Aborted batch " + req.getQueryString() + " " + req.getRemoteAddr()
+                        + " while writing: " + ex.getMessage());
+                return;
+            }
+
+            logger.error("Error while executing batch request: " + req.getQueryString(), ex);
+            synchronized (json)
+            {
+                json.writeValue(createJson(req, new GHResponse().addError(ex), 0, true));
+                json.endArray();
+                writer.flush();
+            }
+            return;
+        }
+        json.endArray();
+        writer.flush();
+        logger.info("batch " + req.getQueryString() + " " + req.getRemoteAddr() + ", requests:"
+                + requests.size() + ", took:" + sw.stop().getSeconds());
+    }
+
+    private GHRequest createRequest( HttpServletRequest req, List<GHPoint> points, boolean enableInstructions )
+    {
+        // we can reduce the path length based on the maximum differences to the original coordinates
+        double minPathPrecision = getDoubleParam(req, "way_point_max_distance", 1d);
+        boolean calcPoints = getBooleanParam(req, "calc_points", true);
+        String vehicleStr = getParam(req, "vehicle", "CAR").toUpperCase();
+        FlagEncoder algoVehicle = hopper.getEncodingManager().getEncoder(vehicleStr);
+        GHRequest request = new GHRequest(points);
+
+        initHints(request, req.getParameterMap());
+        request.setVehicle(algoVehicle.toString()).
+                setWeighting(getParam(req, "weighting", "fastest")).
+                setAlgorithm(getParam(req, "algorithm", "")).
+                setLocale(getParam(req, "locale", "en")).
+                getHints().
+                put("calcPoints", calcPoints).
+                put("instructions", enableInstructions).
+                put("wayPointMaxDistance", minPathPrecision);
+        return request;
     }
 
     protected String createGPXString( HttpServletRequest req, HttpServletResponse res, GHResponse rsp )
@@ -147,6 +284,19 @@ public class GraphHopperServlet extends GHBaseServlet
             return rsp.getInstructions().createGPX(trackName, time, timeZone, includeElevation);
     }
 
+    void writeProtobuf( HttpServletResponse res, GHResponse rsp, float took, boolean calcPoints,
+            boolean enableInstructions, boolean includeElevation ) throws IOException
+    {
+        BBox routeBBox = null;
+        if (!rsp.hasErrors() && rsp.isFound() && rsp.getPoints().getSize() >= 2)
+            routeBBox = rsp.calcRouteBBox(hopper.getGraph().getBounds());
+
+        res.setStatus(SC_OK);
+        res.setContentType(ProtobufFormat.CONTENT_TYPE);
+        ProtobufFormat.writeRoute(res.getOutputStream(), rsp, routeBBox, Math.round(took * 1000),
+                calcPoints, enableInstructions, includeElevation);
+    }
+
     String errorsToXML( List<Throwable> list ) throws Exception
     {
         DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
@@ -178,6 +328,16 @@ public class GraphHopperServlet extends GHBaseServlet
     }
 
     protected Map<String, Object> createJson( HttpServletRequest req, GHResponse rsp, float took )
+    {
+        return createJson(req, rsp, took, false);
+    }
+
+    /**
+     * @param streamPoints if true the points are not converted into lists but written directly in
+     * JsonWriter, then the map cannot be used for a JSONObject.
+     */
+    protected Map<String, Object> createJson( HttpServletRequest req, GHResponse rsp, float took,
+            boolean streamPoints )
     {
         boolean enableInstructions = getBooleanParam(req, "instructions", true);
         boolean pointsEncoded = getBooleanParam(req, "points_encoded", true);
@@ -221,7 +381,10 @@ public class GraphHopperServlet extends GHBaseServlet
                 if (points.getSize() >= 2)
                     jsonPath.put("bbox", rsp.calcRouteBBox(hopper.getGraph().getBounds()).toGeoJson());
 
-                jsonPath.put("points", createPoints(points, pointsEncoded, includeElevation));
+                if (streamPoints)
+                    jsonPath.put("points", createPointsValue(points, pointsEncoded, includeElevation));
+                else
+                    jsonPath.put("points", createPoints(points, pointsEncoded, includeElevation));
 
                 if (enableInstructions)
                 {
@@ -245,22 +408,30 @@ public class GraphHopperServlet extends GHBaseServlet
         return jsonPoints;
     }
 
-    private List<GHPoint> getPoints( HttpServletRequest req ) throws IOException
+    protected Object createPointsValue( final PointList points, final boolean pointsEncoded,
+            final boolean includeElevation )
     {
-        String[] pointsAsStr = getParams(req, "point");
-        final List<GHPoint> infoPoints = new ArrayList<GHPoint>(pointsAsStr.length);
-        for (String str : pointsAsStr)
+        if (pointsEncoded)
+            return new JsonWriter.Value()
+            {
+                @Override
+                public void write( JsonWriter json ) throws IOException
+                {
+                    json.valueEncoded(points, includeElevation);
+                }
+            };
+
+        Map<String, Object> jsonPoints = new HashMap<String, Object>();
+        jsonPoints.put("type", "LineString");
+        jsonPoints.put("coordinates", new JsonWriter.Value()
         {
-            String[] fromStrs = str.split(",");
-            if (fromStrs.length == 2)
+            @Override
+            public void write( JsonWriter json ) throws IOException
             {
-                GHPoint place = GHPoint.parse(str);
-                if (place != null)
-                    infoPoints.add(place);
+                json.valueGeoJson(points, includeElevation);
             }
-        }
-
-        return infoPoints;
+        });
+        return jsonPoints;
     }
 
     private void initHints( GHRequest request, Map<String, String[]> parameterMap )
@@ -22,6 +22,7 @@ import com.graphhopper.GHResponse;
 import com.graphhopper.GraphHopperAPI;
 import com.graphhopper.util.*;
 import com.graphhopper.util.shapes.GHPoint;
+import java.io.InputStream;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.slf4j.Logger;
@@ -49,6 +50,7 @@ public class GraphHopperWeb implements GraphHopperAPI
     private boolean instructions = true;
     private String key = "";
     private boolean withElevation = false;
+    private boolean protobuf = false;
     private final TranslationMap trMap = new TranslationMap().doImport();
 
     public GraphHopperWeb()
@@ -88,6 +90,16 @@ public class GraphHopperWeb implements GraphHopperAPI
         return this;
     }
 
+    /**
+     * Requests the compact binary format instead of JSON, see ProtobufFormat. The server has to
+     * support it.
+     */
+    public GraphHopperWeb setProtobuf( boolean protobuf )
+    {
+        this.protobuf = protobuf;
+        return this;
+    }
+
     public GraphHopperWeb setKey( String key )
     {
         this.key = key;
@@ -110,12 +122,13 @@ public class GraphHopperWeb implements GraphHopperAPI
             String url = serviceUrl
                     + "?"
                     + places
-                    + "&type=json"
+                    + "&type=" + (protobuf ? "protobuf" : "json")
                     + "&points_encoded=" + pointsEncoded
                     + "&way_point_max_distance=" + request.getHints().getDouble("wayPointMaxDistance", 1)
                     + "&algo=" + request.getAlgorithm()
                     + "&locale=" + request.getLocale().toString()
-                    + "&elevation=" + withElevation;
+                    + "&elevation=" + withElevation
+                    + "&instructions=" + instructions;
 
             if (!request.getVehicle().isEmpty())
                 url += "&vehicle=" + request.getVehicle();
@@ -123,6 +136,18 @@ public class GraphHopperWeb implements GraphHopperAPI
             if (!key.isEmpty())
                 url += "&key=" + key;
 
+            if (protobuf)
+            {
+                InputStream is = downloader.fetch(url);
+                try
+                {
+                    return ProtobufFormat.readRoute(is, trMap.getWithFallBack(request.getLocale()));
+                } finally
+                {
+                    is.close();
+                }
+            }
+
             String str = downloader.downloadAsString(url);
             JSONObject json = new JSONObject(str);
             GHResponse res = new GHResponse();
@@ -134,25 +159,7 @@ public class GraphHopperWeb implements GraphHopperAPI
                 for (int i = 0; i < errors.length(); i++)
                 {
                     JSONObject error = errors.getJSONObject(i);
-                    String exClass = error.getString("details");
-                    String exMessage = error.getString("message");
-
-                    if (exClass.equals(UnsupportedOperationException.class.getName()))
-                    {
-                        res.addError(new UnsupportedOperationException(exMessage));
-                    } else if (exClass.equals(IllegalStateException.class.getName()))
-                    {
-                        res.addError(new IllegalStateException(exMessage));
-                    } else if (exClass.equals(RuntimeException.class.getName()))
-                    {
-                        res.addError(new RuntimeException(exMessage));
-                    } else if (exClass.equals(IllegalArgumentException.class.getName()))
-                    {
-                        res.addError(new IllegalArgumentException(exMessage));
-                    } else
-                    {
-                        res.addError(new Exception(exClass + " " + exMessage));
-                    }
+                    res.addError(createException(error.getString("details"), error.getString("message")));
                 }
 
                 return res;
@@ -223,4 +230,18 @@ public class GraphHopperWeb implements GraphHopperAPI
             logger.debug("Full request took:" + sw.stop().getSeconds() + ", API took:" + took);
         }
     }
+
+    static Throwable createException( String exClass, String exMessage )
+    {
+        if (exClass.equals(UnsupportedOperationException.class.getName()))
+            return new UnsupportedOperationException(exMessage);
+        else if (exClass.equals(IllegalStateException.class.getName()))
+            return new IllegalStateException(exMessage);
+        else if (exClass.equals(RuntimeException.class.getName()))
+            return new RuntimeException(exMessage);
+        else if (exClass.equals(IllegalArgumentException.class.getName()))
+            return new IllegalArgumentException(exMessage);
+        else
+            return new Exception(exClass + " " + exMessage);
+    }
 }
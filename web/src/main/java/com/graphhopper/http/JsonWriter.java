@@ -0,0 +1,278 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PointList;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Writes JSON directly to a Writer instead of creating a JSONObject and its String first. The
+ * output is identical to the one of org.json without indentation, e.g. writeValue(map) produces
+ * the same bytes as new JSONObject(map).toString(). Big parts like the points of a route can be
+ * streamed via a Value.
+ * <p/>
+ * @author Peter Karich
+ */
+public class JsonWriter
+{
+    /**
+     * A value which writes itself, e.g. to avoid creating a list entry for every point.
+     */
+    public interface Value
+    {
+        void write( JsonWriter json ) throws IOException;
+    }
+
+    private final Writer writer;
+    private final Appendable escapedWriter = new Appendable()
+    {
+        @Override
+        public Appendable append( CharSequence csq ) throws IOException
+        {
+            return append(csq, 0, csq.length());
+        }
+
+        @Override
+        public Appendable append( CharSequence csq, int start, int end ) throws IOException
+        {
+            for (int i = start; i < end; i++)
+            {
+                append(csq.charAt(i));
+            }
+            return this;
+        }
+
+        @Override
+        public Appendable append( char c ) throws IOException
+        {
+            if (c == '\\' || c == '"')
+                writer.write('\\');
+
+            writer.write(c);
+            return this;
+        }
+    };
+    private boolean needsComma;
+
+    public JsonWriter( Writer writer )
+    {
+        this.writer = writer;
+    }
+
+    public JsonWriter startObject() throws IOException
+    {
+        beforeValue();
+        writer.write('{');
+        needsComma = false;
+        return this;
+    }
+
+    public JsonWriter endObject() throws IOException
+    {
+        writer.write('}');
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter startArray() throws IOException
+    {
+        beforeValue();
+        writer.write('[');
+        needsComma = false;
+        return this;
+    }
+
+    public JsonWriter endArray() throws IOException
+    {
+        writer.write(']');
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter key( String key ) throws IOException
+    {
+        beforeValue();
+        JSONObject.quote(key, writer);
+        writer.write(':');
+        needsComma = false;
+        return this;
+    }
+
+    public JsonWriter value( String str ) throws IOException
+    {
+        beforeValue();
+        if (str == null)
+            writer.write("null");
+        else
+            JSONObject.quote(str, writer);
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter value( long val ) throws IOException
+    {
+        beforeValue();
+        writer.write(Long.toString(val));
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter value( double val ) throws IOException
+    {
+        if (Double.isNaN(val) || Double.isInfinite(val))
+            throw new JSONException("JSON does not allow non-finite numbers.");
+
+        beforeValue();
+        writer.write(JSONObject.doubleToString(val));
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter value( boolean val ) throws IOException
+    {
+        beforeValue();
+        writer.write(val ? "true" : "false");
+        needsComma = true;
+        return this;
+    }
+
+    /**
+     * Writes the points as encoded polyline string, see WebHelper.encodePolyline
+     */
+    public JsonWriter valueEncoded( PointList points, boolean includeElevation ) throws IOException
+    {
+        beforeValue();
+        writer.write('"');
+        // only backslashes need to be escaped as all characters are in the range 63 to 126
+        WebHelper.encodePolyline(escapedWriter, points, includeElevation);
+        writer.write('"');
+        needsComma = true;
+        return this;
+    }
+
+    /**
+     * Writes the points as array of [longitude, latitude(, elevation)] like PointList.toGeoJson
+     */
+    public JsonWriter valueGeoJson( PointList points, boolean includeElevation ) throws IOException
+    {
+        startArray();
+        int size = points.getSize();
+        for (int i = 0; i < size; i++)
+        {
+            startArray();
+            value(Helper.round6(points.getLongitude(i)));
+            value(Helper.round6(points.getLatitude(i)));
+            if (includeElevation)
+                value(Helper.round2(points.getElevation(i)));
+            endArray();
+        }
+        return endArray();
+    }
+
+    /**
+     * Writes maps, collections, arrays, Value objects and simple values like org.json does.
+     */
+    public JsonWriter writeValue( Object obj ) throws IOException
+    {
+        if (obj == null || obj == JSONObject.NULL)
+            return value((String) null);
+        if (obj instanceof Value)
+        {
+            ((Value) obj).write(this);
+            return this;
+        }
+        if (obj instanceof String)
+            return value((String) obj);
+        if (obj instanceof Double)
+            return value(((Double) obj).doubleValue());
+        if (obj instanceof Long || obj instanceof Integer || obj instanceof Short || obj instanceof Byte)
+            return value(((Number) obj).longValue());
+        if (obj instanceof Number)
+        {
+            beforeValue();
+            writer.write(JSONObject.numberToString((Number) obj));
+            needsComma = true;
+            return this;
+        }
+        if (obj instanceof Boolean)
+            return value(((Boolean) obj).booleanValue());
+        if (obj instanceof Map)
+            return writeObject((Map<?, ?>) obj);
+        if (obj instanceof Collection)
+        {
+            startArray();
+            for (Object o : (Collection<?>) obj)
+            {
+                writeValue(o);
+            }
+            return endArray();
+        }
+        if (obj instanceof Object[])
+        {
+            startArray();
+            for (Object o : (Object[]) obj)
+            {
+                writeValue(o);
+            }
+            return endArray();
+        }
+
+        beforeValue();
+        writer.write(JSONObject.valueToString(JSONObject.wrap(obj)));
+        needsComma = true;
+        return this;
+    }
+
+    private JsonWriter writeObject( Map<?, ?> map ) throws IOException
+    {
+        // org.json skips null values and puts the entries into a new HashMap, which defines the
+        // order of the keys. So do the same to produce identical output.
+        Map<String, Object> copy = new HashMap<String, Object>();
+        for (Map.Entry<?, ?> e : map.entrySet())
+        {
+            if (e.getValue() != null)
+                copy.put(String.valueOf(e.getKey()), e.getValue());
+        }
+
+        startObject();
+        for (Map.Entry<String, Object> e : copy.entrySet())
+        {
+            key(e.getKey());
+            writeValue(e.getValue());
+        }
+        return endObject();
+    }
+
+    public void flush() throws IOException
+    {
+        writer.flush();
+    }
+
+    private void beforeValue() throws IOException
+    {
+        if (needsComma)
+            writer.write(',');
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.graphhopper.GHMatrixRequest;
+import com.graphhopper.GHMatrixResponse;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.StopWatch;
+import com.graphhopper.util.shapes.GHPoint;
+import java.io.IOException;
+import java.util.*;
+import javax.inject.Inject;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import static javax.servlet.http.HttpServletResponse.*;
+import org.json.JSONObject;
+
+/**
+ * Servlet to calculate distances and times between many points at once. Either specify the same
+ * points as start and end via the 'point' parameter or specify them separately via 'from_point' and
+ * 'to_point'.
+ * <p/>
+ * @author Peter Karich
+ */
+public class MatrixServlet extends GHBaseServlet
+{
+    @Inject
+    private GraphHopper hopper;
+
+    @Override
+    public void doGet( HttpServletRequest req, HttpServletResponse res ) throws ServletException, IOException
+    {
+        try
+        {
+            writeMatrix(req, res);
+        } catch (IllegalArgumentException ex)
+        {
+            writeError(res, SC_BAD_REQUEST, ex.getMessage());
+        } catch (Exception ex)
+        {
+            logger.error("Error while executing request: " + req.getQueryString(), ex);
+            writeError(res, SC_INTERNAL_SERVER_ERROR, "Problem occured:" + ex.getMessage());
+        }
+    }
+
+    void writeMatrix( HttpServletRequest req, HttpServletResponse res ) throws Exception
+    {
+        List<GHPoint> fromPoints = getPoints(req, "point");
+        List<GHPoint> toPoints = fromPoints;
+        if (fromPoints.isEmpty())
+        {
+            fromPoints = getPoints(req, "from_point");
+            toPoints = getPoints(req, "to_point");
+        }
+
+        String vehicleStr = getParam(req, "vehicle", "CAR").toUpperCase();
+        String weighting = getParam(req, "weighting", "fastest");
+
+        StopWatch sw = new StopWatch().start();
+        GHMatrixResponse ghRsp;
+        if (!hopper.getEncodingManager().supports(vehicleStr))
+        {
+            ghRsp = new GHMatrixResponse().addError(new IllegalArgumentException("Vehicle not supported: " + vehicleStr));
+        } else
+        {
+            GHMatrixRequest request = new GHMatrixRequest(fromPoints, toPoints);
+            request.setVehicle(hopper.getEncodingManager().getEncoder(vehicleStr).toString()).
+                    setWeighting(weighting);
+            ghRsp = hopper.matrix(request);
+        }
+
+        float took = sw.stop().getSeconds();
+        String logStr = req.getQueryString() + " " + req.getRemoteAddr() + " " + fromPoints.size() + "x" + toPoints.size()
+                + ", took:" + took + ", " + weighting + ", " + vehicleStr;
+        if (ghRsp.hasErrors())
+            logger.error(logStr + ", errors:" + ghRsp.getErrors());
+        else
+            logger.info(logStr + ", debug - " + ghRsp.getDebugInfo());
+
+        if ("protobuf".equalsIgnoreCase(getParam(req, "type", "json")))
+        {
+            res.setStatus(SC_OK);
+            res.setContentType(ProtobufFormat.CONTENT_TYPE);
+            ProtobufFormat.writeMatrix(res.getOutputStream(), ghRsp, Math.round(took * 1000));
+        } else
+            writeJson(req, res, new JSONObject(createJson(ghRsp, took)));
+    }
+
+    protected Map<String, Object> createJson( GHMatrixResponse rsp, float took )
+    {
+        Map<String, Object> json = new HashMap<String, Object>();
+        Map<String, Object> jsonInfo = new HashMap<String, Object>();
+        json.put("info", jsonInfo);
+        jsonInfo.put("copyrights", Arrays.asList("GraphHopper", "OpenStreetMap contributors"));
+
+        if (rsp.hasErrors())
+        {
+            List<Map<String, String>> list = new ArrayList<Map<String, String>>();
+            for (Throwable t : rsp.getErrors())
+            {
+                Map<String, String> map = new HashMap<String, String>();
+                map.put("message", t.getMessage());
+                map.put("details", t.getClass().getName());
+                list.add(map);
+            }
+            jsonInfo.put("errors", list);
+            return json;
+        }
+
+        jsonInfo.put("took", Math.round(took * 1000));
+        double[][] distances = rsp.getDistances();
+        long[][] millis = rsp.getMillis();
+        List<List<Double>> jsonDistances = new ArrayList<List<Double>>(distances.length);
+        List<List<Long>> jsonTimes = new ArrayList<List<Long>>(distances.length);
+        for (int row = 0; row < distances.length; row++)
+        {
+            List<Double> distanceRow = new ArrayList<Double>(distances[row].length);
+            List<Long> timeRow = new ArrayList<Long>(distances[row].length);
+            for (int col = 0; col < distances[row].length; col++)
+            {
+                distanceRow.add(Helper.round(distances[row][col], 3));
+                timeRow.add(millis[row][col]);
+            }
+            jsonDistances.add(distanceRow);
+            jsonTimes.add(timeRow);
+        }
+        json.put("distances", jsonDistances);
+        json.put("times", jsonTimes);
+        return json;
+    }
+}
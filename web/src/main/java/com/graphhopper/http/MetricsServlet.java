@@ -0,0 +1,76 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.graphhopper.GraphHopper;
+import com.graphhopper.routing.QueryGraphPool;
+import com.graphhopper.util.Helper;
+import java.io.IOException;
+import java.util.Map;
+import javax.inject.Inject;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import static javax.servlet.http.HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+import org.json.JSONObject;
+
+/**
+ * Shows the latency percentiles and other statistics of all route requests since the start and
+ * the page residency of a memory mapped graph.
+ * <p/>
+ * @author Peter Karich
+ */
+public class MetricsServlet extends GHBaseServlet
+{
+    @Inject
+    private GraphHopper hopper;
+
+    @Override
+    public void doGet( HttpServletRequest req, HttpServletResponse res ) throws ServletException, IOException
+    {
+        try
+        {
+            writeMetrics(req, res);
+        } catch (Exception ex)
+        {
+            logger.error("Error while executing request: " + req.getQueryString(), ex);
+            writeError(res, SC_INTERNAL_SERVER_ERROR, "Problem occured:" + ex.getMessage());
+        }
+    }
+
+    void writeMetrics( HttpServletRequest req, HttpServletResponse res ) throws Exception
+    {
+        JSONObject json = new JSONObject();
+        json.put("route", hopper.getRouteStatistics().toMap());
+        json.put("visited_nodes_sum", hopper.getVisitedSum());
+
+        QueryGraphPool pool = hopper.getQueryGraphPool();
+        JSONObject poolJson = new JSONObject();
+        poolJson.put("hits", pool.getHits());
+        poolJson.put("misses", pool.getMisses());
+        poolJson.put("hit_rate", Helper.round(pool.getHitRate(), 4));
+        json.put("query_graph_pool", poolJson);
+
+        // only for memory mapped graphs
+        Map<String, Float> residency = hopper.getResidency();
+        if (!residency.isEmpty())
+            json.put("page_residency", residency);
+
+        writeJson(req, res, json);
+    }
+}
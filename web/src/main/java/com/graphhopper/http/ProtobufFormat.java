@@ -0,0 +1,512 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import com.graphhopper.GHMatrixResponse;
+import com.graphhopper.GHResponse;
+import com.graphhopper.util.*;
+import com.graphhopper.util.shapes.BBox;
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A compact binary alternative to the JSON of route and matrix responses which avoids JSON
+ * parsing. It is written in the protobuf wire format without generated classes and corresponds
+ * to the following schema:
+ * <pre>
+ * message Error { optional string message = 1; optional string details = 2; }
+ *
+ * message Route {
+ *   repeated Error errors = 1;
+ *   optional uint64 took = 2;                           // in milliseconds
+ *   optional double distance = 3;
+ *   optional double weight = 4;
+ *   optional uint64 time = 5;                           // in milliseconds
+ *   repeated double bbox = 6 [packed=true];             // like BBox.toGeoJson
+ *   optional bool elevation = 7;
+ *   repeated sint32 points = 8 [packed=true];           // lat, lon (, ele) delta encoded, degrees
+ *                                                       // multiplied by 1e6 and elevation by 100
+ *   repeated sint32 instruction_signs = 9 [packed=true];
+ *   repeated double instruction_distances = 10 [packed=true];
+ *   repeated uint64 instruction_times = 11 [packed=true];
+ *   repeated uint32 instruction_intervals = 12 [packed=true]; // index of the last point
+ *   repeated string instruction_texts = 13;
+ * }
+ *
+ * message Matrix {
+ *   repeated Error errors = 1;
+ *   optional uint64 took = 2;
+ *   optional uint32 columns = 3;
+ *   repeated double distances = 4 [packed=true];        // row by row
+ *   repeated sint64 times = 5 [packed=true];            // negative if not reachable
+ * }
+ * </pre>
+ * <p/>
+ * @author Peter Karich
+ */
+public class ProtobufFormat
+{
+    public static final String CONTENT_TYPE = "application/x-protobuf";
+    private static final double DEGREE_FACTOR = 1e6;
+    private static final double ELE_FACTOR = 100;
+
+    /**
+     * @param routeBBox the bounding box of the route or null
+     */
+    public static void writeRoute( OutputStream os, GHResponse rsp, BBox routeBBox, long tookMillis,
+            boolean calcPoints, boolean enableInstructions, boolean includeElevation ) throws IOException
+    {
+        CodedOutputStream out = CodedOutputStream.newInstance(os);
+        if (rsp.hasErrors())
+        {
+            writeErrors(out, rsp.getErrors());
+        } else if (!rsp.isFound())
+        {
+            writeError(out, "Not found", "");
+        } else
+        {
+            out.writeUInt64(2, tookMillis);
+            out.writeDouble(3, rsp.getDistance());
+            out.writeDouble(4, rsp.getRouteWeight());
+            out.writeUInt64(5, rsp.getMillis());
+            if (calcPoints)
+            {
+                if (routeBBox != null)
+                {
+                    List<Double> bbox = routeBBox.toGeoJson();
+                    out.writeTag(6, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+                    out.writeRawVarint32(bbox.size() * 8);
+                    for (Double val : bbox)
+                    {
+                        out.writeDoubleNoTag(val);
+                    }
+                }
+
+                out.writeBool(7, includeElevation);
+                writePoints(out, rsp.getPoints(), includeElevation);
+                if (enableInstructions)
+                    writeInstructions(out, rsp.getInstructions());
+            }
+        }
+        out.flush();
+    }
+
+    private static void writePoints( CodedOutputStream out, PointList points, boolean includeElevation )
+            throws IOException
+    {
+        // the size of a packed field has to be known before writing, so iterate twice
+        int size = 0;
+        int prevLat = 0, prevLon = 0, prevEle = 0;
+        for (int i = 0; i < points.getSize(); i++)
+        {
+            int lat = (int) Math.round(points.getLatitude(i) * DEGREE_FACTOR);
+            int lon = (int) Math.round(points.getLongitude(i) * DEGREE_FACTOR);
+            size += CodedOutputStream.computeSInt32SizeNoTag(lat - prevLat);
+            size += CodedOutputStream.computeSInt32SizeNoTag(lon - prevLon);
+            prevLat = lat;
+            prevLon = lon;
+            if (includeElevation)
+            {
+                int ele = (int) Math.round(points.getElevation(i) * ELE_FACTOR);
+                size += CodedOutputStream.computeSInt32SizeNoTag(ele - prevEle);
+                prevEle = ele;
+            }
+        }
+
+        out.writeTag(8, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        out.writeRawVarint32(size);
+        prevLat = prevLon = prevEle = 0;
+        for (int i = 0; i < points.getSize(); i++)
+        {
+            int lat = (int) Math.round(points.getLatitude(i) * DEGREE_FACTOR);
+            int lon = (int) Math.round(points.getLongitude(i) * DEGREE_FACTOR);
+            out.writeSInt32NoTag(lat - prevLat);
+            out.writeSInt32NoTag(lon - prevLon);
+            prevLat = lat;
+            prevLon = lon;
+            if (includeElevation)
+            {
+                int ele = (int) Math.round(points.getElevation(i) * ELE_FACTOR);
+                out.writeSInt32NoTag(ele - prevEle);
+                prevEle = ele;
+            }
+        }
+    }
+
+    private static void writeInstructions( CodedOutputStream out, InstructionList il ) throws IOException
+    {
+        int len = il.getSize();
+        int signSize = 0, timeSize = 0, intervalSize = 0;
+        int pointsIndex = 0;
+        int[] intervals = new int[len];
+        for (int i = 0; i < len; i++)
+        {
+            Instruction instruction = il.get(i);
+            signSize += CodedOutputStream.computeSInt32SizeNoTag(instruction.getSign());
+            timeSize += CodedOutputStream.computeUInt64SizeNoTag(instruction.getTime());
+
+            // the same intervals as in InstructionList.createJson
+            pointsIndex += instruction.getPoints().size();
+            intervals[i] = i + 1 == len ? pointsIndex - 1 : pointsIndex;
+            intervalSize += CodedOutputStream.computeUInt32SizeNoTag(intervals[i]);
+        }
+
+        out.writeTag(9, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        out.writeRawVarint32(signSize);
+        for (int i = 0; i < len; i++)
+        {
+            out.writeSInt32NoTag(il.get(i).getSign());
+        }
+
+        out.writeTag(10, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        out.writeRawVarint32(len * 8);
+        for (int i = 0; i < len; i++)
+        {
+            out.writeDoubleNoTag(il.get(i).getDistance());
+        }
+
+        out.writeTag(11, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        out.writeRawVarint32(timeSize);
+        for (int i = 0; i < len; i++)
+        {
+            out.writeUInt64NoTag(il.get(i).getTime());
+        }
+
+        out.writeTag(12, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        out.writeRawVarint32(intervalSize);
+        for (int i = 0; i < len; i++)
+        {
+            out.writeUInt32NoTag(intervals[i]);
+        }
+
+        for (int i = 0; i < len; i++)
+        {
+            String text = il.createText(il.get(i));
+            out.writeString(13, text == null ? "" : text);
+        }
+    }
+
+    public static void writeMatrix( OutputStream os, GHMatrixResponse rsp, long tookMillis ) throws IOException
+    {
+        CodedOutputStream out = CodedOutputStream.newInstance(os);
+        if (rsp.hasErrors())
+        {
+            writeErrors(out, rsp.getErrors());
+        } else
+        {
+            double[][] distances = rsp.getDistances();
+            long[][] millis = rsp.getMillis();
+            int rows = distances.length;
+            int columns = rows == 0 ? 0 : distances[0].length;
+            out.writeUInt64(2, tookMillis);
+            out.writeUInt32(3, columns);
+
+            out.writeTag(4, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            out.writeRawVarint32(rows * columns * 8);
+            for (int row = 0; row < rows; row++)
+            {
+                for (int col = 0; col < columns; col++)
+                {
+                    out.writeDoubleNoTag(distances[row][col]);
+                }
+            }
+
+            int timeSize = 0;
+            for (int row = 0; row < rows; row++)
+            {
+                for (int col = 0; col < columns; col++)
+                {
+                    timeSize += CodedOutputStream.computeSInt64SizeNoTag(millis[row][col]);
+                }
+            }
+            out.writeTag(5, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            out.writeRawVarint32(timeSize);
+            for (int row = 0; row < rows; row++)
+            {
+                for (int col = 0; col < columns; col++)
+                {
+                    out.writeSInt64NoTag(millis[row][col]);
+                }
+            }
+        }
+        out.flush();
+    }
+
+    private static void writeErrors( CodedOutputStream out, List<Throwable> errors ) throws IOException
+    {
+        for (Throwable t : errors)
+        {
+            writeError(out, t.getMessage(), t.getClass().getName());
+        }
+    }
+
+    private static void writeError( CodedOutputStream out, String message, String details ) throws IOException
+    {
+        int size = 0;
+        if (message != null)
+            size += CodedOutputStream.computeStringSize(1, message);
+        size += CodedOutputStream.computeStringSize(2, details);
+
+        out.writeTag(1, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        out.writeRawVarint32(size);
+        if (message != null)
+            out.writeString(1, message);
+        out.writeString(2, details);
+    }
+
+    /**
+     * Reads a route written via writeRoute.
+     */
+    public static GHResponse readRoute( InputStream is, Translation tr ) throws IOException
+    {
+        CodedInputStream in = CodedInputStream.newInstance(is);
+        in.setSizeLimit(Integer.MAX_VALUE);
+        GHResponse rsp = new GHResponse();
+        boolean elevation = false;
+        TIntArrayList points = new TIntArrayList();
+        TIntArrayList signs = new TIntArrayList();
+        TDoubleArrayList distances = new TDoubleArrayList();
+        TLongArrayList times = new TLongArrayList();
+        TIntArrayList intervals = new TIntArrayList();
+        List<String> texts = new ArrayList<String>();
+        while (true)
+        {
+            int tag = in.readTag();
+            if (tag == 0)
+                break;
+
+            switch (WireFormat.getTagFieldNumber(tag))
+            {
+                case 1:
+                    rsp.addError(readError(in));
+                    break;
+                case 3:
+                    rsp.setDistance(in.readDouble());
+                    break;
+                case 4:
+                    rsp.setRouteWeight(in.readDouble());
+                    break;
+                case 5:
+                    rsp.setMillis(in.readUInt64());
+                    break;
+                case 7:
+                    elevation = in.readBool();
+                    break;
+                case 8:
+                {
+                    int limit = in.pushLimit(in.readRawVarint32());
+                    while (in.getBytesUntilLimit() > 0)
+                    {
+                        points.add(in.readSInt32());
+                    }
+                    in.popLimit(limit);
+                    break;
+                }
+                case 9:
+                {
+                    int limit = in.pushLimit(in.readRawVarint32());
+                    while (in.getBytesUntilLimit() > 0)
+                    {
+                        signs.add(in.readSInt32());
+                    }
+                    in.popLimit(limit);
+                    break;
+                }
+                case 10:
+                {
+                    int limit = in.pushLimit(in.readRawVarint32());
+                    while (in.getBytesUntilLimit() > 0)
+                    {
+                        distances.add(in.readDouble());
+                    }
+                    in.popLimit(limit);
+                    break;
+                }
+                case 11:
+                {
+                    int limit = in.pushLimit(in.readRawVarint32());
+                    while (in.getBytesUntilLimit() > 0)
+                    {
+                        times.add(in.readUInt64());
+                    }
+                    in.popLimit(limit);
+                    break;
+                }
+                case 12:
+                {
+                    int limit = in.pushLimit(in.readRawVarint32());
+                    while (in.getBytesUntilLimit() > 0)
+                    {
+                        intervals.add(in.readUInt32());
+                    }
+                    in.popLimit(limit);
+                    break;
+                }
+                case 13:
+                    texts.add(in.readString());
+                    break;
+                default:
+                    in.skipField(tag);
+            }
+        }
+
+        if (rsp.hasErrors())
+            return rsp;
+
+        int dim = elevation ? 3 : 2;
+        PointList pointList = new PointList(points.size() / dim, elevation);
+        int lat = 0, lon = 0, ele = 0;
+        for (int i = 0; i + dim <= points.size(); i += dim)
+        {
+            lat += points.get(i);
+            lon += points.get(i + 1);
+            if (elevation)
+            {
+                ele += points.get(i + 2);
+                pointList.add(lat / DEGREE_FACTOR, lon / DEGREE_FACTOR, ele / ELE_FACTOR);
+            } else
+                pointList.add(lat / DEGREE_FACTOR, lon / DEGREE_FACTOR);
+        }
+        rsp.setPoints(pointList);
+
+        if (!signs.isEmpty())
+        {
+            InstructionList il = new InstructionList(signs.size(), tr);
+            int from = 0;
+            for (int i = 0; i < signs.size(); i++)
+            {
+                int to = intervals.get(i);
+                PointList instPL = new PointList(to - from, elevation);
+                for (int j = from; j <= to; j++)
+                {
+                    instPL.add(pointList, j);
+                }
+                from = to;
+
+                Instruction instr = new Instruction(signs.get(i), texts.get(i), InstructionAnnotation.EMPTY, instPL).
+                        setDistance(distances.get(i)).setTime(times.get(i));
+                il.add(instr);
+            }
+            rsp.setInstructions(il);
+        }
+        return rsp;
+    }
+
+    /**
+     * Reads a matrix written via writeMatrix.
+     */
+    public static GHMatrixResponse readMatrix( InputStream is ) throws IOException
+    {
+        CodedInputStream in = CodedInputStream.newInstance(is);
+        in.setSizeLimit(Integer.MAX_VALUE);
+        GHMatrixResponse rsp = new GHMatrixResponse();
+        int columns = 0;
+        TDoubleArrayList distances = new TDoubleArrayList();
+        TLongArrayList times = new TLongArrayList();
+        while (true)
+        {
+            int tag = in.readTag();
+            if (tag == 0)
+                break;
+
+            switch (WireFormat.getTagFieldNumber(tag))
+            {
+                case 1:
+                    rsp.addError(readError(in));
+                    break;
+                case 3:
+                    columns = in.readUInt32();
+                    break;
+                case 4:
+                {
+                    int limit = in.pushLimit(in.readRawVarint32());
+                    while (in.getBytesUntilLimit() > 0)
+                    {
+                        distances.add(in.readDouble());
+                    }
+                    in.popLimit(limit);
+                    break;
+                }
+                case 5:
+                {
+                    int limit = in.pushLimit(in.readRawVarint32());
+                    while (in.getBytesUntilLimit() > 0)
+                    {
+                        times.add(in.readSInt64());
+                    }
+                    in.popLimit(limit);
+                    break;
+                }
+                default:
+                    in.skipField(tag);
+            }
+        }
+
+        if (rsp.hasErrors())
+            return rsp;
+
+        int rows = columns == 0 ? 0 : distances.size() / columns;
+        double[][] distanceMatrix = new double[rows][columns];
+        long[][] timeMatrix = new long[rows][columns];
+        for (int row = 0; row < rows; row++)
+        {
+            for (int col = 0; col < columns; col++)
+            {
+                distanceMatrix[row][col] = distances.get(row * columns + col);
+                timeMatrix[row][col] = times.get(row * columns + col);
+            }
+        }
+        return rsp.setDistances(distanceMatrix).setMillis(timeMatrix);
+    }
+
+    private static Throwable readError( CodedInputStream in ) throws IOException
+    {
+        String message = null;
+        String details = "";
+        int limit = in.pushLimit(in.readRawVarint32());
+        while (true)
+        {
+            int tag = in.readTag();
+            if (tag == 0)
+                break;
+
+            switch (WireFormat.getTagFieldNumber(tag))
+            {
+                case 1:
+                    message = in.readString();
+                    break;
+                case 2:
+                    details = in.readString();
+                    break;
+                default:
+                    in.skipField(tag);
+            }
+        }
+        in.popLimit(limit);
+        return GraphHopperWeb.createException(details, message);
+    }
+}
@@ -108,6 +108,21 @@ public class WebHelper
     public static String encodePolyline( PointList poly, boolean includeElevation )
     {
         StringBuilder sb = new StringBuilder();
+        try
+        {
+            encodePolyline(sb, poly, includeElevation);
+        } catch (IOException ex)
+        {
+            throw new RuntimeException(ex);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Appends the encoded polyline without creating a String first, e.g. to stream it.
+     */
+    public static void encodePolyline( Appendable sb, PointList poly, boolean includeElevation ) throws IOException
+    {
         int size = poly.getSize();
         int prevLat = 0;
         int prevLon = 0;
@@ -127,10 +142,9 @@ public class WebHelper
                 prevEle = num;
             }
         }
-        return sb.toString();
     }
 
-    private static void encodeNumber( StringBuilder sb, int num )
+    private static void encodeNumber( Appendable sb, int num ) throws IOException
     {
         num = num << 1;
         if (num < 0)
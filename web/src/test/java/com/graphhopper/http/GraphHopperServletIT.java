@@ -21,9 +21,15 @@ import com.graphhopper.GHRequest;
 import com.graphhopper.GHResponse;
 import com.graphhopper.GraphHopperAPI;
 import com.graphhopper.util.CmdArgs;
+import com.graphhopper.util.Downloader;
 import com.graphhopper.util.Helper;
 import java.io.File;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import org.json.JSONArray;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.Test;
@@ -65,6 +71,49 @@ public class GraphHopperServletIT extends BaseServletTester
         assertTrue("distance wasn't correct:" + distance, distance < 9500);
     }
 
+    @Test
+    public void testBatch() throws Exception
+    {
+        String body = "{\"requests\": ["
+                + "{\"point\": [\"42.554851,1.536198\", \"42.510071,1.548128\"]},"
+                + "{\"point\": [\"42.510071,1.548128\", \"42.554851,1.536198\"]},"
+                + "{\"point\": [\"42.554851,1.536198\"]}]}";
+        HttpURLConnection conn = new Downloader("web integration tester").
+                createConnection(getTestAPIUrl() + "?points_encoded=false");
+        conn.setRequestMethod("POST");
+        conn.setRequestProperty("Content-Type", "application/json");
+        OutputStream os = conn.getOutputStream();
+        os.write(body.getBytes("UTF-8"));
+        os.close();
+        JSONArray arr = new JSONArray(new JSONTokener(new InputStreamReader(conn.getInputStream(), "UTF-8")));
+        assertEquals(3, arr.length());
+
+        JSONObject[] responses = new JSONObject[3];
+        for (int i = 0; i < arr.length(); i++)
+        {
+            JSONObject json = arr.getJSONObject(i);
+            responses[json.getInt("index")] = json;
+        }
+        double distance = responses[0].getJSONArray("paths").getJSONObject(0).getDouble("distance");
+        assertTrue("distance wasn't correct:" + distance, distance > 9000);
+        assertTrue("distance wasn't correct:" + distance, distance < 9500);
+        assertTrue(responses[1].getJSONArray("paths").getJSONObject(0).getDouble("distance") > 9000);
+        assertTrue(responses[2].getJSONObject("info").has("errors"));
+    }
+
+    @Test
+    public void testMetrics() throws Exception
+    {
+        query("point=42.554851,1.536198&point=42.510071,1.548128");
+        String url = getTestAPIUrl().replace("/route", "/metrics");
+        JSONObject json = new JSONObject(new Downloader("web integration tester").downloadAsString(url));
+        JSONObject routeJson = json.getJSONObject("route");
+        assertTrue(routeJson.getLong("requests") > 0);
+        assertTrue(routeJson.getJSONObject("total").getDouble("p99") > 0);
+        assertTrue(routeJson.getJSONObject("visited_nodes").getDouble("max") > 0);
+        assertTrue(json.has("query_graph_pool"));
+    }
+
     @Test
     public void testJsonRounding() throws Exception
     {
@@ -93,6 +142,26 @@ public class GraphHopperServletIT extends BaseServletTester
         assertTrue("distance wasn't correct:" + rsp.getDistance(), rsp.getDistance() < 9500);
     }
 
+    @Test
+    public void testGraphHopperWebProtobuf() throws Exception
+    {
+        GraphHopperWeb jsonHopper = new GraphHopperWeb();
+        assertTrue(jsonHopper.load(getTestAPIUrl()));
+        GHResponse jsonRsp = jsonHopper.route(new GHRequest(42.554851, 1.536198, 42.510071, 1.548128));
+
+        GraphHopperWeb hopper = new GraphHopperWeb().setProtobuf(true);
+        assertTrue(hopper.load(getTestAPIUrl()));
+        GHResponse rsp = hopper.route(new GHRequest(42.554851, 1.536198, 42.510071, 1.548128));
+        assertTrue(rsp.getErrors().toString(), rsp.getErrors().isEmpty());
+        assertEquals(jsonRsp.getDistance(), rsp.getDistance(), 1e-3);
+        assertEquals(jsonRsp.getMillis(), rsp.getMillis());
+        assertEquals(jsonRsp.getPoints().getSize(), rsp.getPoints().getSize());
+        assertEquals(jsonRsp.getInstructions().getSize(), rsp.getInstructions().getSize());
+
+        rsp = hopper.route(new GHRequest(0.0, 0.0, 0.0, 0.0));
+        assertTrue(rsp.getErrors().get(0) instanceof IllegalArgumentException);
+    }
+
     @Test
     public void testGraphHopperWebRealExceptions()
     {
@@ -0,0 +1,126 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.graphhopper.util.PointList;
+import java.io.StringWriter;
+import java.util.*;
+import org.json.JSONObject;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich
+ */
+public class JsonWriterTest
+{
+    private String write( Object obj ) throws Exception
+    {
+        StringWriter sw = new StringWriter();
+        JsonWriter json = new JsonWriter(sw);
+        json.writeValue(obj);
+        json.flush();
+        return sw.toString();
+    }
+
+    @Test
+    public void testSameAsJSONObject() throws Exception
+    {
+        Map<String, Object> info = new HashMap<String, Object>();
+        info.put("copyrights", Arrays.asList("GraphHopper", "OpenStreetMap contributors"));
+        info.put("took", 12L);
+        info.put("skipped", null);
+
+        Map<String, Object> instr = new HashMap<String, Object>();
+        instr.put("text", "Turn left onto \"Main\" Street </b> \\ ä\n");
+        instr.put("annotationImportance", 1);
+        instr.put("time", 12345L);
+        instr.put("distance", 12.5);
+        instr.put("sign", -2);
+        instr.put("interval", Arrays.asList(0, 4));
+
+        Map<String, Object> path = new HashMap<String, Object>();
+        path.put("distance", 1234.0);
+        path.put("weight", 0.1234567);
+        path.put("time", 87654321L);
+        path.put("points_encoded", false);
+        path.put("bbox", Arrays.asList(1.5, -2.25, 3d, 1e-7));
+        path.put("coordinates", Arrays.asList(new Double[]
+        {
+            1.0, 2.5
+        }, new Double[]
+        {
+            -0.000001, 42.123456
+        }));
+        path.put("instructions", Collections.singletonList(instr));
+        path.put("float", 0.1f);
+
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("info", info);
+        map.put("paths", Collections.singletonList(path));
+
+        assertEquals(new JSONObject(map).toString(), write(map));
+
+        // the order of the keys must not depend on the map type
+        Map<String, Object> linked = new LinkedHashMap<String, Object>();
+        linked.put("time", 1L);
+        linked.put("instructions", "x");
+        linked.put("distance", 2.0);
+        linked.put("weight", 3.0);
+        linked.put("bbox", "y");
+        assertEquals(new JSONObject(linked).toString(), write(linked));
+    }
+
+    @Test
+    public void testStreamPoints() throws Exception
+    {
+        Random rand = new Random(1);
+        PointList points = new PointList(100, true);
+        for (int i = 0; i < 100; i++)
+        {
+            points.add(50 + rand.nextDouble(), 10 - rand.nextDouble(), rand.nextDouble() * 1000);
+        }
+
+        GraphHopperServlet servlet = new GraphHopperServlet();
+        for (boolean encoded : new boolean[]
+        {
+            true, false
+        })
+        {
+            for (boolean ele : new boolean[]
+            {
+                true, false
+            })
+            {
+                Map<String, Object> expected = new HashMap<String, Object>();
+                expected.put("points", servlet.createPoints(points, encoded, ele));
+                Map<String, Object> streamed = new HashMap<String, Object>();
+                streamed.put("points", servlet.createPointsValue(points, encoded, ele));
+                assertEquals(new JSONObject(expected).toString(), write(streamed));
+            }
+        }
+
+        // a backslash in the encoded polyline needs to be escaped
+        PointList pl = new PointList(2, false);
+        pl.add(0, 0);
+        pl.add(-0.00015, 0);
+        assertTrue(WebHelper.encodePolyline(pl).contains("\\"));
+        assertEquals(JSONObject.quote(WebHelper.encodePolyline(pl)),
+                write(servlet.createPointsValue(pl, true, false)));
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.graphhopper.GHMatrixResponse;
+import com.graphhopper.GHResponse;
+import com.graphhopper.util.*;
+import com.graphhopper.util.shapes.BBox;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Locale;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich
+ */
+public class ProtobufFormatTest
+{
+    private final Translation tr = new TranslationMap().doImport().getWithFallBack(Locale.US);
+
+    @Test
+    public void testRoute() throws Exception
+    {
+        PointList pl1 = new PointList(3, true);
+        pl1.add(52.514, 13.348, 35.5);
+        pl1.add(52.5135, 13.35, 36);
+        pl1.add(52.513, 13.353, 34.25);
+        PointList pl2 = new PointList(2, true);
+        pl2.add(52.512, 13.355, 30);
+        pl2.add(52.511, 13.356, 31);
+
+        InstructionList il = new InstructionList(tr);
+        il.add(new Instruction(Instruction.CONTINUE_ON_STREET, "Main Street", InstructionAnnotation.EMPTY, pl1).
+                setDistance(300.5).setTime(30000));
+        il.add(new Instruction(Instruction.TURN_SHARP_LEFT, "Side Street", InstructionAnnotation.EMPTY, pl2).
+                setDistance(120).setTime(12000));
+
+        PointList points = new PointList(5, true);
+        points.add(pl1);
+        points.add(pl2);
+        GHResponse rsp = new GHResponse().setPoints(points).setDistance(420.5).setMillis(42000).
+                setRouteWeight(12.5).setFound(true);
+        rsp.setInstructions(il);
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        ProtobufFormat.writeRoute(os, rsp, new BBox(13.348, 13.356, 52.511, 52.514), 5, true, true, true);
+        GHResponse res = ProtobufFormat.readRoute(new ByteArrayInputStream(os.toByteArray()), tr);
+
+        assertFalse(res.hasErrors());
+        assertEquals(420.5, res.getDistance(), 1e-6);
+        assertEquals(42000, res.getMillis());
+        assertEquals(12.5, res.getRouteWeight(), 1e-6);
+        assertEquals(5, res.getPoints().getSize());
+        assertTrue(res.getPoints().is3D());
+        for (int i = 0; i < points.getSize(); i++)
+        {
+            assertEquals(points.getLatitude(i), res.getPoints().getLatitude(i), 1e-6);
+            assertEquals(points.getLongitude(i), res.getPoints().getLongitude(i), 1e-6);
+            assertEquals(points.getElevation(i), res.getPoints().getElevation(i), 1e-2);
+        }
+
+        InstructionList resIL = res.getInstructions();
+        assertEquals(2, resIL.getSize());
+        assertEquals(Instruction.TURN_SHARP_LEFT, resIL.get(1).getSign());
+        assertEquals(120, resIL.get(1).getDistance(), 1e-6);
+        assertEquals(12000, resIL.get(1).getTime());
+        assertEquals(il.createText(il.get(1)), resIL.get(1).getName());
+        // like in the JSON the points of an instruction include the first point of the next one
+        assertEquals(4, resIL.get(0).getPoints().getSize());
+        assertEquals(2, resIL.get(1).getPoints().getSize());
+
+        // without points and elevation
+        os = new ByteArrayOutputStream();
+        ProtobufFormat.writeRoute(os, rsp, null, 5, false, true, false);
+        res = ProtobufFormat.readRoute(new ByteArrayInputStream(os.toByteArray()), tr);
+        assertEquals(420.5, res.getDistance(), 1e-6);
+        assertEquals(0, res.getPoints().getSize());
+        assertEquals(0, res.getInstructions().getSize());
+    }
+
+    @Test
+    public void testErrors() throws Exception
+    {
+        GHResponse rsp = new GHResponse().addError(new IllegalArgumentException("Vehicle not supported: X"));
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        ProtobufFormat.writeRoute(os, rsp, null, 5, true, true, false);
+        GHResponse res = ProtobufFormat.readRoute(new ByteArrayInputStream(os.toByteArray()), tr);
+        assertEquals(1, res.getErrors().size());
+        assertTrue(res.getErrors().get(0) instanceof IllegalArgumentException);
+        assertEquals("Vehicle not supported: X", res.getErrors().get(0).getMessage());
+
+        os = new ByteArrayOutputStream();
+        ProtobufFormat.writeRoute(os, new GHResponse().setFound(false), null, 5, true, true, false);
+        res = ProtobufFormat.readRoute(new ByteArrayInputStream(os.toByteArray()), tr);
+        assertEquals(1, res.getErrors().size());
+        assertTrue(res.getErrors().get(0).getMessage(), res.getErrors().get(0).getMessage().contains("Not found"));
+    }
+
+    @Test
+    public void testMatrix() throws Exception
+    {
+        GHMatrixResponse rsp = new GHMatrixResponse().
+                setDistances(new double[][]
+                        {
+                            {
+                                0, 1200.5, -1
+                            },
+                            {
+                                1100, 0, 30
+                            }
+                        }).
+                setMillis(new long[][]
+                        {
+                            {
+                                0, 120000, -1
+                            },
+                            {
+                                110000, 0, 3000
+                            }
+                        });
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        ProtobufFormat.writeMatrix(os, rsp, 5);
+        GHMatrixResponse res = ProtobufFormat.readMatrix(new ByteArrayInputStream(os.toByteArray()));
+        assertFalse(res.hasErrors());
+        assertEquals(2, res.getDistances().length);
+        assertEquals(3, res.getDistances()[0].length);
+        assertEquals(1200.5, res.getDistances()[0][1], 1e-6);
+        assertEquals(-1, res.getDistances()[0][2], 1e-6);
+        assertEquals(-1, res.getMillis()[0][2]);
+        assertEquals(3000, res.getMillis()[1][2]);
+        assertFalse(res.isFound(0, 2));
+
+        os = new ByteArrayOutputStream();
+        ProtobufFormat.writeMatrix(os, new GHMatrixResponse().addError(new IllegalStateException("x")), 5);
+        res = ProtobufFormat.readMatrix(new ByteArrayInputStream(os.toByteArray()));
+        assertTrue(res.getErrors().get(0) instanceof IllegalStateException);
+    }
+}